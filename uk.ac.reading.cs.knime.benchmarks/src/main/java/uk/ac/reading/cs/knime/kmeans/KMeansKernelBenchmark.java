@@ -0,0 +1,160 @@
+package uk.ac.reading.cs.knime.kmeans;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmarks of the k-Means kernels: one pass of the nearest-centre search over all rows, the
+ * centroid update, and the WSS and BSS computations of the validity statistics.
+ *
+ * @author University of Reading
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class KMeansKernelBenchmark {
+
+    /** Number of rows. */
+    @Param({"10000", "100000"})
+    public int n;
+
+    /** Number of dimensions. */
+    @Param({"4", "32"})
+    public int d;
+
+    /** Number of clusters. */
+    @Param({"3", "16"})
+    public int k;
+
+    private double[][] m_patterns;
+
+    private double[][] m_clusters;
+
+    private int[] m_assignment;
+
+    private int[] m_clusterCoverage;
+
+    private double[][] m_delta;
+
+    private double[] m_centre;
+
+    /**
+     * Creates random patterns and prototypes and a nearest-centre assignment.
+     */
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(42);
+        m_patterns = new double[n][d];
+        for (double[] pattern : m_patterns) {
+            for (int i = 0; i < d; i++) {
+                pattern[i] = random.nextGaussian();
+            }
+        }
+        m_clusters = new double[k][];
+        for (int c = 0; c < k; c++) {
+            m_clusters[c] = m_patterns[c].clone();
+        }
+        m_assignment = new int[n];
+        m_clusterCoverage = new int[k];
+        m_delta = new double[k][d];
+        m_centre = new double[d];
+        for (int row = 0; row < n; row++) {
+            int c = KMeansKernel.findClosestPrototype(m_patterns[row], m_clusters);
+            m_assignment[row] = c;
+            m_clusterCoverage[c]++;
+            for (int i = 0; i < d; i++) {
+                m_delta[c][i] += m_patterns[row][i];
+                m_centre[i] += m_patterns[row][i] / n;
+            }
+        }
+    }
+
+    /**
+     * @return the checksum of the assignment of all rows
+     */
+    @Benchmark
+    public long nearestCentre() {
+        long sum = 0;
+        for (double[] pattern : m_patterns) {
+            sum += KMeansKernel.findClosestPrototype(pattern, m_clusters);
+        }
+        return sum;
+    }
+
+    /**
+     * @return the checksum of the assignment of all rows with early abandoned distances
+     */
+    @Benchmark
+    public long nearestCentrePruned() {
+        long[] evaluations = new long[2];
+        double[] distance = new double[1];
+        long sum = 0;
+        for (double[] pattern : m_patterns) {
+            sum += KMeansKernel.findClosestPrototype(pattern, m_clusters, evaluations, distance);
+        }
+        return sum;
+    }
+
+    /**
+     * Accumulates the cluster sums of all rows and moves the prototypes.
+     *
+     * @param blackhole consumes the result
+     */
+    @Benchmark
+    public void centroidUpdate(final Blackhole blackhole) {
+        double[][] clusters = new double[k][];
+        for (int c = 0; c < k; c++) {
+            clusters[c] = m_clusters[c].clone();
+        }
+        int[] coverage = new int[k];
+        double[][] delta = new double[k][d];
+        for (int row = 0; row < n; row++) {
+            int c = m_assignment[row];
+            coverage[c]++;
+            double[] pattern = m_patterns[row];
+            for (int i = 0; i < d; i++) {
+                delta[c][i] += pattern[i];
+            }
+        }
+        double[] maxShift = new double[1];
+        blackhole.consume(KMeansKernel.updateCentres(coverage, clusters, delta, maxShift));
+        blackhole.consume(maxShift[0]);
+    }
+
+    /**
+     * @return the within-cluster sum of squares
+     */
+    @Benchmark
+    public double wss() {
+        double wss = 0.0;
+        for (double[] pattern : m_patterns) {
+            wss += KMeansKernel.closestSquaredDistance(pattern, m_clusters);
+        }
+        return wss;
+    }
+
+    /**
+     * @return the between-cluster sum of squares
+     */
+    @Benchmark
+    public double bss() {
+        return KMeansKernel.bss(m_centre, m_clusters, m_clusterCoverage);
+    }
+}
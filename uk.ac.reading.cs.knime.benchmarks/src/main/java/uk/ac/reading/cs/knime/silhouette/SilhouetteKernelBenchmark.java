@@ -0,0 +1,157 @@
+package uk.ac.reading.cs.knime.silhouette;
+
+import java.awt.Color;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of the Silhouette kernels: the boxed and the primitive distance, the inner
+ * loop computing the coefficients of all rows from their distance rows, and sorting a cluster
+ * for the views.
+ *
+ * @author University of Reading
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = {"-Djava.awt.headless=true"})
+public class SilhouetteKernelBenchmark {
+
+	/** Number of rows. */
+	@Param({"500", "2000"})
+	public int n;
+
+	/** Number of dimensions. */
+	@Param({"4", "32"})
+	public int d;
+
+	/** Number of clusters. */
+	@Param({"3", "16"})
+	public int k;
+
+	private Double[][] m_doubles;
+
+	private Integer[][] m_ints;
+
+	private double[] m_features;
+
+	private double[][] m_distances;
+
+	private int[] m_clusterOfRow;
+
+	private int[] m_clusterSizes;
+
+	private Color[] m_colors;
+
+	private double[] m_coefficients;
+
+	private InternalCluster m_cluster;
+
+	/**
+	 * Creates random rows with cluster labels and their distance matrix.
+	 */
+	@Setup(Level.Trial)
+	public void setUp() {
+		Random random = new Random(42);
+		m_doubles = new Double[n][d];
+		m_ints = new Integer[n][0];
+		m_features = new double[n * d];
+		m_clusterOfRow = new int[n];
+		m_clusterSizes = new int[k];
+		for(int row = 0; row < n; row++) {
+			for(int i = 0; i < d; i++) {
+				m_doubles[row][i] = random.nextGaussian();
+				m_features[row * d + i] = m_doubles[row][i];
+			}
+			m_clusterOfRow[row] = row % k;
+			m_clusterSizes[row % k]++;
+		}
+		m_distances = new double[n][n];
+		for(int row = 0; row < n; row++) {
+			for(int other = 0; other < n; other++) {
+				m_distances[row][other] = SilhouetteKernel.euclideanDistance(m_doubles[row], m_ints[row], m_doubles[other], m_ints[other]);
+			}
+		}
+		int size = m_clusterSizes[0];
+		m_colors = new Color[size];
+		m_coefficients = new double[size];
+		for(int i = 0; i < size; i++) {
+			m_colors[i] = Color.GRAY;
+			m_coefficients[i] = random.nextDouble() * 2 - 1;
+		}
+	}
+
+	/**
+	 * Creates a fresh, unsorted cluster for each sort.
+	 */
+	@Setup(Level.Invocation)
+	public void setUpCluster() {
+		int[] indices = new int[m_coefficients.length];
+		for(int i = 0; i < indices.length; i++) indices[i] = i * k;
+		m_cluster = new InternalCluster("cluster_0", m_colors.clone(), indices, m_coefficients.clone());
+	}
+
+	/**
+	 * @return the sum of the distances of the first row to all rows
+	 */
+	@Benchmark
+	public double euclideanDistance() {
+		double sum = 0;
+		for(int other = 0; other < n; other++) {
+			sum += SilhouetteKernel.euclideanDistance(m_doubles[0], m_ints[0], m_doubles[other], m_ints[other]);
+		}
+		return sum;
+	}
+
+	/**
+	 * @return the sum of the distances of the first row to all rows, from the decoded features
+	 */
+	@Benchmark
+	public double primitiveEuclideanDistance() {
+		double sum = 0;
+		for(int other = 0; other < n; other++) {
+			sum += SilhouetteKernel.euclideanDistance(m_features, d, 0, other);
+		}
+		return sum;
+	}
+
+	/**
+	 * @return the sum of the Silhouette coefficients of all rows
+	 */
+	@Benchmark
+	public double silhouetteInnerLoop() {
+		double sum = 0;
+		double[] clusterDistances = new double[k];
+		for(int row = 0; row < n; row++) {
+			Arrays.fill(clusterDistances, 0);
+			SilhouetteKernel.accumulateClusterDistances(m_distances[row], row, m_clusterOfRow, m_clusterSizes, clusterDistances);
+			sum += SilhouetteKernel.coefficient(clusterDistances, m_clusterOfRow[row]);
+		}
+		return sum;
+	}
+
+	/**
+	 * @return the sorted cluster
+	 */
+	@Benchmark
+	public InternalCluster sort() {
+		m_cluster.sort();
+		return m_cluster;
+	}
+}
@@ -0,0 +1,324 @@
+package uk.ac.reading.cs.knime.kmeans;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.lang.ref.SoftReference;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import org.knime.core.data.DataRow;
+import org.knime.core.data.DataTable;
+import org.knime.core.data.RowIterator;
+import org.knime.core.data.RowKey;
+import org.knime.core.node.property.hilite.HiLiteMapper;
+
+/**
+ * Compact hilite mapping from the cluster centres to the covered rows.
+ * Instead of one {@link RowKey} object per row (as the {@link
+ * org.knime.core.node.property.hilite.DefaultHiLiteMapper}) it only keeps the ordinals of
+ * the rows of each cluster, i.e. 4 bytes per row. The row keys are resolved on demand,
+ * either from the labelled table after execution or from the binary internals file after
+ * loading, and the resolved key sets are cached softly. The file has an index of the row
+ * keys, so only the keys of the requested cluster are read from it.
+ *
+ * @author University of Reading
+ */
+final class ClusterHiLiteMapper implements HiLiteMapper {
+
+    private static final int MAGIC = 0x4b4d484c; // "KMHL"
+
+    private static final int VERSION = 2;
+
+    /** Row ordinals (ascending) of each cluster. */
+    private final int[][] m_ordinals;
+
+    /** The row keys come either from this table... */
+    private final DataTable m_table;
+
+    /** ...or from this file, see {@link #save(File)}. */
+    private final File m_file;
+
+    /** Offset of the row keys in {@link #m_file}, their index follows them. */
+    private final long m_keyOffset;
+
+    private final SoftReference<Set<RowKey>>[] m_cache;
+
+    @SuppressWarnings("unchecked")
+    private ClusterHiLiteMapper(final int[][] ordinals, final DataTable table, final File file,
+        final long keyOffset) {
+        m_ordinals = ordinals;
+        m_table = table;
+        m_file = file;
+        m_keyOffset = keyOffset;
+        m_cache = new SoftReference[ordinals.length];
+    }
+
+    /**
+     * Creates a mapper for a labelled table.
+     *
+     * @param table the labelled table, it is kept to resolve the row keys
+     * @param clusterOfRow the cluster index of each row, in the order of the table
+     * @param nrClusters the number of clusters
+     * @return the new mapper
+     */
+    static ClusterHiLiteMapper create(final DataTable table, final int[] clusterOfRow, final int nrClusters) {
+        // counting sort of the row ordinals by cluster
+        int[] coverage = new int[nrClusters];
+        for (int c : clusterOfRow) {
+            coverage[c]++;
+        }
+        int[][] ordinals = new int[nrClusters][];
+        for (int c = 0; c < nrClusters; c++) {
+            ordinals[c] = new int[coverage[c]];
+            coverage[c] = 0;
+        }
+        for (int row = 0; row < clusterOfRow.length; row++) {
+            int c = clusterOfRow[row];
+            ordinals[c][coverage[c]++] = row;
+        }
+        return new ClusterHiLiteMapper(ordinals, table, null, 0);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Set<RowKey> keySet() {
+        Set<RowKey> keys = new LinkedHashSet<RowKey>();
+        for (int c = 0; c < m_ordinals.length; c++) {
+            if (m_ordinals[c].length > 0) {
+                keys.add(new RowKey(KMeansWSSNodeModel.CLUSTER + c));
+            }
+        }
+        return Collections.unmodifiableSet(keys);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Set<RowKey> getKeys(final RowKey key) {
+        int c = getClusterIndex(key);
+        if (c < 0 || m_ordinals[c].length == 0) {
+            return null;
+        }
+        Set<RowKey> keys = m_cache[c] == null ? null : m_cache[c].get();
+        if (keys == null) {
+            try {
+                keys = Collections.unmodifiableSet(resolveKeys(m_ordinals[c]));
+            } catch (IOException e) {
+                throw new IllegalStateException("Unable to read hilite mapping from " + m_file, e);
+            }
+            m_cache[c] = new SoftReference<Set<RowKey>>(keys);
+        }
+        return keys;
+    }
+
+    private int getClusterIndex(final RowKey key) {
+        String s = key.getString();
+        if (!s.startsWith(KMeansWSSNodeModel.CLUSTER)) {
+            return -1;
+        }
+        try {
+            int c = Integer.parseInt(s.substring(KMeansWSSNodeModel.CLUSTER.length()));
+            return c >= 0 && c < m_ordinals.length ? c : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private Set<RowKey> resolveKeys(final int[] ordinals) throws IOException {
+        Set<RowKey> keys = new LinkedHashSet<RowKey>(ordinals.length * 4 / 3 + 1);
+        int next = 0;
+        if (m_table != null) {
+            RowIterator it = m_table.iterator();
+            for (int row = 0; it.hasNext() && next < ordinals.length; row++) {
+                DataRow r = it.next();
+                if (row == ordinals[next]) {
+                    keys.add(r.getKey());
+                    next++;
+                }
+            }
+            closeIterator(it);
+            return keys;
+        }
+        try (RandomAccessFile file = new RandomAccessFile(m_file, "r")) {
+            FileChannel channel = file.getChannel();
+            long indexOffset = channel.size() - 8L * (getRowCount() + 1);
+            ByteBuffer range = ByteBuffer.allocate(16);
+            ByteBuffer key = ByteBuffer.allocate(64);
+            for (int row : ordinals) {
+                // the offsets of the key and of the next one
+                range.clear();
+                readFully(channel, range, indexOffset + 8L * row);
+                long from = range.getLong(0);
+                int length = (int)(range.getLong(8) - from);
+                if (key.capacity() < length) {
+                    key = ByteBuffer.allocate(length);
+                }
+                key.clear().limit(length);
+                readFully(channel, key, m_keyOffset + from);
+                keys.add(new RowKey(new String(key.array(), 0, length, StandardCharsets.UTF_8)));
+            }
+        }
+        return keys;
+    }
+
+    private int getRowCount() {
+        int nrRows = 0;
+        for (int[] ordinals : m_ordinals) {
+            nrRows += ordinals.length;
+        }
+        return nrRows;
+    }
+
+    private static void readFully(final FileChannel channel, final ByteBuffer buffer, final long position)
+        throws IOException {
+        long p = position;
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, p);
+            if (read < 0) {
+                throw new IOException("Unexpected end of hilite mapping");
+            }
+            p += read;
+        }
+    }
+
+    private static void closeIterator(final RowIterator it) {
+        if (it instanceof AutoCloseable) {
+            try {
+                ((AutoCloseable)it).close();
+            } catch (Exception e) {
+                // only releases resources, nothing to do
+            }
+        }
+    }
+
+    private static void skipFully(final InputStream in, final long n) throws IOException {
+        long remaining = n;
+        while (remaining > 0) {
+            long skipped = in.skip(remaining);
+            if (skipped <= 0) {
+                throw new IOException("Unexpected end of hilite mapping");
+            }
+            remaining -= skipped;
+        }
+    }
+
+    /**
+     * Writes the mapping in binary form: header, the row ordinals of each cluster, the row
+     * keys of all rows (UTF-8) in the order of the table and then the offsets of the keys,
+     * one per row and the end of the last key. The mapping is written to a temporary file
+     * next to the target first, so a mapping may be saved to the file it was loaded from.
+     *
+     * @param file the file to write
+     * @throws IOException if the file cannot be written or the row keys cannot be read
+     */
+    void save(final File file) throws IOException {
+        File tmp = File.createTempFile(file.getName(), ".tmp", file.getAbsoluteFile().getParentFile());
+        try {
+            write(tmp);
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            tmp.delete();
+        }
+    }
+
+    private void write(final File file) throws IOException {
+        int nrRows = getRowCount();
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(m_ordinals.length);
+            for (int[] ordinals : m_ordinals) {
+                out.writeInt(ordinals.length);
+                for (int row : ordinals) {
+                    out.writeInt(row);
+                }
+            }
+            out.writeInt(nrRows);
+            if (m_table != null) {
+                writeKeys(out, nrRows, new File(file.getPath() + ".index"));
+            } else {
+                // the keys and their index do not depend on the header, they are copied as they are
+                try (InputStream in = new BufferedInputStream(new FileInputStream(m_file))) {
+                    skipFully(in, m_keyOffset);
+                    byte[] buffer = new byte[8192];
+                    for (int read = in.read(buffer); read >= 0; read = in.read(buffer)) {
+                        out.write(buffer, 0, read);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes the row keys of the table and their index, collected in a temporary file while
+     * the keys are written.
+     */
+    private void writeKeys(final DataOutputStream out, final int nrRows, final File indexFile) throws IOException {
+        try {
+            try (DataOutputStream index =
+                new DataOutputStream(new BufferedOutputStream(new FileOutputStream(indexFile)))) {
+                long offset = 0;
+                RowIterator it = m_table.iterator();
+                for (int row = 0; row < nrRows; row++) {
+                    byte[] bytes = it.next().getKey().getString().getBytes(StandardCharsets.UTF_8);
+                    index.writeLong(offset);
+                    out.write(bytes);
+                    offset += bytes.length;
+                }
+                closeIterator(it);
+                index.writeLong(offset);
+            }
+            Files.copy(indexFile.toPath(), out);
+        } finally {
+            indexFile.delete();
+        }
+    }
+
+    /**
+     * Reads the row ordinals of a mapping written by {@link #save(File)}. The row keys and
+     * their index stay on disk and are read when they are requested.
+     *
+     * @param file the file to read
+     * @return the mapper
+     * @throws IOException if the file cannot be read or has an unknown format
+     */
+    static ClusterHiLiteMapper load(final File file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a k-Means hilite mapping: " + file);
+            }
+            int version = in.readInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported k-Means hilite mapping version " + version);
+            }
+            long offset = 12;
+            int[][] ordinals = new int[in.readInt()][];
+            for (int c = 0; c < ordinals.length; c++) {
+                ordinals[c] = new int[in.readInt()];
+                for (int i = 0; i < ordinals[c].length; i++) {
+                    ordinals[c][i] = in.readInt();
+                }
+                offset += 4 + 4L * ordinals[c].length;
+            }
+            // skip the number of rows
+            return new ClusterHiLiteMapper(ordinals, null, file, offset + 4);
+        }
+    }
+}
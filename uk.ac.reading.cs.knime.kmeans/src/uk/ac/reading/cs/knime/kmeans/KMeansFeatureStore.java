@@ -0,0 +1,201 @@
+package uk.ac.reading.cs.knime.kmeans;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.knime.core.data.DataCell;
+import org.knime.core.data.DataRow;
+import org.knime.core.data.DoubleValue;
+import org.knime.core.data.RowIterator;
+import org.knime.core.node.BufferedDataTable;
+import org.knime.core.node.ExecutionMonitor;
+
+/**
+ * The training patterns of a k-Means run, visited once per iteration. Patterns are either
+ * decoded from the input table on every visit (streaming) or decoded once into memory, for all
+ * rows or for a random sample of them.
+ *
+ * @author University of Reading
+ */
+abstract class KMeansFeatureStore {
+
+    /** Message of the exception thrown for missing values in the training data. */
+    static final String MISSING_VALUES = "Missing Values not (yet) allowed in k-Means.";
+
+    /** Visits the patterns in row order. */
+    interface Cursor {
+        /**
+         * @return the next pattern or <code>null</code> if there is none; the array must not be
+         *         modified and is only valid until the next call
+         * @throws Exception if the pattern has missing values
+         */
+        double[] next() throws Exception;
+    }
+
+    /**
+     * @return the number of patterns
+     */
+    abstract long size();
+
+    /**
+     * @return a cursor positioned before the first pattern
+     */
+    abstract Cursor cursor();
+
+    /**
+     * @return the heap held by the decoded patterns in bytes, 0 if they are not kept
+     */
+    abstract long heapBytes();
+
+    /**
+     * @param table the input table
+     * @param usedColumns the indices of the used columns
+     * @return a store decoding the table on every visit
+     */
+    static KMeansFeatureStore stream(final BufferedDataTable table, final int[] usedColumns) {
+        return new Streaming(table, usedColumns);
+    }
+
+    /**
+     * @param table the input table
+     * @param usedColumns the indices of the used columns
+     * @param exec for cancellation and progress
+     * @return a store holding all decoded rows
+     * @throws Exception if a row has missing values or the execution was cancelled
+     */
+    static KMeansFeatureStore load(final BufferedDataTable table, final int[] usedColumns,
+        final ExecutionMonitor exec) throws Exception {
+        double[][] patterns = new double[(int)table.size()][];
+        int row = 0;
+        RowIterator rowIt = table.iterator();
+        while (rowIt.hasNext()) {
+            patterns[row] = decode(rowIt.next(), usedColumns, new double[usedColumns.length]);
+            row++;
+            if ((row & (KMeansWSSNodeModel.CHUNK_SIZE - 1)) == 0) {
+                exec.checkCanceled();
+                exec.setProgress((double)row / patterns.length);
+            }
+        }
+        return new InMemory(patterns);
+    }
+
+    /**
+     * Decodes a uniform random sample of rows (reservoir sampling), kept in table order.
+     *
+     * @param table the input table
+     * @param usedColumns the indices of the used columns
+     * @param sampleSize the number of rows to keep
+     * @param seed the random seed
+     * @param exec for cancellation and progress
+     * @return a store holding the decoded sample
+     * @throws Exception if a sampled row has missing values or the execution was cancelled
+     */
+    static KMeansFeatureStore sample(final BufferedDataTable table, final int[] usedColumns, final int sampleSize,
+        final long seed, final ExecutionMonitor exec) throws Exception {
+        long rows = table.size();
+        double[][] patterns = new double[(int)Math.min(sampleSize, rows)][];
+        long[] rowIndex = new long[patterns.length];
+        Random random = new Random(seed);
+        long row = 0;
+        RowIterator rowIt = table.iterator();
+        while (rowIt.hasNext()) {
+            DataRow dataRow = rowIt.next();
+            long slot = row < patterns.length ? row : (long)(random.nextDouble() * (row + 1));
+            if (slot < patterns.length) {
+                int s = (int)slot;
+                patterns[s] = decode(dataRow, usedColumns,
+                    patterns[s] != null ? patterns[s] : new double[usedColumns.length]);
+                rowIndex[s] = row;
+            }
+            row++;
+            if ((row & (KMeansWSSNodeModel.CHUNK_SIZE - 1)) == 0) {
+                exec.checkCanceled();
+                exec.setProgress((double)row / rows);
+            }
+        }
+        // restore the table order of the sampled rows
+        Integer[] order = new Integer[patterns.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Long.compare(rowIndex[a], rowIndex[b]));
+        double[][] sorted = new double[patterns.length][];
+        for (int i = 0; i < order.length; i++) {
+            sorted[i] = patterns[order[i]];
+        }
+        return new InMemory(sorted);
+    }
+
+    private static double[] decode(final DataRow row, final int[] usedColumns, final double[] pattern)
+        throws Exception {
+        for (int i = 0; i < usedColumns.length; i++) {
+            DataCell cell = row.getCell(usedColumns[i]);
+            if (cell.isMissing()) {
+                throw new Exception(MISSING_VALUES);
+            }
+            pattern[i] = ((DoubleValue)cell).getDoubleValue();
+        }
+        return pattern;
+    }
+
+    private static final class Streaming extends KMeansFeatureStore {
+
+        private final BufferedDataTable m_table;
+
+        private final int[] m_usedColumns;
+
+        Streaming(final BufferedDataTable table, final int[] usedColumns) {
+            m_table = table;
+            m_usedColumns = usedColumns;
+        }
+
+        @Override
+        long size() {
+            return m_table.size();
+        }
+
+        @Override
+        long heapBytes() {
+            return 0;
+        }
+
+        @Override
+        Cursor cursor() {
+            final RowIterator rowIt = m_table.iterator();
+            final double[] pattern = new double[m_usedColumns.length];
+            return () -> rowIt.hasNext() ? decode(rowIt.next(), m_usedColumns, pattern) : null;
+        }
+    }
+
+    private static final class InMemory extends KMeansFeatureStore {
+
+        private final double[][] m_patterns;
+
+        InMemory(final double[][] patterns) {
+            m_patterns = patterns;
+        }
+
+        @Override
+        long size() {
+            return m_patterns.length;
+        }
+
+        @Override
+        long heapBytes() {
+            // one array (header and reference) per pattern
+            return m_patterns.length * (24 + 8L * (m_patterns.length > 0 ? m_patterns[0].length : 0));
+        }
+
+        @Override
+        Cursor cursor() {
+            return new Cursor() {
+                private int m_next;
+
+                @Override
+                public double[] next() {
+                    return m_next < m_patterns.length ? m_patterns[m_next++] : null;
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package uk.ac.reading.cs.knime.kmeans;
+
+import java.lang.ref.SoftReference;
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+import org.knime.core.node.BufferedDataTable;
+
+/**
+ * The in-memory feature stores of previous executions of one k-MeansWSS node, so that a
+ * re-execution on the same input (e.g. with another k or seed) skips the ingestion. Stores are
+ * keyed by the identity of the input table and the used columns; the least recently used ones
+ * are evicted when the cache exceeds the heap budget. The node clears its cache on reset.
+ *
+ * <p>The heap budget is shared by the caches of all nodes, a store is not cached if the caches
+ * together would exceed it. The stores are only softly referenced, so the garbage collector
+ * evicts them under memory pressure, and the tables weakly: once an input table is released
+ * (its predecessor was reset or re-executed) its store can never be hit again and is dropped by
+ * {@link #purge()}.
+ *
+ * @author University of Reading
+ */
+final class KMeansFeatureStoreCache {
+
+    /** Heap held by the caches of all nodes in bytes, guarded by the class. */
+    private static long sharedBytes;
+
+    private final LinkedHashMap<Key, Entry> m_entries = new LinkedHashMap<Key, Entry>(4, 0.75f, true);
+
+    private long m_bytes;
+
+    /**
+     * @param table the input table
+     * @param usedColumns the indices of the used columns
+     * @return the cached store or <code>null</code> if there is none
+     */
+    synchronized KMeansFeatureStore get(final BufferedDataTable table, final int[] usedColumns) {
+        Key key = new Key(table.getBufferedTableId(), usedColumns);
+        Entry entry = m_entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        KMeansFeatureStore store = entry.m_store.get();
+        if (entry.m_table.get() != table || store == null) {
+            // the id was reused by another table or the store was collected
+            remove(key);
+            return null;
+        }
+        return store;
+    }
+
+    /**
+     * Caches a store and evicts the least recently used stores until the budget is met. A store
+     * is not cached if it is larger than the budget or if the caches of the other nodes leave no
+     * room for it.
+     *
+     * @param table the input table
+     * @param usedColumns the indices of the used columns
+     * @param store the store decoded from all rows of the table
+     * @param budget the heap budget of the caches of all nodes in bytes
+     */
+    synchronized void put(final BufferedDataTable table, final int[] usedColumns, final KMeansFeatureStore store,
+        final long budget) {
+        long bytes = store.heapBytes();
+        if (bytes > budget) {
+            return;
+        }
+        Key key = new Key(table.getBufferedTableId(), usedColumns);
+        remove(key);
+        purge();
+        Iterator<Entry> eldest = m_entries.values().iterator();
+        while (getSharedBytes() + bytes > budget && eldest.hasNext()) {
+            release(eldest.next().m_bytes);
+            eldest.remove();
+        }
+        if (getSharedBytes() + bytes > budget) {
+            return;
+        }
+        m_entries.put(key, new Entry(table, store, bytes));
+        release(-bytes);
+    }
+
+    /**
+     * Drops the stores of input tables that have been released and those the garbage collector
+     * has collected.
+     */
+    synchronized void purge() {
+        Iterator<Entry> it = m_entries.values().iterator();
+        while (it.hasNext()) {
+            Entry entry = it.next();
+            if (entry.m_table.get() == null || entry.m_store.get() == null) {
+                release(entry.m_bytes);
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Drops all stores.
+     */
+    synchronized void clear() {
+        release(m_bytes);
+        m_entries.clear();
+    }
+
+    /**
+     * @return the heap held by the cached stores in bytes
+     */
+    synchronized long getBytes() {
+        return m_bytes;
+    }
+
+    /**
+     * @return the heap held by the caches of all nodes in bytes
+     */
+    static synchronized long getSharedBytes() {
+        return sharedBytes;
+    }
+
+    private void remove(final Key key) {
+        Entry entry = m_entries.remove(key);
+        if (entry != null) {
+            release(entry.m_bytes);
+        }
+    }
+
+    /** Accounts for dropped stores, negative bytes for added ones. */
+    private void release(final long bytes) {
+        m_bytes -= bytes;
+        synchronized (KMeansFeatureStoreCache.class) {
+            sharedBytes -= bytes;
+        }
+    }
+
+    private static final class Key {
+
+        private final int m_tableId;
+
+        private final int[] m_usedColumns;
+
+        Key(final int tableId, final int[] usedColumns) {
+            m_tableId = tableId;
+            m_usedColumns = usedColumns.clone();
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key)obj;
+            return m_tableId == other.m_tableId && Arrays.equals(m_usedColumns, other.m_usedColumns);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * m_tableId + Arrays.hashCode(m_usedColumns);
+        }
+    }
+
+    private static final class Entry {
+
+        private final WeakReference<BufferedDataTable> m_table;
+
+        private final SoftReference<KMeansFeatureStore> m_store;
+
+        private final long m_bytes;
+
+        Entry(final BufferedDataTable table, final KMeansFeatureStore store, final long bytes) {
+            m_table = new WeakReference<BufferedDataTable>(table);
+            m_store = new SoftReference<KMeansFeatureStore>(store);
+            m_bytes = bytes;
+        }
+    }
+}
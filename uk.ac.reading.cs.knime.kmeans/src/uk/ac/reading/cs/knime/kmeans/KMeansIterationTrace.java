@@ -0,0 +1,93 @@
+package uk.ac.reading.cs.knime.kmeans;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.knime.core.data.DataCell;
+import org.knime.core.data.DataColumnSpecCreator;
+import org.knime.core.data.DataRow;
+import org.knime.core.data.DataTableSpec;
+import org.knime.core.data.DataTableSpecCreator;
+import org.knime.core.data.RowKey;
+import org.knime.core.data.def.DefaultRow;
+import org.knime.core.data.def.DoubleCell;
+import org.knime.core.data.def.IntCell;
+import org.knime.core.data.def.LongCell;
+import org.knime.core.node.BufferedDataContainer;
+import org.knime.core.node.BufferedDataTable;
+import org.knime.core.node.ExecutionContext;
+import org.knime.core.node.NodeLogger;
+
+/**
+ * Collects the statistics of the k-Means iterations. Each iteration becomes a row of the
+ * iteration trace output table and is logged as one structured (key=value) debug line.
+ *
+ * @author University of Reading
+ */
+final class KMeansIterationTrace {
+
+    private static final NodeLogger LOGGER = NodeLogger.getLogger(KMeansIterationTrace.class);
+
+    private final List<DataRow> m_rows = new ArrayList<DataRow>();
+
+    /**
+     * @return the spec of the iteration trace table
+     */
+    static DataTableSpec createSpec() {
+        DataTableSpecCreator creator = new DataTableSpecCreator();
+        creator.addColumns(
+            new DataColumnSpecCreator("Iteration", IntCell.TYPE).createSpec(),
+            new DataColumnSpecCreator("Wall time [ms]", DoubleCell.TYPE).createSpec(),
+            new DataColumnSpecCreator("Rows/s", DoubleCell.TYPE).createSpec(),
+            new DataColumnSpecCreator("Reassigned rows", LongCell.TYPE).createSpec(),
+            new DataColumnSpecCreator("WSS", DoubleCell.TYPE).createSpec(),
+            new DataColumnSpecCreator("Max. centroid shift", DoubleCell.TYPE).createSpec(),
+            new DataColumnSpecCreator("Distance evaluations", LongCell.TYPE).createSpec(),
+            new DataColumnSpecCreator("Skipped distance evaluations", LongCell.TYPE).createSpec(),
+            new DataColumnSpecCreator("Heap used [bytes]", LongCell.TYPE).createSpec());
+        return creator.createSpec();
+    }
+
+    /**
+     * Records one iteration.
+     *
+     * @param iteration the iteration (starting with 0)
+     * @param nanos wall time of the iteration
+     * @param rows the number of rows processed
+     * @param reassigned the number of rows assigned to a different cluster than in the previous
+     *            iteration (all rows in the first iteration)
+     * @param wss the within-cluster sum of squares of the assignment of this iteration
+     * @param maxShift the largest Euclidean distance a cluster centre moved in the update
+     * @param evaluations the number of completed distance evaluations
+     * @param skipped the number of distance evaluations abandoned early
+     */
+    void add(final int iteration, final long nanos, final long rows, final long reassigned, final double wss,
+        final double maxShift, final long evaluations, final long skipped) {
+        Runtime runtime = Runtime.getRuntime();
+        long heapUsed = runtime.totalMemory() - runtime.freeMemory();
+        double millis = nanos / 1e6;
+        double rowsPerSecond = nanos > 0 ? rows * 1e9 / nanos : Double.NaN;
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("k-Means iteration=" + iteration + " timeMs=" + millis + " rowsPerSec=" + rowsPerSecond
+                + " reassigned=" + reassigned + " wss=" + wss + " maxShift=" + maxShift + " distEvals=" + evaluations
+                + " distSkipped=" + skipped + " heapUsed=" + heapUsed);
+        }
+        m_rows.add(new DefaultRow(RowKey.createRowKey((long)iteration), new DataCell[]{new IntCell(iteration),
+            new DoubleCell(millis), new DoubleCell(rowsPerSecond), new LongCell(reassigned), new DoubleCell(wss),
+            new DoubleCell(maxShift), new LongCell(evaluations), new LongCell(skipped), new LongCell(heapUsed)}));
+    }
+
+    /**
+     * @param exec to create the table
+     * @param trace the collected iterations
+     * @return the iteration trace table
+     */
+    static BufferedDataTable createTable(final ExecutionContext exec, final KMeansIterationTrace trace) {
+        BufferedDataContainer container = exec.createDataContainer(createSpec());
+        for (DataRow row : trace.m_rows) {
+            container.addRowToTable(row);
+        }
+        container.close();
+        return container.getTable();
+    }
+}
@@ -0,0 +1,202 @@
+package uk.ac.reading.cs.knime.kmeans;
+
+/**
+ * Primitive distance kernels of the k-Means nodes.
+ * All methods work on pre-decoded feature vectors (one <code>double</code> per used column).
+ * Missing values are encoded as {@link Double#NaN} and, as in the original cell based
+ * implementation, simply do not contribute to the distance.
+ *
+ * @author University of Reading
+ */
+final class KMeansKernel {
+
+    private KMeansKernel() {
+        // utility class
+    }
+
+    /**
+     * Returns the squared Euclidean distance between a pattern and a prototype.
+     *
+     * @param pattern the decoded pattern, <code>NaN</code> for missing values
+     * @param prototype the cluster prototype
+     * @return the squared distance
+     */
+    static double squaredDistance(final double[] pattern, final double[] prototype) {
+        double distance = 0.0;
+        for (int i = 0; i < prototype.length; i++) {
+            double d = prototype[i] - pattern[i];
+            if (!Double.isNaN(d)) {
+                distance += d * d;
+            }
+        }
+        return distance;
+    }
+
+    /**
+     * Finds the closest prototype for a pattern.
+     *
+     * @param pattern the decoded pattern, <code>NaN</code> for missing values
+     * @param clusters the cluster prototypes
+     * @return the index of the closest prototype or -1 if there is none
+     */
+    static int findClosestPrototype(final double[] pattern, final double[][] clusters) {
+        int winner = -1; // closest cluster so far
+        double winnerDistance = Double.MAX_VALUE; // best distance
+        for (int c = 0; c < clusters.length; c++) {
+            double distance = squaredDistance(pattern, clusters[c]);
+            if (distance < winnerDistance) { // found closer cluster
+                winner = c;
+                winnerDistance = distance;
+            }
+        }
+        return winner;
+    }
+
+    /**
+     * Finds the closest prototype for a pattern like {@link #findClosestPrototype(double[], double[][])},
+     * but abandons a distance evaluation as soon as its partial sum reaches the best distance so
+     * far. As all terms are non-negative the result is exactly the same.
+     *
+     * @param pattern the decoded pattern, <code>NaN</code> for missing values
+     * @param clusters the cluster prototypes
+     * @param evaluations counters, <code>evaluations[0]</code> is incremented by the number of
+     *            completed distance evaluations and <code>evaluations[1]</code> by the number of
+     *            abandoned ones
+     * @param distance array of length 1 receiving the squared distance to the closest prototype
+     * @return the index of the closest prototype or -1 if there is none
+     */
+    static int findClosestPrototype(final double[] pattern, final double[][] clusters, final long[] evaluations,
+        final double[] distance) {
+        int winner = -1;
+        double winnerDistance = Double.MAX_VALUE;
+        for (int c = 0; c < clusters.length; c++) {
+            double[] prototype = clusters[c];
+            double partial = 0.0;
+            int i = 0;
+            for (; i < prototype.length && partial < winnerDistance; i++) {
+                double d = prototype[i] - pattern[i];
+                if (!Double.isNaN(d)) {
+                    partial += d * d;
+                }
+            }
+            if (i < prototype.length) {
+                evaluations[1]++; // abandoned, can't be closer
+            } else {
+                evaluations[0]++;
+                if (partial < winnerDistance) {
+                    winner = c;
+                    winnerDistance = partial;
+                }
+            }
+        }
+        distance[0] = winnerDistance;
+        return winner;
+    }
+
+    /**
+     * Finds the closest and the second closest prototype for a pattern in a single pass.
+     *
+     * @param pattern the decoded pattern, <code>NaN</code> for missing values
+     * @param clusters the cluster prototypes
+     * @param distances array of length 2 receiving the squared distances to the closest and
+     *            the second closest prototype, the latter is <code>NaN</code> if there is
+     *            only one prototype
+     * @return the index of the closest prototype or -1 if there is none
+     */
+    static int findClosestPrototypes(final double[] pattern, final double[][] clusters, final double[] distances) {
+        int winner = -1;
+        double winnerDistance = Double.MAX_VALUE;
+        double secondDistance = Double.MAX_VALUE;
+        for (int c = 0; c < clusters.length; c++) {
+            double distance = squaredDistance(pattern, clusters[c]);
+            if (distance < winnerDistance) {
+                secondDistance = winnerDistance;
+                winner = c;
+                winnerDistance = distance;
+            } else if (distance < secondDistance) {
+                secondDistance = distance;
+            }
+        }
+        distances[0] = winnerDistance;
+        distances[1] = clusters.length > 1 ? secondDistance : Double.NaN;
+        return winner;
+    }
+
+    /**
+     * Returns the squared distance of a pattern to its closest prototype.
+     *
+     * @param pattern the decoded pattern, <code>NaN</code> for missing values
+     * @param clusters the cluster prototypes
+     * @return the squared distance, {@link Double#MAX_VALUE} if there is no prototype
+     */
+    static double closestSquaredDistance(final double[] pattern, final double[][] clusters) {
+        double winnerDistance = Double.MAX_VALUE;
+        for (int c = 0; c < clusters.length; c++) {
+            double distance = squaredDistance(pattern, clusters[c]);
+            if (distance < winnerDistance) {
+                winnerDistance = distance;
+            }
+        }
+        return winnerDistance;
+    }
+
+    /**
+     * Moves the prototypes to the mean of their patterns (batch update). Prototypes without
+     * patterns are not changed.
+     *
+     * @param clusterCoverage the number of patterns of each cluster
+     * @param clusters the cluster prototypes, updated in place
+     * @param delta the sum of the patterns of each cluster
+     * @param maxShift array of length 1 receiving the largest Euclidean distance a prototype moved
+     * @return true if no prototype moved by more than 1e-10 in any dimension
+     */
+    static boolean updateCentres(final int[] clusterCoverage, final double[][] clusters, final double[][] delta,
+        final double[] maxShift) {
+        boolean finished = true;
+        maxShift[0] = 0.0;
+        for (int c = 0; c < clusters.length; c++) {
+            if (clusterCoverage[c] > 0) {
+                // only update clusters who do cover some pattern:
+                double shift = 0.0;
+                for (int i = 0; i < clusters[c].length; i++) {
+                    // normalize delta by nr of covered patterns
+                    double newValue = delta[c][i] / clusterCoverage[c];
+                    double d = clusters[c][i] - newValue;
+                    // compare before assigning the value to make sure we
+                    // don't stop if things have changed substantially
+                    if (Math.abs(d) > 1e-10) {
+                        finished = false;
+                    }
+                    shift += d * d;
+                    clusters[c][i] = newValue;
+                }
+                maxShift[0] = Math.max(maxShift[0], Math.sqrt(shift));
+            }
+        }
+        return finished;
+    }
+
+    /**
+     * Returns the between-cluster sum of squares, the squared distances of the prototypes to the
+     * global centre weighted by the coverage of the clusters.
+     *
+     * @param centre the global centre, only its first <code>clusters[c].length</code> entries are used
+     * @param clusters the cluster prototypes
+     * @param clusterCoverage the number of patterns of each cluster
+     * @return the BSS
+     */
+    static double bss(final double[] centre, final double[][] clusters, final int[] clusterCoverage) {
+        double bss = 0.0;
+        for (int c = 0; c < clusters.length; c++) {
+            double sum2 = 0.0;
+            for (int i = 0; i < clusters[c].length; i++) {
+                double d = clusters[c][i] - centre[i];
+                if (!Double.isNaN(d)) {
+                    sum2 += d * d;
+                }
+            }
+            bss += sum2 * clusterCoverage[c];
+        }
+        return bss;
+    }
+}
@@ -0,0 +1,56 @@
+package uk.ac.reading.cs.knime.kmeans;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight Recorder event for a phase of the k-MeansWSS execution. Only used through
+ * {@link KMeansProfiling}.
+ *
+ * @author University of Reading
+ */
+@Name("uk.ac.reading.cs.knime.kmeans.Phase")
+@Label("k-Means Phase")
+@Category({"KNIME", "k-MeansWSS"})
+@Description("A phase of the k-MeansWSS execution")
+final class KMeansPhaseEvent extends Event implements KMeansProfiling.Phase {
+
+    @Label("Phase")
+    String phase;
+
+    @Label("Iteration")
+    @Description("The iteration, -1 for phases outside the iterations")
+    int iteration;
+
+    @Label("Rows")
+    long rows;
+
+    @Label("Bytes")
+    @DataAmount
+    long bytes;
+
+    static KMeansProfiling.Phase begin(final String phase, final int iteration) {
+        KMeansPhaseEvent event = new KMeansPhaseEvent();
+        event.phase = phase;
+        event.iteration = iteration;
+        event.begin();
+        return event;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void finish(final long rows, final long bytes) {
+        end();
+        if (shouldCommit()) {
+            this.rows = rows;
+            this.bytes = bytes;
+            commit();
+        }
+    }
+}
@@ -0,0 +1,251 @@
+package uk.ac.reading.cs.knime.kmeans;
+
+import java.util.Locale;
+
+/**
+ * Chooses how the k-MeansWSS learner trains: from the number of rows, the dimensions, k and the
+ * maximum number of iterations it estimates the heap and the time of each strategy and picks the
+ * first one that meets the budgets. The time estimates are rough (calibrated on a desktop
+ * machine) and assume the maximum number of iterations, i.e. they are upper bounds.
+ *
+ * @author University of Reading
+ */
+final class KMeansPlanner {
+
+    /** The execution strategies, in order of preference. */
+    enum Strategy {
+        /** The used columns of all rows are decoded once and kept in memory. */
+        IN_MEMORY("In-memory (exact)"),
+        /** The input table is read and decoded in every iteration, the heap is independent of the rows. */
+        STREAMING("Streaming (exact)"),
+        /** The centres are trained on a random sample of rows, all rows are assigned in the end. */
+        SAMPLED("Sampled (approximate)");
+
+        private final String m_label;
+
+        Strategy(final String label) {
+            m_label = label;
+        }
+
+        /** @return the label shown in the dialog and the plan */
+        String getLabel() {
+            return m_label;
+        }
+
+        /**
+         * @param label the label of a strategy
+         * @return the strategy or <code>null</code> if there is none with this label
+         */
+        static Strategy forLabel(final String label) {
+            for (Strategy strategy : values()) {
+                if (strategy.m_label.equals(label)) {
+                    return strategy;
+                }
+            }
+            return null;
+        }
+    }
+
+    /** Nanoseconds per dimension of a distance evaluation. */
+    private static final double NANOS_PER_TERM = 1.0;
+
+    /** Nanoseconds to read and decode one cell of the input table. */
+    private static final double NANOS_PER_CELL = 25.0;
+
+    /** The chosen strategy with its estimates. */
+    static final class Plan {
+
+        private final Strategy m_strategy;
+
+        private final long m_rows;
+
+        private final long m_trainingRows;
+
+        private final long m_heapBytes;
+
+        private final double m_seconds;
+
+        private final long m_heapBudget;
+
+        private final boolean m_automatic;
+
+        private final boolean m_cached;
+
+        private Plan(final Strategy strategy, final long rows, final long trainingRows, final long heapBytes,
+            final double seconds, final long heapBudget, final boolean automatic, final boolean cached) {
+            m_strategy = strategy;
+            m_rows = rows;
+            m_trainingRows = trainingRows;
+            m_heapBytes = heapBytes;
+            m_seconds = seconds;
+            m_heapBudget = heapBudget;
+            m_automatic = automatic;
+            m_cached = cached;
+        }
+
+        /** @return the strategy */
+        Strategy getStrategy() {
+            return m_strategy;
+        }
+
+        /** @return the number of rows the centres are trained on */
+        long getTrainingRows() {
+            return m_trainingRows;
+        }
+
+        /** @return the estimated heap in bytes */
+        long getHeapBytes() {
+            return m_heapBytes;
+        }
+
+        /** @return the estimated time in seconds (upper bound) */
+        double getSeconds() {
+            return m_seconds;
+        }
+
+        /** @return true if the decoded rows of a previous execution are reused */
+        boolean isCached() {
+            return m_cached;
+        }
+
+        /**
+         * @return the plan if the user should be warned about it, <code>null</code> otherwise: the
+         *         strategy set in the dialog is always followed, so only if the planner chose to sample
+         */
+        String getWarning() {
+            return m_automatic && m_strategy == Strategy.SAMPLED ? toString() : null;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder("Execution plan: ").append(m_strategy.getLabel());
+            if (m_strategy == Strategy.SAMPLED) {
+                sb.append(" on ").append(m_trainingRows).append(" of ").append(m_rows).append(" rows");
+            }
+            sb.append(m_automatic ? "" : " (set in the dialog)");
+            sb.append(m_cached ? " reusing the decoded rows of a previous execution" : "");
+            sb.append(", estimated heap ").append(formatBytes(m_heapBytes));
+            sb.append(" (budget ").append(formatBytes(m_heapBudget)).append(")");
+            sb.append(String.format(Locale.ROOT, ", estimated time up to %.0f s", m_seconds));
+            return sb.toString();
+        }
+    }
+
+    private KMeansPlanner() {
+        // utility class
+    }
+
+    /**
+     * @param settings the strategy and budgets
+     * @param rows the number of input rows
+     * @param dimensions the number of used columns
+     * @param k the number of clusters
+     * @param maxIterations the maximum number of iterations
+     * @param trace true if the iteration trace keeps the assignment of each training row
+     * @param cached true if the decoded rows of all rows are cached from a previous execution
+     * @return the plan
+     */
+    static Plan plan(final KMeansWSSExecutionSettings settings, final long rows, final int dimensions, final int k,
+        final int maxIterations, final boolean trace, final boolean cached) {
+        long heapBudget = settings.getHeapBudgetBytes();
+        int timeBudget = settings.getTimeBudgetSeconds();
+        long sampleSize = Math.min(rows, settings.getSampleSize());
+        Strategy requested = settings.getStrategy();
+        if (requested != null) {
+            long trainingRows = requested == Strategy.SAMPLED ? sampleSize : rows;
+            boolean reuse = cached && requested == Strategy.IN_MEMORY;
+            return new Plan(requested, rows, trainingRows,
+                estimateHeap(requested, trainingRows, dimensions, k, trace, reuse),
+                estimateSeconds(requested, rows, trainingRows, dimensions, k, maxIterations, reuse), heapBudget,
+                false, reuse);
+        }
+        for (Strategy strategy : new Strategy[]{Strategy.IN_MEMORY, Strategy.STREAMING}) {
+            boolean reuse = cached && strategy == Strategy.IN_MEMORY;
+            long heap = estimateHeap(strategy, rows, dimensions, k, trace, reuse);
+            double seconds = estimateSeconds(strategy, rows, rows, dimensions, k, maxIterations, reuse);
+            if (heap <= heapBudget && (timeBudget == 0 || seconds <= timeBudget)) {
+                return new Plan(strategy, rows, rows, heap, seconds, heapBudget, true, reuse);
+            }
+        }
+        // halve the sample until it fits, but keep at least one row per cluster
+        long trainingRows = sampleSize;
+        while (trainingRows > k) {
+            boolean fitsHeap = estimateHeap(Strategy.SAMPLED, trainingRows, dimensions, k, trace, false) <= heapBudget;
+            boolean fitsTime = timeBudget == 0 || estimateSeconds(Strategy.SAMPLED, rows, trainingRows, dimensions,
+                k, maxIterations, false) <= timeBudget;
+            if (fitsHeap && fitsTime) {
+                break;
+            }
+            trainingRows = Math.max(k, trainingRows / 2);
+        }
+        return new Plan(Strategy.SAMPLED, rows, trainingRows,
+            estimateHeap(Strategy.SAMPLED, trainingRows, dimensions, k, trace, false),
+            estimateSeconds(Strategy.SAMPLED, rows, trainingRows, dimensions, k, maxIterations, false), heapBudget,
+            true, false);
+    }
+
+    /**
+     * @param strategy the strategy
+     * @param trainingRows the number of rows the centres are trained on
+     * @param dimensions the number of used columns
+     * @param k the number of clusters
+     * @param trace true if the iteration trace keeps the assignment of each training row
+     * @param cached true if the decoded rows are already held by the cache
+     * @return the estimated heap of the training in bytes
+     */
+    static long estimateHeap(final Strategy strategy, final long trainingRows, final int dimensions, final int k,
+        final boolean trace, final boolean cached) {
+        // the centres and their deltas
+        long bytes = 2L * k * (16 + 8L * dimensions);
+        if (trace) {
+            bytes += 4L * trainingRows;
+        }
+        if (strategy != Strategy.STREAMING && !cached) {
+            // one array (header and reference) per decoded row
+            bytes += trainingRows * (24 + 8L * dimensions);
+        }
+        return bytes;
+    }
+
+    /**
+     * @param strategy the strategy
+     * @param rows the number of input rows
+     * @param trainingRows the number of rows the centres are trained on
+     * @param dimensions the number of used columns
+     * @param k the number of clusters
+     * @param maxIterations the maximum number of iterations
+     * @param cached true if the decoded rows are already held by the cache
+     * @return the estimated time of the execution in seconds, assuming all iterations are needed
+     */
+    static double estimateSeconds(final Strategy strategy, final long rows, final long trainingRows,
+        final int dimensions, final int k, final int maxIterations, final boolean cached) {
+        double decode = NANOS_PER_CELL * dimensions;
+        double distances = (double)trainingRows * k * dimensions * NANOS_PER_TERM;
+        double nanos;
+        if (strategy == Strategy.STREAMING) {
+            nanos = maxIterations * (distances + trainingRows * decode);
+        } else {
+            // one pass over the table to decode all rows or to draw the sample, unless cached
+            nanos = (cached ? 0 : rows * decode) + maxIterations * distances;
+        }
+        // the validity and the output pass over all rows
+        nanos += 2.0 * rows * (decode + k * dimensions * NANOS_PER_TERM);
+        return nanos / 1e9;
+    }
+
+    /**
+     * @param bytes a number of bytes
+     * @return the bytes in a human readable unit
+     */
+    static String formatBytes(final long bytes) {
+        if (bytes < 1024) {
+            return bytes + " B";
+        }
+        String units = "KMGTPE";
+        int unit = (int)(Math.log(bytes) / Math.log(1024));
+        return String.format(Locale.ROOT, "%.1f %sB", bytes / Math.pow(1024, unit), units.charAt(unit - 1));
+    }
+}
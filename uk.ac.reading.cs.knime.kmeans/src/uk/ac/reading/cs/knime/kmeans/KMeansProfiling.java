@@ -0,0 +1,53 @@
+package uk.ac.reading.cs.knime.kmeans;
+
+/**
+ * Entry point for the profiling events of the k-Means nodes. If Java Flight Recorder is
+ * available, each phase is recorded as a {@link KMeansPhaseEvent} with its duration, row count
+ * and bytes; otherwise (e.g. on JVMs without <code>jdk.jfr</code>) nothing is recorded and the
+ * event class is never loaded.
+ *
+ * @author University of Reading
+ */
+final class KMeansProfiling {
+
+    /** A running phase. */
+    interface Phase {
+        /**
+         * Ends the phase and records it.
+         *
+         * @param rows the number of rows processed
+         * @param bytes the number of bytes processed
+         */
+        void finish(long rows, long bytes);
+    }
+
+    private static final Phase NOOP = (rows, bytes) -> {
+        // nothing to record
+    };
+
+    private static final boolean JFR_AVAILABLE = isJfrAvailable();
+
+    private KMeansProfiling() {
+        // utility class
+    }
+
+    /**
+     * Begins a phase.
+     *
+     * @param phase the name of the phase
+     * @param iteration the iteration or -1 if the phase is not part of an iteration
+     * @return the running phase
+     */
+    static Phase begin(final String phase, final int iteration) {
+        return JFR_AVAILABLE ? KMeansPhaseEvent.begin(phase, iteration) : NOOP;
+    }
+
+    private static boolean isJfrAvailable() {
+        try {
+            Class.forName("jdk.jfr.Event", false, KMeansProfiling.class.getClassLoader());
+            return true;
+        } catch (ClassNotFoundException | LinkageError e) {
+            return false;
+        }
+    }
+}
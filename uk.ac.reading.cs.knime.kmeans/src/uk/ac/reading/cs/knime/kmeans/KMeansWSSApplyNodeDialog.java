@@ -0,0 +1,28 @@
+package uk.ac.reading.cs.knime.kmeans;
+
+import org.knime.core.node.defaultnodesettings.DefaultNodeSettingsPane;
+import org.knime.core.node.defaultnodesettings.DialogComponentBoolean;
+import org.knime.core.node.defaultnodesettings.DialogComponentStringSelection;
+
+/**
+ * <code>NodeDialog</code> for the "KMeansWSSApply" Node.
+ * Labels a table with the clusters of a k-MeansWSS cluster model.
+ *
+ * @author University of Reading
+ */
+public class KMeansWSSApplyNodeDialog extends DefaultNodeSettingsPane {
+
+    /**
+     * Constructor - adds the output options.
+     */
+    KMeansWSSApplyNodeDialog() {
+        super();
+        addDialogComponent(new DialogComponentStringSelection(KMeansWSSOutputSettings.createEncodingModel(),
+            "Cluster column: ", KMeansWSSOutputSettings.ENCODING_LABEL, KMeansWSSOutputSettings.ENCODING_INDEX));
+        addDialogComponent(new DialogComponentBoolean(
+            KMeansWSSOutputSettings.createAppendDistanceModel(), "Append distance to cluster centre"));
+        addDialogComponent(new DialogComponentBoolean(
+            KMeansWSSOutputSettings.createAppendSecondDistanceModel(), "Append distance to second nearest centre"));
+        setDefaultTabTitle("Options");
+    }
+}
@@ -0,0 +1,57 @@
+package uk.ac.reading.cs.knime.kmeans;
+
+import org.knime.core.node.NodeDialogPane;
+import org.knime.core.node.NodeFactory;
+import org.knime.core.node.NodeView;
+
+/**
+ * <code>NodeFactory</code> for the "KMeansWSSApply" Node.
+ * Labels a table with the clusters of a k-MeansWSS cluster model.
+ *
+ * @author University of Reading
+ */
+public class KMeansWSSApplyNodeFactory
+        extends NodeFactory<KMeansWSSApplyNodeModel> {
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public KMeansWSSApplyNodeModel createNodeModel() {
+        return new KMeansWSSApplyNodeModel();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getNrNodeViews() {
+        return 0;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public NodeView<KMeansWSSApplyNodeModel> createNodeView(final int viewIndex,
+            final KMeansWSSApplyNodeModel nodeModel) {
+        throw new IllegalStateException();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean hasDialog() {
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public NodeDialogPane createNodeDialogPane() {
+        return new KMeansWSSApplyNodeDialog();
+    }
+
+}
@@ -0,0 +1,203 @@
+package uk.ac.reading.cs.knime.kmeans;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collection;
+
+import org.knime.base.node.mine.cluster.PMMLClusterTranslator;
+import org.knime.base.node.mine.cluster.PMMLClusterTranslator.ComparisonMeasure;
+import org.knime.core.data.DataColumnSpec;
+import org.knime.core.data.DataTableSpec;
+import org.knime.core.data.DoubleValue;
+import org.knime.core.data.container.ColumnRearranger;
+import org.knime.core.node.BufferedDataTable;
+import org.knime.core.node.CanceledExecutionException;
+import org.knime.core.node.ExecutionContext;
+import org.knime.core.node.ExecutionMonitor;
+import org.knime.core.node.InvalidSettingsException;
+import org.knime.core.node.NodeModel;
+import org.knime.core.node.NodeSettingsRO;
+import org.knime.core.node.NodeSettingsWO;
+import org.knime.core.node.port.PortObject;
+import org.knime.core.node.port.PortObjectSpec;
+import org.knime.core.node.port.PortType;
+import org.knime.core.node.port.pmml.PMMLPortObject;
+import org.knime.core.node.port.pmml.PMMLPortObjectSpec;
+import org.knime.core.node.streamable.InputPortRole;
+import org.knime.core.node.streamable.OutputPortRole;
+import org.knime.core.node.streamable.PartitionInfo;
+import org.knime.core.node.streamable.PortInput;
+import org.knime.core.node.streamable.PortObjectInput;
+import org.knime.core.node.streamable.PortOutput;
+import org.knime.core.node.streamable.StreamableOperator;
+
+/**
+ * This is the model implementation of the k-MeansWSS Apply node.
+ * It labels arbitrary tables with the clusters of the PMML cluster model produced by the
+ * k-MeansWSS node, without re-training. Only the cluster column (and optionally the
+ * distances to the cluster centres) is computed, the input data is referenced. The node
+ * processes the rows in parallel and can be streamed.
+ *
+ * @author University of Reading
+ */
+public class KMeansWSSApplyNodeModel extends NodeModel {
+
+    /** Index of the PMML cluster model input port. */
+    static final int PMML_PORT = 0;
+
+    /** Index of the data input port. */
+    static final int DATA_PORT = 1;
+
+    private final KMeansWSSOutputSettings m_outputSettings = new KMeansWSSOutputSettings();
+
+    /**
+     * Constructor, one PMML cluster model and one data input, one labelled output.
+     */
+    KMeansWSSApplyNodeModel() {
+        super(new PortType[]{PMMLPortObject.TYPE, BufferedDataTable.TYPE},
+            new PortType[]{BufferedDataTable.TYPE});
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected PortObjectSpec[] configure(final PortObjectSpec[] inSpecs) throws InvalidSettingsException {
+        PMMLPortObjectSpec pmmlSpec = (PMMLPortObjectSpec)inSpecs[PMML_PORT];
+        DataTableSpec dataSpec = (DataTableSpec)inSpecs[DATA_PORT];
+        // check that all learning columns are available, the labels are only known at execution
+        findLearnedColumnIndices(dataSpec, pmmlSpec.getLearningFields());
+        DataColumnSpec[] appendedSpecs = KMeansWSSCellFactory.createColumnSpecs(dataSpec, null, m_outputSettings);
+        return new PortObjectSpec[]{new DataTableSpec(dataSpec, new DataTableSpec(appendedSpecs))};
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected PortObject[] execute(final PortObject[] inData, final ExecutionContext exec) throws Exception {
+        PMMLPortObject model = (PMMLPortObject)inData[PMML_PORT];
+        BufferedDataTable data = (BufferedDataTable)inData[DATA_PORT];
+        ColumnRearranger colre = createColumnRearranger(model, data.getDataTableSpec());
+        return new PortObject[]{exec.createColumnRearrangeTable(data, colre, exec)};
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public InputPortRole[] getInputPortRoles() {
+        return new InputPortRole[]{InputPortRole.NONDISTRIBUTED_NONSTREAMABLE, InputPortRole.DISTRIBUTED_STREAMABLE};
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public OutputPortRole[] getOutputPortRoles() {
+        return new OutputPortRole[]{OutputPortRole.DISTRIBUTED};
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public StreamableOperator createStreamableOperator(final PartitionInfo partitionInfo,
+        final PortObjectSpec[] inSpecs) throws InvalidSettingsException {
+        return new StreamableOperator() {
+            @Override
+            public void runFinal(final PortInput[] inputs, final PortOutput[] outputs, final ExecutionContext exec)
+                throws Exception {
+                PMMLPortObject model = (PMMLPortObject)((PortObjectInput)inputs[PMML_PORT]).getPortObject();
+                ColumnRearranger colre = createColumnRearranger(model, (DataTableSpec)inSpecs[DATA_PORT]);
+                colre.createStreamableFunction(DATA_PORT, 0).runFinal(inputs, outputs, exec);
+            }
+        };
+    }
+
+    private ColumnRearranger createColumnRearranger(final PMMLPortObject model, final DataTableSpec dataSpec)
+        throws InvalidSettingsException {
+        PMMLClusterTranslator trans = new PMMLClusterTranslator();
+        model.initializeModelTranslator(trans);
+        // the closest prototype is the same for both measures, everything else is unsupported
+        ComparisonMeasure measure = trans.getComparisonMeasure();
+        if (measure != ComparisonMeasure.squaredEuclidean && measure != ComparisonMeasure.euclidean) {
+            throw new InvalidSettingsException("Unsupported comparison measure in cluster model: " + measure);
+        }
+        double[][] clusters = trans.getPrototypes();
+        String[] labels = trans.getLabels();
+        int[] colIndices = findLearnedColumnIndices(dataSpec, trans.getUsedColumns());
+        ColumnRearranger colre = new ColumnRearranger(dataSpec);
+        colre.append(new KMeansWSSCellFactory(clusters, labels, colIndices, m_outputSettings, true,
+            KMeansWSSCellFactory.createColumnSpecs(dataSpec, labels, m_outputSettings)));
+        return colre;
+    }
+
+    private static int[] findLearnedColumnIndices(final DataTableSpec spec, final Collection<String> learnedCols)
+        throws InvalidSettingsException {
+        int[] colIndices = new int[learnedCols.size()];
+        int idx = 0;
+        for (String name : learnedCols) {
+            int i = spec.findColumnIndex(name);
+            if (i < 0) {
+                throw new InvalidSettingsException("Column \"" + name + "\" not found in data input");
+            }
+            DataColumnSpec colSpec = spec.getColumnSpec(i);
+            if (!colSpec.getType().isCompatible(DoubleValue.class)) {
+                throw new InvalidSettingsException("Column \"" + name + "\" is not numeric");
+            }
+            colIndices[idx++] = i;
+        }
+        return colIndices;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void saveSettingsTo(final NodeSettingsWO settings) {
+        m_outputSettings.saveSettingsTo(settings);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void validateSettings(final NodeSettingsRO settings) throws InvalidSettingsException {
+        m_outputSettings.validateSettings(settings);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void loadValidatedSettingsFrom(final NodeSettingsRO settings) throws InvalidSettingsException {
+        m_outputSettings.loadSettingsFrom(settings);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void reset() {
+        // nothing to do
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void loadInternals(final File internDir, final ExecutionMonitor exec)
+        throws IOException, CanceledExecutionException {
+        // no internals
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void saveInternals(final File internDir, final ExecutionMonitor exec)
+        throws IOException, CanceledExecutionException {
+        // no internals
+    }
+}
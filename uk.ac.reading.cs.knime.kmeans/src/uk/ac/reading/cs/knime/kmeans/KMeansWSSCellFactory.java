@@ -0,0 +1,172 @@
+package uk.ac.reading.cs.knime.kmeans;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.knime.core.data.DataCell;
+import org.knime.core.data.DataColumnDomainCreator;
+import org.knime.core.data.DataColumnSpec;
+import org.knime.core.data.DataColumnSpecCreator;
+import org.knime.core.data.DataRow;
+import org.knime.core.data.DataTableSpec;
+import org.knime.core.data.DataType;
+import org.knime.core.data.DoubleValue;
+import org.knime.core.data.container.AbstractCellFactory;
+import org.knime.core.data.def.DoubleCell;
+import org.knime.core.data.def.IntCell;
+import org.knime.core.data.def.StringCell;
+
+/**
+ * Cell factory assigning each row to its closest cluster prototype.
+ * It appends the cluster (as label or as integer index) and, optionally, the Euclidean
+ * distances to the assigned and to the second nearest prototype, all computed in the
+ * same pass. The factory is stateless apart from its read-only prototypes and therefore
+ * processes rows in parallel. A row that cannot be assigned gets missing cells instead of
+ * failing the execution.
+ *
+ * @author University of Reading
+ */
+final class KMeansWSSCellFactory extends AbstractCellFactory {
+
+    private final double[][] m_clusters;
+
+    private final int[] m_colIndices;
+
+    /** The cluster cells, shared by all rows (no allocation per row). */
+    private final DataCell[] m_clusterCells;
+
+    private final boolean m_appendDistance;
+
+    private final boolean m_appendSecondDistance;
+
+    /** Whether a row with a missing value gets missing cells instead of being assigned. */
+    private final boolean m_skipIncompleteRows;
+
+    /** The missing cells of all appended columns. */
+    private final DataCell[] m_missingCells;
+
+    /** Decoding buffer, one per worker thread. */
+    private final ThreadLocal<double[]> m_pattern;
+
+    /** Buffer of the squared distances to the two closest prototypes, one per worker thread. */
+    private final ThreadLocal<double[]> m_distances;
+
+    /**
+     * @param clusters the cluster prototypes
+     * @param labels the labels of the clusters (same order as the prototypes)
+     * @param colIndices the indices of the columns the prototypes are defined on
+     * @param settings the output settings
+     * @param skipIncompleteRows true if a row with a missing value gets missing cells (applying
+     *            a model), false if it is assigned on its other values as in the training
+     * @param specs the specs of the appended columns
+     * @see #createColumnSpecs(DataTableSpec, String[], KMeansWSSOutputSettings)
+     */
+    KMeansWSSCellFactory(final double[][] clusters, final String[] labels, final int[] colIndices,
+        final KMeansWSSOutputSettings settings, final boolean skipIncompleteRows, final DataColumnSpec[] specs) {
+        super(specs);
+        m_clusters = clusters;
+        m_colIndices = colIndices;
+        m_appendDistance = settings.isAppendDistance();
+        m_appendSecondDistance = settings.isAppendSecondDistance();
+        m_skipIncompleteRows = skipIncompleteRows;
+        m_missingCells = new DataCell[specs.length];
+        Arrays.fill(m_missingCells, DataType.getMissingCell());
+        m_clusterCells = new DataCell[labels.length];
+        for (int c = 0; c < labels.length; c++) {
+            m_clusterCells[c] = settings.isIndexEncoding() ? new IntCell(c) : new StringCell(labels[c]);
+        }
+        m_pattern = ThreadLocal.withInitial(() -> new double[colIndices.length]);
+        m_distances = ThreadLocal.withInitial(() -> new double[2]);
+        setParallelProcessing(true);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public DataCell[] getCells(final DataRow row) {
+        double[] pattern = m_pattern.get();
+        for (int i = 0; i < m_colIndices.length; i++) {
+            DataCell cell = row.getCell(m_colIndices[i]);
+            if (cell.isMissing() && m_skipIncompleteRows) {
+                return m_missingCells.clone();
+            }
+            pattern[i] = cell.isMissing() ? Double.NaN : ((DoubleValue)cell).getDoubleValue();
+        }
+        if (!m_appendDistance && !m_appendSecondDistance) {
+            int winner = KMeansKernel.findClosestPrototype(pattern, m_clusters);
+            // no finite distance to any prototype (e.g. an infinite value)
+            return winner < 0 ? m_missingCells.clone() : new DataCell[]{m_clusterCells[winner]};
+        }
+        double[] distances = m_distances.get();
+        int winner = KMeansKernel.findClosestPrototypes(pattern, m_clusters, distances);
+        if (winner < 0) {
+            return m_missingCells.clone();
+        }
+        DataCell[] cells = new DataCell[1 + (m_appendDistance ? 1 : 0) + (m_appendSecondDistance ? 1 : 0)];
+        int pos = 0;
+        cells[pos++] = m_clusterCells[winner];
+        if (m_appendDistance) {
+            cells[pos++] = new DoubleCell(Math.sqrt(distances[0]));
+        }
+        if (m_appendSecondDistance) {
+            // there is no second centre if k = 1
+            cells[pos++] = Double.isNaN(distances[1]) ? DataType.getMissingCell()
+                : new DoubleCell(Math.sqrt(distances[1]));
+        }
+        return cells;
+    }
+
+    /**
+     * Creates the specs of the columns appended by this factory. The names are guessed
+     * such that they do not clash with the columns of the input table.
+     *
+     * @param inSpec the spec of the table to label
+     * @param labels the cluster labels, used for the domain of the cluster column, or
+     *            <code>null</code> if not known yet
+     * @param settings the output settings
+     * @return the specs of the appended columns
+     */
+    static DataColumnSpec[] createColumnSpecs(final DataTableSpec inSpec, final String[] labels,
+        final KMeansWSSOutputSettings settings) {
+        List<DataColumnSpec> specs = new ArrayList<DataColumnSpec>();
+        DataColumnSpecCreator creator;
+        if (settings.isIndexEncoding()) {
+            creator = new DataColumnSpecCreator(guessColumnName(inSpec, "Cluster"), IntCell.TYPE);
+            if (labels != null) {
+                creator.setDomain(new DataColumnDomainCreator(
+                    new IntCell(0), new IntCell(labels.length - 1)).createDomain());
+            }
+        } else {
+            creator = new DataColumnSpecCreator(guessColumnName(inSpec, "Cluster"), StringCell.TYPE);
+            if (labels != null) {
+                DataCell[] possibleValues = new DataCell[labels.length];
+                for (int c = 0; c < labels.length; c++) {
+                    possibleValues[c] = new StringCell(labels[c]);
+                }
+                creator.setDomain(new DataColumnDomainCreator(possibleValues).createDomain());
+            }
+        }
+        specs.add(creator.createSpec());
+        if (settings.isAppendDistance()) {
+            specs.add(new DataColumnSpecCreator(guessColumnName(inSpec, "Distance"), DoubleCell.TYPE).createSpec());
+        }
+        if (settings.isAppendSecondDistance()) {
+            specs.add(new DataColumnSpecCreator(
+                guessColumnName(inSpec, "Second Distance"), DoubleCell.TYPE).createSpec());
+        }
+        return specs.toArray(new DataColumnSpec[specs.size()]);
+    }
+
+    private static String guessColumnName(final DataTableSpec inSpec, final String name) {
+        // guess an unused name for the new column (fixes bug #1022)
+        String colNameGuess = name;
+        int uniqueNr = 0;
+        while (inSpec.getColumnSpec(colNameGuess) != null) {
+            uniqueNr++;
+            colNameGuess = name + "_" + uniqueNr;
+        }
+        return colNameGuess;
+    }
+}
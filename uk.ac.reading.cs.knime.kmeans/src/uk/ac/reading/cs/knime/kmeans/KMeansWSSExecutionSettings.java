@@ -0,0 +1,155 @@
+package uk.ac.reading.cs.knime.kmeans;
+
+import org.knime.core.node.InvalidSettingsException;
+import org.knime.core.node.NodeSettingsRO;
+import org.knime.core.node.NodeSettingsWO;
+import org.knime.core.node.defaultnodesettings.SettingsModelIntegerBounded;
+import org.knime.core.node.defaultnodesettings.SettingsModelString;
+
+/**
+ * Settings of the execution planning of the k-MeansWSS learner: the strategy (chosen
+ * automatically or by the user) and the heap and time budgets the automatic choice has to
+ * meet. All settings are optional, workflows saved without them are planned automatically.
+ *
+ * @author University of Reading
+ */
+final class KMeansWSSExecutionSettings {
+
+    /** Config key for the execution strategy. */
+    static final String CFG_STRATEGY = "executionStrategy";
+
+    /** Config key for the heap budget in MB. */
+    static final String CFG_HEAP_BUDGET = "heapBudgetMB";
+
+    /** Config key for the time budget in seconds. */
+    static final String CFG_TIME_BUDGET = "timeBudgetSeconds";
+
+    /** Config key for the number of rows of the sampled strategy. */
+    static final String CFG_SAMPLE_SIZE = "sampleSize";
+
+    /** Strategy: chosen by the planner. */
+    static final String STRATEGY_AUTOMATIC = "Automatic";
+
+    /** Default number of rows of the sampled strategy. */
+    static final int DEFAULT_SAMPLE_SIZE = 100000;
+
+    private final SettingsModelString m_strategy = createStrategyModel();
+
+    private final SettingsModelIntegerBounded m_heapBudget = createHeapBudgetModel();
+
+    private final SettingsModelIntegerBounded m_timeBudget = createTimeBudgetModel();
+
+    private final SettingsModelIntegerBounded m_sampleSize = createSampleSizeModel();
+
+    /** @return settings model for the execution strategy */
+    static SettingsModelString createStrategyModel() {
+        return new SettingsModelString(CFG_STRATEGY, STRATEGY_AUTOMATIC);
+    }
+
+    /** @return settings model for the heap budget in MB, 0 for half of the maximum heap */
+    static SettingsModelIntegerBounded createHeapBudgetModel() {
+        return new SettingsModelIntegerBounded(CFG_HEAP_BUDGET, 0, 0, Integer.MAX_VALUE);
+    }
+
+    /** @return settings model for the time budget in seconds, 0 for no limit */
+    static SettingsModelIntegerBounded createTimeBudgetModel() {
+        return new SettingsModelIntegerBounded(CFG_TIME_BUDGET, 0, 0, Integer.MAX_VALUE);
+    }
+
+    /** @return settings model for the number of rows of the sampled strategy */
+    static SettingsModelIntegerBounded createSampleSizeModel() {
+        return new SettingsModelIntegerBounded(CFG_SAMPLE_SIZE, DEFAULT_SAMPLE_SIZE, 1, Integer.MAX_VALUE);
+    }
+
+    /** @return the labels of the strategy selection, starting with automatic */
+    static String[] getStrategyLabels() {
+        KMeansPlanner.Strategy[] strategies = KMeansPlanner.Strategy.values();
+        String[] labels = new String[strategies.length + 1];
+        labels[0] = STRATEGY_AUTOMATIC;
+        for (int i = 0; i < strategies.length; i++) {
+            labels[i + 1] = strategies[i].getLabel();
+        }
+        return labels;
+    }
+
+    /** @return the strategy chosen by the user or <code>null</code> if the planner chooses */
+    KMeansPlanner.Strategy getStrategy() {
+        return KMeansPlanner.Strategy.forLabel(m_strategy.getStringValue());
+    }
+
+    /** @return the heap budget in bytes */
+    long getHeapBudgetBytes() {
+        int mb = m_heapBudget.getIntValue();
+        return mb > 0 ? mb * 1024L * 1024L : Runtime.getRuntime().maxMemory() / 2;
+    }
+
+    /** @return the time budget in seconds, 0 for no limit */
+    int getTimeBudgetSeconds() {
+        return m_timeBudget.getIntValue();
+    }
+
+    /** @return the number of rows of the sampled strategy */
+    int getSampleSize() {
+        return m_sampleSize.getIntValue();
+    }
+
+    /**
+     * @param settings to write into
+     */
+    void saveSettingsTo(final NodeSettingsWO settings) {
+        m_strategy.saveSettingsTo(settings);
+        m_heapBudget.saveSettingsTo(settings);
+        m_timeBudget.saveSettingsTo(settings);
+        m_sampleSize.saveSettingsTo(settings);
+    }
+
+    /**
+     * @param settings to validate
+     * @throws InvalidSettingsException if a present setting is invalid
+     */
+    void validateSettings(final NodeSettingsRO settings) throws InvalidSettingsException {
+        if (settings.containsKey(CFG_STRATEGY)) {
+            String strategy = settings.getString(CFG_STRATEGY);
+            if (!STRATEGY_AUTOMATIC.equals(strategy) && KMeansPlanner.Strategy.forLabel(strategy) == null) {
+                throw new InvalidSettingsException("Unknown execution strategy: " + strategy);
+            }
+        }
+        if (settings.containsKey(CFG_HEAP_BUDGET)) {
+            m_heapBudget.validateSettings(settings);
+        }
+        if (settings.containsKey(CFG_TIME_BUDGET)) {
+            m_timeBudget.validateSettings(settings);
+        }
+        if (settings.containsKey(CFG_SAMPLE_SIZE)) {
+            m_sampleSize.validateSettings(settings);
+        }
+    }
+
+    /**
+     * @param settings to read from, missing settings are reset to their defaults
+     * @throws InvalidSettingsException if a property is not available - which shouldn't happen...
+     */
+    void loadSettingsFrom(final NodeSettingsRO settings) throws InvalidSettingsException {
+        // added with the execution planning, older workflows don't have them
+        if (settings.containsKey(CFG_STRATEGY)) {
+            m_strategy.loadSettingsFrom(settings);
+        } else {
+            m_strategy.setStringValue(STRATEGY_AUTOMATIC);
+        }
+        if (settings.containsKey(CFG_HEAP_BUDGET)) {
+            m_heapBudget.loadSettingsFrom(settings);
+        } else {
+            m_heapBudget.setIntValue(0);
+        }
+        if (settings.containsKey(CFG_TIME_BUDGET)) {
+            m_timeBudget.loadSettingsFrom(settings);
+        } else {
+            m_timeBudget.setIntValue(0);
+        }
+        if (settings.containsKey(CFG_SAMPLE_SIZE)) {
+            m_sampleSize.loadSettingsFrom(settings);
+        } else {
+            m_sampleSize.setIntValue(DEFAULT_SAMPLE_SIZE);
+        }
+    }
+}
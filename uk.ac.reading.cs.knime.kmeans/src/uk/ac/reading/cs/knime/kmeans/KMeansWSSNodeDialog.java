@@ -5,6 +5,7 @@ import org.knime.core.node.defaultnodesettings.DefaultNodeSettingsPane;
 import org.knime.core.node.defaultnodesettings.DialogComponentBoolean;
 import org.knime.core.node.defaultnodesettings.DialogComponentColumnFilter;
 import org.knime.core.node.defaultnodesettings.DialogComponentNumber;
+import org.knime.core.node.defaultnodesettings.DialogComponentStringSelection;
 import org.knime.core.node.defaultnodesettings.SettingsModelBoolean;
 import org.knime.core.node.defaultnodesettings.SettingsModelFilterString;
 import org.knime.core.node.defaultnodesettings.SettingsModelInteger;
@@ -64,6 +65,24 @@ public class KMeansWSSNodeDialog extends DefaultNodeSettingsPane {
         addDialogComponent(ranNumSeed);
         addDialogComponent(columnFilter);
         addDialogComponent(enableHilite);
+        createNewGroup("Output");
+        addDialogComponent(new DialogComponentStringSelection(KMeansWSSOutputSettings.createEncodingModel(),
+            "Cluster column: ", KMeansWSSOutputSettings.ENCODING_LABEL, KMeansWSSOutputSettings.ENCODING_INDEX));
+        addDialogComponent(new DialogComponentBoolean(
+            KMeansWSSOutputSettings.createAppendDistanceModel(), "Append distance to cluster centre"));
+        addDialogComponent(new DialogComponentBoolean(
+            KMeansWSSOutputSettings.createAppendSecondDistanceModel(), "Append distance to second nearest centre"));
+        closeCurrentGroup();
+        createNewGroup("Execution");
+        addDialogComponent(new DialogComponentStringSelection(KMeansWSSExecutionSettings.createStrategyModel(),
+            "Strategy: ", KMeansWSSExecutionSettings.getStrategyLabels()));
+        addDialogComponent(new DialogComponentNumber(
+            KMeansWSSExecutionSettings.createHeapBudgetModel(), "Heap budget in MB (0 = half of max. heap): ", 256));
+        addDialogComponent(new DialogComponentNumber(
+            KMeansWSSExecutionSettings.createTimeBudgetModel(), "Time budget in s (0 = no limit): ", 60));
+        addDialogComponent(new DialogComponentNumber(
+            KMeansWSSExecutionSettings.createSampleSizeModel(), "Sample size: ", 10000));
+        closeCurrentGroup();
         setDefaultTabTitle("K-Means Properties");
     }
 }
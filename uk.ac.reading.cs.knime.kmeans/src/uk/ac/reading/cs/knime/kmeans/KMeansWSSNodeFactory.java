@@ -1,24 +1,51 @@
 package uk.ac.reading.cs.knime.kmeans;
 
+import java.util.Optional;
+
+import org.knime.core.node.BufferedDataTable;
+import org.knime.core.node.ConfigurableNodeFactory;
 import org.knime.core.node.NodeDialogPane;
-import org.knime.core.node.NodeFactory;
 import org.knime.core.node.NodeView;
+import org.knime.core.node.context.NodeCreationConfiguration;
+import org.knime.core.node.context.ports.PortsConfigurationBuilder;
+import org.knime.core.node.port.pmml.PMMLPortObject;
 
 /**
  * <code>NodeFactory</code> for the "KMeansWSS" Node.
  * Implementation of the k-Means clustering algorithm returning the validity measure WSS and BSS.
+ * The iteration trace is an optional output port the user adds to the node, the ports of
+ * existing nodes don't change.
  *
  * @author Giuseppe Di Fatta
  */
 public class KMeansWSSNodeFactory 
-        extends NodeFactory<KMeansWSSNodeModel> {
+        extends ConfigurableNodeFactory<KMeansWSSNodeModel> {
+
+    /** The identifier of the optional output port group of the iteration trace. */
+    static final String TRACE_PORT_GROUP = "Iteration trace";
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected Optional<PortsConfigurationBuilder> createPortsConfigBuilder() {
+        PortsConfigurationBuilder builder = new PortsConfigurationBuilder();
+        builder.addFixedInputPortGroup("Clustering input", BufferedDataTable.TYPE);
+        builder.addFixedInputPortGroup("PMML Preprocessing", PMMLPortObject.TYPE_OPTIONAL);
+        builder.addFixedOutputPortGroup("Labeled input", BufferedDataTable.TYPE);
+        builder.addFixedOutputPortGroup("PMML Cluster Model", PMMLPortObject.TYPE);
+        builder.addFixedOutputPortGroup("Validity Measures", BufferedDataTable.TYPE);
+        builder.addOptionalOutputPortGroup(TRACE_PORT_GROUP, BufferedDataTable.TYPE);
+        return Optional.of(builder);
+    }
 
     /**
      * {@inheritDoc}
      */
     @Override
-    public KMeansWSSNodeModel createNodeModel() {
-        return new KMeansWSSNodeModel();
+    protected KMeansWSSNodeModel createNodeModel(final NodeCreationConfiguration creationConfig) {
+        int[] tracePort = creationConfig.getPortConfig().get().getOutputPortLocation().get(TRACE_PORT_GROUP);
+        return new KMeansWSSNodeModel(true, false, tracePort != null && tracePort.length > 0);
     }
 
     /**
@@ -53,7 +80,7 @@ public class KMeansWSSNodeFactory
      * {@inheritDoc}
      */
     @Override
-    public NodeDialogPane createNodeDialogPane() {
+    protected NodeDialogPane createNodeDialogPane(final NodeCreationConfiguration creationConfig) {
         return new KMeansWSSNodeDialog();
     }
 
@@ -1,12 +1,18 @@
 package uk.ac.reading.cs.knime.kmeans;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashSet;
 import java.util.LinkedList;
@@ -18,7 +24,6 @@ import java.util.TreeSet;
 import org.knime.base.node.mine.cluster.PMMLClusterTranslator;
 import org.knime.base.node.mine.cluster.PMMLClusterTranslator.ComparisonMeasure;
 import org.knime.core.data.DataCell;
-import org.knime.core.data.DataColumnDomainCreator;
 import org.knime.core.data.DataColumnSpec;
 import org.knime.core.data.DataColumnSpecCreator;
 import org.knime.core.data.DataRow;
@@ -28,12 +33,11 @@ import org.knime.core.data.DataTableSpecCreator;
 import org.knime.core.data.DoubleValue;
 import org.knime.core.data.RowIterator;
 import org.knime.core.data.RowKey;
-import org.knime.core.data.append.AppendedColumnRow;
+import org.knime.core.data.container.ColumnRearranger;
 import org.knime.core.data.container.DataContainer;
 import org.knime.core.data.def.DefaultRow;
 import org.knime.core.data.def.DoubleCell;
 import org.knime.core.data.def.DoubleCell.DoubleCellFactory;
-import org.knime.core.data.def.StringCell;
 import org.knime.core.node.BufferedDataContainer;
 import org.knime.core.node.BufferedDataTable;
 import org.knime.core.node.CanceledExecutionException;
@@ -57,7 +61,9 @@ import org.knime.core.node.port.pmml.PMMLPortObjectSpec;
 import org.knime.core.node.port.pmml.PMMLPortObjectSpecCreator;
 import org.knime.core.node.property.hilite.DefaultHiLiteMapper;
 import org.knime.core.node.property.hilite.HiLiteHandler;
+import org.knime.core.node.property.hilite.HiLiteMapper;
 import org.knime.core.node.property.hilite.HiLiteTranslator;
+import org.knime.core.util.FileUtil;
 
 /**
  * This is the model implementation of KMeansWSS.
@@ -111,6 +117,17 @@ public class KMeansWSSNodeModel extends NodeModel {
 
     private static final String SETTINGS_FILE_NAME = "kMeansInternalSettings";
 
+    private static final String HILITE_FILE_NAME = "kMeansHiLiteMapping";
+
+    private static final String INTERNALS_FILE_NAME = "kMeansInternals.bin";
+
+    private static final int INTERNALS_MAGIC = 0x4b4d4e53; // "KMNS"
+
+    private static final int INTERNALS_VERSION = 1;
+
+    /** Rows processed between two cancellation checks and progress updates (a power of two). */
+    static final int CHUNK_SIZE = 1024;
+
     private static final String CFG_COVERAGE = "clusterCoverage";
 
     private static final String CFG_DIMENSION = "dimensions";
@@ -149,10 +166,29 @@ public class KMeansWSSNodeModel extends NodeModel {
 
     private final SettingsModelBoolean m_enableHilite = new SettingsModelBoolean(CFG_ENABLE_HILITE, false);
 
+    private final KMeansWSSOutputSettings m_outputSettings = new KMeansWSSOutputSettings();
+
+    private final KMeansWSSExecutionSettings m_executionSettings = new KMeansWSSExecutionSettings();
+
+    /** Decoded rows of previous executions, reused when re-executed on the same input. */
+    private final KMeansFeatureStoreCache m_storeCache = new KMeansFeatureStoreCache();
+
     private ClusterViewData m_viewData;
 
+    /** Directory of the internals not read yet, see {@link #getViewData()}. */
+    private File m_internDir;
+
+    /** Private copy of the loaded internals, KNIME clears its directory before saving again. */
+    private File m_internCopy;
+
+    /** Progress of the last execution for JMX clients, registered until the node is reset. */
+    private KMeansWSSProgress m_progress;
+
     private boolean m_pmmlInEnabled;
     private boolean m_outputCenters;
+
+    /** Whether the node has the optional output port of the iteration trace, which is only collected then. */
+    private final boolean m_iterationTrace;
     
 //    private int m_randomSeed;
     private final SettingsModelInteger m_seed
@@ -166,25 +202,37 @@ public class KMeansWSSNodeModel extends NodeModel {
      * Constructor, remember parent and initialize status.
      */
     KMeansWSSNodeModel() {
-        this(true, false);
+        this(true, false, false);
     }
 
     /**
      * Constructor, remember parent and initialize status.
      * @param pmmlInEnabled if true, the node has an input PMML port
      * @param outputCenters if true, the node has another output port for the cluster centers
+     * @param iterationTrace if true, the node has a last output port for the iteration trace
      */
-    KMeansWSSNodeModel(final boolean pmmlInEnabled, final boolean outputCenters) {
+    KMeansWSSNodeModel(final boolean pmmlInEnabled, final boolean outputCenters, final boolean iterationTrace) {
         super(pmmlInEnabled ? new PortType[]{BufferedDataTable.TYPE, PMMLPortObject.TYPE_OPTIONAL}
                                 : new PortType[]{BufferedDataTable.TYPE},
-            outputCenters ? new PortType[]{BufferedDataTable.TYPE, BufferedDataTable.TYPE, PMMLPortObject.TYPE, BufferedDataTable.TYPE}
-        : new PortType[]{BufferedDataTable.TYPE, PMMLPortObject.TYPE, BufferedDataTable.TYPE});
+            outputPorts(outputCenters, iterationTrace));
         m_pmmlInEnabled = pmmlInEnabled;
         m_outputCenters = outputCenters;
+        m_iterationTrace = iterationTrace;
 //        m_randomSeed = (int)System.currentTimeMillis();
     }
 
 
+    private static PortType[] outputPorts(final boolean outputCenters, final boolean iterationTrace) {
+        PortType[] ports = outputCenters
+            ? new PortType[]{BufferedDataTable.TYPE, BufferedDataTable.TYPE, PMMLPortObject.TYPE, BufferedDataTable.TYPE}
+            : new PortType[]{BufferedDataTable.TYPE, PMMLPortObject.TYPE, BufferedDataTable.TYPE};
+        if (iterationTrace) {
+            ports = Arrays.copyOf(ports, ports.length + 1);
+            ports[ports.length - 1] = BufferedDataTable.TYPE;
+        }
+        return ports;
+    }
+
     /**
      * @return cluster centers' hilite handler
      */
@@ -235,6 +283,8 @@ public class KMeansWSSNodeModel extends NodeModel {
         m_nrMaxIterations.saveSettingsTo(settings);
         m_usedColumns.saveSettingsTo(settings);
         m_enableHilite.saveSettingsTo(settings);
+        m_outputSettings.saveSettingsTo(settings);
+        m_executionSettings.saveSettingsTo(settings);
     }
 
     /**
@@ -253,6 +303,8 @@ public class KMeansWSSNodeModel extends NodeModel {
         m_seed.validateSettings(settings);
         m_nrOfClusters.validateSettings(settings);
         m_nrMaxIterations.validateSettings(settings);
+        m_outputSettings.validateSettings(settings);
+        m_executionSettings.validateSettings(settings);
         // if exception is thrown -> catch it, and remember it
         // in configure set all numeric columns into includeList
         try {
@@ -286,6 +338,8 @@ public class KMeansWSSNodeModel extends NodeModel {
         } else {
             m_enableHilite.setBooleanValue(false);
         }
+        m_outputSettings.loadSettingsFrom(settings);
+        m_executionSettings.loadSettingsFrom(settings);
         try {
             m_usedColumns.loadSettingsFrom(settings);
         } catch (InvalidSettingsException ise) {
@@ -302,6 +356,21 @@ public class KMeansWSSNodeModel extends NodeModel {
      */
     @Override
     protected PortObject[] execute(final PortObject[] data, final ExecutionContext exec) throws Exception {
+        // live progress for JMX clients, it keeps the last state until the node is reset
+        unregisterProgress();
+        m_progress = KMeansWSSProgress.register();
+        return execute(data, exec, m_progress);
+    }
+
+    private void unregisterProgress() {
+        if (m_progress != null) {
+            m_progress.unregister();
+            m_progress = null;
+        }
+    }
+
+    private PortObject[] execute(final PortObject[] data, final ExecutionContext exec,
+        final KMeansWSSProgress progress) throws Exception {
         // FIXME actually do something useful with missing values!
         BufferedDataTable inData = (BufferedDataTable)data[0];
         DataTableSpec spec = inData.getDataTableSpec();
@@ -309,9 +378,44 @@ public class KMeansWSSNodeModel extends NodeModel {
 
         // get dimension of feature space
         m_dimension = inData.getDataTableSpec().getNumColumns();
-        HashMap<RowKey, Set<RowKey>> mapping = new HashMap<RowKey, Set<RowKey>>();
         addExcludeColumnsToIgnoreList(spec);
-        double[][] clusters = initializeClusters(inData, nRows);
+        // bytes of the decoded features of one row
+        long rowBytes = 8L * (m_dimension - m_nrIgnoredColumns);
+        KMeansProfiling.Phase phase = KMeansProfiling.begin("initialisation", -1);
+        progress.startPhase("initialisation", 0);
+        double[][] clusters = initializeClusters(inData, nRows, exec);
+        phase.finish(clusters.length, clusters.length * rowBytes);
+
+        // choose how to train within the heap and time budgets
+        int[] usedColumns = getUsedColumnIndices();
+        KMeansFeatureStore cached = m_storeCache.get(inData, usedColumns);
+        KMeansPlanner.Plan plan = KMeansPlanner.plan(m_executionSettings, nRows, usedColumns.length,
+            m_nrOfClusters.getIntValue(), m_nrMaxIterations.getIntValue(), m_iterationTrace,
+            cached != null);
+        NodeLogger.getLogger(getClass()).info(plan);
+        if (plan.getWarning() != null) {
+            setWarningMessage(plan.getWarning());
+        }
+        KMeansFeatureStore store;
+        if (plan.isCached()) {
+            store = cached;
+        } else if (plan.getStrategy() == KMeansPlanner.Strategy.STREAMING) {
+            store = KMeansFeatureStore.stream(inData, usedColumns);
+        } else {
+            phase = KMeansProfiling.begin("ingestion", -1);
+            progress.startPhase("ingestion", nRows);
+            exec.setMessage("Reading data");
+            store = plan.getStrategy() == KMeansPlanner.Strategy.IN_MEMORY
+                ? KMeansFeatureStore.load(inData, usedColumns, exec.createSubProgress(0.0))
+                : KMeansFeatureStore.sample(inData, usedColumns, (int)plan.getTrainingRows(), m_seed.getIntValue(),
+                    exec.createSubProgress(0.0));
+            progress.setRowsProcessed(nRows);
+            phase.finish(nRows, store.size() * rowBytes);
+            if (plan.getStrategy() == KMeansPlanner.Strategy.IN_MEMORY) {
+                m_storeCache.put(inData, usedColumns, store, m_executionSettings.getHeapBudgetBytes());
+            }
+        }
+        long trainingRows = store.size();
 
         // also keep counts of how many patterns fall in a specific cluster
         int[] clusterCoverage = new int[m_nrOfClusters.getIntValue()];
@@ -323,6 +427,21 @@ public class KMeansWSSNodeModel extends NodeModel {
             delta[c] = new double[m_dimension - m_nrIgnoredColumns];
         }
 
+        // tracing keeps the previous assignment of each row to count the reassignments
+        KMeansIterationTrace trace = m_iterationTrace ? new KMeansIterationTrace() : null;
+        int[] assignment = trace != null ? new int[(int)trainingRows] : null;
+        if (assignment != null) {
+            Arrays.fill(assignment, -1);
+        }
+        double[] pattern = new double[usedColumns.length];
+        long[] evaluations = new long[2];
+        double[] winnerDistance = new double[1];
+        double[] maxShift = new double[1];
+        // centres and their deltas, plus the decoded rows and the assignments when tracing
+        progress.setMemoryFootprint(plan.getHeapBytes());
+        progress.startPhase("iterations", trainingRows * m_nrMaxIterations.getIntValue());
+        long processedRows = 0;
+
         // main loop - until clusters stop changing or maxNrIterations reached
         int currentIteration = 0;
         boolean finished = false;
@@ -330,38 +449,36 @@ public class KMeansWSSNodeModel extends NodeModel {
             exec.checkCanceled();
             exec.setProgress((double)currentIteration / (double)m_nrMaxIterations.getIntValue(),
                                  "Iteration " + currentIteration);
+            long start = System.nanoTime();
+            phase = KMeansProfiling.begin("iteration", currentIteration);
+            progress.setIteration(currentIteration);
             // initialize counts and cluster-deltas
             for (int c = 0; c < m_nrOfClusters.getIntValue(); c++) {
                 clusterCoverage[c] = 0;
                 delta[c] = new double[m_dimension - m_nrIgnoredColumns];
-                int deltaPos = 0;
-                for (int i = 0; i < m_dimension; i++) {
-                    if (!m_ignoreColumn[i]) {
-                        delta[c][deltaPos++] = 0.0;
-                    }
-                }
             }
+            long reassigned = 0;
+            double iterationWSS = 0.0;
+            evaluations[0] = 0;
+            evaluations[1] = 0;
+            int row = 0;
             // assume that we are done (i.e. clusters have stopped changing)
             finished = true;
-            RowIterator rowIt = inData.iterator(); // first training example
-            while (rowIt.hasNext()) {
-                DataRow currentRow = rowIt.next();
-                int winner = findClosestPrototypeFor(currentRow, clusters);
+            KMeansFeatureStore.Cursor patterns = store.cursor(); // first training example
+            double[] current;
+            while ((current = patterns.next()) != null) {
+                int winner = KMeansKernel.findClosestPrototype(current, clusters, evaluations, winnerDistance);
                 if (winner >= 0) {
                     // update winning cluster centers delta
-                    int deltaPos = 0;
-                    for (int i = 0; i < m_dimension; i++) {
-                        DataCell currentCell = currentRow.getCell(i);
-                        if (!m_ignoreColumn[i]) {
-                            if (!currentCell.isMissing()) {
-                                delta[winner][deltaPos] += ((DoubleValue)(currentCell)).getDoubleValue();
-                            } else {
-                                throw new Exception("Missing Values not (yet) allowed in k-Means.");
-                            }
-                            deltaPos++;
-                        }
+                    for (int i = 0; i < current.length; i++) {
+                        delta[winner][i] += current[i];
                     }
                     clusterCoverage[winner]++;
+                    iterationWSS += winnerDistance[0];
+                    if (assignment != null && assignment[row] != winner) {
+                        assignment[row] = winner;
+                        reassigned++;
+                    }
                 } else {
                     // we didn't find any winner - very odd
                     assert (winner >= 0); // let's report this during
@@ -369,20 +486,61 @@ public class KMeansWSSNodeModel extends NodeModel {
                     // otherwise just don't reproduce result
                     throw new IllegalStateException("No winner found: " + winner);
                 }
+                row++;
+                // check for cancellation and report the progress between chunks of rows
+                if ((row & (CHUNK_SIZE - 1)) == 0) {
+                    exec.checkCanceled();
+                    exec.setProgress((currentIteration + (double)row / trainingRows) / m_nrMaxIterations.getIntValue());
+                    progress.setRowsProcessed(processedRows + row);
+                }
             }
+            processedRows += row;
+            progress.setRowsProcessed(processedRows);
             // update cluster centers
-            finished = updateClusterCenters(clusterCoverage, clusters, delta);
+            finished = KMeansKernel.updateCentres(clusterCoverage, clusters, delta, maxShift);
+            phase.finish(row, row * rowBytes);
+            if (trace != null) {
+                trace.add(currentIteration, System.nanoTime() - start, row, reassigned, iterationWSS, maxShift[0],
+                    evaluations[0], evaluations[1]);
+            }
             currentIteration++;
         } // while(!finished & nrIt<maxNrIt)
 
         //compute WSS and BSS
+        phase = KMeansProfiling.begin("validity", -1);
+        progress.setIteration(-1);
+        progress.startPhase("validity", nRows);
+        long validityRows = 0;
         double wss = 0.0; //SSE
         double theCentre[] = new double[m_dimension];
         int cnt=0;
+        // the coverage of a sample misses most rows, all rows are counted with the final centres
+        boolean recount = plan.getStrategy() == KMeansPlanner.Strategy.SAMPLED;
+        if (recount) {
+            Arrays.fill(clusterCoverage, 0);
+        }
+        // the cluster of every row for the hilite mapping, the same winner the cell factory assigns
+        int[] clusterOfRow = m_enableHilite.getBooleanValue() ? new int[(int)nRows] : null;
+        exec.setMessage("Computing WSS and BSS");
         RowIterator rowIt = inData.iterator(); // first training example
         while (rowIt.hasNext()) {
             DataRow currentRow = rowIt.next();
-            double winnerDist2 = getClosestPrototypeDist2(currentRow, clusters); //squared distance
+            if ((++validityRows & (CHUNK_SIZE - 1)) == 0) {
+                exec.checkCanceled();
+                progress.setRowsProcessed(validityRows);
+            }
+            for (int i = 0; i < usedColumns.length; i++) {
+                DataCell currentCell = currentRow.getCell(usedColumns[i]);
+                pattern[i] = currentCell.isMissing() ? Double.NaN : ((DoubleValue)currentCell).getDoubleValue();
+            }
+            int winner = -1;
+            double winnerDist2; //squared distance
+            if (recount || clusterOfRow != null) {
+                winner = KMeansKernel.findClosestPrototype(pattern, clusters, evaluations, winnerDistance);
+                winnerDist2 = winner >= 0 ? winnerDistance[0] : -1.0;
+            } else {
+                winnerDist2 = KMeansKernel.closestSquaredDistance(pattern, clusters);
+            }
             if (winnerDist2 >= 0.0) {
                 // update WSS
             	wss += winnerDist2;
@@ -393,6 +551,12 @@ public class KMeansWSSNodeModel extends NodeModel {
                 // otherwise just don't reproduce result
                 throw new IllegalStateException("No winnerDist found: " + winnerDist2);
             }
+            if (recount) {
+                clusterCoverage[winner]++;
+            }
+            if (clusterOfRow != null) {
+                clusterOfRow[(int)validityRows - 1] = winner;
+            }
 
             int pos = 0;
             for (int i = 0; i < m_dimension; i++) {
@@ -417,7 +581,8 @@ public class KMeansWSSNodeModel extends NodeModel {
 	        	theCentre[i] = theCentre[i] / cnt;
 	        }
         }
-        double bss = getBSS2(theCentre, clusters, clusterCoverage);
+        double bss = KMeansKernel.bss(theCentre, clusters, clusterCoverage);
+        phase.finish(nRows, nRows * rowBytes);
         NodeLogger LOGGER = NodeLogger.getLogger(KMeansWSSNodeModel.class);
         for (int c = 0; c < m_nrOfClusters.getIntValue(); c++) {
         	LOGGER.info("<KMeansWSSNodeModel> the number of data points in cluster <"+c+"> is  " + clusterCoverage[c]);
@@ -436,28 +601,22 @@ public class KMeansWSSNodeModel extends NodeModel {
             j++;
         } while (j < m_dimension);
 
-        // create output container and also mapping for HiLiteing
-        BufferedDataContainer labeledInput = exec.createDataContainer(createAppendedSpec(spec));
-        for (DataRow row : inData) {
-            int winner = findClosestPrototypeFor(row, clusters);
-            DataCell cell = new StringCell(CLUSTER + winner);
-            labeledInput.addRowToTable(new AppendedColumnRow(row, cell));
-            if (m_enableHilite.getBooleanValue()) {
-                RowKey key = new RowKey(CLUSTER + winner);
-                if (mapping.get(key) == null) {
-                    Set<RowKey> set = new HashSet<RowKey>();
-                    set.add(row.getKey());
-                    mapping.put(key, set);
-                } else {
-                    mapping.get(key).add(row.getKey());
-                }
-            }
+        // append the cluster column (and distances), the input data is only referenced
+        phase = KMeansProfiling.begin("output", -1);
+        // the cell factory assigns the rows in parallel
+        progress.startPhase("output", nRows);
+        progress.setThreadsInUse(Runtime.getRuntime().availableProcessors());
+        ColumnRearranger colre = new ColumnRearranger(spec);
+        // the rows with missing values are assigned as in the training
+        colre.append(new KMeansWSSCellFactory(clusters, getClusterLabels(), getUsedColumnIndices(), m_outputSettings,
+            false, KMeansWSSCellFactory.createColumnSpecs(spec, getClusterLabels(), m_outputSettings)));
+        exec.setMessage("Assigning clusters");
+        BufferedDataTable outData = exec.createColumnRearrangeTable(inData, colre, exec.createSubProgress(0.0));
+
+        // create mapping for HiLiteing from the clusters recorded above, only the row ordinals are kept
+        if (clusterOfRow != null) {
+            m_translator.setMapper(ClusterHiLiteMapper.create(outData, clusterOfRow, m_nrOfClusters.getIntValue()));
         }
-        labeledInput.close();
-        if (m_enableHilite.getBooleanValue()) {
-            m_translator.setMapper(new DefaultHiLiteMapper(mapping));
-        }
-        BufferedDataTable outData = labeledInput.getTable();
 
         //create datatable for validity measures
         BufferedDataContainer container = exec.createDataContainer(getValidityTableSpec());
@@ -481,6 +640,7 @@ public class KMeansWSSNodeModel extends NodeModel {
                 m_nrOfClusters.getIntValue(), clusters, clusterCoverage, columns));
         m_viewData = new ClusterViewData(clusters, clusterCoverage, m_dimension - m_nrIgnoredColumns, featureNames);
 
+        PortObject[] result;
         if (m_outputCenters) {
             DataContainer clusterCenterContainer = exec.createDataContainer(createClusterCentersSpec(spec));
             int i = 0;
@@ -493,10 +653,18 @@ public class KMeansWSSNodeModel extends NodeModel {
                     PMMLClusterTranslator.CLUSTER_NAME_PREFIX + i++), cells));
             }
             clusterCenterContainer.close();
-            return new PortObject[]{outData, (BufferedDataTable)clusterCenterContainer.getTable(), outPMMLPort, validityData};
+            result = new PortObject[]{outData, (BufferedDataTable)clusterCenterContainer.getTable(), outPMMLPort,
+                validityData};
         } else {
-            return new PortObject[]{outData, outPMMLPort, validityData};
+            result = new PortObject[]{outData, outPMMLPort, validityData};
+        }
+        if (m_iterationTrace) {
+            result = Arrays.copyOf(result, result.length + 1);
+            result[result.length - 1] = KMeansIterationTrace.createTable(exec, trace);
         }
+        // the appended cells, approximated with 8 bytes each
+        phase.finish(nRows, nRows * 8L * (outData.getDataTableSpec().getNumColumns() - spec.getNumColumns()));
+        return result;
      }
 
     private DataTableSpec getValidityTableSpec() {
@@ -515,34 +683,8 @@ public class KMeansWSSNodeModel extends NodeModel {
 						DoubleCellFactory.create(wss), DoubleCellFactory.create(bss) }));
 	}
 
-    private boolean updateClusterCenters(final int[] clusterCoverage,
-                                        final double[][] clusters,
-                                        final double[][] delta) {
-        boolean finished = true;
-        for (int c = 0; c < m_nrOfClusters.getIntValue(); c++) {
-            if (clusterCoverage[c] > 0) {
-                // only update clusters who do cover some pattern:
-                int pos = 0;
-                for (int i = 0; i < m_dimension; i++) {
-                    if (m_ignoreColumn[i]) {
-                        continue;
-                    }
-                    // normalize delta by nr of covered patterns
-                    double newValue = delta[c][pos] / clusterCoverage[c];
-                    // compare before assigning the value to make sure we
-                    // don't stop if things have changed substantially
-                    if (Math.abs(clusters[c][pos] - newValue) > 1e-10) {
-                        finished = false;
-                    }
-                    clusters[c][pos] = newValue;
-                    pos++;
-                }
-            }
-        }
-        return finished;
-    }
-
-    private double[][] initializeClusters(final DataTable input, long numRows) {
+    private double[][] initializeClusters(final DataTable input, long numRows, final ExecutionMonitor exec)
+        throws CanceledExecutionException {
     	// initialize matrix of double (nr clusters * input dimension)
         double[][] clusters = new double[m_nrOfClusters.getIntValue()][];
         for (int c = 0; c < m_nrOfClusters.getIntValue(); c++) {
@@ -598,7 +740,10 @@ public class KMeansWSSNodeModel extends NodeModel {
         long nRow = 0;
         while (rowIt.hasNext() && numCentres < m_nrOfClusters.getIntValue()) {
             DataRow currentRow = rowIt.next();
-            
+            if ((nRow & (CHUNK_SIZE - 1)) == 0) {
+                exec.checkCanceled();
+            }
+
             if(chosen[numCentres] == nRow){
 	            int pos = 0;
 	            for (int i = 0; i < currentRow.getNumCells(); i++) {
@@ -624,36 +769,6 @@ public class KMeansWSSNodeModel extends NodeModel {
         return clusters;
     }
 
-    private int findClosestPrototypeFor(final DataRow row, final double[][] clusters) {
-        // find closest cluster center
-        int winner = -1; // closest cluster so far
-        double winnerDistance = Double.MAX_VALUE; // best distance
-        for (int c = 0; c < m_nrOfClusters.getIntValue(); c++) {
-            double distance = 0.0;
-            int pos = 0;
-            for (int i = 0; i < m_dimension; i++) {
-                DataCell currentCell = row.getCell(i);
-                if (!m_ignoreColumn[i]) {
-                    if (!currentCell.isMissing()) {
-                        assert currentCell.getType().isCompatible(DoubleValue.class);
-                        double d = (clusters[c][pos] - ((DoubleValue)(currentCell)).getDoubleValue());
-                        if (!Double.isNaN(d)) {
-                            distance += d * d;
-                        }
-                    } else {
-                        distance += 0.0; // missing
-                    }
-                    pos++;
-                }
-            }
-            if (distance < winnerDistance) { // found closer cluster
-                winner = c; // make it new winner
-                winnerDistance = distance;
-            }
-        } // for all clusters (find closest one)
-        return winner;
-    }
-
 //    private double[] getTheCentre(final DataRow row) {
 //        // compute the centre of mass of all data points
 //        double centre[] = new double[m_dimension];
@@ -683,57 +798,6 @@ public class KMeansWSSNodeModel extends NodeModel {
 //        return winner;
 //    }
 
-    private double getClosestPrototypeDist2(final DataRow row, final double[][] clusters) {
-        // find closest cluster center
-        int winner = -1; // closest cluster so far
-        double winnerDistance2 = Double.MAX_VALUE; // best distance
-        for (int c = 0; c < m_nrOfClusters.getIntValue(); c++) {
-            double distance = 0.0;
-            int pos = 0;
-            for (int i = 0; i < m_dimension; i++) {
-                DataCell currentCell = row.getCell(i);
-                if (!m_ignoreColumn[i]) {
-                    if (!currentCell.isMissing()) {
-                        assert currentCell.getType().isCompatible(DoubleValue.class);
-                        double d = (clusters[c][pos] - ((DoubleValue)(currentCell)).getDoubleValue());
-                        if (!Double.isNaN(d)) {
-                            distance += d * d;
-                        }
-                    } else {
-                        distance += 0.0; // missing
-                    }
-                    pos++;
-                }
-            }
-            if (distance < winnerDistance2) { // found closer cluster
-                winner = c; // make it new winner
-                winnerDistance2 = distance;
-            }
-        } // for all clusters (find closest one)
-        return winnerDistance2;
-    }
-
-    private double getBSS2(double[] centre, final double[][] clusters, int clusterCoverage[]) {
-        // find BSS for cluster centers
-        double bss = 0.0;
-        for (int c = 0; c < m_nrOfClusters.getIntValue(); c++) {
-            double sum2 = 0.0;
-            int pos = 0;
-            for (int i = 0; i < m_dimension; i++) {
-                if (!m_ignoreColumn[i]) {
-                        double d = (clusters[c][pos] - centre[pos]);
-                        if (!Double.isNaN(d)) {
-                            sum2 += d * d;
-                        }
-                    pos++;
-                }
-            }
-            bss += sum2 * clusterCoverage[c];
-        }
-        return bss;
-    }
-
-
     /**
      * Clears the model.
      *
@@ -743,7 +807,22 @@ public class KMeansWSSNodeModel extends NodeModel {
     protected void reset() {
         // remove the clusters
         m_viewData = null;
+        m_internDir = null;
         m_translator.setMapper(null);
+        deleteInternalsCopy();
+        m_storeCache.clear();
+        unregisterProgress();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void onDispose() {
+        m_storeCache.clear();
+        deleteInternalsCopy();
+        unregisterProgress();
+        super.onDispose();
     }
 
     /**
@@ -847,11 +926,17 @@ public class KMeansWSSNodeModel extends NodeModel {
         } else {
             pmmlSpec = new PMMLPortObjectSpecCreator(spec).createSpec();
         }
+        PortObjectSpec[] specs;
         if (m_outputCenters) {
-            return new PortObjectSpec[]{appendedSpec, createClusterCentersSpec(spec), createPMMLSpec(pmmlSpec, spec), createValiditySpec()};
+            specs = new PortObjectSpec[]{appendedSpec, createClusterCentersSpec(spec), createPMMLSpec(pmmlSpec, spec), createValiditySpec()};
         } else {
-            return new PortObjectSpec[]{appendedSpec, createPMMLSpec(pmmlSpec, spec), createValiditySpec()};
+            specs = new PortObjectSpec[]{appendedSpec, createPMMLSpec(pmmlSpec, spec), createValiditySpec()};
+        }
+        if (m_iterationTrace) {
+            specs = Arrays.copyOf(specs, specs.length + 1);
+            specs[specs.length - 1] = KMeansIterationTrace.createSpec();
         }
+        return specs;
     }
 
     private DataTableSpec createValiditySpec() {
@@ -879,27 +964,28 @@ public class KMeansWSSNodeModel extends NodeModel {
     }
 
     private DataTableSpec createAppendedSpec(final DataTableSpec originalSpec) {
-        // determine the possible values of the appended column
-        DataCell[] possibleValues = new DataCell[m_nrOfClusters.getIntValue()];
-        for (int i = 0; i < m_nrOfClusters.getIntValue(); i++) {
-            DataCell key = new StringCell(CLUSTER + i);
-            possibleValues[i] = key;
-        }
-        // create the domain
-        // 1) guess an unused name for the new column (fixes bug #1022)
-        String colNameGuess = "Cluster";
-        int uniqueNr = 0;
-        while (originalSpec.getColumnSpec(colNameGuess) != null) {
-            uniqueNr++;
-            colNameGuess = "Cluster_" + uniqueNr;
-        }
-        // 2) create spec
-        DataColumnDomainCreator domainCreator = new DataColumnDomainCreator(possibleValues);
-        DataColumnSpecCreator creator = new DataColumnSpecCreator(colNameGuess, StringCell.TYPE);
-        creator.setDomain(domainCreator.createDomain());
-        // create the appended column spec
-        DataColumnSpec labelColSpec = creator.createSpec();
-        return new DataTableSpec(originalSpec, new DataTableSpec(labelColSpec));
+        // the appended cluster column holds the clusters as possible values
+        return new DataTableSpec(originalSpec, new DataTableSpec(
+            KMeansWSSCellFactory.createColumnSpecs(originalSpec, getClusterLabels(), m_outputSettings)));
+    }
+
+    private String[] getClusterLabels() {
+        String[] labels = new String[m_nrOfClusters.getIntValue()];
+        for (int i = 0; i < labels.length; i++) {
+            labels[i] = CLUSTER + i;
+        }
+        return labels;
+    }
+
+    private int[] getUsedColumnIndices() {
+        int[] colIndices = new int[m_dimension - m_nrIgnoredColumns];
+        int pos = 0;
+        for (int i = 0; i < m_dimension; i++) {
+            if (!m_ignoreColumn[i]) {
+                colIndices[pos++] = i;
+            }
+        }
+        return colIndices;
     }
 
     private void addExcludeColumnsToIgnoreList(final DataTableSpec originalSpec) {
@@ -966,31 +1052,113 @@ public class KMeansWSSNodeModel extends NodeModel {
     @Override
     protected void loadInternals(final File internDir,
             final ExecutionMonitor exec) throws IOException {
-        File settingsFile = new File(internDir, SETTINGS_FILE_NAME);
-        FileInputStream in = new FileInputStream(settingsFile);
-        NodeSettingsRO settings = NodeSettings.loadFromXML(in);
+        // nothing is parsed here, the view data and the hilite mapping are read on first use
+        // (see getViewData() and LazyHiLiteMapper); KNIME clears internDir before the node is
+        // saved again, so they are read from a private copy of the files
+        deleteInternalsCopy();
+        File copy = FileUtil.createTempDir("kmeans-internals-");
+        FileUtil.copyDir(internDir, copy);
+        m_internCopy = copy;
+        m_internDir = copy;
+        if (m_enableHilite.getBooleanValue()) {
+            m_translator.setMapper(
+                new LazyHiLiteMapper(copy, () -> loadHiLiteMapper(copy), this::setWarningMessage));
+        }
+    }
+
+    private synchronized void deleteInternalsCopy() {
+        if (m_internCopy != null) {
+            FileUtil.deleteRecursively(m_internCopy);
+            m_internCopy = null;
+        }
+    }
+
+    private void loadViewData(final File internDir) throws IOException {
+        File internalsFile = new File(internDir, INTERNALS_FILE_NAME);
+        if (internalsFile.exists()) {
+            loadBinaryInternals(internalsFile);
+            return;
+        }
+        NodeSettingsRO settings = loadXMLSettings(internDir);
+        if (settings == null) {
+            throw new IOException("No k-Means internals found in " + internDir);
+        }
         try {
-            m_dimension = settings.getInt(CFG_DIMENSION);
-            m_nrIgnoredColumns = settings.getInt(CFG_IGNORED_COLS);
-            int[] clusterCoverage = settings.getIntArray(CFG_COVERAGE);
-            double[][] clusters = new double[m_nrOfClusters.getIntValue()][m_dimension];
-            for (int i = 0; i < m_nrOfClusters.getIntValue(); i++) {
-                clusters[i] = settings.getDoubleArray(CFG_CLUSTER + i);
-            }
-            // loading the HiLite Mapper is a new (v1.2) feature
-            // ignore and set mapper to null if info is not available.
-            // (fixes bug #1016)
-            String[] featureNames = settings.getStringArray(CFG_FEATURE_NAMES);
-            m_viewData = new ClusterViewData(clusters, clusterCoverage, m_dimension - m_nrIgnoredColumns, featureNames);
-            if (m_enableHilite.getBooleanValue()) {
-                NodeSettingsRO mapSet = settings.getNodeSettings(CFG_HILITEMAPPING);
-                m_translator.setMapper(DefaultHiLiteMapper.load(mapSet));
-            }
+            loadXMLInternals(settings);
         } catch (InvalidSettingsException e) {
             throw new IOException(e);
         }
     }
 
+    private static HiLiteMapper loadHiLiteMapper(final File internDir) throws IOException {
+        File hiliteFile = new File(internDir, HILITE_FILE_NAME);
+        if (hiliteFile.exists()) {
+            return ClusterHiLiteMapper.load(hiliteFile);
+        }
+        // workflows saved before the binary mapping
+        NodeSettingsRO settings = loadXMLSettings(internDir);
+        if (settings == null) {
+            throw new IOException("No hilite mapping found in " + internDir);
+        }
+        try {
+            return DefaultHiLiteMapper.load(settings.getNodeSettings(CFG_HILITEMAPPING));
+        } catch (InvalidSettingsException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /** Reads the XML internals written by older versions, null if there are none. */
+    private static NodeSettingsRO loadXMLSettings(final File internDir) throws IOException {
+        File settingsFile = new File(internDir, SETTINGS_FILE_NAME);
+        if (!settingsFile.exists()) {
+            return null;
+        }
+        try (InputStream in = new BufferedInputStream(new FileInputStream(settingsFile))) {
+            return NodeSettings.loadFromXML(in);
+        }
+    }
+
+    private void loadXMLInternals(final NodeSettingsRO settings) throws InvalidSettingsException {
+        m_dimension = settings.getInt(CFG_DIMENSION);
+        m_nrIgnoredColumns = settings.getInt(CFG_IGNORED_COLS);
+        int[] clusterCoverage = settings.getIntArray(CFG_COVERAGE);
+        double[][] clusters = new double[m_nrOfClusters.getIntValue()][m_dimension];
+        for (int i = 0; i < m_nrOfClusters.getIntValue(); i++) {
+            clusters[i] = settings.getDoubleArray(CFG_CLUSTER + i);
+        }
+        String[] featureNames = settings.getStringArray(CFG_FEATURE_NAMES);
+        m_viewData = new ClusterViewData(clusters, clusterCoverage, m_dimension - m_nrIgnoredColumns, featureNames);
+    }
+
+    private void loadBinaryInternals(final File file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != INTERNALS_MAGIC) {
+                throw new IOException("Not a k-Means internals file: " + file);
+            }
+            int version = in.readInt();
+            if (version != INTERNALS_VERSION) {
+                throw new IOException("Unsupported k-Means internals version " + version);
+            }
+            m_dimension = in.readInt();
+            m_nrIgnoredColumns = in.readInt();
+            int nrClusters = in.readInt();
+            int nrUsedColumns = m_dimension - m_nrIgnoredColumns;
+            int[] clusterCoverage = new int[nrClusters];
+            double[][] clusters = new double[nrClusters][nrUsedColumns];
+            for (int c = 0; c < nrClusters; c++) {
+                clusterCoverage[c] = in.readInt();
+                for (int i = 0; i < nrUsedColumns; i++) {
+                    clusters[c][i] = in.readDouble();
+                }
+            }
+            String[] featureNames = new String[nrUsedColumns];
+            for (int i = 0; i < nrUsedColumns; i++) {
+                featureNames[i] = in.readUTF();
+            }
+            m_viewData = new ClusterViewData(clusters, clusterCoverage, nrUsedColumns, featureNames);
+        }
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -998,26 +1166,68 @@ public class KMeansWSSNodeModel extends NodeModel {
     protected void saveInternals(final File internDir,
             final ExecutionMonitor exec) throws IOException,
             CanceledExecutionException {
-        NodeSettings internalSettings = new NodeSettings("kMeans");
-        internalSettings.addInt(CFG_DIMENSION, m_dimension);
-        internalSettings.addInt(CFG_IGNORED_COLS, m_nrIgnoredColumns);
-        internalSettings.addIntArray(CFG_COVERAGE, m_viewData.clusterCoverage());
-        for (int i = 0; i < m_nrOfClusters.getIntValue(); i++) {
-            internalSettings.addDoubleArray(CFG_CLUSTER + i, m_viewData.clusters()[i]);
+        // a model loaded from disk and not read yet (e.g. when saving to a new location) is
+        // read from the private copy before writing it
+        loadPendingViewData();
+        if (m_viewData == null) {
+            throw new IOException("No k-Means model available to save");
         }
-        internalSettings.addStringArray(CFG_FEATURE_NAMES, m_viewData.featureNames());
-        if (m_enableHilite.getBooleanValue()) {
+        HiLiteMapper mapper = m_translator.getMapper();
+        if (mapper instanceof LazyHiLiteMapper) {
+            LazyHiLiteMapper lazy = (LazyHiLiteMapper)mapper;
+            mapper = lazy.getDelegate();
+            if (lazy.hasFailed()) {
+                // a mapping that cannot be read is not saved as an empty one
+                mapper = null;
+            }
+        }
+        File f = new File(internDir, INTERNALS_FILE_NAME);
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(f)))) {
+            out.writeInt(INTERNALS_MAGIC);
+            out.writeInt(INTERNALS_VERSION);
+            out.writeInt(m_dimension);
+            out.writeInt(m_nrIgnoredColumns);
+            out.writeInt(m_viewData.getNrOfClusters());
+            for (int c = 0; c < m_viewData.getNrOfClusters(); c++) {
+                out.writeInt(m_viewData.getClusterCoverage(c));
+                for (double d : m_viewData.getClusterCenter(c)) {
+                    out.writeDouble(d);
+                }
+            }
+            for (String name : m_viewData.featureNames()) {
+                out.writeUTF(name);
+            }
+        }
+        if (mapper instanceof ClusterHiLiteMapper) {
+            ((ClusterHiLiteMapper)mapper).save(new File(internDir, HILITE_FILE_NAME));
+        } else if (mapper instanceof DefaultHiLiteMapper) {
+            // loaded from an old workflow and not re-executed since
+            NodeSettings internalSettings = new NodeSettings("kMeans");
             NodeSettingsWO mapSet = internalSettings.addNodeSettings(CFG_HILITEMAPPING);
-            ((DefaultHiLiteMapper) m_translator.getMapper()).save(mapSet);
+            ((DefaultHiLiteMapper) mapper).save(mapSet);
+            try (OutputStream out = new BufferedOutputStream(
+                new FileOutputStream(new File(internDir, SETTINGS_FILE_NAME)))) {
+                internalSettings.saveToXML(out);
+            }
         }
-        File f = new File(internDir, SETTINGS_FILE_NAME);
-        FileOutputStream out = new FileOutputStream(f);
-        internalSettings.saveToXML(out);
     }
 
-    ClusterViewData getViewData() {
+    synchronized ClusterViewData getViewData() {
+        try {
+            loadPendingViewData();
+        } catch (IOException e) {
+            NodeLogger.getLogger(getClass()).error("Unable to load k-Means view data: " + e.getMessage(), e);
+        }
         return m_viewData;
     }
+
+    /** Reads the view data of loaded internals if not done yet, it stays pending if that fails. */
+    private synchronized void loadPendingViewData() throws IOException {
+        if (m_viewData == null && m_internDir != null) {
+            loadViewData(m_internDir);
+            m_internDir = null;
+        }
+    }
 }
 
 
@@ -0,0 +1,113 @@
+package uk.ac.reading.cs.knime.kmeans;
+
+import org.knime.core.node.InvalidSettingsException;
+import org.knime.core.node.NodeSettingsRO;
+import org.knime.core.node.NodeSettingsWO;
+import org.knime.core.node.defaultnodesettings.SettingsModelBoolean;
+import org.knime.core.node.defaultnodesettings.SettingsModelString;
+
+/**
+ * Settings of the columns appended to the labelled output, shared by the k-MeansWSS
+ * learner and the apply node. All settings are optional, workflows saved without them
+ * get the original output (a string cluster label only).
+ *
+ * @author University of Reading
+ */
+final class KMeansWSSOutputSettings {
+
+    /** Config key for the encoding of the cluster column. */
+    static final String CFG_ENCODING = "outputEncoding";
+
+    /** Config key for appending the distance to the assigned cluster centre. */
+    static final String CFG_APPEND_DISTANCE = "appendDistance";
+
+    /** Config key for appending the distance to the second nearest cluster centre. */
+    static final String CFG_APPEND_SECOND_DISTANCE = "appendSecondDistance";
+
+    /** Encoding: the cluster label as string (e.g. cluster_0). */
+    static final String ENCODING_LABEL = "Cluster label (String)";
+
+    /** Encoding: the cluster index as integer. */
+    static final String ENCODING_INDEX = "Cluster index (Integer)";
+
+    private final SettingsModelString m_encoding = createEncodingModel();
+
+    private final SettingsModelBoolean m_appendDistance = createAppendDistanceModel();
+
+    private final SettingsModelBoolean m_appendSecondDistance = createAppendSecondDistanceModel();
+
+    /** @return settings model for the encoding of the cluster column */
+    static SettingsModelString createEncodingModel() {
+        return new SettingsModelString(CFG_ENCODING, ENCODING_LABEL);
+    }
+
+    /** @return settings model for appending the distance to the assigned cluster centre */
+    static SettingsModelBoolean createAppendDistanceModel() {
+        return new SettingsModelBoolean(CFG_APPEND_DISTANCE, false);
+    }
+
+    /** @return settings model for appending the distance to the second nearest cluster centre */
+    static SettingsModelBoolean createAppendSecondDistanceModel() {
+        return new SettingsModelBoolean(CFG_APPEND_SECOND_DISTANCE, false);
+    }
+
+    /** @return true if the cluster index is appended as integer instead of the label */
+    boolean isIndexEncoding() {
+        return ENCODING_INDEX.equals(m_encoding.getStringValue());
+    }
+
+    /** @return true if the distance to the assigned cluster centre is appended */
+    boolean isAppendDistance() {
+        return m_appendDistance.getBooleanValue();
+    }
+
+    /** @return true if the distance to the second nearest cluster centre is appended */
+    boolean isAppendSecondDistance() {
+        return m_appendSecondDistance.getBooleanValue();
+    }
+
+    /**
+     * @param settings to write into
+     */
+    void saveSettingsTo(final NodeSettingsWO settings) {
+        m_encoding.saveSettingsTo(settings);
+        m_appendDistance.saveSettingsTo(settings);
+        m_appendSecondDistance.saveSettingsTo(settings);
+    }
+
+    /**
+     * @param settings to validate
+     * @throws InvalidSettingsException if a present setting is invalid
+     */
+    void validateSettings(final NodeSettingsRO settings) throws InvalidSettingsException {
+        if (settings.containsKey(CFG_ENCODING)) {
+            String encoding = settings.getString(CFG_ENCODING);
+            if (!ENCODING_LABEL.equals(encoding) && !ENCODING_INDEX.equals(encoding)) {
+                throw new InvalidSettingsException("Unknown output encoding: " + encoding);
+            }
+        }
+    }
+
+    /**
+     * @param settings to read from, missing settings are reset to their defaults
+     * @throws InvalidSettingsException if a property is not available - which shouldn't happen...
+     */
+    void loadSettingsFrom(final NodeSettingsRO settings) throws InvalidSettingsException {
+        // added with the apply node, older workflows don't have them
+        if (settings.containsKey(CFG_ENCODING)) {
+            m_encoding.loadSettingsFrom(settings);
+        } else {
+            m_encoding.setStringValue(ENCODING_LABEL);
+        }
+        if (settings.containsKey(CFG_APPEND_DISTANCE)) {
+            m_appendDistance.loadSettingsFrom(settings);
+        } else {
+            m_appendDistance.setBooleanValue(false);
+        }
+        if (settings.containsKey(CFG_APPEND_SECOND_DISTANCE)) {
+            m_appendSecondDistance.loadSettingsFrom(settings);
+        } else {
+            m_appendSecondDistance.setBooleanValue(false);
+        }
+    }
+}
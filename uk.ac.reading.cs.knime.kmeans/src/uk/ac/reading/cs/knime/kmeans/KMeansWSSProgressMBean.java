@@ -0,0 +1,36 @@
+package uk.ac.reading.cs.knime.kmeans;
+
+/**
+ * Management interface of a running k-MeansWSS execution, see {@link KMeansWSSProgress}.
+ *
+ * @author University of Reading
+ */
+public interface KMeansWSSProgressMBean {
+
+    /** @return the current phase of the execution */
+    String getPhase();
+
+    /** @return the current iteration, -1 outside the iterations */
+    int getIteration();
+
+    /** @return the number of rows processed in the current phase */
+    long getRowsProcessed();
+
+    /** @return the number of rows processed per second in the current phase */
+    double getRowsPerSecond();
+
+    /**
+     * @return the estimated number of seconds until the current phase ends (for the iterations
+     *         assuming that all iterations are needed), <code>NaN</code> if unknown
+     */
+    double getEstimatedSecondsRemaining();
+
+    /** @return the number of threads working on the execution */
+    int getThreadsInUse();
+
+    /** @return the estimated memory footprint of the node's data structures in bytes */
+    long getMemoryFootprintBytes();
+
+    /** @return the time the execution started, in milliseconds since the epoch */
+    long getStartTime();
+}
@@ -0,0 +1,94 @@
+package uk.ac.reading.cs.knime.kmeans;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Set;
+import java.util.function.Consumer;
+
+import org.knime.core.data.RowKey;
+import org.knime.core.node.NodeLogger;
+import org.knime.core.node.property.hilite.DefaultHiLiteMapper;
+import org.knime.core.node.property.hilite.HiLiteMapper;
+
+/**
+ * Hilite mapper that reads the actual mapping from the node internals the first time it is
+ * used, so that loading a workflow does not pay for hiliting nobody uses.
+ *
+ * @author University of Reading
+ */
+final class LazyHiLiteMapper implements HiLiteMapper {
+
+    /** Reads the actual mapper. */
+    interface Loader {
+        /**
+         * @return the mapper
+         * @throws IOException if the mapping cannot be read
+         */
+        HiLiteMapper load() throws IOException;
+    }
+
+    private final File m_file;
+
+    private final Consumer<String> m_warning;
+
+    private Loader m_loader;
+
+    private HiLiteMapper m_delegate;
+
+    private boolean m_failed;
+
+    /**
+     * @param file the file (or directory) the mapping is read from, for the messages
+     * @param loader reads the actual mapper on first use
+     * @param warning shows the user a warning if the mapping cannot be read
+     */
+    LazyHiLiteMapper(final File file, final Loader loader, final Consumer<String> warning) {
+        m_file = file;
+        m_loader = loader;
+        m_warning = warning;
+    }
+
+    /**
+     * @return the actual mapper, read if necessary; an empty mapping if it cannot be read
+     */
+    synchronized HiLiteMapper getDelegate() {
+        if (m_delegate == null) {
+            try {
+                m_delegate = m_loader.load();
+            } catch (IOException e) {
+                String message = "Unable to load hilite mapping from " + m_file + ", hiliting is disabled: "
+                    + e.getMessage();
+                NodeLogger.getLogger(getClass()).warn(message, e);
+                m_warning.accept(message);
+                m_delegate = new DefaultHiLiteMapper(Collections.<RowKey, Set<RowKey>>emptyMap());
+                m_failed = true;
+            }
+            m_loader = null;
+        }
+        return m_delegate;
+    }
+
+    /**
+     * @return true if the mapping was read and could not be, {@link #getDelegate()} is empty
+     */
+    synchronized boolean hasFailed() {
+        return m_failed;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Set<RowKey> getKeys(final RowKey key) {
+        return getDelegate().getKeys(key);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Set<RowKey> keySet() {
+        return getDelegate().keySet();
+    }
+}
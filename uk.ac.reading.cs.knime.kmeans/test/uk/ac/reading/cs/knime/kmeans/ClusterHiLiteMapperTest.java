@@ -0,0 +1,158 @@
+package uk.ac.reading.cs.knime.kmeans;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.knime.core.data.DataRow;
+import org.knime.core.data.DataTable;
+import org.knime.core.data.DataTableSpec;
+import org.knime.core.data.RowIterator;
+import org.knime.core.data.RowKey;
+import org.knime.core.data.def.DefaultRow;
+import org.knime.core.util.FileUtil;
+
+/**
+ * Tests the compact hilite mapping of the k-Means node and its binary form.
+ *
+ * @author University of Reading
+ */
+public class ClusterHiLiteMapperTest {
+
+    private static final int[] CLUSTER_OF_ROW = {0, 1, 0, 2, 1, 0};
+
+    private File m_dir;
+
+    @Before
+    public void setUp() throws IOException {
+        m_dir = FileUtil.createTempDir("kmeans-hilite-test");
+    }
+
+    @After
+    public void tearDown() {
+        FileUtil.deleteRecursively(m_dir);
+    }
+
+    /** A table of rows with the keys "row0", "row1", ... */
+    private static DataTable createTable(final int nrRows) {
+        return createTable(nrRows, "row");
+    }
+
+    private static DataTable createTable(final int nrRows, final String prefix) {
+        return new DataTable() {
+            @Override
+            public DataTableSpec getDataTableSpec() {
+                return null;
+            }
+
+            @Override
+            public RowIterator iterator() {
+                return new RowIterator() {
+                    private int m_row;
+
+                    @Override
+                    public boolean hasNext() {
+                        return m_row < nrRows;
+                    }
+
+                    @Override
+                    public DataRow next() {
+                        return new DefaultRow(new RowKey(prefix + m_row++));
+                    }
+                };
+            }
+        };
+    }
+
+    private static Set<RowKey> keys(final String... keys) {
+        Set<RowKey> set = new HashSet<RowKey>();
+        for (String key : keys) {
+            set.add(new RowKey(key));
+        }
+        return set;
+    }
+
+    private static void assertMapping(final ClusterHiLiteMapper mapper) {
+        assertEquals(keys("cluster_0", "cluster_1", "cluster_2"), mapper.keySet());
+        assertEquals(keys("row0", "row2", "row5"), mapper.getKeys(new RowKey("cluster_0")));
+        assertEquals(keys("row1", "row4"), mapper.getKeys(new RowKey("cluster_1")));
+        assertEquals(keys("row3"), mapper.getKeys(new RowKey("cluster_2")));
+        assertNull(mapper.getKeys(new RowKey("cluster_3")));
+        assertNull(mapper.getKeys(new RowKey("row0")));
+    }
+
+    @Test
+    public void testCreate() {
+        assertMapping(ClusterHiLiteMapper.create(createTable(CLUSTER_OF_ROW.length), CLUSTER_OF_ROW, 3));
+    }
+
+    @Test
+    public void testEmptyClusterIsNotMapped() {
+        ClusterHiLiteMapper mapper = ClusterHiLiteMapper.create(createTable(3), new int[]{0, 2, 0}, 3);
+        assertEquals(keys("cluster_0", "cluster_2"), mapper.keySet());
+        assertNull(mapper.getKeys(new RowKey("cluster_1")));
+    }
+
+    @Test
+    public void testSaveAndLoad() throws IOException {
+        File file = new File(m_dir, "mapping");
+        ClusterHiLiteMapper.create(createTable(CLUSTER_OF_ROW.length), CLUSTER_OF_ROW, 3).save(file);
+        ClusterHiLiteMapper loaded = ClusterHiLiteMapper.load(file);
+        assertMapping(loaded);
+
+        // a loaded mapping is written again, to another file and to the file it was read from
+        File other = new File(m_dir, "other");
+        loaded.save(other);
+        assertMapping(ClusterHiLiteMapper.load(other));
+        loaded.save(file);
+        assertMapping(ClusterHiLiteMapper.load(file));
+        assertMapping(loaded);
+        assertEquals(Arrays.asList("mapping", "other"), sortedNames(m_dir));
+    }
+
+    @Test
+    public void testLoadedKeysAreReadFromTheIndex() throws IOException {
+        // keys of different lengths and with multi-byte characters
+        int nrRows = 1000;
+        int[] clusterOfRow = new int[nrRows];
+        for (int row = 0; row < nrRows; row++) {
+            clusterOfRow[row] = row % 7 == 3 ? 1 : row % 2 == 0 ? 0 : 2;
+        }
+        File file = new File(m_dir, "mapping");
+        ClusterHiLiteMapper.create(createTable(nrRows, "r\u00e9"), clusterOfRow, 4).save(file);
+        ClusterHiLiteMapper loaded = ClusterHiLiteMapper.load(file);
+        for (int c = 0; c < 3; c++) {
+            Set<RowKey> expected = new HashSet<RowKey>();
+            for (int row = 0; row < nrRows; row++) {
+                if (clusterOfRow[row] == c) {
+                    expected.add(new RowKey("r\u00e9" + row));
+                }
+            }
+            assertEquals(expected, loaded.getKeys(new RowKey("cluster_" + c)));
+        }
+        assertNull(loaded.getKeys(new RowKey("cluster_3")));
+    }
+
+    @Test(expected = IOException.class)
+    public void testLoadRejectsOtherFiles() throws IOException {
+        File file = new File(m_dir, "mapping");
+        Files.write(file.toPath(), new byte[]{0, 0, 0, 0, 0, 0, 0, 1});
+        ClusterHiLiteMapper.load(file);
+    }
+
+    private static List<String> sortedNames(final File dir) {
+        String[] names = dir.list();
+        Arrays.sort(names);
+        return Arrays.asList(names);
+    }
+}
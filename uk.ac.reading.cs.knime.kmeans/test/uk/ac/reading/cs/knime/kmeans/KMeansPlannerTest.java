@@ -0,0 +1,83 @@
+package uk.ac.reading.cs.knime.kmeans;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.knime.core.node.InvalidSettingsException;
+import org.knime.core.node.NodeSettings;
+
+import uk.ac.reading.cs.knime.kmeans.KMeansPlanner.Plan;
+import uk.ac.reading.cs.knime.kmeans.KMeansPlanner.Strategy;
+
+/**
+ * Tests the strategy decisions of the execution planner and when they are shown as warning.
+ *
+ * @author University of Reading
+ */
+public class KMeansPlannerTest {
+
+    /**
+     * @param strategy the strategy set in the dialog, <code>null</code> for automatic
+     * @param heapBudgetMB the heap budget, 0 for half of the maximum heap
+     * @return the execution settings, without time budget
+     */
+    static KMeansWSSExecutionSettings settings(final Strategy strategy, final int heapBudgetMB)
+        throws InvalidSettingsException {
+        NodeSettings settings = new NodeSettings("execution");
+        settings.addString(KMeansWSSExecutionSettings.CFG_STRATEGY,
+            strategy == null ? KMeansWSSExecutionSettings.STRATEGY_AUTOMATIC : strategy.getLabel());
+        settings.addInt(KMeansWSSExecutionSettings.CFG_HEAP_BUDGET, heapBudgetMB);
+        settings.addInt(KMeansWSSExecutionSettings.CFG_TIME_BUDGET, 0);
+        KMeansWSSExecutionSettings executionSettings = new KMeansWSSExecutionSettings();
+        executionSettings.loadSettingsFrom(settings);
+        return executionSettings;
+    }
+
+    @Test
+    public void testAutomaticPrefersInMemory() throws Exception {
+        Plan plan = KMeansPlanner.plan(settings(null, 1024), 10000, 5, 3, 99, false, false);
+        assertEquals(Strategy.IN_MEMORY, plan.getStrategy());
+        assertEquals(10000, plan.getTrainingRows());
+        assertFalse(plan.isCached());
+        assertNull(plan.getWarning());
+    }
+
+    @Test
+    public void testAutomaticStreamsBeyondBudget() throws Exception {
+        // the decoded rows don't fit, streaming needs no heap per row
+        Plan plan = KMeansPlanner.plan(settings(null, 1), 1000000, 10, 3, 99, false, false);
+        assertEquals(Strategy.STREAMING, plan.getStrategy());
+        assertNull(plan.getWarning());
+    }
+
+    @Test
+    public void testAutomaticSamplesBeyondBudget() throws Exception {
+        // the trace keeps one assignment per row, too many for the budget even when streaming
+        Plan plan = KMeansPlanner.plan(settings(null, 1), 10000000, 10, 3, 99, true, false);
+        assertEquals(Strategy.SAMPLED, plan.getStrategy());
+        assertTrue(plan.getTrainingRows() >= 3 && plan.getTrainingRows() < 10000000);
+        assertNotNull(plan.getWarning());
+    }
+
+    @Test
+    public void testRequestedStrategyIsFollowed() throws Exception {
+        for (Strategy strategy : Strategy.values()) {
+            Plan plan = KMeansPlanner.plan(settings(strategy, 1), 1000000, 10, 3, 99, false, false);
+            assertEquals(strategy, plan.getStrategy());
+            // even beyond the budgets, the user chose it
+            assertNull(plan.getWarning());
+        }
+    }
+
+    @Test
+    public void testCachedRowsAreReused() throws Exception {
+        Plan plan = KMeansPlanner.plan(settings(null, 1024), 10000, 5, 3, 99, false, true);
+        assertEquals(Strategy.IN_MEMORY, plan.getStrategy());
+        assertTrue(plan.isCached());
+        assertTrue(plan.getHeapBytes() < KMeansPlanner.estimateHeap(Strategy.IN_MEMORY, 10000, 5, 3, false, false));
+    }
+}
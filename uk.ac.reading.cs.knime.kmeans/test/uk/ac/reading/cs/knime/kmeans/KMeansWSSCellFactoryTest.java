@@ -0,0 +1,109 @@
+package uk.ac.reading.cs.knime.kmeans;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.knime.core.data.DataCell;
+import org.knime.core.data.DataColumnSpec;
+import org.knime.core.data.DataRow;
+import org.knime.core.data.DataType;
+import org.knime.core.data.DoubleValue;
+import org.knime.core.data.RowKey;
+import org.knime.core.data.def.DefaultRow;
+import org.knime.core.data.def.DoubleCell;
+import org.knime.core.data.def.IntCell;
+import org.knime.core.data.def.StringCell;
+import org.knime.core.node.InvalidSettingsException;
+import org.knime.core.node.NodeSettings;
+
+/**
+ * Tests the assignment of rows to the cluster prototypes by the cell factory of the k-Means
+ * and the k-Means Apply nodes, in particular of rows with missing values.
+ *
+ * @author University of Reading
+ */
+public class KMeansWSSCellFactoryTest {
+
+    private static final double[][] CLUSTERS = {{0.0, 0.0}, {10.0, 0.0}, {0.0, 10.0}};
+
+    private static final String[] LABELS = {"cluster_0", "cluster_1", "cluster_2"};
+
+    /** The prototypes are defined on the columns 1 and 2, column 0 is ignored. */
+    private static final int[] COLUMNS = {1, 2};
+
+    private static KMeansWSSOutputSettings settings(final boolean index, final boolean distances)
+        throws InvalidSettingsException {
+        NodeSettings settings = new NodeSettings("output");
+        settings.addString(KMeansWSSOutputSettings.CFG_ENCODING,
+            index ? KMeansWSSOutputSettings.ENCODING_INDEX : KMeansWSSOutputSettings.ENCODING_LABEL);
+        settings.addBoolean(KMeansWSSOutputSettings.CFG_APPEND_DISTANCE, distances);
+        settings.addBoolean(KMeansWSSOutputSettings.CFG_APPEND_SECOND_DISTANCE, distances);
+        KMeansWSSOutputSettings outputSettings = new KMeansWSSOutputSettings();
+        outputSettings.loadSettingsFrom(settings);
+        return outputSettings;
+    }
+
+    private static KMeansWSSCellFactory factory(final double[][] clusters, final boolean index,
+        final boolean distances, final boolean skipIncompleteRows) throws InvalidSettingsException {
+        return new KMeansWSSCellFactory(clusters, LABELS, COLUMNS, settings(index, distances), skipIncompleteRows,
+            new DataColumnSpec[distances ? 3 : 1]);
+    }
+
+    /** @param values the values of the columns 1 and 2, <code>null</code> for a missing cell */
+    private static DataRow row(final Double... values) {
+        DataCell[] cells = new DataCell[1 + values.length];
+        cells[0] = new StringCell("ignored");
+        for (int i = 0; i < values.length; i++) {
+            cells[1 + i] = values[i] == null ? DataType.getMissingCell() : new DoubleCell(values[i]);
+        }
+        return new DefaultRow(new RowKey("Row0"), cells);
+    }
+
+    private static void assertAllMissing(final DataCell[] cells, final int count) {
+        assertEquals(count, cells.length);
+        for (DataCell cell : cells) {
+            assertTrue(cell.isMissing());
+        }
+    }
+
+    @Test
+    public void testAssignsClosestPrototype() throws InvalidSettingsException {
+        DataCell[] cells = factory(CLUSTERS, false, true, true).getCells(row(7.0, 1.0));
+        assertEquals(new StringCell("cluster_1"), cells[0]);
+        assertEquals(Math.sqrt(9 + 1), ((DoubleValue)cells[1]).getDoubleValue(), 1e-12);
+        assertEquals(Math.sqrt(49 + 1), ((DoubleValue)cells[2]).getDoubleValue(), 1e-12);
+
+        assertEquals(new IntCell(2), factory(CLUSTERS, true, false, true).getCells(row(1.0, 6.0))[0]);
+    }
+
+    @Test
+    public void testSingleClusterHasNoSecondDistance() throws InvalidSettingsException {
+        DataCell[] cells = factory(new double[][]{{1.0, 1.0}}, false, true, true).getCells(row(4.0, 5.0));
+        assertEquals(new StringCell("cluster_0"), cells[0]);
+        assertEquals(5.0, ((DoubleValue)cells[1]).getDoubleValue(), 1e-12);
+        assertTrue(cells[2].isMissing());
+    }
+
+    /** Applying a model, a row with a missing value is not assigned. */
+    @Test
+    public void testIncompleteRowGetsMissingCells() throws InvalidSettingsException {
+        assertAllMissing(factory(CLUSTERS, false, true, true).getCells(row(null, 9.0)), 3);
+        assertAllMissing(factory(CLUSTERS, true, false, true).getCells(row(9.0, null)), 1);
+    }
+
+    /** In the training a missing value does not contribute to the distances. */
+    @Test
+    public void testIncompleteRowAssignedOnOtherValues() throws InvalidSettingsException {
+        DataCell[] cells = factory(CLUSTERS, false, true, false).getCells(row(null, 9.0));
+        assertEquals(new StringCell("cluster_2"), cells[0]);
+        assertEquals(1.0, ((DoubleValue)cells[1]).getDoubleValue(), 1e-12);
+    }
+
+    /** A row without a finite distance to any prototype gets missing cells instead of failing. */
+    @Test
+    public void testUnassignableRowGetsMissingCells() throws InvalidSettingsException {
+        assertAllMissing(factory(CLUSTERS, false, true, false).getCells(row(Double.POSITIVE_INFINITY, 1.0)), 3);
+        assertAllMissing(factory(CLUSTERS, false, false, false).getCells(row(Double.POSITIVE_INFINITY, 1.0)), 1);
+    }
+}
@@ -0,0 +1,119 @@
+package uk.ac.reading.cs.knime.kmeans;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.knime.core.node.NodeSettings;
+import org.knime.core.util.FileUtil;
+
+/**
+ * Tests loading and saving the internals of the k-Means node, in particular saving a node
+ * again that was loaded but whose internals were not read yet.
+ *
+ * @author University of Reading
+ */
+public class KMeansWSSNodeModelInternalsTest {
+
+    private static final double[][] CLUSTERS = {{0.5, 1.5}, {-2.0, 4.0}, {10.0, 0.25}};
+
+    private static final int[] COVERAGE = {7, 3, 12};
+
+    private static final String[] FEATURES = {"x", "y"};
+
+    private File m_dir;
+
+    @Before
+    public void setUp() throws IOException {
+        m_dir = FileUtil.createTempDir("kmeans-internals-test");
+    }
+
+    @After
+    public void tearDown() {
+        FileUtil.deleteRecursively(m_dir);
+    }
+
+    /** Writes the XML internals of older versions with the clusters of this test. */
+    private void writeLegacyInternals() throws IOException {
+        NodeSettings settings = new NodeSettings("kMeans");
+        settings.addInt("dimensions", 3);
+        settings.addInt("ignoredColumns", 1);
+        settings.addIntArray("clusterCoverage", COVERAGE);
+        for (int c = 0; c < CLUSTERS.length; c++) {
+            settings.addDoubleArray("kMeansCluster" + c, CLUSTERS[c]);
+        }
+        settings.addStringArray("FeatureNames", FEATURES);
+        try (OutputStream out = new BufferedOutputStream(
+            new FileOutputStream(new File(m_dir, "kMeansInternalSettings")))) {
+            settings.saveToXML(out);
+        }
+    }
+
+    /** KNIME clears the internals directory before it saves a node. */
+    private void clearDirectory() {
+        for (File f : m_dir.listFiles()) {
+            FileUtil.deleteRecursively(f);
+        }
+    }
+
+    private static void assertViewData(final ClusterViewData viewData) {
+        assertNotNull(viewData);
+        assertEquals(CLUSTERS.length, viewData.getNrOfClusters());
+        assertEquals(FEATURES.length, viewData.getNrOfUsedColumns());
+        for (int c = 0; c < CLUSTERS.length; c++) {
+            assertArrayEquals(CLUSTERS[c], viewData.getClusterCenter(c), 0.0);
+            assertEquals(COVERAGE[c], viewData.getClusterCoverage(c));
+        }
+        assertArrayEquals(FEATURES, viewData.featureNames());
+    }
+
+    @Test
+    public void testReadLegacyInternals() throws Exception {
+        writeLegacyInternals();
+        KMeansWSSNodeModel model = new KMeansWSSNodeModel();
+        model.loadInternals(m_dir, null);
+        assertViewData(model.getViewData());
+    }
+
+    @Test
+    public void testSaveUnreadInternalsIntoClearedDirectory() throws Exception {
+        writeLegacyInternals();
+        KMeansWSSNodeModel loaded = new KMeansWSSNodeModel();
+        loaded.loadInternals(m_dir, null);
+        // saved again before any view asked for the model
+        clearDirectory();
+        loaded.saveInternals(m_dir, null);
+
+        KMeansWSSNodeModel reloaded = new KMeansWSSNodeModel();
+        reloaded.loadInternals(m_dir, null);
+        clearDirectory();
+        reloaded.saveInternals(m_dir, null);
+
+        KMeansWSSNodeModel binary = new KMeansWSSNodeModel();
+        binary.loadInternals(m_dir, null);
+        assertViewData(binary.getViewData());
+        loaded.onDispose();
+        reloaded.onDispose();
+        binary.onDispose();
+    }
+
+    @Test(expected = IOException.class)
+    public void testSaveUnreadableInternalsFails() throws Exception {
+        try (OutputStream out = new FileOutputStream(new File(m_dir, "kMeansInternals.bin"))) {
+            out.write(new byte[]{1, 2, 3, 4, 5, 6, 7, 8});
+        }
+        KMeansWSSNodeModel model = new KMeansWSSNodeModel();
+        model.loadInternals(m_dir, null);
+        clearDirectory();
+        model.saveInternals(m_dir, null);
+    }
+}
@@ -0,0 +1,62 @@
+package uk.ac.reading.cs.knime.kmeans;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+import org.knime.core.data.RowKey;
+import org.knime.core.node.property.hilite.DefaultHiLiteMapper;
+import org.knime.core.node.property.hilite.HiLiteMapper;
+
+/**
+ * Tests the deferred loading of the hilite mapping.
+ *
+ * @author University of Reading
+ */
+public class LazyHiLiteMapperTest {
+
+    private final File m_file = new File("kMeansHiLiteMapping");
+
+    private final List<String> m_warnings = new ArrayList<String>();
+
+    @Test
+    public void testLoadsOnce() {
+        HiLiteMapper mapper = new DefaultHiLiteMapper(Collections.<RowKey, Set<RowKey>>emptyMap());
+        int[] loads = new int[1];
+        LazyHiLiteMapper lazy = new LazyHiLiteMapper(m_file, () -> {
+            loads[0]++;
+            return mapper;
+        }, m_warnings::add);
+        assertEquals(0, loads[0]);
+        assertSame(mapper, lazy.getDelegate());
+        lazy.keySet();
+        lazy.getKeys(new RowKey("cluster_0"));
+        assertEquals(1, loads[0]);
+        assertFalse(lazy.hasFailed());
+        assertTrue(m_warnings.isEmpty());
+    }
+
+    @Test
+    public void testFailedLoadWarns() {
+        LazyHiLiteMapper lazy = new LazyHiLiteMapper(m_file, () -> {
+            throw new IOException("broken");
+        }, m_warnings::add);
+        assertTrue(lazy.keySet().isEmpty());
+        assertTrue(lazy.hasFailed());
+        assertEquals(1, m_warnings.size());
+        assertTrue(m_warnings.get(0), m_warnings.get(0).contains(m_file.toString()));
+        assertTrue(m_warnings.get(0), m_warnings.get(0).contains("broken"));
+        // the warning is shown once
+        lazy.keySet();
+        assertEquals(1, m_warnings.size());
+    }
+}
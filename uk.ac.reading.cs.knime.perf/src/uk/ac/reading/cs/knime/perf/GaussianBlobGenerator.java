@@ -0,0 +1,101 @@
+package uk.ac.reading.cs.knime.perf;
+
+import java.util.Random;
+
+import org.knime.core.data.DataCell;
+import org.knime.core.data.DataColumnSpecCreator;
+import org.knime.core.data.DataTableSpec;
+import org.knime.core.data.DataTableSpecCreator;
+import org.knime.core.data.RowKey;
+import org.knime.core.data.def.DefaultRow;
+import org.knime.core.data.def.DoubleCell;
+import org.knime.core.data.def.StringCell;
+import org.knime.core.node.BufferedDataContainer;
+import org.knime.core.node.BufferedDataTable;
+import org.knime.core.node.CanceledExecutionException;
+import org.knime.core.node.ExecutionContext;
+
+/**
+ * Generates the input tables of the scenarios: Gaussian blobs around centres drawn uniformly
+ * from <code>[0, CENTRE_RANGE)</code> in every dimension, with the blob of each row as string
+ * label in the last column.
+ *
+ * @author University of Reading
+ */
+final class GaussianBlobGenerator {
+
+    /** The range of the cluster centres in every dimension. */
+    static final double CENTRE_RANGE = 10.0;
+
+    /** Name of the cluster label column. */
+    static final String CLUSTER_COLUMN = "Cluster";
+
+    /** Number of earlier rows duplicates are drawn from. */
+    private static final int DUPLICATE_POOL = 1024;
+
+    private GaussianBlobGenerator() {
+        // utility class
+    }
+
+    /**
+     * @param dimensions the number of numeric columns
+     * @return the spec of the generated tables: x0 ... x(d-1) and the cluster label
+     */
+    static DataTableSpec createSpec(final int dimensions) {
+        DataTableSpecCreator creator = new DataTableSpecCreator();
+        for (int i = 0; i < dimensions; i++) {
+            creator.addColumns(new DataColumnSpecCreator("x" + i, DoubleCell.TYPE).createSpec());
+        }
+        creator.addColumns(new DataColumnSpecCreator(CLUSTER_COLUMN, StringCell.TYPE).createSpec());
+        return creator.createSpec();
+    }
+
+    /**
+     * @param scenario the shape of the table
+     * @param seed the random seed, the same seed gives the same table
+     * @param exec to create the table
+     * @return the generated table
+     * @throws CanceledExecutionException if the generation was cancelled
+     */
+    static BufferedDataTable generate(final PerfScenario scenario, final long seed, final ExecutionContext exec)
+        throws CanceledExecutionException {
+        Random random = new Random(seed);
+        int dimensions = scenario.getDimensions();
+        double[][] centres = new double[scenario.getClusters()][dimensions];
+        for (double[] centre : centres) {
+            for (int i = 0; i < dimensions; i++) {
+                centre[i] = random.nextDouble() * CENTRE_RANGE;
+            }
+        }
+        double sigma = scenario.getOverlap() * CENTRE_RANGE;
+
+        BufferedDataContainer container = exec.createDataContainer(createSpec(dimensions));
+        DataCell[][] pool = new DataCell[Math.min(DUPLICATE_POOL, scenario.getRows())][];
+        int pooled = 0;
+        for (int row = 0; row < scenario.getRows(); row++) {
+            DataCell[] cells;
+            if (pooled > 0 && random.nextDouble() < scenario.getDuplicates()) {
+                cells = pool[random.nextInt(pooled)];
+            } else {
+                int cluster = random.nextInt(centres.length);
+                cells = new DataCell[dimensions + 1];
+                for (int i = 0; i < dimensions; i++) {
+                    cells[i] = new DoubleCell(centres[cluster][i] + random.nextGaussian() * sigma);
+                }
+                cells[dimensions] = new StringCell("cluster_" + cluster);
+                // keep a sample of the distinct rows to draw duplicates from
+                if (pooled < pool.length) {
+                    pool[pooled++] = cells;
+                } else {
+                    pool[random.nextInt(pool.length)] = cells;
+                }
+            }
+            container.addRowToTable(new DefaultRow(RowKey.createRowKey((long)row), cells));
+            if ((row & 0x3ff) == 0) {
+                exec.checkCanceled();
+            }
+        }
+        container.close();
+        return container.getTable();
+    }
+}
@@ -0,0 +1,118 @@
+package uk.ac.reading.cs.knime.perf;
+
+import java.io.File;
+
+import org.knime.core.data.DataTableSpec;
+import org.knime.core.node.BufferedDataTable;
+import org.knime.core.node.ExecutionContext;
+import org.knime.core.node.ExecutionMonitor;
+import org.knime.core.node.NodeDialogPane;
+import org.knime.core.node.NodeFactory;
+import org.knime.core.node.NodeModel;
+import org.knime.core.node.NodeSettingsRO;
+import org.knime.core.node.NodeSettingsWO;
+import org.knime.core.node.NodeView;
+
+/**
+ * Source node of the performance workflows, its output is the generated table of a scenario.
+ * The node is only added to the workflows of the harness, which are never saved, so the
+ * scenario is held by the factory instead of the settings.
+ *
+ * @author University of Reading
+ */
+final class GaussianBlobNodeFactory extends NodeFactory<NodeModel> {
+
+    private final PerfScenario m_scenario;
+
+    private final long m_seed;
+
+    /**
+     * @param scenario the shape of the generated table
+     * @param seed the random seed of the generated table
+     */
+    GaussianBlobNodeFactory(final PerfScenario scenario, final long seed) {
+        m_scenario = scenario;
+        m_seed = seed;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public NodeModel createNodeModel() {
+        return new NodeModel(0, 1) {
+            @Override
+            protected DataTableSpec[] configure(final DataTableSpec[] inSpecs) {
+                return new DataTableSpec[]{GaussianBlobGenerator.createSpec(m_scenario.getDimensions())};
+            }
+
+            @Override
+            protected BufferedDataTable[] execute(final BufferedDataTable[] inData, final ExecutionContext exec)
+                throws Exception {
+                return new BufferedDataTable[]{GaussianBlobGenerator.generate(m_scenario, m_seed, exec)};
+            }
+
+            @Override
+            protected void saveSettingsTo(final NodeSettingsWO settings) {
+                // the scenario is held by the factory
+            }
+
+            @Override
+            protected void validateSettings(final NodeSettingsRO settings) {
+                // the scenario is held by the factory
+            }
+
+            @Override
+            protected void loadValidatedSettingsFrom(final NodeSettingsRO settings) {
+                // the scenario is held by the factory
+            }
+
+            @Override
+            protected void loadInternals(final File nodeInternDir, final ExecutionMonitor exec) {
+                // no internals
+            }
+
+            @Override
+            protected void saveInternals(final File nodeInternDir, final ExecutionMonitor exec) {
+                // no internals
+            }
+
+            @Override
+            protected void reset() {
+                // nothing to reset
+            }
+        };
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected int getNrNodeViews() {
+        return 0;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public NodeView<NodeModel> createNodeView(final int viewIndex, final NodeModel nodeModel) {
+        return null;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected boolean hasDialog() {
+        return false;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected NodeDialogPane createNodeDialogPane() {
+        return null;
+    }
+}
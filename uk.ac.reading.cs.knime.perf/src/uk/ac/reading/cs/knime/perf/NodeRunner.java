@@ -0,0 +1,167 @@
+package uk.ac.reading.cs.knime.perf;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.knime.core.data.DataTableSpec;
+import org.knime.core.node.InvalidSettingsException;
+import org.knime.core.node.NodeSettings;
+import org.knime.core.node.defaultnodesettings.SettingsModelFilterString;
+import org.knime.core.node.workflow.NodeContainer;
+import org.knime.core.node.workflow.NodeID;
+import org.knime.core.node.workflow.WorkflowCreationHelper;
+import org.knime.core.node.workflow.WorkflowManager;
+
+import uk.ac.reading.cs.knime.kmeans.KMeansWSSNodeFactory;
+import uk.ac.reading.cs.knime.kmeans.KMeansWSSNodeModel;
+import uk.ac.reading.cs.knime.silhouette.SilhouetteNodeFactory;
+import uk.ac.reading.cs.knime.silhouette.SilhouetteNodeModel;
+
+/**
+ * Runs a scenario in a temporary workflow project: a source node generating the table is
+ * connected to the node of the scenario, which is reset and executed by the workflow manager
+ * for every run. The table is generated once per scenario.
+ *
+ * <p>Allocation is the sum of the bytes allocated by all live threads (threads ending during the
+ * execution are not counted, KNIME reuses its worker threads); the peak heap is the peak usage
+ * of every heap memory pool, reset before each execution.
+ *
+ * @author University of Reading
+ */
+final class NodeRunner {
+
+    /** Key of the node model settings in the settings of a node. */
+    private static final String CFG_MODEL = "model";
+
+    private NodeRunner() {
+        // utility class
+    }
+
+    /**
+     * @param scenario the scenario to run
+     * @param warmup number of executions before measuring
+     * @param repetitions number of measured executions
+     * @param seed the seed of the generated table
+     * @return the measurements
+     * @throws Exception if the node fails
+     */
+    static PerfResult run(final PerfScenario scenario, final int warmup, final int repetitions, final long seed)
+        throws Exception {
+        WorkflowManager wfm = WorkflowManager.ROOT.createAndAddProject("Performance " + scenario.getName(),
+            new WorkflowCreationHelper());
+        try {
+            NodeID source = wfm.createAndAddNode(new GaussianBlobNodeFactory(scenario, seed));
+            // the table is generated before the node is added, so no run includes the generation
+            execute(wfm, source);
+            NodeID node = wfm.createAndAddNode(scenario.getNode() == PerfScenario.Node.KMEANS
+                ? new KMeansWSSNodeFactory() : new SilhouetteNodeFactory());
+            // port 0 of both nodes is the flow variable port
+            wfm.addConnection(source, 1, node, 1);
+            loadSettings(wfm, node, scenario);
+
+            for (int i = 0; i < warmup; i++) {
+                execute(wfm, node);
+            }
+            long[] nanos = new long[repetitions];
+            long[] allocated = new long[repetitions];
+            Map<String, long[]> peakHeap = new LinkedHashMap<String, long[]>();
+            List<MemoryPoolMXBean> heapPools = new ArrayList<MemoryPoolMXBean>();
+            for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+                if (pool.getType() == MemoryType.HEAP) {
+                    heapPools.add(pool);
+                    peakHeap.put(pool.getName(), new long[repetitions]);
+                }
+            }
+            for (int i = 0; i < repetitions; i++) {
+                reset(wfm, node);
+                System.gc();
+                for (MemoryPoolMXBean pool : heapPools) {
+                    pool.resetPeakUsage();
+                }
+                long allocatedBefore = allocatedBytes();
+                long start = System.nanoTime();
+                execute(wfm, node);
+                nanos[i] = System.nanoTime() - start;
+                long allocatedAfter = allocatedBytes();
+                allocated[i] = allocatedBefore < 0 ? -1 : allocatedAfter - allocatedBefore;
+                for (MemoryPoolMXBean pool : heapPools) {
+                    peakHeap.get(pool.getName())[i] = pool.getPeakUsage().getUsed();
+                }
+            }
+            return new PerfResult(scenario, nanos, allocated, peakHeap);
+        } finally {
+            WorkflowManager.ROOT.removeProject(wfm.getID());
+        }
+    }
+
+    /**
+     * Sets the settings of the scenario, the other settings keep the defaults of the node.
+     */
+    private static void loadSettings(final WorkflowManager wfm, final NodeID node, final PerfScenario scenario)
+        throws InvalidSettingsException {
+        NodeSettings settings = new NodeSettings("perf");
+        wfm.saveNodeSettings(node, settings);
+        NodeSettings model = settings.getNodeSettings(CFG_MODEL);
+        if (scenario.getNode() == PerfScenario.Node.KMEANS) {
+            model.addInt(KMeansWSSNodeModel.CFG_NR_OF_CLUSTERS, scenario.getClusters());
+        } else {
+            model.addString(SilhouetteNodeModel.CFGKEY_CLUSTER_COLUMN, GaussianBlobGenerator.CLUSTER_COLUMN);
+            DataTableSpec spec = GaussianBlobGenerator.createSpec(scenario.getDimensions());
+            List<String> includes = new ArrayList<String>();
+            for (int i = 0; i < scenario.getDimensions(); i++) {
+                includes.add(spec.getColumnSpec(i).getName());
+            }
+            new SettingsModelFilterString(SilhouetteNodeModel.CFGKEY_COLUMNS, includes, new ArrayList<String>())
+                .saveSettingsTo(model);
+            model.addString(SilhouetteNodeModel.CFGKEY_STRATEGY,
+                SilhouetteNodeModel.getStrategySetting(scenario.getStrategy()));
+        }
+        wfm.loadNodeSettings(node, settings);
+    }
+
+    private static void reset(final WorkflowManager wfm, final NodeID node) {
+        if (wfm.getNodeContainer(node).getNodeContainerState().isExecuted()) {
+            wfm.resetAndConfigureNode(node);
+        }
+    }
+
+    /**
+     * Resets the node if it is executed and executes the workflow, i.e. the node.
+     */
+    private static void execute(final WorkflowManager wfm, final NodeID node) throws Exception {
+        reset(wfm, node);
+        wfm.executeAllAndWaitUntilDone();
+        NodeContainer container = wfm.getNodeContainer(node);
+        if (!container.getNodeContainerState().isExecuted()) {
+            throw new Exception("Execution of " + container.getNameWithID() + " failed: "
+                + container.getNodeMessage().getMessage());
+        }
+    }
+
+    /**
+     * @return the bytes allocated so far by all live threads, -1 if not supported by the JVM
+     */
+    private static long allocatedBytes() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (!(threads instanceof com.sun.management.ThreadMXBean)) {
+            return -1;
+        }
+        com.sun.management.ThreadMXBean sunThreads = (com.sun.management.ThreadMXBean)threads;
+        if (!sunThreads.isThreadAllocatedMemorySupported() || !sunThreads.isThreadAllocatedMemoryEnabled()) {
+            return -1;
+        }
+        long total = 0;
+        for (long bytes : sunThreads.getThreadAllocatedBytes(threads.getAllThreadIds())) {
+            if (bytes > 0) {
+                total += bytes;
+            }
+        }
+        return total;
+    }
+}
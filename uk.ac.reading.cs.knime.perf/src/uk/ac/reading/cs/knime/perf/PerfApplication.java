@@ -0,0 +1,117 @@
+package uk.ac.reading.cs.knime.perf;
+
+import java.io.File;
+import java.util.List;
+import java.util.Locale;
+
+import org.eclipse.equinox.app.IApplication;
+import org.eclipse.equinox.app.IApplicationContext;
+import org.knime.core.node.NodeLogger;
+
+/**
+ * Headless end-to-end performance runs of the k-MeansWSS and Silhouette nodes on generated
+ * Gaussian blobs. Run it from a KNIME installation containing the UoR plugins:
+ *
+ * <pre>
+ * knime -nosplash -consoleLog -application uk.ac.reading.cs.knime.perf.application
+ *     [-scenarios scenarios.csv] [-out perf-report] [-baseline baseline.csv] [-tolerance 0.2]
+ *     [-warmup 1] [-repetitions 3] [-seed 42]
+ * </pre>
+ *
+ * The report is written to <code>report.json</code> and <code>report.csv</code> in the output
+ * directory; a <code>report.csv</code> of an earlier run can be stored and passed as baseline.
+ * The application exits with 1 if any scenario regressed against the baseline.
+ *
+ * @author University of Reading
+ */
+public class PerfApplication implements IApplication {
+
+    private static final NodeLogger LOGGER = NodeLogger.getLogger(PerfApplication.class);
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Object start(final IApplicationContext context) throws Exception {
+        String[] args = (String[])context.getArguments().get(IApplicationContext.APPLICATION_ARGS);
+        File scenarioFile = null;
+        File outDir = new File("perf-report");
+        File baseline = null;
+        double tolerance = 0.2;
+        int warmup = 1;
+        int repetitions = 3;
+        long seed = 42;
+        for (int i = 0; args != null && i < args.length; i++) {
+            String arg = args[i];
+            if (i + 1 >= args.length) {
+                System.err.println("Missing value for " + arg);
+                return Integer.valueOf(2);
+            }
+            String value = args[++i];
+            if ("-scenarios".equals(arg)) {
+                scenarioFile = new File(value);
+            } else if ("-out".equals(arg)) {
+                outDir = new File(value);
+            } else if ("-baseline".equals(arg)) {
+                baseline = new File(value);
+            } else if ("-tolerance".equals(arg)) {
+                tolerance = Double.parseDouble(value);
+            } else if ("-warmup".equals(arg)) {
+                warmup = Integer.parseInt(value);
+            } else if ("-repetitions".equals(arg)) {
+                repetitions = Integer.parseInt(value);
+            } else if ("-seed".equals(arg)) {
+                seed = Long.parseLong(value);
+            } else {
+                System.err.println("Unknown argument " + arg);
+                return Integer.valueOf(2);
+            }
+        }
+        if (repetitions < 1 || warmup < 0) {
+            System.err.println("Need at least one repetition and no negative warmup");
+            return Integer.valueOf(2);
+        }
+        context.applicationRunning();
+
+        List<PerfScenario> scenarios = scenarioFile == null ? PerfScenario.defaults() : PerfScenario.load(scenarioFile);
+        PerfReport report = new PerfReport();
+        for (PerfScenario scenario : scenarios) {
+            LOGGER.info("Running performance scenario " + scenario.getName());
+            PerfResult result = NodeRunner.run(scenario, warmup, repetitions, seed);
+            report.add(result);
+            System.out.println(String.format(Locale.ROOT, "%-32s %12.1f ms %14d B allocated, peak heap %s B",
+                scenario.getName(), result.getMedianMillis(), result.getAllocatedBytes(),
+                result.getPeakHeapBytes()));
+        }
+
+        int regressions = 0;
+        if (baseline != null) {
+            regressions = report.compareWith(baseline, tolerance);
+            for (PerfResult result : report.getResults()) {
+                for (String regression : result.getRegressions()) {
+                    System.out.println("REGRESSION " + result.getScenario().getName() + ": " + regression);
+                }
+            }
+        }
+        if (!outDir.isDirectory() && !outDir.mkdirs()) {
+            System.err.println("Unable to create output directory " + outDir);
+            return Integer.valueOf(2);
+        }
+        report.writeJson(new File(outDir, "report.json"));
+        report.writeCsv(new File(outDir, "report.csv"));
+        System.out.println("Report written to " + outDir.getAbsolutePath());
+        if (regressions > 0) {
+            System.out.println(regressions + " scenario(s) regressed against " + baseline);
+            return Integer.valueOf(1);
+        }
+        return IApplication.EXIT_OK;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void stop() {
+        // the runs are not interruptible, the application ends with the last scenario
+    }
+}
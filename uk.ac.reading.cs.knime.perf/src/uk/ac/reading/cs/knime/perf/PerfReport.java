@@ -0,0 +1,202 @@
+package uk.ac.reading.cs.knime.perf;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Collects the results of a run, compares them with a baseline and writes them as JSON and CSV.
+ * A baseline is the CSV report of an earlier run.
+ *
+ * @author University of Reading
+ */
+final class PerfReport {
+
+    /**
+     * Header of the CSV report, also expected in the baseline. The peak heap is a list of
+     * <code>pool=bytes</code> separated by <code>;</code>, one for each heap memory pool.
+     */
+    static final String CSV_HEADER = "scenario,node,rows,dimensions,clusters,overlap,duplicates,strategy,"
+        + "repetitions,medianMillis,minMillis,allocatedBytes,peakHeapBytes";
+
+    private final List<PerfResult> m_results = new ArrayList<PerfResult>();
+
+    /**
+     * @param result the result of a scenario
+     */
+    void add(final PerfResult result) {
+        m_results.add(result);
+    }
+
+    /**
+     * @return the results added so far
+     */
+    List<PerfResult> getResults() {
+        return Collections.unmodifiableList(m_results);
+    }
+
+    /**
+     * Flags the results whose median time, allocation or peak usage of a heap memory pool
+     * exceed the baseline by more than the tolerance. Scenarios and pools missing in the
+     * baseline are not compared.
+     *
+     * @param baseline CSV report of an earlier run
+     * @param tolerance allowed relative increase, e.g. 0.2 for 20%
+     * @return the number of results with regressions
+     * @throws IOException if the baseline cannot be read
+     */
+    int compareWith(final File baseline, final double tolerance) throws IOException {
+        Map<String, String[]> base = readCsv(baseline);
+        int regressions = 0;
+        for (PerfResult result : m_results) {
+            String[] fields = base.get(result.getScenario().getName());
+            if (fields == null) {
+                continue;
+            }
+            check(result, "time [ms]", result.getMedianMillis(), Double.parseDouble(fields[9]), tolerance);
+            check(result, "allocation [B]", result.getAllocatedBytes(), Double.parseDouble(fields[11]), tolerance);
+            Map<String, Long> basePools = parsePools(fields.length > 12 ? fields[12] : "");
+            for (Map.Entry<String, Long> pool : result.getPeakHeapBytes().entrySet()) {
+                Long basePeak = basePools.get(pool.getKey());
+                if (basePeak != null) {
+                    check(result, "peak heap " + pool.getKey() + " [B]", pool.getValue(), basePeak, tolerance);
+                }
+            }
+            if (!result.getRegressions().isEmpty()) {
+                regressions++;
+            }
+        }
+        return regressions;
+    }
+
+    private static void check(final PerfResult result, final String metric, final double value,
+        final double baseline, final double tolerance) {
+        // metrics the JVM could not measure are reported as -1
+        if (value < 0 || baseline <= 0) {
+            return;
+        }
+        if (value > baseline * (1 + tolerance)) {
+            result.addRegression(String.format(Locale.ROOT, "%s %.0f vs. baseline %.0f (+%.1f%%)", metric, value,
+                baseline, (value / baseline - 1) * 100));
+        }
+    }
+
+    private static String formatPools(final Map<String, Long> pools) {
+        StringBuilder s = new StringBuilder();
+        for (Map.Entry<String, Long> pool : pools.entrySet()) {
+            s.append(s.length() == 0 ? "" : ";").append(pool.getKey()).append('=').append(pool.getValue());
+        }
+        return s.toString();
+    }
+
+    private static Map<String, Long> parsePools(final String pools) {
+        Map<String, Long> peaks = new HashMap<String, Long>();
+        for (String pool : pools.split(";")) {
+            int separator = pool.lastIndexOf('=');
+            if (separator > 0) {
+                peaks.put(pool.substring(0, separator), Long.valueOf(pool.substring(separator + 1).trim()));
+            }
+        }
+        return peaks;
+    }
+
+    private static Map<String, String[]> readCsv(final File file) throws IOException {
+        Map<String, String[]> rows = new HashMap<String, String[]>();
+        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+            String header = reader.readLine();
+            if (!CSV_HEADER.equals(header)) {
+                throw new IOException("Not a performance report: " + file);
+            }
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.trim().isEmpty()) {
+                    String[] fields = line.split(",");
+                    rows.put(fields[0], fields);
+                }
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * @param file the CSV file to write, usable as baseline of later runs
+     * @throws IOException if the file cannot be written
+     */
+    void writeCsv(final File file) throws IOException {
+        try (PrintWriter out = new PrintWriter(new FileWriter(file))) {
+            out.println(CSV_HEADER);
+            for (PerfResult result : m_results) {
+                PerfScenario s = result.getScenario();
+                out.println(String.format(Locale.ROOT, "%s,%s,%d,%d,%d,%s,%s,%s,%d,%.3f,%.3f,%d,%s", s.getName(),
+                    s.getNode().name().toLowerCase(Locale.ROOT), s.getRows(), s.getDimensions(), s.getClusters(),
+                    s.getOverlap(), s.getDuplicates(), strategy(s), result.getRepetitions(),
+                    result.getMedianMillis(), result.getMinMillis(), result.getAllocatedBytes(),
+                    formatPools(result.getPeakHeapBytes())));
+            }
+        }
+    }
+
+    /**
+     * @param file the JSON file to write
+     * @throws IOException if the file cannot be written
+     */
+    void writeJson(final File file) throws IOException {
+        Runtime runtime = Runtime.getRuntime();
+        try (PrintWriter out = new PrintWriter(new FileWriter(file))) {
+            out.println("{");
+            out.println("  \"timestamp\": " + System.currentTimeMillis() + ",");
+            out.println("  \"javaVersion\": " + quote(System.getProperty("java.version")) + ",");
+            out.println("  \"availableProcessors\": " + runtime.availableProcessors() + ",");
+            out.println("  \"maxHeapBytes\": " + runtime.maxMemory() + ",");
+            out.println("  \"results\": [");
+            for (int r = 0; r < m_results.size(); r++) {
+                PerfResult result = m_results.get(r);
+                PerfScenario s = result.getScenario();
+                out.println("    {");
+                out.println("      \"scenario\": " + quote(s.getName()) + ",");
+                out.println("      \"node\": " + quote(s.getNode().name().toLowerCase(Locale.ROOT)) + ",");
+                out.println("      \"rows\": " + s.getRows() + ",");
+                out.println("      \"dimensions\": " + s.getDimensions() + ",");
+                out.println("      \"clusters\": " + s.getClusters() + ",");
+                out.println("      \"overlap\": " + s.getOverlap() + ",");
+                out.println("      \"duplicates\": " + s.getDuplicates() + ",");
+                out.println("      \"strategy\": " + quote(strategy(s)) + ",");
+                out.println("      \"repetitions\": " + result.getRepetitions() + ",");
+                out.println(String.format(Locale.ROOT, "      \"medianMillis\": %.3f,", result.getMedianMillis()));
+                out.println(String.format(Locale.ROOT, "      \"minMillis\": %.3f,", result.getMinMillis()));
+                out.println("      \"allocatedBytes\": " + result.getAllocatedBytes() + ",");
+                StringBuilder pools = new StringBuilder();
+                for (Map.Entry<String, Long> pool : result.getPeakHeapBytes().entrySet()) {
+                    pools.append(pools.length() == 0 ? "" : ", ").append(quote(pool.getKey())).append(": ")
+                        .append(pool.getValue());
+                }
+                out.println("      \"peakHeapBytes\": {" + pools + "},");
+                StringBuilder regressions = new StringBuilder();
+                for (String regression : result.getRegressions()) {
+                    regressions.append(regressions.length() == 0 ? "" : ", ").append(quote(regression));
+                }
+                out.println("      \"regressions\": [" + regressions + "]");
+                out.println(r < m_results.size() - 1 ? "    }," : "    }");
+            }
+            out.println("  ]");
+            out.println("}");
+        }
+    }
+
+    private static String strategy(final PerfScenario scenario) {
+        return scenario.getStrategy() == null ? "" : scenario.getStrategy().toLowerCase(Locale.ROOT);
+    }
+
+    private static String quote(final String value) {
+        return "\"" + value.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+    }
+}
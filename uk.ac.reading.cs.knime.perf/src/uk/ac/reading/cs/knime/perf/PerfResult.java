@@ -0,0 +1,120 @@
+package uk.ac.reading.cs.knime.perf;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The measurements of one scenario. The wall time and the allocation are the medians of the
+ * repetitions, the peak usage of each heap memory pool is the maximum.
+ *
+ * @author University of Reading
+ */
+final class PerfResult {
+
+    private final PerfScenario m_scenario;
+
+    private final int m_repetitions;
+
+    private final double m_medianMillis;
+
+    private final double m_minMillis;
+
+    private final long m_allocatedBytes;
+
+    private final Map<String, Long> m_peakHeapBytes;
+
+    private final List<String> m_regressions = new ArrayList<String>();
+
+    /**
+     * @param scenario the scenario
+     * @param nanos the wall time of each repetition
+     * @param allocatedBytes the allocated bytes of each repetition, -1 if not supported by the JVM
+     * @param peakHeapBytes the peak usage of each heap memory pool (by name) in each repetition
+     */
+    PerfResult(final PerfScenario scenario, final long[] nanos, final long[] allocatedBytes,
+        final Map<String, long[]> peakHeapBytes) {
+        m_scenario = scenario;
+        m_repetitions = nanos.length;
+        m_medianMillis = median(nanos) / 1e6;
+        long min = Long.MAX_VALUE;
+        for (long n : nanos) {
+            min = Math.min(min, n);
+        }
+        m_minMillis = min / 1e6;
+        m_allocatedBytes = median(allocatedBytes);
+        m_peakHeapBytes = new LinkedHashMap<String, Long>();
+        for (Map.Entry<String, long[]> pool : peakHeapBytes.entrySet()) {
+            long peak = 0;
+            for (long p : pool.getValue()) {
+                peak = Math.max(peak, p);
+            }
+            m_peakHeapBytes.put(pool.getKey(), peak);
+        }
+    }
+
+    private static long median(final long[] values) {
+        long[] sorted = values.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+
+    /**
+     * @return the scenario
+     */
+    PerfScenario getScenario() {
+        return m_scenario;
+    }
+
+    /**
+     * @return the number of measured repetitions
+     */
+    int getRepetitions() {
+        return m_repetitions;
+    }
+
+    /**
+     * @return the median wall time in milliseconds
+     */
+    double getMedianMillis() {
+        return m_medianMillis;
+    }
+
+    /**
+     * @return the fastest wall time in milliseconds
+     */
+    double getMinMillis() {
+        return m_minMillis;
+    }
+
+    /**
+     * @return the median allocated bytes, -1 if not supported by the JVM
+     */
+    long getAllocatedBytes() {
+        return m_allocatedBytes;
+    }
+
+    /**
+     * @return the largest peak usage in bytes of each heap memory pool, by the name of the pool
+     */
+    Map<String, Long> getPeakHeapBytes() {
+        return Collections.unmodifiableMap(m_peakHeapBytes);
+    }
+
+    /**
+     * @param regression description of a regression against the baseline
+     */
+    void addRegression(final String regression) {
+        m_regressions.add(regression);
+    }
+
+    /**
+     * @return the regressions against the baseline, empty if there are none
+     */
+    List<String> getRegressions() {
+        return Collections.unmodifiableList(m_regressions);
+    }
+}
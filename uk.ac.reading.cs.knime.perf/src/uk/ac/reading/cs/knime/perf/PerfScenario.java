@@ -0,0 +1,201 @@
+package uk.ac.reading.cs.knime.perf;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+import uk.ac.reading.cs.knime.silhouette.SilhouetteNodeModel;
+
+/**
+ * A performance scenario: the node to run and the shape of the generated input table.
+ * Scenarios are read from CSV lines
+ * <code>name,node,rows,dimensions,clusters,overlap,duplicates[,strategy]</code>, where node is
+ * <code>kmeans</code> or <code>silhouette</code>, overlap is the standard deviation of the Gaussian
+ * blobs relative to the range of the cluster centres and duplicates is the fraction of rows copied
+ * from earlier rows. Silhouette scenarios name the execution strategy (e.g. <code>blocked</code>),
+ * so their timings do not depend on the choice of the planner.
+ *
+ * @author University of Reading
+ */
+final class PerfScenario {
+
+    /** The nodes the harness can run. */
+    enum Node {
+        /** k-MeansWSS, k is the number of generated clusters. */
+        KMEANS,
+        /** Silhouette on the generated cluster labels, without distance matrix input. */
+        SILHOUETTE
+    }
+
+    private final String m_name;
+
+    private final Node m_node;
+
+    private final int m_rows;
+
+    private final int m_dimensions;
+
+    private final int m_clusters;
+
+    private final double m_overlap;
+
+    private final double m_duplicates;
+
+    private final String m_strategy;
+
+    /**
+     * @param name unique name, used to match the baseline
+     * @param node the node to run
+     * @param rows number of rows
+     * @param dimensions number of numeric columns
+     * @param clusters number of Gaussian blobs (and k of k-Means)
+     * @param overlap standard deviation of the blobs relative to the range of the centres
+     * @param duplicates fraction (0 to 1) of rows that are copies of earlier rows
+     * @param strategy the execution strategy of the Silhouette node, e.g. <code>BLOCKED</code>;
+     *            <code>null</code> for k-Means
+     */
+    PerfScenario(final String name, final Node node, final int rows, final int dimensions, final int clusters,
+        final double overlap, final double duplicates, final String strategy) {
+        if (rows < 1 || dimensions < 1 || clusters < 1) {
+            throw new IllegalArgumentException(
+                "Scenario " + name + ": rows, dimensions and clusters must be positive");
+        }
+        if (overlap < 0 || duplicates < 0 || duplicates >= 1) {
+            throw new IllegalArgumentException(
+                "Scenario " + name + ": overlap must be >= 0 and duplicates in [0, 1)");
+        }
+        if ((node == Node.SILHOUETTE) != (strategy != null)) {
+            throw new IllegalArgumentException(
+                "Scenario " + name + ": Silhouette scenarios need a strategy, k-Means scenarios have none");
+        }
+        if (strategy != null) {
+            // fails for unknown strategies
+            SilhouetteNodeModel.getStrategySetting(strategy);
+        }
+        m_name = name;
+        m_node = node;
+        m_rows = rows;
+        m_dimensions = dimensions;
+        m_clusters = clusters;
+        m_overlap = overlap;
+        m_duplicates = duplicates;
+        m_strategy = strategy;
+    }
+
+    /**
+     * @param line <code>name,node,rows,dimensions,clusters,overlap,duplicates[,strategy]</code>
+     * @return the scenario
+     */
+    static PerfScenario parse(final String line) {
+        String[] fields = line.split(",");
+        if (fields.length != 7 && fields.length != 8) {
+            throw new IllegalArgumentException(
+                "Expected name,node,rows,dimensions,clusters,overlap,duplicates[,strategy]: " + line);
+        }
+        String strategy = fields.length == 8 && !fields[7].trim().isEmpty()
+            ? fields[7].trim().toUpperCase(Locale.ROOT) : null;
+        return new PerfScenario(fields[0].trim(), Node.valueOf(fields[1].trim().toUpperCase(Locale.ROOT)),
+            Integer.parseInt(fields[2].trim()), Integer.parseInt(fields[3].trim()),
+            Integer.parseInt(fields[4].trim()), Double.parseDouble(fields[5].trim()),
+            Double.parseDouble(fields[6].trim()), strategy);
+    }
+
+    /**
+     * Reads scenarios from a CSV file. Empty lines, lines starting with <code>#</code> and a
+     * header line starting with <code>name,</code> are skipped.
+     *
+     * @param file the scenario file
+     * @return the scenarios
+     * @throws IOException if the file cannot be read
+     */
+    static List<PerfScenario> load(final File file) throws IOException {
+        List<PerfScenario> scenarios = new ArrayList<PerfScenario>();
+        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#") || line.startsWith("name,")) {
+                    continue;
+                }
+                scenarios.add(parse(line));
+            }
+        }
+        return scenarios;
+    }
+
+    /**
+     * @return the scenarios run if no scenario file is given
+     */
+    static List<PerfScenario> defaults() {
+        return Arrays.asList(
+            new PerfScenario("kmeans-10k-d8-k5", Node.KMEANS, 10000, 8, 5, 0.05, 0, null),
+            new PerfScenario("kmeans-100k-d16-k10", Node.KMEANS, 100000, 16, 10, 0.05, 0, null),
+            new PerfScenario("kmeans-100k-d16-k10-overlap", Node.KMEANS, 100000, 16, 10, 0.5, 0, null),
+            new PerfScenario("kmeans-100k-d16-k10-dup", Node.KMEANS, 100000, 16, 10, 0.05, 0.3, null),
+            new PerfScenario("silhouette-1k-d8-k5", Node.SILHOUETTE, 1000, 8, 5, 0.05, 0, "IN_MEMORY"),
+            new PerfScenario("silhouette-5k-d8-k5", Node.SILHOUETTE, 5000, 8, 5, 0.05, 0, "IN_MEMORY"),
+            new PerfScenario("silhouette-5k-d8-k5-overlap", Node.SILHOUETTE, 5000, 8, 5, 0.5, 0.1, "IN_MEMORY"),
+            new PerfScenario("silhouette-5k-d8-k5-blocked", Node.SILHOUETTE, 5000, 8, 5, 0.05, 0, "BLOCKED"));
+    }
+
+    /**
+     * @return the name of the scenario
+     */
+    String getName() {
+        return m_name;
+    }
+
+    /**
+     * @return the node to run
+     */
+    Node getNode() {
+        return m_node;
+    }
+
+    /**
+     * @return the number of rows
+     */
+    int getRows() {
+        return m_rows;
+    }
+
+    /**
+     * @return the number of numeric columns
+     */
+    int getDimensions() {
+        return m_dimensions;
+    }
+
+    /**
+     * @return the number of clusters
+     */
+    int getClusters() {
+        return m_clusters;
+    }
+
+    /**
+     * @return the standard deviation of the blobs relative to the range of the centres
+     */
+    double getOverlap() {
+        return m_overlap;
+    }
+
+    /**
+     * @return the fraction of duplicated rows
+     */
+    double getDuplicates() {
+        return m_duplicates;
+    }
+
+    /**
+     * @return the execution strategy of the Silhouette node, <code>null</code> for k-Means
+     */
+    String getStrategy() {
+        return m_strategy;
+    }
+}
@@ -5,8 +5,6 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Random;
 
-import com.sun.istack.internal.NotNull;
-
 
 /**
  * Internal representation of a cluster, including a name and color for the views and lists of indices of 
@@ -75,7 +73,7 @@ public class InternalCluster {
 	 * @param color Color of the cluster in views (charts, stats)
 	 * @param dataIndices List of all the rows from the sorted input table that were put into this cluster
 	 */
-	public InternalCluster(@NotNull String name, @NotNull Color[] colors, @NotNull int[] dataIndices) {
+	public InternalCluster(String name, Color[] colors, int[] dataIndices) {
 		this.name = name;
 		this.colors = colors;
 		this.dataIndices = dataIndices;
@@ -90,7 +88,7 @@ public class InternalCluster {
 	 * @param dataIndices List of all the rows from the sorted input table that were put into this cluster
 	 * @param coefficients The Silhouette coefficients (-1.0 to 1.0)
 	 */
-	public InternalCluster(@NotNull String name, @NotNull Color[] colors,@NotNull  int[] dataIndices,@NotNull  double[] coefficients) {
+	public InternalCluster(String name, Color[] colors, int[] dataIndices, double[] coefficients) {
 		this.name = name;
 		this.colors = colors;
 		this.dataIndices = dataIndices;
@@ -103,7 +101,7 @@ public class InternalCluster {
 	 * @param color Color of the cluster in views (charts, stats)
 	 * @param dataIndices List of all the rows from the sorted input table that were put into this cluster
 	 */
-	public InternalCluster(@NotNull Integer intName,@NotNull Color[] colors,@NotNull int[] dataIndices) {
+	public InternalCluster(Integer intName, Color[] colors, int[] dataIndices) {
 		this.intName = intName;
 		this.colors = colors;
 		this.dataIndices = dataIndices;
@@ -117,7 +115,7 @@ public class InternalCluster {
 	 * @param dataIndices List of all the rows from the sorted input table that were put into this cluster
 	 * * @param coefficients The Silhouette coefficients (-1.0 to 1.0)
 	 */
-	public InternalCluster(@NotNull Integer intName,@NotNull Color[] colors,@NotNull int[] dataIndices, @NotNull  double[] coefficients) {
+	public InternalCluster(Integer intName, Color[] colors, int[] dataIndices, double[] coefficients) {
 		this.intName = intName;
 		this.colors = colors;
 		this.dataIndices = dataIndices;
@@ -7,8 +7,6 @@ import org.knime.core.data.DataType;
 import org.knime.core.data.container.SingleCellFactory;
 import org.knime.core.data.def.DoubleCell;
 
-import com.sun.istack.internal.NotNull;
-
 /**
  * This CellFactory is for generating the cells of the additional Silhouette Coefficient column
  * that will be appended to the input table.
@@ -40,7 +38,7 @@ public class SilhouetteCellFactory extends SingleCellFactory{
 	 * @param newColSpec column spec of the coefficient column
 	 * @param silhouetteModel silhouette model containing the coefficients in the internal clusters
 	 */
-	public SilhouetteCellFactory(@NotNull DataColumnSpec newColSpec,@NotNull  SilhouetteModel silhouetteModel) {
+	public SilhouetteCellFactory(DataColumnSpec newColSpec, SilhouetteModel silhouetteModel) {
 		super(newColSpec);
 		this.m_silhouetteModel = silhouetteModel;
 	}
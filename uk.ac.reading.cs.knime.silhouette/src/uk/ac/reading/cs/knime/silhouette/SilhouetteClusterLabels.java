@@ -0,0 +1,49 @@
+package uk.ac.reading.cs.knime.silhouette;
+
+/**
+ * The cluster column of the data, dictionary-encoded while the clusters are registered: the
+ * index of the cluster of every row, its position within the cluster and the sizes of the
+ * clusters. The loops over pairs of rows look clusters up by array index instead of comparing
+ * labels.
+ *
+ * @author University of Reading
+ */
+final class SilhouetteClusterLabels {
+
+	private final int[] m_clusterOfRow;
+
+	private final int[] m_positionInCluster;
+
+	private final int[] m_clusterSizes;
+
+	/**
+	 * @param clusterOfRow the cluster index of every row
+	 * @param positionInCluster the position of every row within its cluster
+	 * @param clusterSizes the number of rows of each cluster
+	 */
+	SilhouetteClusterLabels(int[] clusterOfRow, int[] positionInCluster, int[] clusterSizes) {
+		m_clusterOfRow = clusterOfRow;
+		m_positionInCluster = positionInCluster;
+		m_clusterSizes = clusterSizes;
+	}
+
+	/** @return the cluster index of every row */
+	int[] getClusterOfRow() {
+		return m_clusterOfRow;
+	}
+
+	/** @return the position of every row within its cluster */
+	int[] getPositionInCluster() {
+		return m_positionInCluster;
+	}
+
+	/** @return the number of rows of each cluster */
+	int[] getClusterSizes() {
+		return m_clusterSizes;
+	}
+
+	/** @return the number of clusters */
+	int getClusterCount() {
+		return m_clusterSizes.length;
+	}
+}
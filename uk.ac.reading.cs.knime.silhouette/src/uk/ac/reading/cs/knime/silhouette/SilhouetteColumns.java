@@ -0,0 +1,89 @@
+package uk.ac.reading.cs.knime.silhouette;
+
+import org.knime.core.data.DataCell;
+import org.knime.core.data.DataRow;
+import org.knime.core.data.DataTableSpec;
+import org.knime.core.data.DoubleValue;
+import org.knime.core.data.IntValue;
+import org.knime.core.data.StringValue;
+
+/**
+ * Typed access to the columns of the clustered data, resolved once from the spec instead of
+ * checking the class of every cell. The included columns are read through {@link DoubleValue},
+ * which covers integer, long and double cells alike; the cluster column through
+ * {@link IntValue} or {@link StringValue}.
+ *
+ * @author University of Reading
+ */
+final class SilhouetteColumns {
+
+	/** The included columns, the integer columns after the others */
+	private final int[] m_featureColumns;
+
+	private final int m_clusterColumn;
+
+	private final boolean m_intLabels;
+
+	/**
+	 * @param spec spec of the clustered data
+	 * @param includeColumn whether each column is included
+	 * @param clusterColumn the index of the cluster column
+	 */
+	SilhouetteColumns(DataTableSpec spec, boolean[] includeColumn, int clusterColumn) {
+		int count = 0;
+		for(int i = 0; i < includeColumn.length; i++) {
+			if(isFeature(spec, includeColumn, clusterColumn, i)) count++;
+		}
+		// the integers last, the kernels sum up the dimensions in this order
+		m_featureColumns = new int[count];
+		int l = 0;
+		for(boolean integers : new boolean[] {false, true}) {
+			for(int i = 0; i < includeColumn.length; i++) {
+				if(isFeature(spec, includeColumn, clusterColumn, i)
+						&& spec.getColumnSpec(i).getType().isCompatible(IntValue.class) == integers) {
+					m_featureColumns[l++] = i;
+				}
+			}
+		}
+		m_clusterColumn = clusterColumn;
+		m_intLabels = spec.getColumnSpec(clusterColumn).getType().isCompatible(IntValue.class);
+	}
+
+	private static boolean isFeature(DataTableSpec spec, boolean[] includeColumn, int clusterColumn, int i) {
+		return i != clusterColumn && includeColumn[i] && spec.getColumnSpec(i).getType().isCompatible(DoubleValue.class);
+	}
+
+	/** @return the number of included columns */
+	int getDimensions() {
+		return m_featureColumns.length;
+	}
+
+	/**
+	 * Reads the included columns of a row, missing cells count as 0.
+	 *
+	 * @param row the row
+	 * @param features the array to write into
+	 * @param offset the index of the first feature of the row
+	 */
+	void readFeatures(DataRow row, double[] features, int offset) {
+		for(int l = 0; l < m_featureColumns.length; l++) {
+			DataCell cell = row.getCell(m_featureColumns[l]);
+			features[offset + l] = cell.isMissing() ? 0 : ((DoubleValue) cell).getDoubleValue();
+		}
+	}
+
+	/**
+	 * @param row the row
+	 * @return the cluster label of the row, an Integer or a String
+	 * @throws IllegalStateException if the label is missing: the coefficients of all rows are
+	 *         computed by their index in the table, a row without a cluster cannot be skipped
+	 */
+	Object readLabel(DataRow row) {
+		DataCell cell = row.getCell(m_clusterColumn);
+		if(cell.isMissing()) {
+			throw new IllegalStateException("Row \"" + row.getKey() + "\" has no cluster label, filter out the rows"
+					+ " with a missing value in the cluster column first");
+		}
+		return m_intLabels ? (Object) Integer.valueOf(((IntValue) cell).getIntValue()) : ((StringValue) cell).getStringValue();
+	}
+}
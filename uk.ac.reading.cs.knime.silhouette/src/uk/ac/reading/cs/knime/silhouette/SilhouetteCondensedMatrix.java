@@ -0,0 +1,125 @@
+package uk.ac.reading.cs.knime.silhouette;
+
+/**
+ * The lower triangle of a symmetric distance matrix in one primitive array (condensed form),
+ * row by row: the distance of the rows i &gt; j is at i(i-1)/2 + j. It holds n(n-1)/2 distances
+ * without any cell or container overhead, which limits it to {@link #MAX_ROWS} rows.
+ *
+ * @author University of Reading
+ */
+final class SilhouetteCondensedMatrix {
+
+	/** Largest number of rows whose distances fit into one array */
+	static final int MAX_ROWS = 65536;
+
+	private final int m_rows;
+
+	private final double[] m_distances;
+
+	/**
+	 * @param rows the number of rows, at most {@link #MAX_ROWS}
+	 */
+	SilhouetteCondensedMatrix(int rows) {
+		if(rows > MAX_ROWS) {
+			throw new IllegalArgumentException("At most " + MAX_ROWS + " rows fit into a condensed matrix: " + rows);
+		}
+		m_rows = rows;
+		m_distances = new double[(int) ((long) rows * (rows - 1) / 2)];
+	}
+
+	/**
+	 * @param rows the number of rows
+	 * @return the heap of the matrix in bytes
+	 */
+	static long heapBytes(long rows) {
+		return rows * (rows - 1) / 2 * 8;
+	}
+
+	/** @return the number of rows */
+	int getRowCount() {
+		return m_rows;
+	}
+
+	/**
+	 * @param row the row
+	 * @return the index of the distance of the row to row 0
+	 */
+	private static int offset(int row) {
+		return (int) ((long) row * (row - 1) / 2);
+	}
+
+	/**
+	 * @param i a row
+	 * @param j another row
+	 * @return the distance of the rows, 0 if they are the same
+	 */
+	double get(int i, int j) {
+		if(i == j) return 0;
+		return i > j ? m_distances[offset(i) + j] : m_distances[offset(j) + i];
+	}
+
+	/**
+	 * @param i a row
+	 * @param j a row before i
+	 * @param distance the distance of the rows
+	 */
+	void set(int i, int j, double distance) {
+		m_distances[offset(i) + j] = distance;
+	}
+
+	/**
+	 * Adds the distances of one row to all other rows to the mean distances of that row to each
+	 * cluster, in row order like {@link SilhouetteKernel#accumulateClusterDistances}. The
+	 * distances to the rows before are contiguous, those to the rows after are one row of the
+	 * triangle apart.
+	 *
+	 * @param row the index of the row
+	 * @param clusterOfRow the cluster index of each row
+	 * @param clusterSizes the number of rows of each cluster
+	 * @param clusterDistances the mean distances to each cluster, accumulated in place
+	 */
+	void accumulateClusterDistances(int row, int[] clusterOfRow, int[] clusterSizes, double[] clusterDistances) {
+		int ownCluster = clusterOfRow[row];
+		int base = offset(row);
+		for(int other = 0; other < row; other++) {
+			int c = clusterOfRow[other];
+			clusterDistances[c] += m_distances[base + other] / (clusterSizes[c] - (c == ownCluster ? 1 : 0));
+		}
+		int index = offset(row + 1) + row;
+		for(int other = row + 1; other < m_rows; other++) {
+			int c = clusterOfRow[other];
+			clusterDistances[c] += m_distances[index] / (clusterSizes[c] - (c == ownCluster ? 1 : 0));
+			index += other;
+		}
+	}
+
+	/**
+	 * Adds the distances of a pair of tiles of rows to the per-cluster distance sums of the rows
+	 * of both tiles, each distance is read once like in
+	 * {@link SilhouetteKernel#accumulateTilePair}. The distances of a row to the other tile are
+	 * contiguous.
+	 *
+	 * @param rowFrom the first row of the tile (inclusive)
+	 * @param rowTo the last row of the tile (exclusive)
+	 * @param otherFrom the first row of the other tile (inclusive), the same tile or one before it
+	 * @param otherTo the last row of the other tile (exclusive)
+	 * @param clusterOfRow the cluster index of each row
+	 * @param clusters the number of clusters
+	 * @param sums the distance sums of each row to each cluster (at row * clusters + cluster),
+	 *        accumulated in place
+	 */
+	void accumulateTilePair(int rowFrom, int rowTo, int otherFrom, int otherTo, int[] clusterOfRow, int clusters,
+			double[] sums) {
+		for(int row = rowFrom; row < rowTo; row++) {
+			int base = offset(row);
+			int sumOffset = row * clusters;
+			int rowCluster = clusterOfRow[row];
+			int to = otherFrom == rowFrom ? row : otherTo;
+			for(int other = otherFrom; other < to; other++) {
+				double distance = m_distances[base + other];
+				sums[sumOffset + clusterOfRow[other]] += distance;
+				sums[other * clusters + rowCluster] += distance;
+			}
+		}
+	}
+}
@@ -0,0 +1,271 @@
+package uk.ac.reading.cs.knime.silhouette;
+
+import java.io.File;
+
+import org.knime.core.node.InvalidSettingsException;
+import org.knime.core.node.KNIMEConstants;
+import org.knime.core.node.NodeSettingsRO;
+import org.knime.core.node.NodeSettingsWO;
+import org.knime.core.node.defaultnodesettings.SettingsModelBoolean;
+import org.knime.core.node.defaultnodesettings.SettingsModelIntegerBounded;
+import org.knime.core.node.defaultnodesettings.SettingsModelString;
+
+/**
+ * Settings of the execution planning of the Silhouette node: the strategy (chosen
+ * automatically or by the user), the heap and time budgets the automatic choice has to
+ * meet and the number of threads. All settings are optional, workflows saved without them are planned automatically.
+ *
+ * @author University of Reading
+ */
+final class SilhouetteExecutionSettings {
+
+	/** Config key for the execution strategy */
+	static final String CFGKEY_STRATEGY = "executionStrategy";
+
+	/** Config key for the heap budget in MB */
+	static final String CFGKEY_HEAP_BUDGET = "heapBudgetMB";
+
+	/** Config key for the time budget in seconds */
+	static final String CFGKEY_TIME_BUDGET = "timeBudgetSeconds";
+
+	/** Config key for the number of rows of the sampled strategy */
+	static final String CFGKEY_SAMPLE_SIZE = "sampleSize";
+
+	/** Config key for the number of reference rows per cluster of the stratified strategy */
+	static final String CFGKEY_REFERENCE_SIZE = "referenceSize";
+
+	/** Config key for the directory of the spilled distance matrix */
+	static final String CFGKEY_SPILL_DIRECTORY = "spillDirectory";
+
+	/** Config key for the rows of a tile of the spilled distance matrix */
+	static final String CFGKEY_SPILL_TILE_ROWS = "spillTileRows";
+
+	/** Config key for the number of threads */
+	static final String CFGKEY_THREADS = "threads";
+
+	/** Config key for the symmetric accumulation of the distances */
+	static final String CFGKEY_SYMMETRIC = "symmetricAccumulation";
+
+	/** Strategy: chosen by the planner */
+	static final String STRATEGY_AUTOMATIC = "Automatic";
+
+	/** Default time budget, the exact strategies grow quadratically with the rows */
+	static final int DEFAULT_TIME_BUDGET = 3600;
+
+	/** Default number of rows of the sampled strategy */
+	static final int DEFAULT_SAMPLE_SIZE = 10000;
+
+	/** Default rows of a tile of the spilled distance matrix, a block of 512 KB */
+	static final int DEFAULT_SPILL_TILE_ROWS = 256;
+
+	private final SettingsModelString m_strategy = createStrategyModel();
+
+	private final SettingsModelIntegerBounded m_heapBudget = createHeapBudgetModel();
+
+	private final SettingsModelIntegerBounded m_timeBudget = createTimeBudgetModel();
+
+	private final SettingsModelIntegerBounded m_sampleSize = createSampleSizeModel();
+
+	private final SettingsModelIntegerBounded m_referenceSize = createReferenceSizeModel();
+
+	private final SettingsModelString m_spillDirectory = createSpillDirectoryModel();
+
+	private final SettingsModelIntegerBounded m_spillTileRows = createSpillTileRowsModel();
+
+	private final SettingsModelIntegerBounded m_threads = createThreadsModel();
+
+	private final SettingsModelBoolean m_symmetric = createSymmetricModel();
+
+	/** @return settings model for the execution strategy */
+	static SettingsModelString createStrategyModel() {
+		return new SettingsModelString(CFGKEY_STRATEGY, STRATEGY_AUTOMATIC);
+	}
+
+	/** @return settings model for the heap budget in MB, 0 for half of the maximum heap */
+	static SettingsModelIntegerBounded createHeapBudgetModel() {
+		return new SettingsModelIntegerBounded(CFGKEY_HEAP_BUDGET, 0, 0, Integer.MAX_VALUE);
+	}
+
+	/** @return settings model for the time budget in seconds, 0 for no limit */
+	static SettingsModelIntegerBounded createTimeBudgetModel() {
+		return new SettingsModelIntegerBounded(CFGKEY_TIME_BUDGET, DEFAULT_TIME_BUDGET, 0, Integer.MAX_VALUE);
+	}
+
+	/** @return settings model for the number of rows of the sampled strategy */
+	static SettingsModelIntegerBounded createSampleSizeModel() {
+		return new SettingsModelIntegerBounded(CFGKEY_SAMPLE_SIZE, DEFAULT_SAMPLE_SIZE, 2, Integer.MAX_VALUE);
+	}
+
+	/** @return settings model for the number of reference rows per cluster, 0 for all rows */
+	static SettingsModelIntegerBounded createReferenceSizeModel() {
+		return new SettingsModelIntegerBounded(CFGKEY_REFERENCE_SIZE, 0, 0, Integer.MAX_VALUE);
+	}
+
+	/** @return settings model for the directory of the spilled distance matrix, empty for the KNIME temp directory */
+	static SettingsModelString createSpillDirectoryModel() {
+		return new SettingsModelString(CFGKEY_SPILL_DIRECTORY, "");
+	}
+
+	/** @return settings model for the rows of a tile of the spilled distance matrix */
+	static SettingsModelIntegerBounded createSpillTileRowsModel() {
+		return new SettingsModelIntegerBounded(CFGKEY_SPILL_TILE_ROWS, DEFAULT_SPILL_TILE_ROWS, 16, 8192);
+	}
+
+	/** @return settings model for the number of threads, 0 for one per available processor */
+	static SettingsModelIntegerBounded createThreadsModel() {
+		return new SettingsModelIntegerBounded(CFGKEY_THREADS, 0, 0, Integer.MAX_VALUE);
+	}
+
+	/** @return settings model for the symmetric accumulation of the distances */
+	static SettingsModelBoolean createSymmetricModel() {
+		return new SettingsModelBoolean(CFGKEY_SYMMETRIC, true);
+	}
+
+	/** @return the labels of the strategy selection, starting with automatic */
+	static String[] getStrategyLabels() {
+		SilhouettePlanner.Strategy[] strategies = SilhouettePlanner.Strategy.values();
+		String[] labels = new String[strategies.length + 1];
+		labels[0] = STRATEGY_AUTOMATIC;
+		for(int i = 0; i < strategies.length; i++) {
+			labels[i + 1] = strategies[i].getLabel();
+		}
+		return labels;
+	}
+
+	/** @return the strategy chosen by the user or <code>null</code> if the planner chooses */
+	SilhouettePlanner.Strategy getStrategy() {
+		return SilhouettePlanner.Strategy.forLabel(m_strategy.getStringValue());
+	}
+
+	/** @return the heap budget in bytes */
+	long getHeapBudgetBytes() {
+		int mb = m_heapBudget.getIntValue();
+		return mb > 0 ? mb * 1024L * 1024L : Runtime.getRuntime().maxMemory() / 2;
+	}
+
+	/** @return the time budget in seconds, 0 for no limit */
+	int getTimeBudgetSeconds() {
+		return m_timeBudget.getIntValue();
+	}
+
+	/** @return the number of rows of the sampled strategy */
+	int getSampleSize() {
+		return m_sampleSize.getIntValue();
+	}
+
+	/** @return the number of reference rows per cluster of the stratified strategy, 0 for all rows */
+	int getReferenceSize() {
+		return m_referenceSize.getIntValue();
+	}
+
+	/** @return the directory of the spilled distance matrix */
+	File getSpillDirectory() {
+		String directory = m_spillDirectory.getStringValue();
+		return new File(directory == null || directory.trim().isEmpty() ? KNIMEConstants.getKNIMETempDir() : directory.trim());
+	}
+
+	/** @return the rows of a tile of the spilled distance matrix */
+	int getSpillTileRows() {
+		return m_spillTileRows.getIntValue();
+	}
+
+	/** @return the number of threads, at least 1 */
+	int getThreads() {
+		int threads = m_threads.getIntValue();
+		return threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+	}
+
+	/** @return true if each distance is visited once and added to the sums of both rows */
+	boolean isSymmetric() {
+		return m_symmetric.getBooleanValue();
+	}
+
+	/**
+	 * @param settings to write into
+	 */
+	void saveSettingsTo(NodeSettingsWO settings) {
+		m_strategy.saveSettingsTo(settings);
+		m_heapBudget.saveSettingsTo(settings);
+		m_timeBudget.saveSettingsTo(settings);
+		m_sampleSize.saveSettingsTo(settings);
+		m_referenceSize.saveSettingsTo(settings);
+		m_spillDirectory.saveSettingsTo(settings);
+		m_spillTileRows.saveSettingsTo(settings);
+		m_threads.saveSettingsTo(settings);
+		m_symmetric.saveSettingsTo(settings);
+	}
+
+	/**
+	 * @param settings to validate
+	 * @throws InvalidSettingsException if a present setting is invalid
+	 */
+	void validateSettings(NodeSettingsRO settings) throws InvalidSettingsException {
+		if(settings.containsKey(CFGKEY_STRATEGY)) {
+			String strategy = settings.getString(CFGKEY_STRATEGY);
+			if(!STRATEGY_AUTOMATIC.equals(strategy) && SilhouettePlanner.Strategy.forLabel(strategy) == null) {
+				throw new InvalidSettingsException("Unknown execution strategy: " + strategy);
+			}
+		}
+		if(settings.containsKey(CFGKEY_HEAP_BUDGET)) m_heapBudget.validateSettings(settings);
+		if(settings.containsKey(CFGKEY_TIME_BUDGET)) m_timeBudget.validateSettings(settings);
+		if(settings.containsKey(CFGKEY_SAMPLE_SIZE)) m_sampleSize.validateSettings(settings);
+		if(settings.containsKey(CFGKEY_REFERENCE_SIZE)) m_referenceSize.validateSettings(settings);
+		if(settings.containsKey(CFGKEY_SPILL_DIRECTORY)) m_spillDirectory.validateSettings(settings);
+		if(settings.containsKey(CFGKEY_SPILL_TILE_ROWS)) m_spillTileRows.validateSettings(settings);
+		if(settings.containsKey(CFGKEY_THREADS)) m_threads.validateSettings(settings);
+		if(settings.containsKey(CFGKEY_SYMMETRIC)) m_symmetric.validateSettings(settings);
+	}
+
+	/**
+	 * @param settings to read from, missing settings are reset to their defaults
+	 * @throws InvalidSettingsException if a present setting cannot be read
+	 */
+	void loadSettingsFrom(NodeSettingsRO settings) throws InvalidSettingsException {
+		// added with the execution planning, older workflows don't have them
+		if(settings.containsKey(CFGKEY_STRATEGY)) {
+			m_strategy.loadSettingsFrom(settings);
+		} else {
+			m_strategy.setStringValue(STRATEGY_AUTOMATIC);
+		}
+		if(settings.containsKey(CFGKEY_HEAP_BUDGET)) {
+			m_heapBudget.loadSettingsFrom(settings);
+		} else {
+			m_heapBudget.setIntValue(0);
+		}
+		if(settings.containsKey(CFGKEY_TIME_BUDGET)) {
+			m_timeBudget.loadSettingsFrom(settings);
+		} else {
+			m_timeBudget.setIntValue(DEFAULT_TIME_BUDGET);
+		}
+		if(settings.containsKey(CFGKEY_SAMPLE_SIZE)) {
+			m_sampleSize.loadSettingsFrom(settings);
+		} else {
+			m_sampleSize.setIntValue(DEFAULT_SAMPLE_SIZE);
+		}
+		if(settings.containsKey(CFGKEY_REFERENCE_SIZE)) {
+			m_referenceSize.loadSettingsFrom(settings);
+		} else {
+			m_referenceSize.setIntValue(0);
+		}
+		if(settings.containsKey(CFGKEY_SPILL_DIRECTORY)) {
+			m_spillDirectory.loadSettingsFrom(settings);
+		} else {
+			m_spillDirectory.setStringValue("");
+		}
+		if(settings.containsKey(CFGKEY_SPILL_TILE_ROWS)) {
+			m_spillTileRows.loadSettingsFrom(settings);
+		} else {
+			m_spillTileRows.setIntValue(DEFAULT_SPILL_TILE_ROWS);
+		}
+		if(settings.containsKey(CFGKEY_THREADS)) {
+			m_threads.loadSettingsFrom(settings);
+		} else {
+			m_threads.setIntValue(0);
+		}
+		if(settings.containsKey(CFGKEY_SYMMETRIC)) {
+			m_symmetric.loadSettingsFrom(settings);
+		} else {
+			m_symmetric.setBooleanValue(true);
+		}
+	}
+}
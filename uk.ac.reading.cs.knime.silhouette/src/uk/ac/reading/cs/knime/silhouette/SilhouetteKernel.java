@@ -0,0 +1,359 @@
+package uk.ac.reading.cs.knime.silhouette;
+
+/**
+ * Distance and coefficient kernels of the Silhouette node. They do not depend on KNIME
+ * classes, so they can be benchmarked and reused outside of the node.
+ *
+ * @author University of Reading
+ */
+final class SilhouetteKernel {
+
+	private SilhouetteKernel() {
+		// utility class
+	}
+
+	/** Calculating the distance between to data point according to
+	 * their Double and Integer values
+	 * @param d Every Double value in the first data point
+	 * @param i Every Integer value in the first data point
+	 * @param d2 Every Double value in the second data point
+	 * @param i2 Every Integer value in the second data point
+	 *
+	 * @return the Euclidean Distance between the two points
+	 */
+	static double euclideanDistance(Double[] d, Integer[] i, Double[] d2, Integer[] i2) {
+
+		double dist = 0d;
+
+		//validate parameters - length of arrays for the data points has to be the same to be comparable
+		if(d.length != d2.length) {
+			throw new IllegalArgumentException("The Double dimension count of the two points differ (" + d.length + " and " + d2.length);
+		} else if(i.length != i2.length) {
+			throw new IllegalArgumentException("The Integer dimension count of the two points differ (" + i.length + " and " + i2.length);
+		}
+
+		//TODO shouldn't we weigh the distances somehow?
+
+		//calculate double distances
+		for(int l = 0; l < d.length; l++) dist += Math.pow(d[l] - d2[l], 2);
+
+		//calculate int distances
+		for(int l = 0; l < i.length; l++) dist += Math.pow(i[l] - i2[l], 2);
+
+		return Math.sqrt(dist);
+	}
+
+	/**
+	 * Calculates the Euclidean distance of two rows of decoded features without allocating. The
+	 * features are laid out like the arguments of
+	 * {@link #euclideanDistance(Double[], Integer[], Double[], Integer[])}, the double values
+	 * first and the widened integer values after them, so the distances are the same (except
+	 * where the difference of two integers overflowed there).
+	 *
+	 * @param features the features of all rows, row by row
+	 * @param dimensions the number of features of a row
+	 * @param row the index of the first row
+	 * @param other the index of the second row
+	 * @return the Euclidean Distance between the two rows
+	 */
+	static double euclideanDistance(double[] features, int dimensions, int row, int other) {
+		int rowOffset = row * dimensions, otherOffset = other * dimensions;
+		double dist = 0d;
+		for(int l = 0; l < dimensions; l++) {
+			double diff = features[rowOffset + l] - features[otherOffset + l];
+			dist += diff * diff;
+		}
+		return Math.sqrt(dist);
+	}
+
+	/**
+	 * Adds the distances of one row to all other rows to the mean distances of that row to each
+	 * cluster. The distance to a row is divided by the size of its cluster (less one for the
+	 * own cluster), so that the sums are the mean distances.
+	 *
+	 * @param distances the distances of the row to all rows
+	 * @param row the index of the row
+	 * @param clusterOfRow the cluster index of each row
+	 * @param clusterSizes the number of rows of each cluster
+	 * @param clusterDistances the mean distances to each cluster, accumulated in place
+	 */
+	static void accumulateClusterDistances(double[] distances, int row, int[] clusterOfRow, int[] clusterSizes,
+			double[] clusterDistances) {
+		int ownCluster = clusterOfRow[row];
+		for(int other = 0; other < distances.length; other++) {
+			if(other != row) {
+				int c = clusterOfRow[other];
+				clusterDistances[c] += distances[other] / (clusterSizes[c] - (c == ownCluster ? 1 : 0));
+			}
+		}
+	}
+
+	/**
+	 * Adds the distances of a tile of rows to a tile of other rows to the per-cluster distance
+	 * sums of the rows. The distance of a row to itself is skipped.
+	 *
+	 * @param features the features of all rows, row by row
+	 * @param dimensions the number of features of a row
+	 * @param rowFrom the first row of the tile (inclusive)
+	 * @param rowTo the last row of the tile (exclusive)
+	 * @param otherFrom the first other row (inclusive)
+	 * @param otherTo the last other row (exclusive)
+	 * @param clusterOfRow the cluster index of each row
+	 * @param clusters the number of clusters
+	 * @param sums the distance sums of each row to each cluster (at row * clusters + cluster),
+	 *        accumulated in place
+	 */
+	static void accumulateTile(double[] features, int dimensions, int rowFrom, int rowTo, int otherFrom,
+			int otherTo, int[] clusterOfRow, int clusters, double[] sums) {
+		for(int row = rowFrom; row < rowTo; row++) {
+			int rowOffset = row * dimensions;
+			int sumOffset = row * clusters;
+			for(int other = otherFrom; other < otherTo; other++) {
+				if(other == row) continue;
+				int otherOffset = other * dimensions;
+				double dist = 0d;
+				for(int l = 0; l < dimensions; l++) {
+					double diff = features[rowOffset + l] - features[otherOffset + l];
+					dist += diff * diff;
+				}
+				sums[sumOffset + clusterOfRow[other]] += Math.sqrt(dist);
+			}
+		}
+	}
+
+	/**
+	 * Adds the distances of a pair of tiles of rows to the per-cluster distance sums of the rows
+	 * of both tiles, each distance is computed once (symmetric accumulation). For a tile with
+	 * itself only the pairs of different rows are visited.
+	 *
+	 * @param features the features of all rows, row by row
+	 * @param dimensions the number of features of a row
+	 * @param rowFrom the first row of the tile (inclusive)
+	 * @param rowTo the last row of the tile (exclusive)
+	 * @param otherFrom the first row of the other tile (inclusive), the same tile or one before it
+	 * @param otherTo the last row of the other tile (exclusive)
+	 * @param clusterOfRow the cluster index of each row
+	 * @param clusters the number of clusters
+	 * @param sums the distance sums of each row to each cluster (at row * clusters + cluster),
+	 *        accumulated in place
+	 */
+	static void accumulateTilePair(double[] features, int dimensions, int rowFrom, int rowTo, int otherFrom,
+			int otherTo, int[] clusterOfRow, int clusters, double[] sums) {
+		for(int row = rowFrom; row < rowTo; row++) {
+			int rowOffset = row * dimensions;
+			int sumOffset = row * clusters;
+			int rowCluster = clusterOfRow[row];
+			int to = otherFrom == rowFrom ? row : otherTo;
+			for(int other = otherFrom; other < to; other++) {
+				int otherOffset = other * dimensions;
+				double dist = 0d;
+				for(int l = 0; l < dimensions; l++) {
+					double diff = features[rowOffset + l] - features[otherOffset + l];
+					dist += diff * diff;
+				}
+				dist = Math.sqrt(dist);
+				sums[sumOffset + clusterOfRow[other]] += dist;
+				sums[other * clusters + rowCluster] += dist;
+			}
+		}
+	}
+
+	/**
+	 * Adds the distances of a tile of rows to a tile of reference rows, held in a separate array,
+	 * to the per-cluster distance sums of the rows. A row that is a reference row as well adds
+	 * its distance of 0 to itself.
+	 *
+	 * @param features the features of the rows, row by row
+	 * @param dimensions the number of features of a row
+	 * @param rowFrom the first row of the tile (inclusive)
+	 * @param rowTo the last row of the tile (exclusive)
+	 * @param reference the features of the reference rows, row by row
+	 * @param referenceFrom the first reference row (inclusive)
+	 * @param referenceTo the last reference row (exclusive)
+	 * @param clusterOfReference the cluster index of each reference row
+	 * @param clusters the number of clusters
+	 * @param sums the distance sums of each row of the tile to each cluster (at
+	 *        (row - rowFrom) * clusters + cluster), accumulated in place
+	 */
+	static void accumulateReferenceTile(double[] features, int dimensions, int rowFrom, int rowTo,
+			double[] reference, int referenceFrom, int referenceTo, int[] clusterOfReference, int clusters,
+			double[] sums) {
+		for(int row = rowFrom; row < rowTo; row++) {
+			int rowOffset = row * dimensions;
+			int sumOffset = (row - rowFrom) * clusters;
+			for(int other = referenceFrom; other < referenceTo; other++) {
+				int otherOffset = other * dimensions;
+				double dist = 0d;
+				for(int l = 0; l < dimensions; l++) {
+					double diff = features[rowOffset + l] - reference[otherOffset + l];
+					dist += diff * diff;
+				}
+				sums[sumOffset + clusterOfReference[other]] += Math.sqrt(dist);
+			}
+		}
+	}
+
+	/**
+	 * Calculates the distances of a tile of rows to a tile of other rows into a block of a
+	 * spilled matrix, row by row with a stride of <code>tileRows</code>. The block of a partial
+	 * tile is only filled in part.
+	 *
+	 * @param features the features of all rows, row by row
+	 * @param dimensions the number of features of a row
+	 * @param rowFrom the first row of the tile (inclusive)
+	 * @param rowTo the last row of the tile (exclusive)
+	 * @param otherFrom the first other row (inclusive)
+	 * @param otherTo the last other row (exclusive)
+	 * @param tileRows the number of rows of a full tile
+	 * @param block the distances of the block, overwritten
+	 */
+	static void tileDistances(double[] features, int dimensions, int rowFrom, int rowTo, int otherFrom,
+			int otherTo, int tileRows, double[] block) {
+		for(int row = rowFrom; row < rowTo; row++) {
+			int rowOffset = row * dimensions;
+			int blockOffset = (row - rowFrom) * tileRows - otherFrom;
+			for(int other = otherFrom; other < otherTo; other++) {
+				int otherOffset = other * dimensions;
+				double dist = 0d;
+				for(int l = 0; l < dimensions; l++) {
+					double diff = features[rowOffset + l] - features[otherOffset + l];
+					dist += diff * diff;
+				}
+				block[blockOffset + other] = Math.sqrt(dist);
+			}
+		}
+	}
+
+	/**
+	 * Adds the distances of a block of a spilled matrix to the per-cluster distance sums of the
+	 * rows of a tile. The distance of a row to itself is skipped.
+	 *
+	 * @param block the distances of the block, row by row with a stride of <code>tileRows</code>
+	 * @param tileRows the number of rows of a full tile
+	 * @param transposed false if the block holds the distances of the rows of the tile to the
+	 *        other rows, true if it holds those of the other rows to the rows of the tile
+	 * @param rowFrom the first row of the tile (inclusive)
+	 * @param rowTo the last row of the tile (exclusive)
+	 * @param otherFrom the first other row (inclusive)
+	 * @param otherTo the last other row (exclusive)
+	 * @param clusterOfRow the cluster index of each row
+	 * @param clusters the number of clusters
+	 * @param sums the distance sums of each row of the tile to each cluster (at
+	 *        (row - rowFrom) * clusters + cluster), accumulated in place
+	 */
+	static void accumulateBlock(double[] block, int tileRows, boolean transposed, int rowFrom, int rowTo,
+			int otherFrom, int otherTo, int[] clusterOfRow, int clusters, double[] sums) {
+		if(transposed) {
+			// the block is read in its order, the sums of the tile stay in the cache
+			for(int other = otherFrom; other < otherTo; other++) {
+				int blockOffset = (other - otherFrom) * tileRows - rowFrom;
+				int otherCluster = clusterOfRow[other];
+				for(int row = rowFrom; row < rowTo; row++) {
+					if(row == other) continue;
+					sums[(row - rowFrom) * clusters + otherCluster] += block[blockOffset + row];
+				}
+			}
+			return;
+		}
+		for(int row = rowFrom; row < rowTo; row++) {
+			int blockOffset = (row - rowFrom) * tileRows - otherFrom;
+			int sumOffset = (row - rowFrom) * clusters;
+			for(int other = otherFrom; other < otherTo; other++) {
+				if(other == row) continue;
+				sums[sumOffset + clusterOfRow[other]] += block[blockOffset + other];
+			}
+		}
+	}
+
+	/**
+	 * Turns the per-cluster distance sums of a row into its mean distances to the clusters.
+	 *
+	 * @param sums the distance sums of each row to each cluster (at row * clusters + cluster)
+	 * @param row the index of the row
+	 * @param ownCluster the cluster of the row
+	 * @param clusterSizes the number of rows of each cluster
+	 * @param clusterDistances the mean distances of the row to each cluster, overwritten; 0 for
+	 *        the own cluster if the row is alone in it
+	 */
+	static void meanClusterDistances(double[] sums, int row, int ownCluster, int[] clusterSizes,
+			double[] clusterDistances) {
+		int offset = row * clusterDistances.length;
+		for(int c = 0; c < clusterDistances.length; c++) {
+			int others = clusterSizes[c] - (c == ownCluster ? 1 : 0);
+			clusterDistances[c] = others > 0 ? sums[offset + c] / others : 0;
+		}
+	}
+
+	/**
+	 * Calculates the centroids of the clusters for the simplified Silhouette.
+	 *
+	 * @param features the features of all rows, row by row
+	 * @param dimensions the number of features of a row
+	 * @param clusterOfRow the cluster index of each row
+	 * @param clusterSizes the number of rows of each cluster
+	 * @return the centroids, cluster by cluster
+	 */
+	static double[] centroids(double[] features, int dimensions, int[] clusterOfRow, int[] clusterSizes) {
+		double[] centroids = new double[clusterSizes.length * dimensions];
+		for(int row = 0; row < clusterOfRow.length; row++) {
+			int rowOffset = row * dimensions, centroidOffset = clusterOfRow[row] * dimensions;
+			for(int l = 0; l < dimensions; l++) {
+				centroids[centroidOffset + l] += features[rowOffset + l];
+			}
+		}
+		for(int c = 0; c < clusterSizes.length; c++) {
+			for(int l = 0; l < dimensions; l++) {
+				centroids[c * dimensions + l] /= Math.max(1, clusterSizes[c]);
+			}
+		}
+		return centroids;
+	}
+
+	/**
+	 * Calculates the distances of a row to the centroids of all clusters, which take the place
+	 * of the mean distances to the clusters in the simplified Silhouette.
+	 *
+	 * @param features the features of all rows, row by row
+	 * @param dimensions the number of features of a row
+	 * @param row the index of the row
+	 * @param centroids the centroids, cluster by cluster
+	 * @param clusterDistances the distances to the centroid of each cluster, overwritten
+	 */
+	static void centroidDistances(double[] features, int dimensions, int row, double[] centroids,
+			double[] clusterDistances) {
+		int rowOffset = row * dimensions;
+		for(int c = 0; c < clusterDistances.length; c++) {
+			int centroidOffset = c * dimensions;
+			double dist = 0d;
+			for(int l = 0; l < dimensions; l++) {
+				double diff = features[rowOffset + l] - centroids[centroidOffset + l];
+				dist += diff * diff;
+			}
+			clusterDistances[c] = Math.sqrt(dist);
+		}
+	}
+
+	/**
+	 * Calculates the Silhouette coefficient of a row from its mean distances to the clusters.
+	 *
+	 * @param clusterDistances the mean distances of the row to each cluster
+	 * @param ownCluster the cluster of the row
+	 * @return the Silhouette coefficient (-1.0 to 1.0), 0 if there is no other cluster
+	 */
+	static double coefficient(double[] clusterDistances, int ownCluster) {
+		// Mean distance from own cluster
+		double ownDist = clusterDistances[ownCluster];
+		double neighborDist = Double.MAX_VALUE;
+		// Finding cluster with lowest mean distance from current object
+		for(int clusterIndex = 0; clusterIndex < clusterDistances.length; clusterIndex++ ) {
+			if(clusterDistances[clusterIndex] < neighborDist && ownDist != clusterDistances[clusterIndex]) {
+				neighborDist = clusterDistances[clusterIndex];
+			}
+		}
+		if(neighborDist == Double.MAX_VALUE) neighborDist = ownDist;
+
+		// calculating actual Silhouette value
+		if(ownDist == neighborDist || Math.max(ownDist,  neighborDist) == 0) return 0;
+		return (neighborDist - ownDist) / Math.max(ownDist,  neighborDist);
+	}
+}
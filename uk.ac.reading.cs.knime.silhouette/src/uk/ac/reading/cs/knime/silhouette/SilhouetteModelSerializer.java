@@ -0,0 +1,172 @@
+package uk.ac.reading.cs.knime.silhouette;
+
+import java.awt.Color;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.knime.core.node.InvalidSettingsException;
+import org.knime.core.node.NodeSettings;
+import org.knime.core.node.NodeSettingsRO;
+
+/**
+ * Reads and writes the internal {@link SilhouetteModel} of the Silhouette node.
+ *
+ * The model is written in a compact, versioned binary format which is streamed from and to disk.
+ * Models saved by older versions of the node (XML <code>NodeSettings</code>) can still be read.
+ *
+ * @author University of Reading
+ */
+final class SilhouetteModelSerializer {
+
+	/** File name of the binary model */
+	static final String BINARY_FILE_NAME = "silhouetteModel.bin";
+
+	/** File name of the XML model written by older versions */
+	static final String XML_FILE_NAME = "silhouetteInternals";
+
+	private static final int MAGIC = 0x53494c48; // "SILH"
+
+	private static final int VERSION = 1;
+
+	private SilhouetteModelSerializer() {
+		// utility class
+	}
+
+	/**
+	 * Writes the model in binary form: header, then for each cluster its name, the number of rows
+	 * and the colors, row indices and coefficients of these rows.
+	 *
+	 * @param model the model to write
+	 * @param internDir directory to write to
+	 * @throws IOException if the file cannot be written
+	 */
+	static void save(SilhouetteModel model, File internDir) throws IOException {
+		File f = new File(internDir, BINARY_FILE_NAME);
+		try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(f)))) {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(model.getClusterData().length);
+			for(InternalCluster ic : model.getClusterData()) {
+				byte[] name = ic.getName().getBytes(StandardCharsets.UTF_8);
+				out.writeInt(name.length);
+				out.write(name);
+				int rows = ic.getDataIndices().length;
+				out.writeInt(rows);
+				for(int i = 0; i < rows; i++) {
+					out.writeInt(ic.getColors()[i].getRGB());
+				}
+				for(int i = 0; i < rows; i++) {
+					out.writeInt(ic.getDataIndices()[i]);
+				}
+				for(int i = 0; i < rows; i++) {
+					out.writeDouble(ic.getCoefficients()[i]);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Reads the model from the given directory, either from the binary file or, if that does not
+	 * exist, from the XML file of older versions.
+	 *
+	 * @param internDir directory to read from
+	 * @return the model
+	 * @throws IOException if the model cannot be read
+	 */
+	static SilhouetteModel load(File internDir) throws IOException {
+		File binaryFile = new File(internDir, BINARY_FILE_NAME);
+		if(binaryFile.exists()) {
+			return loadBinary(binaryFile);
+		}
+		return loadXML(new File(internDir, XML_FILE_NAME));
+	}
+
+	private static SilhouetteModel loadBinary(File file) throws IOException {
+		try(DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+			if(in.readInt() != MAGIC) {
+				throw new IOException("Not a Silhouette model: " + file);
+			}
+			int version = in.readInt();
+			if(version != VERSION) {
+				throw new IOException("Unsupported Silhouette model version " + version);
+			}
+			InternalCluster[] internalClusters = new InternalCluster[in.readInt()];
+			ColorCache colorCache = new ColorCache();
+			for(int k = 0; k < internalClusters.length; k++) {
+				byte[] name = new byte[in.readInt()];
+				in.readFully(name);
+				int rows = in.readInt();
+				Color[] colors = new Color[rows];
+				for(int i = 0; i < rows; i++) {
+					colors[i] = colorCache.get(in.readInt());
+				}
+				int[] dataIndices = new int[rows];
+				for(int i = 0; i < rows; i++) {
+					dataIndices[i] = in.readInt();
+				}
+				double[] coefficients = new double[rows];
+				for(int i = 0; i < rows; i++) {
+					coefficients[i] = in.readDouble();
+				}
+				internalClusters[k] = new InternalCluster(new String(name, StandardCharsets.UTF_8), colors,
+						dataIndices, coefficients);
+			}
+			return new SilhouetteModel(internalClusters);
+		}
+	}
+
+	private static SilhouetteModel loadXML(File file) throws IOException {
+		NodeSettingsRO settings;
+		try(InputStream in = new BufferedInputStream(new FileInputStream(file))) {
+			settings = NodeSettings.loadFromXML(in);
+		}
+		try {
+			// the cluster array that we will need to create the internal model
+			InternalCluster[] internalClusters = new InternalCluster[settings.getInt("clustersNum")];
+			ColorCache colorCache = new ColorCache();
+
+			// for each cluster in the internal model
+			for(int i = 0; i < internalClusters.length; i++) {
+
+				// load name, color, row indices and coefficients
+				String clusterName = settings.getString("name" + i);
+				int[] clusterDataIndices = settings.getIntArray("dataIndices" + i);
+				int[] clusterColors = settings.getIntArray("colors" + i);
+				double[] clusterCoefficients = settings.getDoubleArray("coefficients" + i);
+
+				Color[] clusterColorsConverted = new Color[clusterDataIndices.length];
+				for(int l = 0; l < clusterColors.length; l++) {
+					clusterColorsConverted[l] = colorCache.get(clusterColors[l]);
+				}
+
+				// and then add the new cluster to the cluster array
+				internalClusters[i] = new InternalCluster(clusterName, clusterColorsConverted, clusterDataIndices,
+						clusterCoefficients);
+			}
+
+			return new SilhouetteModel(internalClusters);
+		} catch (InvalidSettingsException e) {
+			throw new IOException(e);
+		}
+	}
+
+	/** Shares the few distinct colors between all rows instead of creating one object per row */
+	private static final class ColorCache {
+
+		private final Map<Integer, Color> colors = new HashMap<>();
+
+		Color get(int rgb) {
+			return colors.computeIfAbsent(rgb, Color::new);
+		}
+	}
+}
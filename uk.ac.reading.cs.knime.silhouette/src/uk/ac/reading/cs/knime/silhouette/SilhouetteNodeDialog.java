@@ -4,8 +4,12 @@ import org.knime.core.data.DoubleValue;
 import org.knime.core.data.IntValue;
 import org.knime.core.data.StringValue;
 import org.knime.core.node.defaultnodesettings.DefaultNodeSettingsPane;
+import org.knime.core.node.defaultnodesettings.DialogComponentBoolean;
 import org.knime.core.node.defaultnodesettings.DialogComponentColumnFilter;
 import org.knime.core.node.defaultnodesettings.DialogComponentColumnNameSelection;
+import org.knime.core.node.defaultnodesettings.DialogComponentNumber;
+import org.knime.core.node.defaultnodesettings.DialogComponentString;
+import org.knime.core.node.defaultnodesettings.DialogComponentStringSelection;
 import org.knime.core.node.defaultnodesettings.SettingsModelFilterString;
 import org.knime.core.node.defaultnodesettings.SettingsModelString;
 
@@ -40,6 +44,28 @@ public class SilhouetteNodeDialog extends DefaultNodeSettingsPane {
 		addDialogComponent(clusterColumn);
 		addDialogComponent(columnFilter);
 
+		// Execution planning
+		createNewGroup("Execution");
+		addDialogComponent(new DialogComponentStringSelection(SilhouetteExecutionSettings.createStrategyModel(),
+				"Strategy: ", SilhouetteExecutionSettings.getStrategyLabels()));
+		addDialogComponent(new DialogComponentNumber(SilhouetteExecutionSettings.createHeapBudgetModel(),
+				"Heap budget in MB (0 = half of max. heap): ", 256));
+		addDialogComponent(new DialogComponentNumber(SilhouetteExecutionSettings.createTimeBudgetModel(),
+				"Time budget in s (0 = no limit): ", 600));
+		addDialogComponent(new DialogComponentNumber(SilhouetteExecutionSettings.createSampleSizeModel(),
+				"Sample size: ", 1000));
+		addDialogComponent(new DialogComponentNumber(SilhouetteExecutionSettings.createReferenceSizeModel(),
+				"Reference rows per cluster (0 = all rows): ", 1000));
+		addDialogComponent(new DialogComponentString(SilhouetteExecutionSettings.createSpillDirectoryModel(),
+				"Spill directory (empty = KNIME temp directory): "));
+		addDialogComponent(new DialogComponentNumber(SilhouetteExecutionSettings.createSpillTileRowsModel(),
+				"Spill tile rows: ", 64));
+		addDialogComponent(new DialogComponentNumber(SilhouetteExecutionSettings.createThreadsModel(),
+				"Threads (0 = one per processor): ", 1));
+		addDialogComponent(new DialogComponentBoolean(SilhouetteExecutionSettings.createSymmetricModel(),
+				"Symmetric accumulation (each distance once)"));
+		closeCurrentGroup();
+
 	}
 }
 
@@ -2,12 +2,13 @@ package uk.ac.reading.cs.knime.silhouette;
 
 import java.awt.Color;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.knime.core.data.DataCell;
 import org.knime.core.data.DataColumnSpec;
@@ -15,6 +16,7 @@ import org.knime.core.data.DataColumnSpecCreator;
 import org.knime.core.data.DataRow;
 import org.knime.core.data.DataTableSpec;
 import org.knime.core.data.DataTableSpecCreator;
+import org.knime.core.data.DataType;
 import org.knime.core.data.DoubleValue;
 import org.knime.core.data.IntValue;
 import org.knime.core.data.RowKey;
@@ -24,24 +26,22 @@ import org.knime.core.data.container.CloseableRowIterator;
 import org.knime.core.data.def.DefaultRow;
 import org.knime.core.data.def.DoubleCell;
 import org.knime.core.data.def.DoubleCell.DoubleCellFactory;
-import org.knime.core.data.def.IntCell;
-import org.knime.core.data.def.StringCell;
 import org.knime.core.node.BufferedDataContainer;
 import org.knime.core.node.BufferedDataTable;
 import org.knime.core.node.CanceledExecutionException;
 import org.knime.core.node.ExecutionContext;
 import org.knime.core.node.ExecutionMonitor;
 import org.knime.core.node.InvalidSettingsException;
+import org.knime.core.node.NodeLogger;
 import org.knime.core.node.NodeModel;
-import org.knime.core.node.NodeSettings;
 import org.knime.core.node.NodeSettingsRO;
 import org.knime.core.node.NodeSettingsWO;
 import org.knime.core.node.defaultnodesettings.SettingsModelFilterString;
 import org.knime.core.node.defaultnodesettings.SettingsModelString;
 import org.knime.core.node.port.PortType;
-import org.knime.distmatrix.type.DistanceVectorBlobDataCell;
-import org.knime.distmatrix.type.DistanceVectorDataCell;
+import org.knime.core.util.FileUtil;
 import org.knime.distmatrix.type.DistanceVectorDataCellFactory;
+import org.knime.distmatrix.type.DistanceVectorDataValue;
 
 /**
  * <code>NodeModel</code> for the "Silhouette" node.
@@ -60,9 +60,6 @@ public class SilhouetteNodeModel extends NodeModel {
 	/** Constant for the distance matrix input port index. */
 	public final int DISTANCE_PORT = 1;
 
-	/** Internal model save file name */
-	private final String SETTINGS_FILE_NAME = "silhouetteInternals";
-
 	/** The config key for the column containing cluster data */ 
 	public static final String CFGKEY_CLUSTER_COLUMN = "clusterColumnIndex"; 
 
@@ -78,6 +75,9 @@ public class SilhouetteNodeModel extends NodeModel {
 	/** Config key for the used columns. */
 	public static final String CFGKEY_COLUMNS = "includedColumns";
 
+	/** Config key for the execution strategy, see {@link #getStrategySetting(String)} */
+	public static final String CFGKEY_STRATEGY = SilhouetteExecutionSettings.CFGKEY_STRATEGY;
+
 	/** The settings model for the column containing cluster data */ 
 	public final SettingsModelString m_clusterColumn =
 			new SettingsModelString(SilhouetteNodeModel.CFGKEY_CLUSTER_COLUMN,
@@ -87,12 +87,27 @@ public class SilhouetteNodeModel extends NodeModel {
 	private final SettingsModelFilterString m_usedColumns = 
 			new SettingsModelFilterString(CFGKEY_COLUMNS);
 
+	/** Strategy and budgets of the execution planning */
+	private final SilhouetteExecutionSettings m_executionSettings = new SilhouetteExecutionSettings();
+
 	/** Internal model containing info about clusters */ 
 	private SilhouetteModel m_silhouetteModel;
 
+	/** Directory of the internals not loaded yet, see {@link #getSilhouetteModel()} */
+	private File m_internDir;
+
+	/** Private copy of the loaded internals, KNIME clears their directory before saving again */
+	private File m_internCopy;
+
+	/** Progress of the last execution for JMX clients, registered until the node is reset */
+	private SilhouetteProgress m_progress;
+
 	/** List of inclusion/exclusion of all the columns other than the cluster data column */
 	private boolean[] m_includeColumn;
 
+	/** Typed access to the included columns and the cluster column, resolved in execute */
+	private SilhouetteColumns m_columns;
+
 	/** Index of chosen cluster column */
 	private int clusterColumnIndex = 0;
 
@@ -102,17 +117,31 @@ public class SilhouetteNodeModel extends NodeModel {
 	/** Whether we have a distance matrix input or not */
 	private boolean distanceMatrixInput = false;
 
+	/** Seed of the sampled strategy, fixed so that re-executions give the same coefficients */
+	private static final long SAMPLE_SEED = 42;
+
+	/** Row pairs between two cancellation checks in the quadratic loops (a power of two) */
+	private static final int PAIR_CHUNK = 1 << 16;
+
+	/** Rows between two cancellation checks in the linear scans (a power of two) */
+	private static final int ROW_CHUNK = 1 << 10;
+
+	/** Rows of a tile of the blocked computation, two tiles of features fit into the L2 cache */
+	private static final int TILE_ROWS = 256;
+
 	/** Array for containing descriptive statistical data about the coefficients */
 	private Object[][] statsValues;
 
 	// Calculate statistics table based on silhouette values
-	// Names of columns in JTable 
+	// Names of columns in JTable, the confidence interval only for a stratified sample
 	private static final String[] statsColumns = {"Cluster",
 			"Avg. S",
 			"Sqr. Avg. S",
 			"Std. Dev.",
 			"Num. S<0",
-			"% S<0"};
+			"% S<0",
+			"Avg. S lower 95%",
+			"Avg. S upper 95%"};
 
 	/**
 	 * Constructor for the node model.
@@ -121,6 +150,15 @@ public class SilhouetteNodeModel extends NodeModel {
 		super(createPortTypes(2, 2), createPortTypes(2));
 	}
 
+	/**
+	 * @param strategy the name of an execution strategy, e.g. <code>BLOCKED</code>
+	 * @return the value of the setting {@link #CFGKEY_STRATEGY} choosing the strategy
+	 * @throws IllegalArgumentException if there is no strategy of this name
+	 */
+	public static String getStrategySetting(String strategy) {
+		return SilhouettePlanner.Strategy.valueOf(strategy).getLabel();
+	}
+
 	/**
 	 * {@inheritDoc}
 	 */
@@ -128,320 +166,217 @@ public class SilhouetteNodeModel extends NodeModel {
 	protected BufferedDataTable[] execute(final BufferedDataTable[] inData,
 			final ExecutionContext exec) throws Exception {
 
+		// live progress for JMX clients, it keeps the last state until the node is reset
+		unregisterProgress();
+		m_progress = SilhouetteProgress.register();
+		return execute(inData, exec, m_progress);
+	}
+
+	private void unregisterProgress() {
+		if(m_progress != null) {
+			m_progress.unregister();
+			m_progress = null;
+		}
+	}
+
+	private BufferedDataTable[] execute(final BufferedDataTable[] inData,
+			final ExecutionContext exec, final SilhouetteProgress progress) throws Exception {
+
 		// Some variable initialization, preparing for actual work
 		BufferedDataTable data = inData[DATA_PORT];
 		BufferedDataTable distanceMatrix = inData[DISTANCE_PORT];
 		m_dimension = data.getDataTableSpec().getNumColumns();
 		processIncludeColumns(data.getDataTableSpec());
-		CloseableRowIterator distanceMatrixIterator = null;
-		CloseableRowIterator distanceMatrixIterator2 = null;
+		m_columns = new SilhouetteColumns(data.getDataTableSpec(), m_includeColumn, clusterColumnIndex);
+
+		// Choosing how to compute the coefficients within the heap and time budgets
+		SilhouettePlanner.Plan plan = SilhouettePlanner.plan(m_executionSettings, data.size(),
+				m_columns.getDimensions(), countClusters(data.getDataTableSpec()), distanceMatrixInput);
+		NodeLogger.getLogger(getClass()).info(plan);
+		if(plan.getWarning() != null) {
+			setWarningMessage(plan.getWarning());
+		}
+		boolean parallel = !distanceMatrixInput && plan.getStrategy() != SilhouettePlanner.Strategy.STREAMING;
+		progress.setThreadsInUse(parallel ? m_executionSettings.getThreads() : 1);
+		BufferedDataTable input = data;
+		boolean[] sampled = null;
+		if(plan.getStrategy() == SilhouettePlanner.Strategy.SAMPLED && !distanceMatrixInput) {
+			exec.setMessage("Drawing sample");
+			sampled = new boolean[(int) input.size()];
+			data = sample(input, plan.getEvaluatedRows(), sampled, exec);
+		}
+		SilhouetteStratifiedSample stratified = null;
+		if(plan.getStrategy() == SilhouettePlanner.Strategy.STRATIFIED && !distanceMatrixInput) {
+			exec.setMessage("Drawing stratified sample");
+			stratified = drawStratifiedSample(input, plan.getEvaluatedRows(), exec);
+			sampled = stratified.getSampled();
+			data = copyRows(input, sampled, exec);
+		}
 
 		// Load distance matrix if available, calculate it otherwise
-		if(!distanceMatrixInput) {
+		long n = data.size();
+		SilhouetteProfiling.Phase phase = SilhouetteProfiling.begin("distanceMatrix");
+		progress.startPhase("distanceMatrix", distanceMatrixInput ? 0 : n);
+		SilhouetteCondensedMatrix condensed = null;
+		double[] features = null;
+		boolean simplified = !distanceMatrixInput && plan.getStrategy() == SilhouettePlanner.Strategy.SIMPLIFIED;
+		boolean spilled = !distanceMatrixInput && plan.getStrategy() == SilhouettePlanner.Strategy.SPILLED;
+		double[] reference = null;
+		if(stratified != null) {
+			// No distance matrix, the features of the sample and of the reference rows are loaded once
+			exec.setMessage("Loading Features");
+			features = loadFeatures(data, exec, 0.2);
+			reference = loadReferenceFeatures(input, stratified, exec);
+		} else if(simplified || spilled || (!distanceMatrixInput && plan.getStrategy() == SilhouettePlanner.Strategy.BLOCKED)) {
+			// No distance matrix in the heap, the features are loaded once and the distances computed tile by
+			// tile (or to the centroids of the clusters); a spilled matrix is written with the coefficients
+			exec.setMessage("Loading Features");
+			features = loadFeatures(data, exec, 0.45);
+		} else if(!distanceMatrixInput && plan.getStrategy() != SilhouettePlanner.Strategy.STREAMING) {
+			// No distance matrix input and it fits into memory, let's calculate it into a primitive array
+			exec.setMessage("Calculating Distances");
+			condensed = calculateCondensedMatrix(data, exec, progress);
+		} else if(!distanceMatrixInput) {
 			// No distance matrix input, let's calculate it
 			
-			// Variables for the calculated distances
-			BufferedDataContainer distanceValues = exec.createDataContainer(getDistanceMatrixTableSpec());
-			double[] distanceMatrixValues = new double[(int) data.size()];
+			// The features are decoded once, the distances are written to disk and read back block by block
+			exec.setMessage("Loading Features");
+			double[] rowFeatures = loadFeatures(data, exec, 0.1);
+			int dimensions = m_columns.getDimensions();
+			BufferedDataContainer distanceValues = exec.createDataContainer(getDistanceMatrixTableSpec(), false, 0);
 
 			// Initializing variables for the calculation loop
-			int i1 = 0, i2 = 0;
-			CloseableRowIterator iterator1 = data.iterator(), iterator2 = data.iterator();
-			DataRow currRow, compareRow;
-			ArrayList<Integer> integers1 = new ArrayList<>(), integers2 = new ArrayList<>();
-			ArrayList<Double> doubles1 = new ArrayList<>(), doubles2 = new ArrayList<>();
-
-			// Iterating over the data matrix
-			while(iterator1.hasNext()) {
-				
-				i2 = 0;
-				currRow = iterator1.next();
-				integers1 = new ArrayList<>();
-				doubles1 = new ArrayList<>();
-
-				// Getting values of dimensions of each type in current point 
-				for(int i = 0; i < currRow.getNumCells(); i++) {
-					if(i != clusterColumnIndex && m_includeColumn[i]) {
-						// It is needed to separate values into separate arrays for each type
-						// beacuse the distanca calculation method will calculate the distance
-						// between entries of different types separately and we also have to check
-						// that the dimensions match on the 2 points
-						if(currRow.getCell(i).getType().getCellClass().getSimpleName().equals("IntCell")){
-							integers1.add(((IntCell) currRow.getCell(i)).getIntValue());
-						} else if(currRow.getCell(i).getType().getCellClass().getSimpleName().equals("DoubleCell")) {
-							doubles1.add(((DoubleCell) currRow.getCell(i)).getDoubleValue());
-						} else {
-							//TODO throw an exception
-						}
-					}
-				}
-
-				
-				// Iterating over the data matrix again, because we are calculating the distance from every point to every other point
-				iterator2 = data.iterator();
-				distanceMatrixValues = new double[i1];
-				
-				while(iterator2.hasNext()) {
-					if(i2 == data.size()) break;
-					if(i2 == i1) {
-						i2++;
-						break;
-					}
-
-					compareRow = iterator2.next();
-
-					integers2 = new ArrayList<>();
-					doubles2 = new ArrayList<>();
-
-					// Getting values of dimensions of each type in current point 
-					for(int i = 0; i < compareRow.getNumCells(); i++) {
-						if(i != clusterColumnIndex && m_includeColumn[i]) {
-							// It is needed to separate values into separate arrays for each type
-							// beacuse the distanca calculation method will calculate the distance
-							// between entries of different types separately and we also have to check
-							// that the dimensions match on the 2 points
-							if(compareRow.getCell(i).getType().getCellClass().getSimpleName().equals("IntCell")){
-								integers2.add(((IntCell) compareRow.getCell(i)).getIntValue());
-							} else if(compareRow.getCell(i).getType().getCellClass().getSimpleName().equals("DoubleCell")) {
-								doubles2.add(((DoubleCell) compareRow.getCell(i)).getDoubleValue());
-							} else {
-								//TODO throw an exception
-							}
-						}
-					}
-
-					// Calculating Euclidean Distance
-					distanceMatrixValues[i2] = euclideanDistance(
-							doubles1.stream().toArray(Double[]::new),
-							integers1.stream().toArray(Integer[]::new),
-							doubles2.stream().toArray(Double[]::new),
-							integers2.stream().toArray(Integer[]::new));
-
-					i2 ++;
+			long pairs = 0;
+			double totalPairs = n * (n - 1) / 2.0;
+			exec.setMessage("Calculating Distances");
+
+			// Iterating over the rows, calculating the distance from every point to every point before it
+			for(int i1 = 0; i1 < n; i1++) {
+				double[] distanceMatrixValues = new double[i1];
+				for(int i2 = 0; i2 < i1; i2++) {
+					distanceMatrixValues[i2] = SilhouetteKernel.euclideanDistance(rowFeatures, dimensions, i1, i2);
 				}
 
 				// Saving distance values
 				distanceValues.addRowToTable(new DefaultRow(RowKey.createRowKey((long)i1), DistanceVectorDataCellFactory.createCell(distanceMatrixValues, 0)));
+				progress.setRowsProcessed(i1 + 1);
 
-				i1 ++;
+				// Checking for cancellation between chunks of distances
+				pairs += i1;
+				if(((i1 + 1) & (ROW_CHUNK - 1)) == 0) checkpoint(exec, 0.1, 0.45, pairs, totalPairs);
 			}
 
 			// Housekeeping
 			distanceValues.close();
-			iterator1.close();
-			iterator2.close();
 			
 			// Converting distance values data container into an iterable table for Silhouette calculation
 			distanceMatrix = distanceValues.getTable();
 		}
+		// the features or the lower triangle of the matrix
+		phase.finish(n, features != null ? 8L * features.length : n * (n - 1) / 2 * 8);
 
 		// Loading names and colours of clusters into internal model
+		phase = SilhouetteProfiling.begin("clusterRegistration");
+		progress.startPhase("clusterRegistration", n);
 		
 		// Initializing variables, preparing for main loop
 		ArrayList<InternalCluster> clusterData = new ArrayList<>();
 		CloseableRowIterator dataIterator1 = data.iterator();
 		DataRow currRow = null;
-		DataCell currClusterLabelCell = null;
 		int rowCount = 0;
 		ArrayList<Object> clusterNames = new ArrayList<>();
 		ArrayList<ArrayList<Color>> clusterColors = new ArrayList<>();
 		ArrayList<ArrayList<Integer>> clusterRowIndices = new ArrayList<>();
-		boolean leave = false;
+		// dictionary of the labels, the cluster index of every row is all the pair loops need
+		HashMap<Object, Integer> clusterIndices = new HashMap<>();
+		int[] clusterOfRow = new int[(int) n], positionInCluster = new int[(int) n];
+		exec.setMessage("Registering Clusters");
 
 		// Iterating through every cell in the column containing cluster names 
 		while(dataIterator1.hasNext()) {
 
 			// Keeping the executing environment updated about our progress
-			exec.getProgressMonitor().setMessage("Calculating Cluster Distances");
-			exec.setProgress(((double)rowCount)/((double)data.size())/2);
+			if((rowCount & (ROW_CHUNK - 1)) == 0) checkpoint(exec, 0.45, 0.5, rowCount, n);
 
 			// Jumping over to next row
 			currRow = dataIterator1.next();
-			currClusterLabelCell = currRow.getCell(clusterColumnIndex);			
-
-			// We need to handle the cells differently depending on whether the cluster labels are strings or integers
-			if(currClusterLabelCell.getType().getCellClass().getSimpleName().equals("StringCell")){
-
-				leave = false;
-				// Checking whether we already encountered this cluster
-				for(int i = 0; i < clusterNames.size(); i++) {
-					if(((StringCell)currClusterLabelCell).getStringValue().equals(clusterNames.get(i))){
-						// We have, so let's add this row to that cluster
-						clusterRowIndices.get(i).add(rowCount);
-						rowCount ++;
-						clusterColors.get(i).add(data.getSpec().getRowColor(currRow).getColor());
-						leave = true;
-						continue;
-					}
-				}
-				if(leave) continue;
-				
-				// We haven't, so let's register as a new cluster
-				clusterNames.add(((StringCell)currClusterLabelCell).getStringValue());
-				clusterColors.add(new ArrayList<Color>());
-				clusterColors.get(clusterColors.size()-1).add(data.getSpec().getRowColor(currRow).getColor());
 
-				clusterRowIndices.add(new ArrayList<Integer>());
-				clusterRowIndices.get((clusterRowIndices.size()==0?0:(clusterRowIndices.size()-1))).add(rowCount);
-				rowCount ++;
-
-			} else if(currClusterLabelCell.getType().getCellClass().getSimpleName().equals("IntCell")) {
-
-				leave = false;
-				// Checking whether we already encountered this cluster
-				for(int i = 0; i < clusterNames.size(); i++) {
-					if(((IntCell)currClusterLabelCell).getIntValue() == ((Integer)(clusterNames.get(i)))){
-						// We have, so let's add this row to that cluster
-						clusterRowIndices.get(i).add(rowCount);
-						rowCount ++;
-						clusterColors.get(i).add(data.getSpec().getRowColor(currRow).getColor());
-						leave = true;
-						continue;
-					}
-				}
-				if(leave) continue;
-				
-				// We haven't, so let's register as a new cluster
-				clusterNames.add(new Integer(((IntCell)currClusterLabelCell).getIntValue()));
-				clusterColors.add(new ArrayList<Color>());
-				clusterColors.get(clusterColors.size()-1).add(data.getSpec().getRowColor(currRow).getColor());
+			// The label is a string or an integer depending on the type of the cluster column
+			Object label = m_columns.readLabel(currRow);
 
+			// Checking whether we already encountered this cluster, registering a new one otherwise
+			Integer clusterIndex = clusterIndices.get(label);
+			if(clusterIndex == null) {
+				clusterIndex = clusterNames.size();
+				clusterIndices.put(label, clusterIndex);
+				clusterNames.add(label);
+				clusterColors.add(new ArrayList<Color>());
 				clusterRowIndices.add(new ArrayList<Integer>());
-				clusterRowIndices.get((clusterRowIndices.size()==0?0:(clusterRowIndices.size()-1))).add(rowCount);
-				rowCount ++;
 			}
+
+			// Adding this row to that cluster
+			clusterOfRow[rowCount] = clusterIndex;
+			positionInCluster[rowCount] = clusterRowIndices.get(clusterIndex).size();
+			clusterRowIndices.get(clusterIndex).add(rowCount);
+			clusterColors.get(clusterIndex).add(data.getSpec().getRowColor(currRow).getColor());
+			rowCount ++;
 		}
+		dataIterator1.close();
 
 		//converting the temporal data into internal clusters and adding them to silhouette model
-		if(currClusterLabelCell.getType().getCellClass().getSimpleName().equals("StringCell")){
-			for(int i = 0; i < clusterNames.size(); i++) {
-				clusterData.add(new InternalCluster((String) clusterNames.get(i), clusterColors.get(i).toArray(new Color[] {}), clusterRowIndices.get(i).stream().mapToInt(Integer::intValue).toArray()));
-			}
-		} else if(currClusterLabelCell.getType().getCellClass().getSimpleName().equals("IntCell")) {
-			for(int i = 0; i < clusterNames.size(); i++) {
-				clusterData.add(new InternalCluster((Integer) clusterNames.get(i), clusterColors.get(i).toArray(new Color[] {}), clusterRowIndices.get(i).stream().mapToInt(Integer::intValue).toArray()));
+		int[] clusterSizes = new int[clusterNames.size()];
+		for(int i = 0; i < clusterNames.size(); i++) {
+			clusterSizes[i] = clusterRowIndices.get(i).size();
+			int[] indices = clusterRowIndices.get(i).stream().mapToInt(Integer::intValue).toArray();
+			if(clusterNames.get(i) instanceof String) {
+				clusterData.add(new InternalCluster((String) clusterNames.get(i), clusterColors.get(i).toArray(new Color[] {}), indices));
+			} else {
+				clusterData.add(new InternalCluster((Integer) clusterNames.get(i), clusterColors.get(i).toArray(new Color[] {}), indices));
 			}
 		}
+		SilhouetteClusterLabels labels = new SilhouetteClusterLabels(clusterOfRow, positionInCluster, clusterSizes);
+		// the clusters of a stratified sample in the order they are registered from the sample
+		int[] clusterOfStratum = stratified != null ? stratified.encode(clusterIndices) : null;
 
 		// Put all extracted cluster data into an internal container model */
 		m_silhouetteModel = new SilhouetteModel(clusterData.toArray(new InternalCluster[clusterData.size()]));
+		phase.finish(n, n * 4);
+		progress.setRowsProcessed(n);
+		// the internal model plus the distance matrix if it is kept in memory
+		progress.setMemoryFootprint(plan.getHeapBytes());
 
 		// Now let's calculate the Silhouette Coefficients  
-		// These are the main variables we are going to use in the loop, 
-		// let's give them appropriate initial values 
-		int currentRowCount = 0, compareRowCount = 0;
-		distanceMatrixIterator = distanceMatrix.iterator();
-		distanceMatrixIterator2 = distanceMatrix.iterator();
-		CloseableRowIterator dataIterator = data.iterator(), dataIterator2 = data.iterator();
-		DataRow currentDistanceRow, compareDistanceRow, currentDataRow, compareDataRow;
-		DataCell currentDistanceVectorCell,  compareDistanceVectorCell;
-		StringCell currentDataCell,  compareDataCell;
-		double[] clusterDistances = new double[m_silhouetteModel.getClusterData().length];
+		phase = SilhouetteProfiling.begin("coefficients");
+		progress.startPhase("coefficients", n);
 		BufferedDataContainer LabeledInput = exec.createDataContainer(getOutputDataSpec(data.getSpec()));
-		int[] ownCluster = new int[(int) data.size()];
-		double ownDist, neighborDist, silhouetteCoefficient = 0;
-
-		// Iterating through the entire distance matrix AND the original data
-		while(distanceMatrixIterator.hasNext() && dataIterator.hasNext()) {	
-
-			// Keeping the executing environment updated about our progress
-			exec.getProgressMonitor().setMessage("Calculating Coefficients");
-			exec.setProgress(((double)currentRowCount)/((double)data.size())/2+0.5);
-
-			// Jumping to the next rows with both iterators
-			currentDistanceRow = distanceMatrixIterator.next();
-			currentDataRow = dataIterator.next();
-
-			// Updating the currently used cells
-			currentDistanceVectorCell = (DataCell) currentDistanceRow.getCell(currentDistanceRow.getNumCells()-1);
-			currentDataCell = (StringCell) currentDataRow.getCell(clusterColumnIndex);
-
-			// Updating the secondary iterators for the values to compare
-			distanceMatrixIterator2 = distanceMatrix.iterator();
-			dataIterator2 = data.iterator();
-
-			// Counting the progress in the secondary loop
-			compareRowCount = 0;
-
-			// distances from the current object to all the other clusters
-			clusterDistances = new double[m_silhouetteModel.getClusterData().length];
-
-			// Iterating through the entire distance matrix AND the original data again
-			while(distanceMatrixIterator2.hasNext() && dataIterator2.hasNext()) {
-				// Taking the next rows
-				compareDistanceRow = distanceMatrixIterator2.next();
-				compareDataRow = dataIterator2.next();
-
-				compareDistanceVectorCell = (DataCell) compareDistanceRow.getCell(compareDistanceRow.getNumCells()-1);
-
-				compareDataCell = (StringCell) compareDataRow.getCell(clusterColumnIndex);
-
-				// Iterating through all the 
-				for(int clusterIndex = 0; clusterIndex < m_silhouetteModel.getClusterData().length; clusterIndex++) {
-					if(m_silhouetteModel.getClusterData()[clusterIndex].getName().equals(currentDataCell.getStringValue())) {
-						// we also use this loop to construct an internal, temporary list of cluster labels
-						ownCluster[currentRowCount] = clusterIndex;
-					}
-					// if we are in this cluster
-					if(m_silhouetteModel.getClusterData()[clusterIndex].getName().equals(compareDataCell.getStringValue()) && currentRowCount != compareRowCount) {
-						// if the two rows aren't the same
-						// (DistanceVectorDataCells and DistanceVectorBlobDataCells have to be handled separately)
-						if(currentDistanceVectorCell.getType().getCellClass().getSimpleName().equals("DistanceVectorBlobDataCell")){
-							if(compareDistanceVectorCell.getType().getCellClass().getSimpleName().equals("DistanceVectorBlobDataCell")){
-								// We just add the individual distance to the cluster sum, already dividing by the number of rows in the cluster to get an accurate mean
-								clusterDistances[clusterIndex] +=((DistanceVectorBlobDataCell) currentDistanceVectorCell).getDistance((DistanceVectorBlobDataCell)compareDistanceVectorCell)
-										/ (m_silhouetteModel.getClusterData()[clusterIndex].getDataIndices().length 
-												-(currentDataCell.getStringValue().equals(compareDataCell.getStringValue())?1:0));
-							} else {
-								clusterDistances[clusterIndex] +=((DistanceVectorBlobDataCell) currentDistanceVectorCell).getDistance((DistanceVectorDataCell)compareDistanceVectorCell)
-										/ (m_silhouetteModel.getClusterData()[clusterIndex].getDataIndices().length 
-												-(currentDataCell.getStringValue().equals(compareDataCell.getStringValue())?1:0));
-							}
-						} else {
-							if(compareDistanceVectorCell.getType().getCellClass().getSimpleName().equals("DistanceVectorDataCell")){
-								clusterDistances[clusterIndex] +=((DistanceVectorDataCell) currentDistanceVectorCell).getDistance((DistanceVectorDataCell)compareDistanceVectorCell)
-										/ (m_silhouetteModel.getClusterData()[clusterIndex].getDataIndices().length 
-												-(currentDataCell.getStringValue().equals(compareDataCell.getStringValue())?1:0));
-							} else {
-								clusterDistances[clusterIndex] +=((DistanceVectorDataCell) currentDistanceVectorCell).getDistance((DistanceVectorBlobDataCell)compareDistanceVectorCell)
-										/ (m_silhouetteModel.getClusterData()[clusterIndex].getDataIndices().length 
-												-(currentDataCell.getStringValue().equals(compareDataCell.getStringValue())?1:0));
-							}
-						}
-					}		
-				}
-				compareRowCount++;		
-			}
-
-			// Mean distance from own cluster
-			ownDist = clusterDistances[ownCluster[currentRowCount]];
-			neighborDist = Double.MAX_VALUE;
-			// Finding cluster with lowest mean distance from current object
-			for(int clusterIndex = 0; clusterIndex < clusterDistances.length; clusterIndex++ ) {
-				if(clusterDistances[clusterIndex] < neighborDist && ownDist != clusterDistances[clusterIndex]) {
-					neighborDist = clusterDistances[clusterIndex];
-				}
-			}
-			if(neighborDist == Double.MAX_VALUE) neighborDist = ownDist;
-
-			// calculating actual Silhouette value 
-			if(ownDist == neighborDist || Math.max(ownDist,  neighborDist) == 0) silhouetteCoefficient = 0;
-			else silhouetteCoefficient = (neighborDist - ownDist) / Math.max(ownDist,  neighborDist);
-
-			// setting value in internal data model
-			m_silhouetteModel.getClusterData()[ownCluster[currentRowCount]].setCoefficient(currentRowCount, silhouetteCoefficient);;
-			
-			// appending value to labeled table
-			LabeledInput.addRowToTable(new AppendedColumnRow(currentDataRow, new DoubleCell(silhouetteCoefficient)));			
-
-			currentRowCount++;
+		// the coefficients of a sample are appended to all input rows in the end
+		double[] sampleCoefficients = sampled != null ? new double[(int) n] : null;
+		exec.setMessage("Calculating Coefficients");
+		if(stratified != null) {
+			calculateStratifiedCoefficients(features, m_columns.getDimensions(), labels, stratified, clusterOfStratum,
+					reference, data, LabeledInput, sampleCoefficients, exec, progress);
+		} else if(spilled) {
+			calculateSpilledCoefficients(features, m_columns.getDimensions(), labels, data, LabeledInput,
+					sampleCoefficients, exec, progress);
+		} else if(simplified) {
+			calculateSimplifiedCoefficients(features, m_columns.getDimensions(), labels, data, LabeledInput, exec,
+					progress);
+		} else if(features != null) {
+			calculateCoefficients(features, m_columns.getDimensions(), labels, data, LabeledInput, sampleCoefficients,
+					exec, progress);
+		} else if(condensed != null) {
+			calculateCoefficients(condensed, labels, data, LabeledInput, sampleCoefficients, exec, progress);
+		} else {
+			calculateCoefficients(distanceMatrix, labels, data, LabeledInput, sampleCoefficients, exec, progress);
 		}
 
-		// housekeeping		dataIterator.close(); 
-		dataIterator2.close();
-		distanceMatrixIterator.close();
-		distanceMatrixIterator2.close();
 		LabeledInput.close();
+		BufferedDataTable labeled = LabeledInput.getTable();
+		if(sampled != null) labeled = appendSampleCoefficients(input, sampled, sampleCoefficients, exec);
+		// the distances (read once, or once per block of rows for a large matrix table)
+		phase.finish(n, n * (n - 1) / 2 * 8);
+		phase = SilhouetteProfiling.begin("statistics");
+		progress.startPhase("statistics", 0);
 
 		// Data array used in JTable 
 		statsValues = new Object[m_silhouetteModel.getClusterData().length + 1][statsColumns.length];
@@ -452,6 +387,8 @@ public class SilhouetteNodeModel extends NodeModel {
 		// 2 - Standard Deviation
 		// 3 - Number of negative coefficients
 		// 4 - % of negative coefficients 
+		// 5 - Lower bound of the 95% confidence interval of the average (stratified sample only)
+		// 6 - Upper bound of the 95% confidence interval of the average (stratified sample only)
 
 		double[] vals = new double[statsColumns.length-1],
 				avgVals = new double[statsColumns.length-1],
@@ -464,6 +401,14 @@ public class SilhouetteNodeModel extends NodeModel {
 			maxVals[i] = Double.MIN_VALUE;
 		}
 
+		// A stratified sample weighs the clusters by their rows in the input, not in the sample
+		int[] populationSizes = stratified != null ? stratified.getClusterSizes(clusterOfStratum) : null;
+		long population = 0;
+		if(populationSizes != null) {
+			for(int size : populationSizes) population += size;
+		}
+		double averageVariance = 0;
+
 		// Iterating through every cluster
 		for(int i = 0; i < m_silhouetteModel.getClusterData().length; i++) {
 
@@ -498,6 +443,21 @@ public class SilhouetteNodeModel extends NodeModel {
 			}
 			vals[2] = Math.sqrt(vals[2] / m_silhouetteModel.getClusterData()[i].getCoefficients().length);
 
+			// Confidence interval of the average of a stratified sample, none for exact coefficients
+			double weight;
+			if(populationSizes != null) {
+				double standardError = SilhouetteStratifiedSample.standardError(
+						m_silhouetteModel.getClusterData()[i].getCoefficients(), vals[0], populationSizes[i]);
+				vals[5] = vals[0] - SilhouetteStratifiedSample.Z_95 * standardError;
+				vals[6] = vals[0] + SilhouetteStratifiedSample.Z_95 * standardError;
+				weight = (double) populationSizes[i] / population;
+				averageVariance += weight * weight * standardError * standardError;
+			} else {
+				vals[5] = Double.NaN;
+				vals[6] = Double.NaN;
+				weight = (double)m_silhouetteModel.getClusterData()[i].getCoefficients().length/(double)m_silhouetteModel.getRowCount();
+			}
+
 			// Putting values in data array and checking if there are minimums or maximums 
 			statsValues[i][0] = m_silhouetteModel.getClusterData()[i].getName();;
 			for(int i2 = 0; i2 < vals.length; i2++) {
@@ -505,7 +465,7 @@ public class SilhouetteNodeModel extends NodeModel {
 				statsValues[i][i2 + 1] = vals[i2];
 
 				// Adding value to avg sum 
-				avgVals[i2] += vals[i2]*((double)m_silhouetteModel.getClusterData()[i].getCoefficients().length/(double)m_silhouetteModel.getRowCount());
+				avgVals[i2] += vals[i2]*weight;
 
 				// Checking if it is a min or a max 
 				if(vals[i2] < minVals[i2]) minVals[i2] = vals[i2];
@@ -513,26 +473,735 @@ public class SilhouetteNodeModel extends NodeModel {
 			}
 		}
 		
+		// The strata are sampled independently, the variances of their averages add up
+		if(populationSizes != null) {
+			avgVals[5] = avgVals[0] - SilhouetteStratifiedSample.Z_95 * Math.sqrt(averageVariance);
+			avgVals[6] = avgVals[0] + SilhouetteStratifiedSample.Z_95 * Math.sqrt(averageVariance);
+		}
+
 		// Adding the average row to the bottom 
 		statsValues[statsValues.length-1][0] = "Weighted Avg.";
 		for(int i2 = 0; i2 < avgVals.length; i2++) {
 			statsValues[statsValues.length-1][i2+1] = avgVals[i2];
 		}
 
-		BufferedDataContainer stats = exec.createDataContainer(getStatTableSpec());
+		DataTableSpec statsSpec = getStatTableSpec();
+		BufferedDataContainer stats = exec.createDataContainer(statsSpec);
 		DefaultRow newRow;
-		DataCell[] statCells = new DataCell[statsValues[0].length-1];
+		DataCell[] statCells = new DataCell[statsSpec.getNumColumns()];
 
 		for(Object[] o : statsValues) {
-			for(int i = 1; i < o.length; i++) {
-				statCells[i-1] = (DoubleCell) DoubleCellFactory.create((Double)o[i]);
+			for(int i = 1; i <= statCells.length; i++) {
+				// missing if there is no confidence interval
+				double value = (Double)o[i];
+				statCells[i-1] = Double.isNaN(value) ? DataType.getMissingCell() : DoubleCellFactory.create(value);
 			}
 			newRow = new DefaultRow(new RowKey((String) o[0]), statCells);
 			stats.addRowToTable(newRow);
 		}
 		stats.close();
+		phase.finish(n, n * 8);
 		// Return it 
-		return new BufferedDataTable[]{LabeledInput.getTable(), stats.getTable()};
+		return new BufferedDataTable[]{labeled, stats.getTable()};
+	}
+
+	/**
+	 * Computes the distances of all rows into a condensed matrix. Every row is decoded once, the
+	 * distances are calculated from the decoded rows.
+	 *
+	 * @param data the clustered data, at most {@link SilhouetteCondensedMatrix#MAX_ROWS} rows
+	 * @param exec for cancellation and progress
+	 * @param progress the live progress
+	 * @return the distance matrix
+	 * @throws CanceledExecutionException if the execution was cancelled
+	 */
+	private SilhouetteCondensedMatrix calculateCondensedMatrix(BufferedDataTable data, ExecutionContext exec,
+			SilhouetteProgress progress) throws CanceledExecutionException {
+		int n = (int) data.size();
+		int dimensions = m_columns.getDimensions();
+		double[] features = loadFeatures(data, exec, 0.1);
+
+		// The lower triangle, each row against the rows before it, blocks of rows in parallel
+		SilhouetteCondensedMatrix condensed = new SilhouetteCondensedMatrix(n);
+		AtomicLong pairs = new AtomicLong(), rows = new AtomicLong();
+		double totalPairs = (double) n * (n - 1) / 2;
+		SilhouetteParallel.run(m_executionSettings.getThreads(), (n + TILE_ROWS - 1) / TILE_ROWS, block -> {
+			int to = Math.min(n, (block + 1) * TILE_ROWS);
+			for(int i1 = block * TILE_ROWS; i1 < to; i1++) {
+				for(int i2 = 0; i2 < i1; i2++) {
+					condensed.set(i1, i2, SilhouetteKernel.euclideanDistance(features, dimensions, i1, i2));
+				}
+
+				// Checking for cancellation between rows of distances
+				checkpoint(exec, 0.1, 0.45, pairs.addAndGet(i1), totalPairs);
+				progress.setRowsProcessed(rows.incrementAndGet());
+			}
+		});
+		return condensed;
+	}
+
+	/**
+	 * Calculates the coefficients from a distance matrix table. The distance vectors are read in
+	 * blocks of rows that fit into the heap budget, and the table is scanned once per block for
+	 * the distances of all rows of the block; if the whole matrix fits it is read only once.
+	 *
+	 * @param distanceMatrix the distance matrix, one distance vector per row of the data
+	 * @param labels the encoded cluster labels of the rows
+	 * @param data the clustered data
+	 * @param LabeledInput the output, the rows of the data with their coefficient appended
+	 * @param sampleCoefficients the coefficients of the rows if the data is a sample, the output
+	 *        is not filled then, <code>null</code> otherwise
+	 * @param exec for cancellation and progress
+	 * @param progress the live progress
+	 * @throws CanceledExecutionException if the execution was cancelled
+	 */
+	private void calculateCoefficients(BufferedDataTable distanceMatrix, SilhouetteClusterLabels labels,
+			BufferedDataTable data, BufferedDataContainer LabeledInput, double[] sampleCoefficients,
+			ExecutionContext exec, SilhouetteProgress progress) throws CanceledExecutionException {
+		int n = (int) data.size();
+		int k = labels.getClusterCount();
+		int[] clusterOfRow = labels.getClusterOfRow(), clusterSizes = labels.getClusterSizes();
+		double[] coefficients = new double[n];
+
+		// a distance vector holds up to n distances
+		int blockRows = (int) Math.max(1, Math.min(n, m_executionSettings.getHeapBudgetBytes() / (8L * Math.max(1, n))));
+		DataCell[] block = new DataCell[Math.min(n, blockRows)];
+		double[][] clusterDistances = new double[block.length][k];
+		double totalPairs = (double) n * n;
+		long pairs = 0;
+
+		CloseableRowIterator distanceMatrixIterator = distanceMatrix.iterator();
+		for(int blockFrom = 0; blockFrom < n; blockFrom += blockRows) {
+			int rows = Math.min(blockRows, n - blockFrom);
+			for(int r = 0; r < rows; r++) {
+				DataRow distanceRow = distanceMatrixIterator.next();
+				block[r] = distanceRow.getCell(distanceRow.getNumCells() - 1);
+				Arrays.fill(clusterDistances[r], 0);
+			}
+
+			// One scan of the matrix for all rows of the block, none if the block is the whole matrix
+			CloseableRowIterator compareIterator = rows == n ? null : distanceMatrix.iterator();
+			for(int compare = 0; compare < n; compare++) {
+				DataCell compareCell;
+				if(compareIterator == null) {
+					compareCell = block[compare];
+				} else {
+					DataRow compareRow = compareIterator.next();
+					compareCell = compareRow.getCell(compareRow.getNumCells() - 1);
+				}
+				int clusterIndex = clusterOfRow[compare];
+				for(int r = 0; r < rows; r++) {
+					int row = blockFrom + r;
+					// if the two rows aren't the same, we just add the individual distance to the cluster sum,
+					// already dividing by the number of rows in the cluster to get an accurate mean
+					if(row != compare) {
+						clusterDistances[r][clusterIndex] += distance(block[r], compareCell)
+								/ (clusterSizes[clusterIndex] - (clusterIndex == clusterOfRow[row] ? 1 : 0));
+					}
+				}
+
+				// Keeping the executing environment updated about our progress between chunks of pairs
+				pairs += rows;
+				if(((compare + 1) & (ROW_CHUNK - 1)) == 0) checkpoint(exec, 0.5, 0.95, pairs, totalPairs);
+			}
+			if(compareIterator != null) compareIterator.close();
+
+			// Silhouette values from the mean distances to the own and the nearest neighbouring cluster
+			for(int r = 0; r < rows; r++) {
+				int row = blockFrom + r;
+				coefficients[row] = SilhouetteKernel.coefficient(clusterDistances[r], clusterOfRow[row]);
+			}
+			progress.setRowsProcessed(blockFrom + rows);
+		}
+		distanceMatrixIterator.close();
+		writeCoefficients(coefficients, labels, data, LabeledInput, sampleCoefficients, exec);
+	}
+
+	/**
+	 * @param cell the distance vector of a row
+	 * @param compareCell the distance vector of another row
+	 * @return the distance of the rows
+	 */
+	private static double distance(DataCell cell, DataCell compareCell) {
+		// DistanceVectorDataCells and DistanceVectorBlobDataCells share the value interface
+		return ((DistanceVectorDataValue) cell).getDistance((DistanceVectorDataValue) compareCell);
+	}
+
+	/**
+	 * Calculates the coefficients from a condensed distance matrix. The rows of each cluster are
+	 * known from the cluster registration, so neither the data nor the distances are decoded
+	 * again.
+	 *
+	 * @param condensed the distances of the rows of the data
+	 * @param labels the encoded cluster labels of the rows
+	 * @param data the clustered data
+	 * @param LabeledInput the output, the rows of the data with their coefficient appended
+	 * @param sampleCoefficients the coefficients of the rows if the data is a sample, the output
+	 *        is not filled then, <code>null</code> otherwise
+	 * @param exec for cancellation and progress
+	 * @param progress the live progress
+	 * @throws CanceledExecutionException if the execution was cancelled
+	 */
+	private void calculateCoefficients(SilhouetteCondensedMatrix condensed, SilhouetteClusterLabels labels,
+			BufferedDataTable data, BufferedDataContainer LabeledInput, double[] sampleCoefficients,
+			ExecutionContext exec, SilhouetteProgress progress) throws CanceledExecutionException {
+		InternalCluster[] clusters = m_silhouetteModel.getClusterData();
+		int n = condensed.getRowCount();
+		int[] clusterOfRow = labels.getClusterOfRow(), clusterSizes = labels.getClusterSizes();
+
+		if(m_executionSettings.isSymmetric() && (long) n * clusters.length <= Integer.MAX_VALUE - 8) {
+			// Each distance is read once and added to the sums of both its rows, pairs of tiles in parallel
+			int k = clusters.length;
+			double[] sums = new double[n * k];
+			AtomicLong pairs = new AtomicLong();
+			SilhouetteParallel.runTilePairs(m_executionSettings.getThreads(), (n + TILE_ROWS - 1) / TILE_ROWS,
+					(tile, other) -> {
+				int rowFrom = tile * TILE_ROWS, otherFrom = other * TILE_ROWS;
+				int rowTo = Math.min(n, rowFrom + TILE_ROWS), otherTo = Math.min(n, otherFrom + TILE_ROWS);
+				condensed.accumulateTilePair(rowFrom, rowTo, otherFrom, otherTo, clusterOfRow, k, sums);
+				checkpoint(exec, 0.5, 0.9, pairs.addAndGet((long) (rowTo - rowFrom) * (otherTo - otherFrom)),
+						(double) n * n / 2);
+			});
+			double[] coefficients = coefficientsFromSums(sums, clusterOfRow, clusterSizes, exec, progress);
+			writeCoefficients(coefficients, labels, data, LabeledInput, sampleCoefficients, exec);
+			return;
+		}
+
+		// Mean distances to every cluster and the Silhouette value from them, blocks of rows in parallel
+		double[] coefficients = new double[n];
+		AtomicLong rows = new AtomicLong();
+		SilhouetteParallel.run(m_executionSettings.getThreads(), (n + ROW_CHUNK - 1) / ROW_CHUNK, block -> {
+			double[] clusterDistances = new double[clusters.length];
+			int to = Math.min(n, (block + 1) * ROW_CHUNK);
+			for(int row = block * ROW_CHUNK; row < to; row++) {
+				Arrays.fill(clusterDistances, 0);
+				condensed.accumulateClusterDistances(row, clusterOfRow, clusterSizes, clusterDistances);
+				coefficients[row] = SilhouetteKernel.coefficient(clusterDistances, clusterOfRow[row]);
+			}
+
+			// Keeping the executing environment updated about our progress, a row is n pairs
+			long done = rows.addAndGet(to - block * ROW_CHUNK);
+			progress.setRowsProcessed(done);
+			checkpoint(exec, 0.5, 0.95, done, n);
+		});
+		writeCoefficients(coefficients, labels, data, LabeledInput, sampleCoefficients, exec);
+	}
+
+	/**
+	 * Calculates the coefficients without a distance matrix: the distances of tiles of rows to
+	 * tiles of rows are computed from the features and summed up per row and cluster, which
+	 * needs memory linear in the rows.
+	 *
+	 * @param features the features of the rows of the data, row by row
+	 * @param dimensions the number of features of a row
+	 * @param labels the encoded cluster labels of the rows
+	 * @param data the clustered data
+	 * @param LabeledInput the output, the rows of the data with their coefficient appended
+	 * @param sampleCoefficients the coefficients of the rows if the data is a sample, the output
+	 *        is not filled then, <code>null</code> otherwise
+	 * @param exec for cancellation and progress
+	 * @param progress the live progress
+	 * @throws CanceledExecutionException if the execution was cancelled
+	 */
+	private void calculateCoefficients(double[] features, int dimensions, SilhouetteClusterLabels labels,
+			BufferedDataTable data, BufferedDataContainer LabeledInput, double[] sampleCoefficients,
+			ExecutionContext exec, SilhouetteProgress progress) throws CanceledExecutionException {
+		int n = (int) data.size();
+		int k = labels.getClusterCount();
+		if((long) n * k > Integer.MAX_VALUE - 8) {
+			throw new IllegalStateException("Too many rows and clusters for the blocked strategy (" + n + " rows, "
+					+ k + " clusters), please choose the streaming strategy.");
+		}
+
+		int[] clusterOfRow = labels.getClusterOfRow(), clusterSizes = labels.getClusterSizes();
+		double[] sums = new double[n * k];
+		int tiles = (n + TILE_ROWS - 1) / TILE_ROWS;
+		AtomicLong pairs = new AtomicLong();
+		if(m_executionSettings.isSymmetric()) {
+			// Each distance is computed once and added to the sums of both its rows, pairs of tiles in parallel
+			SilhouetteParallel.runTilePairs(m_executionSettings.getThreads(), tiles, (tile, other) -> {
+				int rowFrom = tile * TILE_ROWS, otherFrom = other * TILE_ROWS;
+				int rowTo = Math.min(n, rowFrom + TILE_ROWS), otherTo = Math.min(n, otherFrom + TILE_ROWS);
+				SilhouetteKernel.accumulateTilePair(features, dimensions, rowFrom, rowTo, otherFrom, otherTo,
+						clusterOfRow, k, sums);
+
+				// Checking for cancellation between tiles
+				checkpoint(exec, 0.5, 0.9, pairs.addAndGet((long) (rowTo - rowFrom) * (otherTo - otherFrom)),
+						(double) n * n / 2);
+			});
+		} else {
+			// Distance sums of every row to every cluster, tile by tile; a tile of rows only writes its
+			// own sums, so the tiles of rows run in parallel
+			SilhouetteParallel.run(m_executionSettings.getThreads(), tiles, tile -> {
+				int rowFrom = tile * TILE_ROWS, rowTo = Math.min(n, rowFrom + TILE_ROWS);
+				for(int otherFrom = 0; otherFrom < n; otherFrom += TILE_ROWS) {
+					int otherTo = Math.min(n, otherFrom + TILE_ROWS);
+					SilhouetteKernel.accumulateTile(features, dimensions, rowFrom, rowTo, otherFrom, otherTo,
+							clusterOfRow, k, sums);
+
+					// Checking for cancellation between tiles
+					checkpoint(exec, 0.5, 0.9, pairs.addAndGet((long) (rowTo - rowFrom) * (otherTo - otherFrom)),
+							(double) n * n);
+				}
+			});
+		}
+		double[] coefficients = coefficientsFromSums(sums, clusterOfRow, clusterSizes, exec, progress);
+		writeCoefficients(coefficients, labels, data, LabeledInput, sampleCoefficients, exec);
+	}
+
+	/**
+	 * Calculates the coefficients from the distance sums of every row to every cluster, blocks
+	 * of rows in parallel.
+	 *
+	 * @param sums the distance sums of each row to each cluster (at row * clusters + cluster)
+	 * @param clusterOfRow the cluster index of every row
+	 * @param clusterSizes the number of rows of each cluster
+	 * @param exec for cancellation and progress
+	 * @param progress the live progress
+	 * @return the coefficient of every row
+	 * @throws CanceledExecutionException if the execution was cancelled
+	 */
+	private double[] coefficientsFromSums(double[] sums, int[] clusterOfRow, int[] clusterSizes,
+			ExecutionContext exec, SilhouetteProgress progress) throws CanceledExecutionException {
+		int n = clusterOfRow.length, k = clusterSizes.length;
+		double[] coefficients = new double[n];
+		AtomicLong rows = new AtomicLong();
+		SilhouetteParallel.run(m_executionSettings.getThreads(), (n + ROW_CHUNK - 1) / ROW_CHUNK, block -> {
+			// Silhouette values from the mean distances to the own and the nearest neighbouring cluster
+			double[] clusterDistances = new double[k];
+			int to = Math.min(n, (block + 1) * ROW_CHUNK);
+			for(int row = block * ROW_CHUNK; row < to; row++) {
+				SilhouetteKernel.meanClusterDistances(sums, row, clusterOfRow[row], clusterSizes, clusterDistances);
+				coefficients[row] = SilhouetteKernel.coefficient(clusterDistances, clusterOfRow[row]);
+			}
+			long done = rows.addAndGet(to - block * ROW_CHUNK);
+			progress.setRowsProcessed(done);
+			checkpoint(exec, 0.9, 0.95, done, n);
+		});
+		return coefficients;
+	}
+
+	/**
+	 * Calculates the exact coefficients of a stratified sample against the reference rows: the
+	 * distances of tiles of sampled rows to tiles of reference rows are computed from the
+	 * features and summed up per row and cluster, the mean distance to a cluster is the mean
+	 * over its reference rows.
+	 *
+	 * @param features the features of the sampled rows, row by row
+	 * @param dimensions the number of features of a row
+	 * @param labels the encoded cluster labels of the sampled rows
+	 * @param stratified the stratified sample
+	 * @param clusterOfStratum the cluster index of every stratum
+	 * @param reference the features of the reference rows, row by row
+	 * @param data the sampled rows
+	 * @param LabeledInput the output, not filled
+	 * @param sampleCoefficients the coefficients of the sampled rows, the output
+	 * @param exec for cancellation and progress
+	 * @param progress the live progress
+	 * @throws CanceledExecutionException if the execution was cancelled
+	 */
+	private void calculateStratifiedCoefficients(double[] features, int dimensions, SilhouetteClusterLabels labels,
+			SilhouetteStratifiedSample stratified, int[] clusterOfStratum, double[] reference, BufferedDataTable data,
+			BufferedDataContainer LabeledInput, double[] sampleCoefficients, ExecutionContext exec,
+			SilhouetteProgress progress) throws CanceledExecutionException {
+		int n = (int) data.size();
+		int k = labels.getClusterCount();
+		int[] clusterOfRow = labels.getClusterOfRow();
+		int[] clusterOfReference = stratified.getReferenceClusters(clusterOfStratum);
+		boolean[] sampledReferences = stratified.getSampledReferences();
+		int references = clusterOfReference.length;
+		int[] referenceSizes = new int[k];
+		for(int c : clusterOfReference) referenceSizes[c]++;
+
+		// Distance sums of every sampled row to every cluster, tile by tile; a tile of sampled rows
+		// only writes its own coefficients, so the tiles run in parallel
+		double[] coefficients = new double[n];
+		AtomicLong pairs = new AtomicLong(), rows = new AtomicLong();
+		double totalPairs = (double) n * references;
+		SilhouetteParallel.run(m_executionSettings.getThreads(), (n + TILE_ROWS - 1) / TILE_ROWS, tile -> {
+			int rowFrom = tile * TILE_ROWS, rowTo = Math.min(n, rowFrom + TILE_ROWS);
+			double[] sums = new double[(rowTo - rowFrom) * k];
+			for(int referenceFrom = 0; referenceFrom < references; referenceFrom += TILE_ROWS) {
+				int referenceTo = Math.min(references, referenceFrom + TILE_ROWS);
+				SilhouetteKernel.accumulateReferenceTile(features, dimensions, rowFrom, rowTo, reference,
+						referenceFrom, referenceTo, clusterOfReference, k, sums);
+
+				// Checking for cancellation between tiles
+				checkpoint(exec, 0.5, 0.95, pairs.addAndGet((long) (rowTo - rowFrom) * (referenceTo - referenceFrom)),
+						totalPairs);
+			}
+
+			// A row that is a reference row itself leaves its own distance out of the mean of its cluster
+			double[] clusterDistances = new double[k];
+			for(int row = rowFrom; row < rowTo; row++) {
+				int ownCluster = clusterOfRow[row];
+				SilhouetteKernel.meanClusterDistances(sums, row - rowFrom, sampledReferences[row] ? ownCluster : -1,
+						referenceSizes, clusterDistances);
+				coefficients[row] = SilhouetteKernel.coefficient(clusterDistances, ownCluster);
+			}
+			progress.setRowsProcessed(rows.addAndGet(rowTo - rowFrom));
+		});
+		writeCoefficients(coefficients, labels, data, LabeledInput, sampleCoefficients, exec);
+	}
+
+	/**
+	 * Calculates the coefficients through a distance matrix spilled to a memory-mapped file: the
+	 * distances of every pair of tiles are computed once from the features and written as one
+	 * block, then every tile of rows reads the blocks of its row and column of tiles and sums up
+	 * the distances per cluster. Only the features and the tiles being worked on are in the heap,
+	 * the file is deleted afterwards.
+	 *
+	 * @param features the features of the rows of the data, row by row
+	 * @param dimensions the number of features of a row
+	 * @param labels the encoded cluster labels of the rows
+	 * @param data the clustered data
+	 * @param LabeledInput the output, the rows of the data with their coefficient appended
+	 * @param sampleCoefficients the coefficients of the rows if the data is a sample, the output
+	 *        is not filled then, <code>null</code> otherwise
+	 * @param exec for cancellation and progress
+	 * @param progress the live progress
+	 * @throws CanceledExecutionException if the execution was cancelled
+	 * @throws IOException if the file cannot be created or mapped
+	 */
+	private void calculateSpilledCoefficients(double[] features, int dimensions, SilhouetteClusterLabels labels,
+			BufferedDataTable data, BufferedDataContainer LabeledInput, double[] sampleCoefficients,
+			ExecutionContext exec, SilhouetteProgress progress) throws CanceledExecutionException, IOException {
+		int n = (int) data.size();
+		int k = labels.getClusterCount();
+		int[] clusterOfRow = labels.getClusterOfRow(), clusterSizes = labels.getClusterSizes();
+		int tileRows = m_executionSettings.getSpillTileRows();
+		double[] coefficients = new double[n];
+		try(SilhouetteSpilledMatrix matrix = new SilhouetteSpilledMatrix(n, tileRows,
+				m_executionSettings.getSpillDirectory())) {
+			int tiles = matrix.getTileCount();
+			double totalPairs = (double) n * n;
+			AtomicLong pairs = new AtomicLong(), rows = new AtomicLong();
+
+			// Every tile of rows against the tiles up to it, written block by block, tiles in parallel
+			SilhouetteParallel.run(m_executionSettings.getThreads(), tiles, tile -> {
+				double[] block = new double[tileRows * tileRows];
+				int rowFrom = tile * tileRows, rowTo = Math.min(n, rowFrom + tileRows);
+				for(int other = 0; other <= tile; other++) {
+					int otherFrom = other * tileRows, otherTo = Math.min(n, otherFrom + tileRows);
+					SilhouetteKernel.tileDistances(features, dimensions, rowFrom, rowTo, otherFrom, otherTo, tileRows,
+							block);
+					matrix.writeBlock(tile, other, block);
+
+					// Checking for cancellation between blocks
+					checkpoint(exec, 0.5, 0.7, pairs.addAndGet((long) (rowTo - rowFrom) * (otherTo - otherFrom)),
+							totalPairs / 2);
+				}
+			});
+
+			// Every tile of rows reads its own row of blocks in file order and its column of blocks
+			// transposed; it only writes its own coefficients, so the tiles run in parallel
+			pairs.set(0);
+			SilhouetteParallel.run(m_executionSettings.getThreads(), tiles, tile -> {
+				double[] block = new double[tileRows * tileRows];
+				int rowFrom = tile * tileRows, rowTo = Math.min(n, rowFrom + tileRows);
+				double[] sums = new double[(rowTo - rowFrom) * k];
+				for(int other = 0; other < tiles; other++) {
+					int otherFrom = other * tileRows, otherTo = Math.min(n, otherFrom + tileRows);
+					if(other <= tile) {
+						matrix.readBlock(tile, other, block);
+					} else {
+						matrix.readBlock(other, tile, block);
+					}
+					SilhouetteKernel.accumulateBlock(block, tileRows, other > tile, rowFrom, rowTo, otherFrom, otherTo,
+							clusterOfRow, k, sums);
+
+					// Checking for cancellation between blocks
+					checkpoint(exec, 0.7, 0.95, pairs.addAndGet((long) (rowTo - rowFrom) * (otherTo - otherFrom)),
+							totalPairs);
+				}
+
+				// Silhouette values from the mean distances to the own and the nearest neighbouring cluster
+				double[] clusterDistances = new double[k];
+				for(int row = rowFrom; row < rowTo; row++) {
+					SilhouetteKernel.meanClusterDistances(sums, row - rowFrom, clusterOfRow[row], clusterSizes,
+							clusterDistances);
+					coefficients[row] = SilhouetteKernel.coefficient(clusterDistances, clusterOfRow[row]);
+				}
+				progress.setRowsProcessed(rows.addAndGet(rowTo - rowFrom));
+			});
+		}
+		writeCoefficients(coefficients, labels, data, LabeledInput, sampleCoefficients, exec);
+	}
+
+	/**
+	 * Calculates the simplified (approximate) coefficients: the distance of a row to the
+	 * centroid of its own cluster and to the nearest other centroid take the place of the mean
+	 * distances, which needs n*k instead of n^2 distances.
+	 *
+	 * @param features the features of the rows of the data, row by row
+	 * @param dimensions the number of features of a row
+	 * @param labels the encoded cluster labels of the rows
+	 * @param data the clustered data
+	 * @param LabeledInput the output, the rows of the data with their coefficient appended
+	 * @param exec for cancellation and progress
+	 * @param progress the live progress
+	 * @throws CanceledExecutionException if the execution was cancelled
+	 */
+	private void calculateSimplifiedCoefficients(double[] features, int dimensions, SilhouetteClusterLabels labels,
+			BufferedDataTable data, BufferedDataContainer LabeledInput, ExecutionContext exec,
+			SilhouetteProgress progress) throws CanceledExecutionException {
+		int n = (int) data.size();
+		int k = labels.getClusterCount();
+		int[] clusterOfRow = labels.getClusterOfRow();
+
+		// One pass for the centroids, then every row against every centroid, blocks of rows in parallel
+		double[] centroids = SilhouetteKernel.centroids(features, dimensions, clusterOfRow, labels.getClusterSizes());
+		double[] coefficients = new double[n];
+		AtomicLong rows = new AtomicLong();
+		SilhouetteParallel.run(m_executionSettings.getThreads(), (n + ROW_CHUNK - 1) / ROW_CHUNK, block -> {
+			double[] clusterDistances = new double[k];
+			int to = Math.min(n, (block + 1) * ROW_CHUNK);
+			for(int row = block * ROW_CHUNK; row < to; row++) {
+				SilhouetteKernel.centroidDistances(features, dimensions, row, centroids, clusterDistances);
+				coefficients[row] = SilhouetteKernel.coefficient(clusterDistances, clusterOfRow[row]);
+			}
+			long done = rows.addAndGet(to - block * ROW_CHUNK);
+			progress.setRowsProcessed(done);
+			checkpoint(exec, 0.5, 0.95, done, n);
+		});
+		writeCoefficients(coefficients, labels, data, LabeledInput, null, exec);
+	}
+
+	/**
+	 * Writes the coefficients computed in parallel into the internal model and the output, in
+	 * the order of the rows.
+	 *
+	 * @param coefficients the coefficient of every row
+	 * @param labels the encoded cluster labels of the rows
+	 * @param data the clustered data
+	 * @param LabeledInput the output, the rows of the data with their coefficient appended
+	 * @param sampleCoefficients the coefficients of the rows if the data is a sample, the output
+	 *        is not filled then, <code>null</code> otherwise
+	 * @param exec for cancellation and progress
+	 * @throws CanceledExecutionException if the execution was cancelled
+	 */
+	private void writeCoefficients(double[] coefficients, SilhouetteClusterLabels labels, BufferedDataTable data,
+			BufferedDataContainer LabeledInput, double[] sampleCoefficients, ExecutionContext exec)
+			throws CanceledExecutionException {
+		InternalCluster[] clusters = m_silhouetteModel.getClusterData();
+		int[] clusterOfRow = labels.getClusterOfRow(), positionInCluster = labels.getPositionInCluster();
+		int n = coefficients.length;
+		if(sampleCoefficients != null) {
+			System.arraycopy(coefficients, 0, sampleCoefficients, 0, n);
+		}
+		CloseableRowIterator dataIterator = data.iterator();
+		for(int row = 0; row < n; row++) {
+			DataRow dataRow = dataIterator.next();
+			clusters[clusterOfRow[row]].getCoefficients()[positionInCluster[row]] = coefficients[row];
+
+			// appending value to labeled table
+			if(sampleCoefficients == null) {
+				LabeledInput.addRowToTable(new AppendedColumnRow(dataRow, new DoubleCell(coefficients[row])));
+			}
+			if(((row + 1) & (ROW_CHUNK - 1)) == 0) checkpoint(exec, 0.95, 1, row + 1, n);
+		}
+		dataIterator.close();
+	}
+
+	/**
+	 * Loads the included columns of all rows into one primitive array, row by row, so that the
+	 * distances are computed without decoding or allocating per pair. The double columns come
+	 * first and the integer columns, widened once here, after them, which keeps the order in
+	 * which the kernel sums up the dimensions. Missing cells count as 0.
+	 *
+	 * @param data the clustered data
+	 * @param exec for cancellation and progress
+	 * @param to the progress when all rows are loaded
+	 * @return the features
+	 * @throws CanceledExecutionException if the execution was cancelled
+	 */
+	private double[] loadFeatures(BufferedDataTable data, ExecutionContext exec, double to)
+			throws CanceledExecutionException {
+		int dimensions = m_columns.getDimensions();
+		if(data.size() * dimensions > Integer.MAX_VALUE - 8) {
+			throw new IllegalStateException("Too many rows and columns to decode the features (" + data.size()
+					+ " rows, " + dimensions + " columns), please choose the streaming strategy.");
+		}
+		double[] features = new double[(int) data.size() * dimensions];
+		int row = 0;
+		CloseableRowIterator iterator = data.iterator();
+		while(iterator.hasNext()) {
+			m_columns.readFeatures(iterator.next(), features, row * dimensions);
+			row++;
+			if((row & (ROW_CHUNK - 1)) == 0) checkpoint(exec, 0, to, row, data.size());
+		}
+		iterator.close();
+		return features;
+	}
+
+	/**
+	 * Loads the included columns of the reference rows of a stratified sample into one primitive
+	 * array, row by row, like {@link #loadFeatures}.
+	 *
+	 * @param data the input table
+	 * @param stratified the stratified sample
+	 * @param exec for cancellation and progress
+	 * @return the features of the reference rows
+	 * @throws CanceledExecutionException if the execution was cancelled
+	 */
+	private double[] loadReferenceFeatures(BufferedDataTable data, SilhouetteStratifiedSample stratified,
+			ExecutionContext exec) throws CanceledExecutionException {
+		int dimensions = m_columns.getDimensions();
+		long references = stratified.getReferenceCount();
+		if(references * dimensions > Integer.MAX_VALUE - 8) {
+			throw new IllegalStateException("Too many reference rows and columns to decode the features (" + references
+					+ " rows, " + dimensions + " columns), please choose fewer reference rows per cluster.");
+		}
+		double[] reference = new double[(int) references * dimensions];
+		int row = 0, referenceRow = 0;
+		CloseableRowIterator iterator = data.iterator();
+		while(iterator.hasNext()) {
+			DataRow dataRow = iterator.next();
+			if(stratified.isReference(row)) {
+				m_columns.readFeatures(dataRow, reference, referenceRow * dimensions);
+				referenceRow++;
+			}
+			row++;
+			if((row & (ROW_CHUNK - 1)) == 0) checkpoint(exec, 0.2, 0.45, row, data.size());
+		}
+		iterator.close();
+		return reference;
+	}
+
+	/**
+	 * Checks for cancellation and reports the progress of a phase, called between chunks of work.
+	 *
+	 * @param exec the execution context
+	 * @param from the progress at the start of the phase
+	 * @param to the progress at the end of the phase
+	 * @param done the work done in the phase
+	 * @param total the total work of the phase
+	 * @throws CanceledExecutionException if the execution was cancelled
+	 */
+	private static void checkpoint(ExecutionContext exec, double from, double to, double done, double total)
+			throws CanceledExecutionException {
+		exec.checkCanceled();
+		exec.setProgress(from + (to - from) * Math.min(1, done / Math.max(1, total)));
+	}
+
+	/**
+	 * @param spec spec of the input table
+	 * @return the number of clusters in the domain of the cluster column, a default if unknown
+	 */
+	private int countClusters(DataTableSpec spec) {
+		DataColumnSpec clusterSpec = spec.getColumnSpec(clusterColumnIndex);
+		if(clusterSpec.getDomain().hasValues()) return clusterSpec.getDomain().getValues().size();
+		return SilhouettePlanner.DEFAULT_CLUSTERS;
+	}
+
+	/**
+	 * Draws a uniform random sample of rows (selection sampling), kept in table order.
+	 *
+	 * @param data the input table
+	 * @param sampleSize the number of rows to keep
+	 * @param sampled set to true for the input rows in the sample
+	 * @param exec to create the sample table and for cancellation
+	 * @return the sample table
+	 * @throws CanceledExecutionException if the execution was cancelled
+	 */
+	private BufferedDataTable sample(BufferedDataTable data, long sampleSize, boolean[] sampled,
+			ExecutionContext exec) throws CanceledExecutionException {
+		Random random = new Random(SAMPLE_SEED);
+		long rows = data.size(), needed = sampleSize;
+		for(int row = 0; row < rows && needed > 0; row++) {
+			// keeping the row with the probability of still needed to remaining rows
+			if(random.nextDouble() * (rows - row) < needed) {
+				sampled[row] = true;
+				needed--;
+			}
+		}
+		return copyRows(data, sampled, exec);
+	}
+
+	/**
+	 * Draws a stratified random sample of rows, the clusters are the strata. The labels are
+	 * read once to find the cluster of every row.
+	 *
+	 * @param data the input table
+	 * @param sampleSize the number of rows to sample, split over the clusters by their size
+	 * @param exec for cancellation
+	 * @return the stratified sample
+	 * @throws CanceledExecutionException if the execution was cancelled
+	 */
+	private SilhouetteStratifiedSample drawStratifiedSample(BufferedDataTable data, long sampleSize,
+			ExecutionContext exec) throws CanceledExecutionException {
+		HashMap<Object, Integer> strata = new HashMap<>();
+		ArrayList<Object> stratumLabels = new ArrayList<>();
+		int[] stratumOfRow = new int[(int) data.size()];
+		int row = 0;
+		CloseableRowIterator iterator = data.iterator();
+		while(iterator.hasNext()) {
+			Object label = m_columns.readLabel(iterator.next());
+			Integer stratum = strata.get(label);
+			if(stratum == null) {
+				stratum = stratumLabels.size();
+				strata.put(label, stratum);
+				stratumLabels.add(label);
+			}
+			stratumOfRow[row] = stratum;
+			row++;
+			if((row & (ROW_CHUNK - 1)) == 0) exec.checkCanceled();
+		}
+		iterator.close();
+		return new SilhouetteStratifiedSample(stratumLabels.toArray(), stratumOfRow, sampleSize,
+				m_executionSettings.getReferenceSize(), SAMPLE_SEED);
+	}
+
+	/**
+	 * Copies the sampled rows into a table, kept in table order.
+	 *
+	 * @param data the input table
+	 * @param sampled true for the input rows in the sample
+	 * @param exec to create the sample table and for cancellation
+	 * @return the sample table
+	 * @throws CanceledExecutionException if the execution was cancelled
+	 */
+	private BufferedDataTable copyRows(BufferedDataTable data, boolean[] sampled, ExecutionContext exec)
+			throws CanceledExecutionException {
+		BufferedDataContainer sample = exec.createDataContainer(data.getDataTableSpec());
+		int row = 0;
+		CloseableRowIterator iterator = data.iterator();
+		while(iterator.hasNext()) {
+			DataRow dataRow = iterator.next();
+			if(sampled[row]) sample.addRowToTable(dataRow);
+			row++;
+			if((row & (ROW_CHUNK - 1)) == 0) exec.checkCanceled();
+		}
+		iterator.close();
+		sample.close();
+		return sample.getTable();
+	}
+
+	/**
+	 * Appends the coefficients of the sampled rows to all input rows, the other rows get a
+	 * missing coefficient.
+	 *
+	 * @param data the input table
+	 * @param sampled true for the input rows in the sample
+	 * @param coefficients the coefficients of the sampled rows in table order
+	 * @param exec to create the output table and for cancellation
+	 * @return the labeled output table
+	 * @throws CanceledExecutionException if the execution was cancelled
+	 */
+	private BufferedDataTable appendSampleCoefficients(BufferedDataTable data, boolean[] sampled,
+			double[] coefficients, ExecutionContext exec) throws CanceledExecutionException {
+		BufferedDataContainer labeled = exec.createDataContainer(getOutputDataSpec(data.getSpec()));
+		int row = 0, sampleRow = 0;
+		CloseableRowIterator iterator = data.iterator();
+		while(iterator.hasNext()) {
+			DataCell coefficient = sampled[row] ? new DoubleCell(coefficients[sampleRow++]) : DataType.getMissingCell();
+			labeled.addRowToTable(new AppendedColumnRow(iterator.next(), coefficient));
+			row++;
+			if((row & (ROW_CHUNK - 1)) == 0) exec.checkCanceled();
+		}
+		iterator.close();
+		labeled.close();
+		return labeled.getTable();
 	}
 
 
@@ -547,25 +1216,7 @@ public class SilhouetteNodeModel extends NodeModel {
 	 * @throws Exception 
 	 *  */
 	public double euclideanDistance(Double[] d, Integer[] i, Double[] d2, Integer[] i2) throws Exception {
-
-		double dist = 0d;
-
-		//validate parameters - length of arrays for the data points has to be the same to be comparable
-		if(d.length != d2.length) {
-			throw new IllegalArgumentException("The Double dimension count of the two points differ (" + d.length + " and " + d2.length);
-		} else if(i.length != i2.length) {
-			throw new IllegalArgumentException("The Integer dimension count of the two points differ (" + i.length + " and " + i2.length);
-		}
-
-		//TODO shouldn't we weigh the distances somehow?
-
-		//calculate double distances
-		for(int l = 0; l < d.length; l++) dist += Math.pow(d[l] - d2[l], 2);
-
-		//calculate int distances
-		for(int l = 0; l < i.length; l++) dist += Math.pow(i[l] - i2[l], 2);
-
-		return Math.sqrt(dist);
+		return SilhouetteKernel.euclideanDistance(d, i, d2, i2);
 	}                   
 
 	/**
@@ -605,6 +1256,19 @@ public class SilhouetteNodeModel extends NodeModel {
 	@Override
 	protected void reset() {
 		m_silhouetteModel = null;
+		m_internDir = null;
+		deleteInternalsCopy();
+		unregisterProgress();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected void onDispose() {
+		deleteInternalsCopy();
+		unregisterProgress();
+		super.onDispose();
 	}
 
 	/**
@@ -697,21 +1361,27 @@ public class SilhouetteNodeModel extends NodeModel {
 		for(int i = 0; i < inSpec.getNumColumns(); i ++){
 			columns[i] = inSpec.getColumnSpec(i);
 		}
+		// the simplified coefficients are approximate, which the name of the column says
+		boolean simplified = !distanceMatrixInput
+				&& m_executionSettings.getStrategy() == SilhouettePlanner.Strategy.SIMPLIFIED;
 		columns[columns.length-1] = new DataColumnSpecCreator(
-				"Silhouette" , DoubleCell.TYPE).createSpec();
+				simplified ? "Silhouette (simplified)" : "Silhouette" , DoubleCell.TYPE).createSpec();
 
 		return new DataTableSpec(columns);
 	}
 
 	/**
-	 * Prepares the DataTableSpec for the statistics table
+	 * Prepares the DataTableSpec for the statistics table, with the columns of the confidence
+	 * interval only if the stratified sample is configured
 	 * 
 	 * @return DataTableSpec for descriptive statistics table
 	 */
 	private DataTableSpec getStatTableSpec() {
-		DataColumnSpec[] columns = new DataColumnSpec[statsColumns.length-1];
+		boolean stratified = !distanceMatrixInput
+				&& m_executionSettings.getStrategy() == SilhouettePlanner.Strategy.STRATIFIED;
+		DataColumnSpec[] columns = new DataColumnSpec[statsColumns.length - (stratified ? 1 : 3)];
 
-		for(int i = 1; i < statsColumns.length; i ++){
+		for(int i = 1; i <= columns.length; i ++){
 			columns[i-1] = new DataColumnSpecCreator(
 					statsColumns[i] , DoubleCell.TYPE).createSpec();
 		}
@@ -738,6 +1408,7 @@ public class SilhouetteNodeModel extends NodeModel {
 
 		m_clusterColumn.saveSettingsTo(settings);
 		m_usedColumns.saveSettingsTo(settings);
+		m_executionSettings.saveSettingsTo(settings);
 	}
 
 	/**
@@ -749,6 +1420,7 @@ public class SilhouetteNodeModel extends NodeModel {
 
 		m_clusterColumn.loadSettingsFrom(settings);
 		m_usedColumns.loadSettingsFrom(settings);
+		m_executionSettings.loadSettingsFrom(settings);
 
 	}
 
@@ -761,6 +1433,7 @@ public class SilhouetteNodeModel extends NodeModel {
 
 		m_clusterColumn.validateSettings(settings);
 		m_usedColumns.validateSettings(settings);
+		m_executionSettings.validateSettings(settings);
 
 	}
 
@@ -772,47 +1445,19 @@ public class SilhouetteNodeModel extends NodeModel {
 			final ExecutionMonitor exec) throws IOException,
 	CanceledExecutionException {
 
-		// loading settings from file
-		File settingsFile = new File(internDir, SETTINGS_FILE_NAME);
-		FileInputStream in = new FileInputStream(settingsFile);
-		NodeSettingsRO settings = NodeSettings.loadFromXML(in);
-
-		try {
-
-			//the cluster array that we will need to create the internal model
-			InternalCluster[] internalClusters = new InternalCluster[settings.getInt("clustersNum")];
-
-			// reusable variables for the next loop
-			String clusterName;
-			int[] clusterColors;
-			Color[] clusterColorsConverted = null;
-			int[] clusterDataIndices;
-			double[] clusterCoefficients;
-
-			// for each cluster in the internal model
-			for(int i = 0; i < internalClusters.length; i++) {
-
-				// load name, color, row indices and coefficients
-				clusterName = settings.getString("name" + i);
-				clusterDataIndices = settings.getIntArray("dataIndices" + i);
-				clusterColorsConverted = new Color[clusterDataIndices.length];
-				clusterColors = settings.getIntArray("colors" + i);
-				clusterCoefficients = settings.getDoubleArray("coefficients" + i);
-
-
-				for(int l = 0; l < clusterColors.length; l++) {
-					clusterColorsConverted[l] = new Color(clusterColors[l]);
-				}
-
-				// and then add the new cluster to the cluster array
-				internalClusters[i] = new InternalCluster(clusterName, clusterColorsConverted, clusterDataIndices, clusterCoefficients);
-			}
-
-			// finally create the model using all the clusters
-			m_silhouetteModel = new SilhouetteModel(internalClusters);
+		// the model can be large, it is only read when a view asks for it; KNIME clears
+		// internDir before the node is saved again, so it is read from a private copy
+		deleteInternalsCopy();
+		File copy = FileUtil.createTempDir("silhouette-internals-");
+		FileUtil.copyDir(internDir, copy);
+		m_internCopy = copy;
+		m_internDir = copy;
+	}
 
-		} catch (InvalidSettingsException e) {
-			throw new IOException(e);
+	private synchronized void deleteInternalsCopy() {
+		if(m_internCopy != null) {
+			FileUtil.deleteRecursively(m_internCopy);
+			m_internCopy = null;
 		}
 	}
 
@@ -824,33 +1469,13 @@ public class SilhouetteNodeModel extends NodeModel {
 			final ExecutionMonitor exec) throws IOException,
 	CanceledExecutionException {
 
-		// create new NodeSettings
-		NodeSettings internalSettings = new NodeSettings("Silhouette");
-
-
-		// add name, color, coefficients and indices from each cluster to the settings object
-		int k = 0;
-		int[] colorArray;
-		for(InternalCluster ic : m_silhouetteModel.getClusterData()) {
-			colorArray = new int[ic.getColors().length];
-			for(int i = 0; i < colorArray.length; i++) {
-				colorArray[i] = ic.getColors()[i].getRGB();
-			}
-			internalSettings.addString("name" + k, ic.getName());
-			internalSettings.addIntArray("colors" + k, colorArray);
-			internalSettings.addDoubleArray("coefficients" + k,ic.getCoefficients());
-			internalSettings.addIntArray("dataIndices" + k, ic.getDataIndices());
-			k++;
+		// a model loaded from disk and not read yet (e.g. when saving to a new location) is
+		// read from the private copy before writing it
+		SilhouetteModel model = loadPendingModel();
+		if(model == null) {
+			throw new IOException("No Silhouette model available to save");
 		}
-
-		// add the count of clusters so we will know how many we have when loading the settings
-		// TODO this should be implemented with an iterator of some sort, but this also works for now
-		internalSettings.addInt("clustersNum", k);
-
-		// save the file to disk
-		File f = new File(internDir, SETTINGS_FILE_NAME);
-		FileOutputStream out = new FileOutputStream(f);
-		internalSettings.saveToXML(out);
+		SilhouetteModelSerializer.save(model, internDir);
 	}
 
 
@@ -878,7 +1503,26 @@ public class SilhouetteNodeModel extends NodeModel {
 	/**
 	 * @return SilhouetteModel containing silhouette coefficients and chart info
 	 */
-	public SilhouetteModel getSilhouetteModel() {
+	public synchronized SilhouetteModel getSilhouetteModel() {
+		try {
+			return loadPendingModel();
+		} catch (IOException e) {
+			NodeLogger.getLogger(getClass()).error("Unable to load Silhouette model: " + e.getMessage(), e);
+			return null;
+		}
+	}
+
+	/**
+	 * Reads the model of loaded internals if not done yet, it stays pending if that fails.
+	 *
+	 * @return the model, <code>null</code> if not executed
+	 * @throws IOException if the model cannot be read
+	 */
+	private synchronized SilhouetteModel loadPendingModel() throws IOException {
+		if(m_silhouetteModel == null && m_internDir != null) {
+			m_silhouetteModel = SilhouetteModelSerializer.load(m_internDir);
+			m_internDir = null;
+		}
 		return m_silhouetteModel;
 	}
 
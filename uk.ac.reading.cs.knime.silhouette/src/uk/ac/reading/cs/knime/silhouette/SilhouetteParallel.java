@@ -0,0 +1,178 @@
+package uk.ac.reading.cs.knime.silhouette;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.knime.core.node.CanceledExecutionException;
+import org.knime.core.node.KNIMEConstants;
+import org.knime.core.util.ThreadPool;
+
+/**
+ * Runs independent blocks of work of the Silhouette node on KNIME's thread pool. Every block
+ * writes its own part of the results, so the results don't depend on the number of threads or
+ * the order the blocks are run in.
+ *
+ * @author University of Reading
+ */
+final class SilhouetteParallel {
+
+	/** A block of work */
+	interface Block {
+		/**
+		 * @param index the index of the block
+		 * @throws CanceledExecutionException if the execution was cancelled
+		 */
+		void run(int index) throws CanceledExecutionException;
+	}
+
+	/** The work on a pair of tiles */
+	interface TilePair {
+		/**
+		 * @param tile the index of a tile
+		 * @param other the index of the other tile, at most <code>tile</code>
+		 * @throws CanceledExecutionException if the execution was cancelled
+		 */
+		void run(int tile, int other) throws CanceledExecutionException;
+	}
+
+	private SilhouetteParallel() {
+		// utility class
+	}
+
+	/**
+	 * Runs the blocks and waits for all of them. With one thread they run in order on the
+	 * calling thread. If a block fails or the execution is cancelled, the blocks not yet started
+	 * are skipped and the running ones are waited for before the first failure is thrown, so no
+	 * block touches the shared results (e.g. a mapped matrix) once this method returns.
+	 *
+	 * @param threads the maximum number of threads
+	 * @param blocks the number of blocks
+	 * @param block the work of a block
+	 * @throws CanceledExecutionException if the execution was cancelled
+	 */
+	static void run(int threads, int blocks, Block block) throws CanceledExecutionException {
+		if(threads <= 1 || blocks <= 1) {
+			for(int index = 0; index < blocks; index++) {
+				block.run(index);
+			}
+			return;
+		}
+		ThreadPool pool = KNIMEConstants.GLOBAL_THREAD_POOL.createSubPool(threads);
+		List<Future<Void>> futures = new ArrayList<>(blocks);
+		AtomicBoolean failed = new AtomicBoolean();
+		Throwable failure;
+		try {
+			for(int index = 0; index < blocks; index++) {
+				final int blockIndex = index;
+				futures.add(pool.enqueue(() -> {
+					// the blocks not yet started when one failed are skipped
+					if(failed.get()) return null;
+					try {
+						block.run(blockIndex);
+					} catch(CanceledExecutionException | RuntimeException | Error e) {
+						failed.set(true);
+						throw e;
+					}
+					return null;
+				}));
+			}
+			// the waiting thread doesn't count against the pool while the blocks run
+			failure = pool.runInvisible(() -> awaitAll(futures, failed));
+		} catch(ExecutionException | InterruptedException | RuntimeException | Error e) {
+			// enqueuing or waiting failed while blocks may still be running
+			failed.set(true);
+			Throwable first = awaitAll(futures, failed);
+			failure = first != null ? first : e;
+		}
+		if(failure != null) throw rethrow(failure);
+	}
+
+	/**
+	 * Waits for all blocks to finish, also if the waiting thread is interrupted.
+	 *
+	 * @param futures the blocks
+	 * @param failed set if a block failed or the waiting thread was interrupted
+	 * @return the failure of the first failed block in block order, <code>null</code> if none
+	 *         failed, an {@link InterruptedException} if the waiting thread was interrupted
+	 */
+	private static Throwable awaitAll(List<Future<Void>> futures, AtomicBoolean failed) {
+		Throwable first = null;
+		boolean interrupted = false;
+		for(Future<Void> future : futures) {
+			while(true) {
+				try {
+					future.get();
+					break;
+				} catch(InterruptedException e) {
+					// the remaining blocks are skipped, the running ones are still waited for
+					interrupted = true;
+					failed.set(true);
+				} catch(ExecutionException e) {
+					if(first == null) first = e.getCause();
+					break;
+				} catch(CancellationException e) {
+					break;
+				}
+			}
+		}
+		if(interrupted) {
+			Thread.currentThread().interrupt();
+			if(first == null) first = new InterruptedException();
+		}
+		return first;
+	}
+
+	/**
+	 * @param failure the failure of a block or of waiting for the blocks
+	 * @return the unchecked failure to throw
+	 * @throws CanceledExecutionException if the execution was cancelled or interrupted
+	 */
+	private static RuntimeException rethrow(Throwable failure) throws CanceledExecutionException {
+		Throwable cause = failure;
+		while(cause instanceof ExecutionException && cause.getCause() != null) {
+			cause = cause.getCause();
+		}
+		if(cause instanceof CanceledExecutionException) throw (CanceledExecutionException) cause;
+		if(cause instanceof InterruptedException) {
+			Thread.currentThread().interrupt();
+			throw new CanceledExecutionException("Interrupted while waiting for the worker threads");
+		}
+		if(cause instanceof RuntimeException) throw (RuntimeException) cause;
+		if(cause instanceof Error) throw (Error) cause;
+		return new IllegalStateException(cause);
+	}
+
+	/**
+	 * Runs the work on every unordered pair of tiles, including every tile with itself, in
+	 * rounds in which no tile appears twice (round-robin schedule). The pairs of a round run in
+	 * parallel and may write the results of both their tiles without synchronisation. The
+	 * rounds and the order of the pairs of a tile are fixed, so the results don't depend on the
+	 * number of threads.
+	 *
+	 * @param threads the maximum number of threads
+	 * @param tiles the number of tiles
+	 * @param pair the work on a pair of tiles
+	 * @throws CanceledExecutionException if the execution was cancelled
+	 */
+	static void runTilePairs(int threads, int tiles, TilePair pair) throws CanceledExecutionException {
+		// every tile with itself
+		run(threads, tiles, tile -> pair.run(tile, tile));
+
+		// circle method: the last slot stays, the others rotate, an odd number of tiles gets an empty slot
+		int slots = tiles + (tiles & 1);
+		for(int round = 0; round < slots - 1; round++) {
+			final int r = round;
+			run(threads, slots / 2, i -> {
+				int a = i == 0 ? slots - 1 : (r + i) % (slots - 1);
+				int b = (r - i + slots - 1) % (slots - 1);
+				if(a < tiles && b < tiles) {
+					pair.run(Math.max(a, b), Math.min(a, b));
+				}
+			});
+		}
+	}
+}
@@ -0,0 +1,48 @@
+package uk.ac.reading.cs.knime.silhouette;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight Recorder event for a phase of the Silhouette execution. Only used through
+ * {@link SilhouetteProfiling}.
+ *
+ * @author University of Reading
+ */
+@Name("uk.ac.reading.cs.knime.silhouette.Phase")
+@Label("Silhouette Phase")
+@Category({"KNIME", "Silhouette"})
+@Description("A phase of the Silhouette execution")
+final class SilhouettePhaseEvent extends Event implements SilhouetteProfiling.Phase {
+
+	@Label("Phase")
+	String phase;
+
+	@Label("Rows")
+	long rows;
+
+	@Label("Bytes")
+	@DataAmount
+	long bytes;
+
+	static SilhouetteProfiling.Phase begin(String phase) {
+		SilhouettePhaseEvent event = new SilhouettePhaseEvent();
+		event.phase = phase;
+		event.begin();
+		return event;
+	}
+
+	@Override
+	public void finish(long rows, long bytes) {
+		end();
+		if(shouldCommit()) {
+			this.rows = rows;
+			this.bytes = bytes;
+			commit();
+		}
+	}
+}
@@ -0,0 +1,367 @@
+package uk.ac.reading.cs.knime.silhouette;
+
+import java.util.Locale;
+
+/**
+ * Chooses how the Silhouette node computes the coefficients: from the number of rows, the
+ * dimensions and the number of clusters it estimates the heap and the time of each strategy and
+ * picks the first one that meets the budgets. Both grow quadratically with the rows, so the
+ * estimates are rough upper bounds (calibrated on a desktop machine) rather than predictions.
+ *
+ * @author University of Reading
+ */
+final class SilhouettePlanner {
+
+	/** The execution strategies, in order of preference */
+	enum Strategy {
+		/** The computed distances are kept in a condensed primitive matrix, up to 65536 rows */
+		IN_MEMORY("In-memory (exact)"),
+		/** No distance matrix, the features are kept and the distances summed per cluster tile by tile */
+		BLOCKED("Blocked (exact)"),
+		/** The computed distances are written tile by tile to a memory-mapped file and read back tile by tile */
+		SPILLED("Spilled (exact, memory-mapped)"),
+		/** The computed distance matrix is written to disk and read back block by block */
+		STREAMING("Streaming (exact)"),
+		/** The coefficients are computed on a uniform random sample of rows, kept in memory */
+		SAMPLED("Sampled (approximate)"),
+		/** The distances to the cluster centroids replace the mean distances, never chosen automatically */
+		SIMPLIFIED("Simplified (approximate, centroids)"),
+		/**
+		 * The coefficients are computed on a stratified random sample of every cluster against all
+		 * rows or a sample of reference rows, with confidence intervals; never chosen automatically
+		 */
+		STRATIFIED("Stratified sample (approximate, confidence intervals)");
+
+		private final String m_label;
+
+		Strategy(String label) {
+			m_label = label;
+		}
+
+		/** @return the label shown in the dialog and the plan */
+		String getLabel() {
+			return m_label;
+		}
+
+		/**
+		 * @param label the label of a strategy
+		 * @return the strategy or <code>null</code> if there is none with this label
+		 */
+		static Strategy forLabel(String label) {
+			for(Strategy strategy : values()) {
+				if(strategy.m_label.equals(label)) return strategy;
+			}
+			return null;
+		}
+	}
+
+	/** Number of clusters assumed if the domain of the cluster column has no values */
+	static final int DEFAULT_CLUSTERS = 10;
+
+	/** Nanoseconds to compare one dimension of a pair of rows of decoded features */
+	private static final double NANOS_PER_DECODED_TERM = 2.0;
+
+	/** Nanoseconds to look up one distance and the encoded cluster of a pair of rows */
+	private static final double NANOS_PER_PAIR = 30.0;
+
+	/** Nanoseconds to add one distance of a condensed matrix to the cluster sums */
+	private static final double NANOS_PER_CONDENSED_PAIR = 2.0;
+
+	/** Nanoseconds to compare one dimension of a pair of rows of a tile of features */
+	private static final double NANOS_PER_TILED_TERM = 1.0;
+
+	/** Nanoseconds to take the root of a distance of a tile and add it to the cluster sums */
+	private static final double NANOS_PER_TILED_PAIR = 1.0;
+
+	/** Nanoseconds to write a distance to the mapped file and read it back for both its rows */
+	private static final double NANOS_PER_SPILLED_PAIR = 2.0;
+
+	/** Factor of the time when the distances are read back from disk */
+	private static final double SPILL_FACTOR = 2.0;
+
+	/** Bytes per row of the internal model (colour, row index, coefficient, own cluster) */
+	private static final long MODEL_BYTES_PER_ROW = 8 + 4 + 8 + 4;
+
+	/** The chosen strategy with its estimates */
+	static final class Plan {
+
+		private final Strategy m_strategy;
+
+		private final long m_rows;
+
+		private final long m_evaluatedRows;
+
+		private final long m_heapBytes;
+
+		private final double m_seconds;
+
+		private final long m_heapBudget;
+
+		/** The strategy set in the dialog, <code>null</code> if the planner chooses */
+		private final Strategy m_requested;
+
+		private final boolean m_matrixInput;
+
+		private Plan(Strategy strategy, long rows, long evaluatedRows, long heapBytes, double seconds,
+				long heapBudget, Strategy requested, boolean matrixInput) {
+			m_strategy = strategy;
+			m_rows = rows;
+			m_evaluatedRows = evaluatedRows;
+			m_heapBytes = heapBytes;
+			m_seconds = seconds;
+			m_heapBudget = heapBudget;
+			m_requested = requested;
+			m_matrixInput = matrixInput;
+		}
+
+		/** @return the strategy */
+		Strategy getStrategy() {
+			return m_strategy;
+		}
+
+		/** @return the number of rows the coefficients are computed for */
+		long getEvaluatedRows() {
+			return m_evaluatedRows;
+		}
+
+		/** @return the estimated heap in bytes */
+		long getHeapBytes() {
+			return m_heapBytes;
+		}
+
+		/** @return the estimated time in seconds (upper bound) */
+		double getSeconds() {
+			return m_seconds;
+		}
+
+		/**
+		 * @return the plan if the user should be warned about it, <code>null</code> otherwise: if it
+		 *         overrides the strategy set in the dialog or if the planner chose to approximate
+		 */
+		String getWarning() {
+			boolean overridden = m_requested != null && m_requested != m_strategy;
+			boolean approximated = m_requested == null && !m_matrixInput && m_strategy == Strategy.SAMPLED;
+			return overridden || approximated ? toString() : null;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public String toString() {
+			StringBuilder sb = new StringBuilder("Execution plan: ");
+			if(m_matrixInput) {
+				sb.append("distance matrix input (exact)");
+			} else {
+				sb.append(m_strategy.getLabel());
+				if(m_strategy == Strategy.SAMPLED || m_strategy == Strategy.STRATIFIED) {
+					sb.append(" on ").append(m_evaluatedRows).append(" of ").append(m_rows).append(" rows");
+				}
+			}
+			if(m_requested != null) {
+				sb.append(m_requested == m_strategy ? " (set in the dialog)"
+						: " instead of " + m_requested.getLabel() + " set in the dialog");
+			}
+			sb.append(", estimated heap ").append(formatBytes(m_heapBytes));
+			sb.append(" (budget ").append(formatBytes(m_heapBudget)).append(")");
+			sb.append(String.format(Locale.ROOT, ", estimated time up to %.0f s", m_seconds));
+			return sb.toString();
+		}
+	}
+
+	private SilhouettePlanner() {
+		// utility class
+	}
+
+	/**
+	 * @param settings the strategy and budgets
+	 * @param rows the number of input rows
+	 * @param dimensions the number of included columns
+	 * @param clusters the (expected) number of clusters
+	 * @param matrixInput true if the distance matrix is an input, it is always used exactly
+	 * @return the plan
+	 */
+	static Plan plan(SilhouetteExecutionSettings settings, long rows, int dimensions, int clusters,
+			boolean matrixInput) {
+		long heapBudget = settings.getHeapBudgetBytes();
+		int timeBudget = settings.getTimeBudgetSeconds();
+		Strategy requested = settings.getStrategy();
+		Strategy chosen = requested;
+		int threads = settings.getThreads();
+		boolean symmetric = settings.isSymmetric();
+		if(matrixInput) {
+			// the rows of the matrix belong to all input rows, it can neither be kept nor sampled
+			return new Plan(Strategy.STREAMING, rows, rows, estimateHeap(Strategy.STREAMING, rows, 0, clusters),
+					estimateSeconds(Strategy.STREAMING, rows, 0, clusters, threads, symmetric), heapBudget, requested, true);
+		}
+		long sampleSize = Math.min(Math.min(rows, settings.getSampleSize()), SilhouetteCondensedMatrix.MAX_ROWS);
+		if(chosen == Strategy.IN_MEMORY && rows > SilhouetteCondensedMatrix.MAX_ROWS) {
+			// the condensed matrix cannot hold that many rows
+			chosen = Strategy.STREAMING;
+		}
+		if(chosen == Strategy.BLOCKED && !fitsBlocked(rows, dimensions, clusters)) {
+			// the features or the cluster sums don't fit into an array
+			chosen = Strategy.STREAMING;
+		}
+		if(chosen == Strategy.SPILLED && !fitsSpilled(rows, dimensions, settings)) {
+			// the features don't fit into an array or the matrix not into the spill directory
+			chosen = Strategy.STREAMING;
+		}
+		if(chosen == Strategy.STRATIFIED) {
+			// no distance matrix, the sample is measured against the reference rows
+			long evaluatedRows = Math.min(rows, settings.getSampleSize());
+			long referenceRows = settings.getReferenceSize() > 0
+					? Math.min(rows, (long) settings.getReferenceSize() * clusters) : rows;
+			return new Plan(chosen, rows, evaluatedRows,
+					estimateStratifiedHeap(rows, evaluatedRows, referenceRows, dimensions),
+					estimateStratifiedSeconds(evaluatedRows, referenceRows, dimensions, threads), heapBudget, requested, false);
+		}
+		if(chosen != null) {
+			long evaluatedRows = chosen == Strategy.SAMPLED ? sampleSize : rows;
+			return new Plan(chosen, rows, evaluatedRows, estimateHeap(chosen, evaluatedRows, dimensions, clusters),
+					estimateSeconds(chosen, evaluatedRows, dimensions, clusters, threads, symmetric), heapBudget, requested, false);
+		}
+		for(Strategy strategy : new Strategy[] {Strategy.IN_MEMORY, Strategy.BLOCKED, Strategy.SPILLED,
+				Strategy.STREAMING}) {
+			if(strategy == Strategy.IN_MEMORY && rows > SilhouetteCondensedMatrix.MAX_ROWS) continue;
+			if(strategy == Strategy.BLOCKED && !fitsBlocked(rows, dimensions, clusters)) continue;
+			if(strategy == Strategy.SPILLED && !fitsSpilled(rows, dimensions, settings)) continue;
+			long heap = estimateHeap(strategy, rows, dimensions, clusters);
+			double seconds = estimateSeconds(strategy, rows, dimensions, clusters, threads, symmetric);
+			if(heap <= heapBudget && (timeBudget == 0 || seconds <= timeBudget)) {
+				return new Plan(strategy, rows, rows, heap, seconds, heapBudget, null, false);
+			}
+		}
+		// halve the sample until it fits, a coefficient needs at least two rows
+		long evaluatedRows = sampleSize;
+		while(evaluatedRows > 2) {
+			boolean fitsHeap = estimateHeap(Strategy.SAMPLED, evaluatedRows, dimensions, clusters) <= heapBudget;
+			boolean fitsTime = timeBudget == 0
+					|| estimateSeconds(Strategy.SAMPLED, evaluatedRows, dimensions, clusters, threads, symmetric) <= timeBudget;
+			if(fitsHeap && fitsTime) break;
+			evaluatedRows = Math.max(2, evaluatedRows / 2);
+		}
+		return new Plan(Strategy.SAMPLED, rows, evaluatedRows, estimateHeap(Strategy.SAMPLED, evaluatedRows, dimensions, clusters),
+				estimateSeconds(Strategy.SAMPLED, evaluatedRows, dimensions, clusters, threads, symmetric), heapBudget, null, false);
+	}
+
+	/**
+	 * @param strategy the strategy
+	 * @param rows the number of rows the coefficients are computed for
+	 * @param dimensions the number of included columns, 0 if the distances are not computed
+	 * @param clusters the number of clusters
+	 * @return the estimated heap in bytes
+	 */
+	static long estimateHeap(Strategy strategy, long rows, int dimensions, int clusters) {
+		// the internal model and one row of distances while it is computed
+		// and the features the distances are computed from
+		long bytes = rows * (MODEL_BYTES_PER_ROW + 8) + rows * dimensions * 8;
+		if(strategy == Strategy.SIMPLIFIED) {
+			// the centroids
+			bytes += (long) clusters * dimensions * 8;
+		} else if(strategy == Strategy.BLOCKED) {
+			// the distance sums of every row to every cluster
+			bytes += rows * clusters * 8;
+		} else if(strategy == Strategy.SPILLED) {
+			// the matrix is in the file system cache, the sums of the tiles being read are small
+		} else if(strategy != Strategy.STREAMING) {
+			// the condensed distance matrix and the cluster sums
+			bytes += SilhouetteCondensedMatrix.heapBytes(rows) + rows * clusters * 8;
+		}
+		return bytes;
+	}
+
+	/**
+	 * @param strategy the strategy
+	 * @param rows the number of rows the coefficients are computed for
+	 * @param dimensions the number of included columns, 0 if the distances are not computed
+	 * @param clusters the number of clusters
+	 * @param threads the number of threads, the streaming strategy uses one
+	 * @param symmetric true if every distance is visited once for the cluster sums
+	 * @return the estimated time in seconds
+	 */
+	static double estimateSeconds(Strategy strategy, long rows, int dimensions, int clusters, int threads,
+			boolean symmetric) {
+		double pairs = (double)rows * rows;
+		double visited = symmetric ? pairs / 2 : pairs;
+		if(strategy == Strategy.SIMPLIFIED) {
+			// every row against every centroid
+			return (double) rows * clusters * dimensions * NANOS_PER_DECODED_TERM / threads / 1e9;
+		}
+		if(strategy == Strategy.BLOCKED) {
+			// every distance is computed from the tiles of features (twice unless symmetric), in the cache
+			return visited * (dimensions * NANOS_PER_TILED_TERM + NANOS_PER_TILED_PAIR) / threads / 1e9;
+		}
+		if(strategy == Strategy.SPILLED) {
+			// every distance is computed once from the tiles and written, then read back for both its rows
+			return (pairs / 2 * (dimensions * NANOS_PER_TILED_TERM + NANOS_PER_TILED_PAIR) + pairs * NANOS_PER_SPILLED_PAIR)
+					/ threads / 1e9;
+		}
+		if(strategy != Strategy.STREAMING) {
+			// every distance is computed once from the decoded rows, the cluster sums read the condensed matrix
+			return (pairs / 2 * dimensions * NANOS_PER_DECODED_TERM + visited * NANOS_PER_CONDENSED_PAIR) / threads / 1e9;
+		}
+		// every distance is computed once, every pair is read back once for the coefficients
+		return (pairs / 2 * dimensions * NANOS_PER_DECODED_TERM + pairs * NANOS_PER_PAIR * SPILL_FACTOR) / 1e9;
+	}
+
+	/**
+	 * @param rows the number of input rows
+	 * @param evaluatedRows the number of sampled rows
+	 * @param referenceRows the number of reference rows
+	 * @param dimensions the number of included columns
+	 * @return the estimated heap in bytes of the stratified strategy
+	 */
+	static long estimateStratifiedHeap(long rows, long evaluatedRows, long referenceRows, int dimensions) {
+		// the internal model and the features of the sample, the features and clusters of the
+		// reference rows, the stratum and the flags of every input row
+		return evaluatedRows * (MODEL_BYTES_PER_ROW + 8 + dimensions * 8L) + referenceRows * (dimensions * 8L + 4)
+				+ rows * (4 + 2);
+	}
+
+	/**
+	 * @param evaluatedRows the number of sampled rows
+	 * @param referenceRows the number of reference rows
+	 * @param dimensions the number of included columns
+	 * @param threads the number of threads
+	 * @return the estimated time in seconds of the stratified strategy
+	 */
+	static double estimateStratifiedSeconds(long evaluatedRows, long referenceRows, int dimensions, int threads) {
+		// every sampled row against every reference row, tile by tile
+		return (double) evaluatedRows * referenceRows * (dimensions * NANOS_PER_TILED_TERM + NANOS_PER_TILED_PAIR)
+				/ threads / 1e9;
+	}
+
+	/**
+	 * @param rows the number of rows
+	 * @param dimensions the number of included columns
+	 * @param clusters the number of clusters
+	 * @return true if the features and the cluster sums of the blocked strategy fit into arrays
+	 */
+	static boolean fitsBlocked(long rows, int dimensions, int clusters) {
+		return rows * Math.max(dimensions, clusters) <= Integer.MAX_VALUE - 8;
+	}
+
+	/**
+	 * @param rows the number of rows
+	 * @param dimensions the number of included columns
+	 * @param settings the tile rows and the directory of the spilled matrix
+	 * @return true if the features fit into an array and the matrix into the spill directory
+	 */
+	static boolean fitsSpilled(long rows, int dimensions, SilhouetteExecutionSettings settings) {
+		return rows <= Integer.MAX_VALUE - 8 && rows * dimensions <= Integer.MAX_VALUE - 8
+				&& SilhouetteSpilledMatrix.fileBytes(rows, settings.getSpillTileRows())
+						<= settings.getSpillDirectory().getUsableSpace();
+	}
+
+	/**
+	 * @param bytes a number of bytes
+	 * @return the bytes in a human readable unit
+	 */
+	static String formatBytes(long bytes) {
+		if(bytes < 1024) return bytes + " B";
+		String units = "KMGTPE";
+		int unit = (int)(Math.log(bytes) / Math.log(1024));
+		return String.format(Locale.ROOT, "%.1f %sB", bytes / Math.pow(1024, unit), units.charAt(unit - 1));
+	}
+}
@@ -0,0 +1,51 @@
+package uk.ac.reading.cs.knime.silhouette;
+
+/**
+ * Entry point for the profiling events of the Silhouette node. If Java Flight Recorder is
+ * available, each phase is recorded as a {@link SilhouettePhaseEvent} with its duration, row
+ * count and bytes; otherwise nothing is recorded and the event class is never loaded.
+ *
+ * @author University of Reading
+ */
+final class SilhouetteProfiling {
+
+	/** A running phase */
+	interface Phase {
+		/**
+		 * Ends the phase and records it.
+		 *
+		 * @param rows the number of rows processed
+		 * @param bytes the number of bytes processed
+		 */
+		void finish(long rows, long bytes);
+	}
+
+	private static final Phase NOOP = (rows, bytes) -> {
+		// nothing to record
+	};
+
+	private static final boolean JFR_AVAILABLE = isJfrAvailable();
+
+	private SilhouetteProfiling() {
+		// utility class
+	}
+
+	/**
+	 * Begins a phase.
+	 *
+	 * @param phase the name of the phase
+	 * @return the running phase
+	 */
+	static Phase begin(String phase) {
+		return JFR_AVAILABLE ? SilhouettePhaseEvent.begin(phase) : NOOP;
+	}
+
+	private static boolean isJfrAvailable() {
+		try {
+			Class.forName("jdk.jfr.Event", false, SilhouetteProfiling.class.getClassLoader());
+			return true;
+		} catch (ClassNotFoundException | LinkageError e) {
+			return false;
+		}
+	}
+}
@@ -0,0 +1,185 @@
+package uk.ac.reading.cs.knime.silhouette;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+
+import org.knime.core.node.NodeLogger;
+import org.knime.core.node.workflow.NodeContext;
+
+/**
+ * Live progress of the last Silhouette execution of a node, registered as JMX MBean
+ * (<code>uk.ac.reading.cs.knime.silhouette:type=SilhouetteProgress,node="&lt;node id&gt;"</code>)
+ * until the node is reset. The execution thread updates the values, JMX clients read them.
+ *
+ * @author University of Reading
+ */
+public final class SilhouetteProgress implements SilhouetteProgressMBean {
+
+	private static final AtomicInteger SEQUENCE = new AtomicInteger();
+
+	private final long m_startTime = System.currentTimeMillis();
+
+	private ObjectName m_name;
+
+	private volatile String m_phase = "starting";
+
+	private volatile long m_phaseStart = System.nanoTime();
+
+	private volatile long m_phaseTotalRows;
+
+	private volatile long m_rowsProcessed;
+
+	private volatile int m_threadsInUse = 1;
+
+	private volatile long m_memoryFootprint;
+
+	private SilhouetteProgress() {
+	}
+
+	/**
+	 * Creates the progress of a new execution and registers it with the platform MBean server
+	 * under the id of the executing node, replacing the progress of a previous execution of the
+	 * node. A failing registration is logged, the returned progress can be used anyway.
+	 *
+	 * @return the registered progress
+	 */
+	static SilhouetteProgress register() {
+		SilhouetteProgress progress = new SilhouetteProgress();
+		try {
+			ObjectName name = createName();
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			if(server.isRegistered(name)) {
+				// a previous execution of the node that was not reset
+				server.unregisterMBean(name);
+			}
+			server.registerMBean(progress, name);
+			progress.m_name = name;
+		} catch (JMException | SecurityException e) {
+			NodeLogger.getLogger(SilhouetteProgress.class).debug("Unable to register progress MBean", e);
+		}
+		return progress;
+	}
+
+	/**
+	 * @return the name of the MBean, with the id of the executing node or, outside of a
+	 *         workflow, a sequence number
+	 */
+	private static ObjectName createName() throws MalformedObjectNameException {
+		NodeContext context = NodeContext.getContext();
+		String key = context != null && context.getNodeContainer() != null
+				? "node=" + ObjectName.quote(context.getNodeContainer().getID().toString())
+				: "id=" + SEQUENCE.incrementAndGet();
+		return new ObjectName("uk.ac.reading.cs.knime.silhouette:type=SilhouetteProgress," + key);
+	}
+
+	/**
+	 * Removes the progress from the MBean server, to be called when the node is reset or
+	 * disposed.
+	 */
+	void unregister() {
+		if(m_name != null) {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			try {
+				server.unregisterMBean(m_name);
+			} catch (JMException | SecurityException e) {
+				NodeLogger.getLogger(SilhouetteProgress.class).debug("Unable to unregister progress MBean", e);
+			}
+			m_name = null;
+		}
+	}
+
+	/**
+	 * Starts a new phase and resets the processed rows.
+	 *
+	 * @param phase the name of the phase
+	 * @param totalRows the number of rows the phase will process at most, 0 if unknown
+	 */
+	void startPhase(String phase, long totalRows) {
+		m_phase = phase;
+		m_phaseTotalRows = totalRows;
+		m_rowsProcessed = 0;
+		m_phaseStart = System.nanoTime();
+	}
+
+	/** @param rows the number of rows processed in the current phase */
+	void setRowsProcessed(long rows) {
+		m_rowsProcessed = rows;
+	}
+
+	/** @param threads the number of threads working on the execution */
+	void setThreadsInUse(int threads) {
+		m_threadsInUse = threads;
+	}
+
+	/** @param bytes the estimated memory footprint of the node's data structures */
+	void setMemoryFootprint(long bytes) {
+		m_memoryFootprint = bytes;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public String getPhase() {
+		return m_phase;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public long getRowsProcessed() {
+		return m_rowsProcessed;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public double getRowsPerSecond() {
+		long nanos = System.nanoTime() - m_phaseStart;
+		return nanos > 0 ? m_rowsProcessed * 1e9 / nanos : 0.0;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public double getEstimatedSecondsRemaining() {
+		double rate = getRowsPerSecond();
+		long total = m_phaseTotalRows;
+		if(total <= 0 || rate <= 0.0) {
+			return Double.NaN;
+		}
+		return Math.max(0, total - m_rowsProcessed) / rate;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int getThreadsInUse() {
+		return m_threadsInUse;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public long getMemoryFootprintBytes() {
+		return m_memoryFootprint;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public long getStartTime() {
+		return m_startTime;
+	}
+}
@@ -0,0 +1,33 @@
+package uk.ac.reading.cs.knime.silhouette;
+
+/**
+ * Management interface of a running Silhouette execution, see {@link SilhouetteProgress}.
+ *
+ * @author University of Reading
+ */
+public interface SilhouetteProgressMBean {
+
+	/** @return the current phase of the execution */
+	String getPhase();
+
+	/** @return the number of rows processed in the current phase */
+	long getRowsProcessed();
+
+	/** @return the number of rows processed per second in the current phase */
+	double getRowsPerSecond();
+
+	/**
+	 * @return the estimated number of seconds until the current phase ends,
+	 *         <code>NaN</code> if unknown
+	 */
+	double getEstimatedSecondsRemaining();
+
+	/** @return the number of threads working on the execution */
+	int getThreadsInUse();
+
+	/** @return the estimated memory footprint of the node's data structures in bytes */
+	long getMemoryFootprintBytes();
+
+	/** @return the time the execution started, in milliseconds since the epoch */
+	long getStartTime();
+}
@@ -0,0 +1,221 @@
+package uk.ac.reading.cs.knime.silhouette;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+import org.knime.core.node.NodeLogger;
+
+/**
+ * The lower triangle of a distance matrix in a memory-mapped file, for more rows than the
+ * condensed matrix holds in the heap. The rows are split into tiles; the distances of the
+ * tiles t &gt;= o are one contiguous block of tileRows * tileRows distances, row by row, at
+ * block t(t+1)/2 + o, so a pair of tiles is written and read sequentially. The file is mapped
+ * in segments of whole blocks and its pages stay in the file system cache, not in the heap.
+ * The file is unmapped and deleted when the matrix is closed.
+ *
+ * @author University of Reading
+ */
+final class SilhouetteSpilledMatrix implements AutoCloseable {
+
+	/** Largest segment of the file mapped at once */
+	private static final long SEGMENT_BYTES = 1L << 30;
+
+	private final int m_rows;
+
+	private final int m_tileRows;
+
+	private final int m_tiles;
+
+	private final int m_blocksPerSegment;
+
+	private final File m_file;
+
+	private final RandomAccessFile m_access;
+
+	private final MappedByteBuffer[] m_mappings;
+
+	private final DoubleBuffer[] m_segments;
+
+	/**
+	 * Creates and maps the file of the matrix.
+	 *
+	 * @param rows the number of rows
+	 * @param tileRows the number of rows of a tile
+	 * @param directory the directory of the file
+	 * @throws IOException if the file cannot be created or mapped
+	 */
+	SilhouetteSpilledMatrix(int rows, int tileRows, File directory) throws IOException {
+		this(rows, tileRows, directory, SEGMENT_BYTES);
+	}
+
+	/**
+	 * @param rows the number of rows
+	 * @param tileRows the number of rows of a tile
+	 * @param directory the directory of the file
+	 * @param segmentBytes the largest segment of the file mapped at once
+	 * @throws IOException if the file cannot be created or mapped
+	 */
+	SilhouetteSpilledMatrix(int rows, int tileRows, File directory, long segmentBytes) throws IOException {
+		m_rows = rows;
+		m_tileRows = tileRows;
+		m_tiles = (rows + tileRows - 1) / tileRows;
+		long blockBytes = 8L * tileRows * tileRows;
+		m_blocksPerSegment = (int) Math.max(1, segmentBytes / blockBytes);
+		long blocks = (long) m_tiles * (m_tiles + 1) / 2;
+		int segments = (int) ((blocks + m_blocksPerSegment - 1) / m_blocksPerSegment);
+		m_mappings = new MappedByteBuffer[segments];
+		m_segments = new DoubleBuffer[segments];
+		m_file = File.createTempFile("silhouette-distances-", ".bin", directory);
+		// in case the JVM ends before the matrix is closed
+		m_file.deleteOnExit();
+		boolean mapped = false;
+		m_access = new RandomAccessFile(m_file, "rw");
+		try {
+			m_access.setLength(fileBytes(rows, tileRows));
+			FileChannel channel = m_access.getChannel();
+			for(int s = 0; s < segments; s++) {
+				long from = (long) s * m_blocksPerSegment * blockBytes;
+				long size = Math.min(blocks - (long) s * m_blocksPerSegment, m_blocksPerSegment) * blockBytes;
+				m_mappings[s] = channel.map(FileChannel.MapMode.READ_WRITE, from, size);
+				m_segments[s] = m_mappings[s].duplicate().order(ByteOrder.nativeOrder()).asDoubleBuffer();
+			}
+			mapped = true;
+		} finally {
+			if(!mapped) close();
+		}
+	}
+
+	/**
+	 * @param rows the number of rows
+	 * @param tileRows the number of rows of a tile
+	 * @return the size of the file in bytes
+	 */
+	static long fileBytes(long rows, int tileRows) {
+		long tiles = (rows + tileRows - 1) / tileRows;
+		return tiles * (tiles + 1) / 2 * 8L * tileRows * tileRows;
+	}
+
+	/** @return the number of rows */
+	int getRowCount() {
+		return m_rows;
+	}
+
+	/** @return the number of rows of a tile */
+	int getTileRows() {
+		return m_tileRows;
+	}
+
+	/** @return the number of tiles */
+	int getTileCount() {
+		return m_tiles;
+	}
+
+	/**
+	 * @param tile a tile
+	 * @param other a tile at most <code>tile</code>
+	 * @return a view of the segment positioned at the block of the tiles
+	 */
+	private DoubleBuffer block(int tile, int other) {
+		long block = (long) tile * (tile + 1) / 2 + other;
+		DoubleBuffer view = m_segments[(int) (block / m_blocksPerSegment)].duplicate();
+		view.position((int) (block % m_blocksPerSegment) * m_tileRows * m_tileRows);
+		return view;
+	}
+
+	/**
+	 * Writes the distances of a pair of tiles, the pairs may be written concurrently.
+	 *
+	 * @param tile a tile
+	 * @param other a tile at most <code>tile</code>
+	 * @param distances the distances of the rows of the tile (by row) to the rows of the other
+	 *        tile, tileRows * tileRows of them
+	 */
+	void writeBlock(int tile, int other, double[] distances) {
+		block(tile, other).put(distances, 0, m_tileRows * m_tileRows);
+	}
+
+	/**
+	 * Reads the distances of a pair of tiles, the pairs may be read concurrently.
+	 *
+	 * @param tile a tile
+	 * @param other a tile at most <code>tile</code>
+	 * @param distances the distances of the rows of the tile (by row) to the rows of the other
+	 *        tile, overwritten
+	 */
+	void readBlock(int tile, int other, double[] distances) {
+		block(tile, other).get(distances, 0, m_tileRows * m_tileRows);
+	}
+
+	/**
+	 * Unmaps, closes and deletes the file, the matrix must not be used by any thread any more.
+	 * Where the mappings cannot be unmapped they are released by the garbage collector; the
+	 * file is truncated to free the disk space and a file that cannot be deleted while it is
+	 * mapped is deleted when the JVM ends.
+	 *
+	 * @throws IOException if the file cannot be closed
+	 */
+	@Override
+	public void close() throws IOException {
+		release();
+	}
+
+	/**
+	 * Unmaps, closes and deletes the file like {@link #close()}.
+	 *
+	 * @return true if the file is deleted, false if it is left to be deleted when the JVM ends
+	 *         (a warning is logged)
+	 * @throws IOException if the file cannot be closed
+	 */
+	boolean release() throws IOException {
+		// an access to an unmapped segment would crash the JVM, the views are dropped first
+		Arrays.fill(m_segments, null);
+		boolean unmapped = true;
+		for(int s = 0; s < m_mappings.length; s++) {
+			if(m_mappings[s] != null) unmapped &= unmap(m_mappings[s]);
+			m_mappings[s] = null;
+		}
+		try {
+			try {
+				m_access.setLength(0);
+			} catch(IOException e) {
+				// some platforms do not truncate a mapped file
+				NodeLogger.getLogger(SilhouetteSpilledMatrix.class).debug("Unable to truncate " + m_file, e);
+			}
+			m_access.close();
+		} finally {
+			if(!m_file.delete() && m_file.exists()) {
+				NodeLogger.getLogger(SilhouetteSpilledMatrix.class).warn("Unable to delete the distance matrix file "
+						+ m_file + (unmapped ? "" : " while it is mapped") + ", it is deleted when the JVM ends");
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Unmaps a mapping with <code>sun.misc.Unsafe.invokeCleaner</code> (Java 9 and later).
+	 *
+	 * @param mapping the mapping, it must not be accessed any more
+	 * @return true if the mapping was unmapped, false if it is left to the garbage collector
+	 */
+	private static boolean unmap(MappedByteBuffer mapping) {
+		try {
+			Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+			Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+			theUnsafe.setAccessible(true);
+			unsafeClass.getMethod("invokeCleaner", ByteBuffer.class).invoke(theUnsafe.get(null), mapping);
+			return true;
+		} catch(ReflectiveOperationException | RuntimeException e) {
+			NodeLogger.getLogger(SilhouetteSpilledMatrix.class).debug("Unable to unmap the distance matrix", e);
+			return false;
+		}
+	}
+}
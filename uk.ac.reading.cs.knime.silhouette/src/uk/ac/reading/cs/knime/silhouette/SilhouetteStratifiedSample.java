@@ -0,0 +1,191 @@
+package uk.ac.reading.cs.knime.silhouette;
+
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * A stratified random sample of the rows of the clustered data, the clusters are the strata:
+ * every cluster contributes rows in proportion to its size, but at least
+ * {@link #MIN_STRATUM_ROWS} (or all of its rows). The coefficients of the sampled rows are
+ * computed exactly against the reference rows, either all rows or a random sample of every
+ * cluster, and the mean coefficients of the clusters are estimated with analytic confidence
+ * intervals.
+ *
+ * @author University of Reading
+ */
+final class SilhouetteStratifiedSample {
+
+	/** Rows sampled from a cluster at least, enough for a normal confidence interval */
+	static final int MIN_STRATUM_ROWS = 30;
+
+	/** z-value of a two-sided 95% confidence interval */
+	static final double Z_95 = 1.959963984540054;
+
+	/** The labels of the strata, in the order they appear in the data */
+	private final Object[] m_strata;
+
+	private final int[] m_stratumOfRow;
+
+	private final int[] m_stratumSizes;
+
+	private final boolean[] m_sampled;
+
+	/** The reference rows, <code>null</code> for all rows */
+	private final boolean[] m_reference;
+
+	/**
+	 * Draws the sample and the reference rows, each with selection sampling within every
+	 * stratum, kept in table order.
+	 *
+	 * @param strata the labels of the strata (clusters), in the order they appear in the data
+	 * @param stratumOfRow the stratum of every row, -1 for rows without a cluster
+	 * @param sampleSize the number of rows to sample, split over the strata by their size
+	 * @param referenceSize the number of reference rows of every stratum, 0 for all rows
+	 * @param seed the seed of the random numbers
+	 */
+	SilhouetteStratifiedSample(Object[] strata, int[] stratumOfRow, long sampleSize, int referenceSize, long seed) {
+		m_strata = strata;
+		m_stratumOfRow = stratumOfRow;
+		m_stratumSizes = new int[strata.length];
+		long population = 0;
+		for(int stratum : stratumOfRow) {
+			if(stratum < 0) continue;
+			m_stratumSizes[stratum]++;
+			population++;
+		}
+
+		// proportional allocation, small clusters get their minimum
+		int[] sampleSizes = new int[strata.length];
+		for(int s = 0; s < strata.length; s++) {
+			long proportional = Math.round((double) sampleSize * m_stratumSizes[s] / Math.max(1, population));
+			sampleSizes[s] = (int) Math.min(m_stratumSizes[s], Math.max(MIN_STRATUM_ROWS, proportional));
+		}
+		m_sampled = select(sampleSizes, new Random(seed));
+
+		if(referenceSize > 0) {
+			int[] referenceSizes = new int[strata.length];
+			for(int s = 0; s < strata.length; s++) {
+				referenceSizes[s] = Math.min(m_stratumSizes[s], referenceSize);
+			}
+			// drawn independently of the sample, a sampled row may be a reference row as well
+			m_reference = select(referenceSizes, new Random(seed + 1));
+		} else {
+			m_reference = null;
+		}
+	}
+
+	/**
+	 * @param counts the number of rows to select from each stratum
+	 * @param random the random numbers
+	 * @return true for the selected rows
+	 */
+	private boolean[] select(int[] counts, Random random) {
+		int[] needed = counts.clone(), remaining = m_stratumSizes.clone();
+		boolean[] selected = new boolean[m_stratumOfRow.length];
+		for(int row = 0; row < m_stratumOfRow.length; row++) {
+			int s = m_stratumOfRow[row];
+			if(s < 0) continue;
+			// keeping the row with the probability of still needed to remaining rows of its stratum
+			if(random.nextDouble() * remaining[s] < needed[s]) {
+				selected[row] = true;
+				needed[s]--;
+			}
+			remaining[s]--;
+		}
+		return selected;
+	}
+
+	/** @return true for the rows in the sample */
+	boolean[] getSampled() {
+		return m_sampled;
+	}
+
+	/**
+	 * @param row a row of the data
+	 * @return true if the distances of the sampled rows are measured against the row
+	 */
+	boolean isReference(int row) {
+		return m_stratumOfRow[row] >= 0 && (m_reference == null || m_reference[row]);
+	}
+
+	/** @return the number of reference rows */
+	int getReferenceCount() {
+		int count = 0;
+		for(int row = 0; row < m_stratumOfRow.length; row++) {
+			if(isReference(row)) count++;
+		}
+		return count;
+	}
+
+	/**
+	 * @param clusterOfStratum the cluster index of every stratum
+	 * @return the cluster index of every reference row, in table order
+	 */
+	int[] getReferenceClusters(int[] clusterOfStratum) {
+		int[] clusterOfReference = new int[getReferenceCount()];
+		int r = 0;
+		for(int row = 0; row < m_stratumOfRow.length; row++) {
+			if(isReference(row)) clusterOfReference[r++] = clusterOfStratum[m_stratumOfRow[row]];
+		}
+		return clusterOfReference;
+	}
+
+	/** @return for every row of the sample, in table order, whether it is a reference row as well */
+	boolean[] getSampledReferences() {
+		int count = 0;
+		for(boolean sampled : m_sampled) {
+			if(sampled) count++;
+		}
+		boolean[] sampledReferences = new boolean[count];
+		int r = 0;
+		for(int row = 0; row < m_sampled.length; row++) {
+			if(m_sampled[row]) sampledReferences[r++] = isReference(row);
+		}
+		return sampledReferences;
+	}
+
+	/**
+	 * @param clusterIndices the cluster index of each label, as registered from the sample
+	 * @return the cluster index of every stratum
+	 */
+	int[] encode(Map<Object, Integer> clusterIndices) {
+		int[] clusterOfStratum = new int[m_strata.length];
+		for(int s = 0; s < m_strata.length; s++) {
+			clusterOfStratum[s] = clusterIndices.get(m_strata[s]);
+		}
+		return clusterOfStratum;
+	}
+
+	/**
+	 * @param clusterOfStratum the cluster index of every stratum
+	 * @return the number of rows of each cluster in the data, not only in the sample
+	 */
+	int[] getClusterSizes(int[] clusterOfStratum) {
+		int[] clusterSizes = new int[m_stratumSizes.length];
+		for(int s = 0; s < m_stratumSizes.length; s++) {
+			clusterSizes[clusterOfStratum[s]] = m_stratumSizes[s];
+		}
+		return clusterSizes;
+	}
+
+	/**
+	 * Estimates the standard error of the mean coefficient of a cluster from its sampled
+	 * coefficients, with the finite population correction: a cluster sampled completely has
+	 * none.
+	 *
+	 * @param coefficients the coefficients of the sampled rows of the cluster
+	 * @param mean the mean of the coefficients
+	 * @param clusterSize the number of rows of the cluster in the data
+	 * @return the standard error, 0 if fewer than two rows are sampled
+	 */
+	static double standardError(double[] coefficients, double mean, int clusterSize) {
+		int m = coefficients.length;
+		if(m < 2) return 0;
+		double squares = 0;
+		for(double coefficient : coefficients) {
+			squares += (coefficient - mean) * (coefficient - mean);
+		}
+		double variance = squares / (m - 1);
+		return Math.sqrt(variance / m * Math.max(0, 1 - (double) m / clusterSize));
+	}
+}
@@ -13,8 +13,6 @@ import javax.swing.JTable;
 import javax.swing.table.DefaultTableCellRenderer;
 import javax.swing.table.TableModel;
 
-import com.sun.istack.internal.NotNull; 
-
 /**
  * 
  * This panel will render a JTable with these information for each cluster:
@@ -57,7 +55,7 @@ public class SilhouetteViewStatsPanel extends JPanel {
 	 * 
 	 * @param silhouetteModel Silhouette Model containing all cluster data
 	 */
-	public SilhouetteViewStatsPanel(@NotNull SilhouetteModel silhouetteModel) {
+	public SilhouetteViewStatsPanel(SilhouetteModel silhouetteModel) {
 		SilhouetteViewStatsPanel.silhouetteModel = silhouetteModel;
 	}
 
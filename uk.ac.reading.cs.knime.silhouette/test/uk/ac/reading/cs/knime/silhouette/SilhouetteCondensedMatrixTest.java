@@ -0,0 +1,157 @@
+package uk.ac.reading.cs.knime.silhouette;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests the indexing of the condensed distance matrix against the naive row by row computation.
+ *
+ * @author University of Reading
+ */
+public class SilhouetteCondensedMatrixTest {
+
+	/**
+	 * @param rows the number of rows
+	 * @param dimensions the number of features of a row
+	 * @param seed the seed of the random features
+	 * @return random features, row by row
+	 */
+	static double[] randomFeatures(int rows, int dimensions, long seed) {
+		Random random = new Random(seed);
+		double[] features = new double[rows * dimensions];
+		for(int i = 0; i < features.length; i++) {
+			features[i] = random.nextGaussian();
+		}
+		return features;
+	}
+
+	/**
+	 * @param rows the number of rows
+	 * @param clusters the number of clusters, every cluster gets at least one row
+	 * @param seed the seed of the random clusters
+	 * @return the cluster index of each row
+	 */
+	static int[] randomClusters(int rows, int clusters, long seed) {
+		Random random = new Random(seed);
+		int[] clusterOfRow = new int[rows];
+		for(int row = 0; row < rows; row++) {
+			clusterOfRow[row] = row < clusters ? row : random.nextInt(clusters);
+		}
+		return clusterOfRow;
+	}
+
+	/** @return the number of rows of each cluster */
+	static int[] clusterSizes(int[] clusterOfRow, int clusters) {
+		int[] sizes = new int[clusters];
+		for(int c : clusterOfRow) {
+			sizes[c]++;
+		}
+		return sizes;
+	}
+
+	/**
+	 * The naive O(n^2) computation: every distance of every row, summed per cluster.
+	 *
+	 * @return the mean distances of each row to each cluster (at row * clusters + cluster)
+	 */
+	static double[] naiveMeanDistances(double[] features, int dimensions, int[] clusterOfRow, int clusters) {
+		int rows = clusterOfRow.length;
+		int[] sizes = clusterSizes(clusterOfRow, clusters);
+		double[] means = new double[rows * clusters];
+		double[] distances = new double[rows];
+		double[] clusterDistances = new double[clusters];
+		for(int row = 0; row < rows; row++) {
+			for(int other = 0; other < rows; other++) {
+				distances[other] = SilhouetteKernel.euclideanDistance(features, dimensions, row, other);
+			}
+			Arrays.fill(clusterDistances, 0);
+			SilhouetteKernel.accumulateClusterDistances(distances, row, clusterOfRow, sizes, clusterDistances);
+			System.arraycopy(clusterDistances, 0, means, row * clusters, clusters);
+		}
+		return means;
+	}
+
+	private static SilhouetteCondensedMatrix createMatrix(double[] features, int dimensions, int rows) {
+		SilhouetteCondensedMatrix matrix = new SilhouetteCondensedMatrix(rows);
+		for(int i = 1; i < rows; i++) {
+			for(int j = 0; j < i; j++) {
+				matrix.set(i, j, SilhouetteKernel.euclideanDistance(features, dimensions, i, j));
+			}
+		}
+		return matrix;
+	}
+
+	@Test
+	public void testGetIsSymmetric() {
+		int rows = 7;
+		SilhouetteCondensedMatrix matrix = new SilhouetteCondensedMatrix(rows);
+		for(int i = 1; i < rows; i++) {
+			for(int j = 0; j < i; j++) {
+				matrix.set(i, j, i * 10 + j);
+			}
+		}
+		for(int i = 0; i < rows; i++) {
+			assertEquals(0, matrix.get(i, i), 0);
+			for(int j = 0; j < i; j++) {
+				assertEquals(i * 10 + j, matrix.get(i, j), 0);
+				assertEquals(i * 10 + j, matrix.get(j, i), 0);
+			}
+		}
+	}
+
+	@Test
+	public void testHeapBytes() {
+		assertEquals(0, SilhouetteCondensedMatrix.heapBytes(1));
+		assertEquals(7 * 6 / 2 * 8, SilhouetteCondensedMatrix.heapBytes(7));
+		assertEquals(7, new SilhouetteCondensedMatrix(7).getRowCount());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testRejectsTooManyRows() {
+		new SilhouetteCondensedMatrix(SilhouetteCondensedMatrix.MAX_ROWS + 1);
+	}
+
+	@Test
+	public void testAccumulateClusterDistancesMatchesNaive() {
+		int rows = 53, dimensions = 3, clusters = 4;
+		double[] features = randomFeatures(rows, dimensions, 1);
+		int[] clusterOfRow = randomClusters(rows, clusters, 2);
+		int[] sizes = clusterSizes(clusterOfRow, clusters);
+		SilhouetteCondensedMatrix matrix = createMatrix(features, dimensions, rows);
+		double[] expected = naiveMeanDistances(features, dimensions, clusterOfRow, clusters);
+		for(int row = 0; row < rows; row++) {
+			double[] clusterDistances = new double[clusters];
+			matrix.accumulateClusterDistances(row, clusterOfRow, sizes, clusterDistances);
+			assertArrayEquals(Arrays.copyOfRange(expected, row * clusters, (row + 1) * clusters),
+					clusterDistances, 1e-12);
+		}
+	}
+
+	@Test
+	public void testAccumulateTilePairMatchesNaive() {
+		int rows = 53, dimensions = 3, clusters = 4, tileRows = 16;
+		double[] features = randomFeatures(rows, dimensions, 1);
+		int[] clusterOfRow = randomClusters(rows, clusters, 2);
+		int[] sizes = clusterSizes(clusterOfRow, clusters);
+		SilhouetteCondensedMatrix matrix = createMatrix(features, dimensions, rows);
+		double[] sums = new double[rows * clusters];
+		for(int tile = 0; tile * tileRows < rows; tile++) {
+			for(int other = 0; other <= tile; other++) {
+				matrix.accumulateTilePair(tile * tileRows, Math.min(rows, (tile + 1) * tileRows), other * tileRows,
+						Math.min(rows, (other + 1) * tileRows), clusterOfRow, clusters, sums);
+			}
+		}
+		double[] means = new double[rows * clusters];
+		double[] clusterDistances = new double[clusters];
+		for(int row = 0; row < rows; row++) {
+			SilhouetteKernel.meanClusterDistances(sums, row, clusterOfRow[row], sizes, clusterDistances);
+			System.arraycopy(clusterDistances, 0, means, row * clusters, clusters);
+		}
+		assertArrayEquals(naiveMeanDistances(features, dimensions, clusterOfRow, clusters), means, 1e-12);
+	}
+}
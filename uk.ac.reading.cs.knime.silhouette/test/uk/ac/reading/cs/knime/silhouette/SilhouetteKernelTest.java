@@ -0,0 +1,115 @@
+package uk.ac.reading.cs.knime.silhouette;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+import org.knime.core.node.CanceledExecutionException;
+
+/**
+ * Tests the tiled, the symmetric and the spilled distance kernels of the Silhouette node
+ * against the naive computation of all distances row by row.
+ *
+ * @author University of Reading
+ */
+public class SilhouetteKernelTest {
+
+	/** Rows of the test data, the last tile is partial */
+	private static final int ROWS = 53;
+
+	private static final int DIMENSIONS = 3;
+
+	private static final int CLUSTERS = 4;
+
+	/** Rows of a tile */
+	private static final int TILE_ROWS = 16;
+
+	private final double[] m_features = SilhouetteCondensedMatrixTest.randomFeatures(ROWS, DIMENSIONS, 1);
+
+	private final int[] m_clusterOfRow = SilhouetteCondensedMatrixTest.randomClusters(ROWS, CLUSTERS, 2);
+
+	private final int[] m_clusterSizes = SilhouetteCondensedMatrixTest.clusterSizes(m_clusterOfRow, CLUSTERS);
+
+	/** Turns per-cluster distance sums of all rows into mean distances and compares them */
+	private void assertMeans(double[] sums) {
+		double[] expected = SilhouetteCondensedMatrixTest.naiveMeanDistances(m_features, DIMENSIONS, m_clusterOfRow,
+				CLUSTERS);
+		double[] means = new double[ROWS * CLUSTERS];
+		double[] clusterDistances = new double[CLUSTERS];
+		for(int row = 0; row < ROWS; row++) {
+			SilhouetteKernel.meanClusterDistances(sums, row, m_clusterOfRow[row], m_clusterSizes, clusterDistances);
+			System.arraycopy(clusterDistances, 0, means, row * CLUSTERS, CLUSTERS);
+		}
+		assertArrayEquals(expected, means, 1e-12);
+	}
+
+	@Test
+	public void testEuclideanDistanceMatchesBoxedForm() {
+		double[] features = {1.5, -2, 3, 0.5, 4, -1};
+		double expected = SilhouetteKernel.euclideanDistance(new Double[] {1.5, -2.0}, new Integer[] {3},
+				new Double[] {0.5, 4.0}, new Integer[] {-1});
+		assertEquals(expected, SilhouetteKernel.euclideanDistance(features, 3, 0, 1), 1e-15);
+	}
+
+	@Test
+	public void testTilesMatchNaive() {
+		double[] sums = new double[ROWS * CLUSTERS];
+		for(int rowFrom = 0; rowFrom < ROWS; rowFrom += TILE_ROWS) {
+			for(int otherFrom = 0; otherFrom < ROWS; otherFrom += TILE_ROWS) {
+				SilhouetteKernel.accumulateTile(m_features, DIMENSIONS, rowFrom, Math.min(ROWS, rowFrom + TILE_ROWS),
+						otherFrom, Math.min(ROWS, otherFrom + TILE_ROWS), m_clusterOfRow, CLUSTERS, sums);
+			}
+		}
+		assertMeans(sums);
+	}
+
+	/** Each pair of tiles once (the tile before the other), the distances added to both rows */
+	@Test
+	public void testTilePairsMatchNaive() throws CanceledExecutionException {
+		double[] sums = new double[ROWS * CLUSTERS];
+		SilhouetteParallel.runTilePairs(1, (ROWS + TILE_ROWS - 1) / TILE_ROWS,
+				(tile, other) -> SilhouetteKernel.accumulateTilePair(m_features, DIMENSIONS, tile * TILE_ROWS,
+						Math.min(ROWS, (tile + 1) * TILE_ROWS), other * TILE_ROWS,
+						Math.min(ROWS, (other + 1) * TILE_ROWS), m_clusterOfRow, CLUSTERS, sums));
+		assertMeans(sums);
+	}
+
+	/**
+	 * The blocks of the spilled matrix: only the blocks of a tile against the tiles up to it are
+	 * computed, the others are read transposed.
+	 */
+	@Test
+	public void testSpilledBlocksMatchNaive() {
+		int tiles = (ROWS + TILE_ROWS - 1) / TILE_ROWS;
+		double[][] blocks = new double[tiles * tiles][];
+		for(int tile = 0; tile < tiles; tile++) {
+			for(int other = 0; other <= tile; other++) {
+				blocks[tile * tiles + other] = new double[TILE_ROWS * TILE_ROWS];
+				SilhouetteKernel.tileDistances(m_features, DIMENSIONS, tile * TILE_ROWS,
+						Math.min(ROWS, (tile + 1) * TILE_ROWS), other * TILE_ROWS, Math.min(ROWS, (other + 1) * TILE_ROWS),
+						TILE_ROWS, blocks[tile * tiles + other]);
+			}
+		}
+		double[] sums = new double[ROWS * CLUSTERS];
+		for(int tile = 0; tile < tiles; tile++) {
+			int rowFrom = tile * TILE_ROWS, rowTo = Math.min(ROWS, rowFrom + TILE_ROWS);
+			double[] tileSums = new double[(rowTo - rowFrom) * CLUSTERS];
+			for(int other = 0; other < tiles; other++) {
+				double[] block = other <= tile ? blocks[tile * tiles + other] : blocks[other * tiles + tile];
+				SilhouetteKernel.accumulateBlock(block, TILE_ROWS, other > tile, rowFrom, rowTo, other * TILE_ROWS,
+						Math.min(ROWS, (other + 1) * TILE_ROWS), m_clusterOfRow, CLUSTERS, tileSums);
+			}
+			System.arraycopy(tileSums, 0, sums, rowFrom * CLUSTERS, tileSums.length);
+		}
+		assertMeans(sums);
+	}
+
+	@Test
+	public void testCoefficient() {
+		// closer to the own cluster than to the nearest other one
+		assertEquals(0.5, SilhouetteKernel.coefficient(new double[] {1, 2, 4}, 0), 1e-15);
+		assertEquals(-0.5, SilhouetteKernel.coefficient(new double[] {2, 1, 4}, 0), 1e-15);
+		// a single cluster
+		assertEquals(0, SilhouetteKernel.coefficient(new double[] {3}, 0), 0);
+	}
+}
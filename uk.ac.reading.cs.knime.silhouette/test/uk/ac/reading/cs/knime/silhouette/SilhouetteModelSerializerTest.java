@@ -0,0 +1,103 @@
+package uk.ac.reading.cs.knime.silhouette;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.knime.core.node.NodeSettings;
+import org.knime.core.util.FileUtil;
+
+/**
+ * Tests the binary form of the Silhouette model and reading the XML form of older versions.
+ *
+ * @author University of Reading
+ */
+public class SilhouetteModelSerializerTest {
+
+	private File m_dir;
+
+	@Before
+	public void setUp() throws IOException {
+		m_dir = FileUtil.createTempDir("silhouette-serializer-test");
+	}
+
+	@After
+	public void tearDown() {
+		FileUtil.deleteRecursively(m_dir);
+	}
+
+	/** Writes the model like the versions before the binary format did */
+	private void writeXML(SilhouetteModel model) throws IOException {
+		NodeSettings settings = new NodeSettings("silhouetteInternals");
+		InternalCluster[] clusters = model.getClusterData();
+		settings.addInt("clustersNum", clusters.length);
+		for(int i = 0; i < clusters.length; i++) {
+			settings.addString("name" + i, clusters[i].getName());
+			settings.addIntArray("dataIndices" + i, clusters[i].getDataIndices());
+			int[] colors = new int[clusters[i].getColors().length];
+			for(int l = 0; l < colors.length; l++) {
+				colors[l] = clusters[i].getColors()[l].getRGB();
+			}
+			settings.addIntArray("colors" + i, colors);
+			settings.addDoubleArray("coefficients" + i, clusters[i].getCoefficients());
+		}
+		try(OutputStream out = new FileOutputStream(new File(m_dir, SilhouetteModelSerializer.XML_FILE_NAME))) {
+			settings.saveToXML(out);
+		}
+	}
+
+	@Test
+	public void testBinaryRoundTrip() throws IOException {
+		SilhouetteModel model = SilhouetteNodeModelInternalsTest.createModel();
+		SilhouetteModelSerializer.save(model, m_dir);
+		assertTrue(new File(m_dir, SilhouetteModelSerializer.BINARY_FILE_NAME).isFile());
+		assertFalse(new File(m_dir, SilhouetteModelSerializer.XML_FILE_NAME).exists());
+		SilhouetteNodeModelInternalsTest.assertModel(model, SilhouetteModelSerializer.load(m_dir));
+	}
+
+	@Test
+	public void testLoadedColorsAreShared() throws IOException {
+		SilhouetteModelSerializer.save(SilhouetteNodeModelInternalsTest.createModel(), m_dir);
+		InternalCluster cluster = SilhouetteModelSerializer.load(m_dir).getClusterData()[0];
+		assertSame(cluster.getColors()[0], cluster.getColors()[1]);
+	}
+
+	@Test
+	public void testReadLegacyXML() throws IOException {
+		SilhouetteModel model = SilhouetteNodeModelInternalsTest.createModel();
+		writeXML(model);
+		SilhouetteNodeModelInternalsTest.assertModel(model, SilhouetteModelSerializer.load(m_dir));
+	}
+
+	@Test
+	public void testBinaryPreferredOverXML() throws IOException {
+		SilhouetteModel model = SilhouetteNodeModelInternalsTest.createModel();
+		writeXML(new SilhouetteModel(new InternalCluster[0]));
+		SilhouetteModelSerializer.save(model, m_dir);
+		SilhouetteNodeModelInternalsTest.assertModel(model, SilhouetteModelSerializer.load(m_dir));
+	}
+
+	@Test(expected = IOException.class)
+	public void testRejectsUnknownVersion() throws IOException {
+		try(DataOutputStream out = new DataOutputStream(
+				new FileOutputStream(new File(m_dir, SilhouetteModelSerializer.BINARY_FILE_NAME)))) {
+			out.writeInt(0x53494c48);
+			out.writeInt(99);
+		}
+		SilhouetteModelSerializer.load(m_dir);
+	}
+
+	@Test(expected = IOException.class)
+	public void testMissingModelFails() throws IOException {
+		SilhouetteModelSerializer.load(m_dir);
+	}
+}
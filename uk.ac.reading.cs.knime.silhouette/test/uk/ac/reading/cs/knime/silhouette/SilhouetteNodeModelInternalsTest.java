@@ -0,0 +1,93 @@
+package uk.ac.reading.cs.knime.silhouette;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import java.awt.Color;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.knime.core.util.FileUtil;
+
+/**
+ * Tests loading and saving the internals of the Silhouette node, in particular saving a node
+ * again that was loaded but whose model was not read yet.
+ *
+ * @author University of Reading
+ */
+public class SilhouetteNodeModelInternalsTest {
+
+	private File m_dir;
+
+	@Before
+	public void setUp() throws IOException {
+		m_dir = FileUtil.createTempDir("silhouette-internals-test");
+	}
+
+	@After
+	public void tearDown() {
+		FileUtil.deleteRecursively(m_dir);
+	}
+
+	static SilhouetteModel createModel() {
+		return new SilhouetteModel(new InternalCluster[] {
+				new InternalCluster("cluster_0", new Color[] {Color.RED, Color.RED, Color.BLUE},
+						new int[] {0, 3, 4}, new double[] {0.75, 0.5, -0.125}),
+				new InternalCluster("cluster_1", new Color[] {Color.GREEN, Color.GREEN},
+						new int[] {1, 2}, new double[] {0.25, 1.0})});
+	}
+
+	static void assertModel(SilhouetteModel expected, SilhouetteModel actual) {
+		assertNotNull(actual);
+		assertEquals(expected.getClusterData().length, actual.getClusterData().length);
+		for(int k = 0; k < expected.getClusterData().length; k++) {
+			InternalCluster e = expected.getClusterData()[k], a = actual.getClusterData()[k];
+			assertEquals(e.getName(), a.getName());
+			assertArrayEquals(e.getColors(), a.getColors());
+			assertArrayEquals(e.getDataIndices(), a.getDataIndices());
+			assertArrayEquals(e.getCoefficients(), a.getCoefficients(), 0.0);
+		}
+	}
+
+	/** KNIME clears the internals directory before it saves a node. */
+	private void clearDirectory() {
+		for(File f : m_dir.listFiles()) {
+			FileUtil.deleteRecursively(f);
+		}
+	}
+
+	@Test
+	public void testSaveUnreadInternalsIntoClearedDirectory() throws Exception {
+		SilhouetteModel model = createModel();
+		SilhouetteModelSerializer.save(model, m_dir);
+
+		SilhouetteNodeModel loaded = new SilhouetteNodeModel();
+		loaded.loadInternals(m_dir, null);
+		// saved again before any view asked for the model
+		clearDirectory();
+		loaded.saveInternals(m_dir, null);
+
+		SilhouetteNodeModel reloaded = new SilhouetteNodeModel();
+		reloaded.loadInternals(m_dir, null);
+		assertModel(model, reloaded.getSilhouetteModel());
+		loaded.onDispose();
+		reloaded.onDispose();
+	}
+
+	@Test(expected = IOException.class)
+	public void testSaveUnreadableInternalsFails() throws Exception {
+		try(OutputStream out = new FileOutputStream(new File(m_dir, SilhouetteModelSerializer.BINARY_FILE_NAME))) {
+			out.write(new byte[] {1, 2, 3, 4, 5, 6, 7, 8});
+		}
+		SilhouetteNodeModel model = new SilhouetteNodeModel();
+		model.loadInternals(m_dir, null);
+		clearDirectory();
+		model.saveInternals(m_dir, null);
+	}
+}
@@ -0,0 +1,113 @@
+package uk.ac.reading.cs.knime.silhouette;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import org.junit.Test;
+import org.knime.core.node.CanceledExecutionException;
+
+/**
+ * Tests the schedules of the parallel blocks and tile pairs of the Silhouette node.
+ *
+ * @author University of Reading
+ */
+public class SilhouetteParallelTest {
+
+	@Test
+	public void testRunVisitsEveryBlockOnce() throws CanceledExecutionException {
+		for(int threads : new int[] {1, 4}) {
+			AtomicIntegerArray visits = new AtomicIntegerArray(37);
+			SilhouetteParallel.run(threads, visits.length(), visits::incrementAndGet);
+			for(int i = 0; i < visits.length(); i++) {
+				assertEquals(1, visits.get(i));
+			}
+		}
+	}
+
+	@Test(expected = CanceledExecutionException.class)
+	public void testRunPassesCancellation() throws CanceledExecutionException {
+		SilhouetteParallel.run(4, 8, index -> {
+			if(index == 5) throw new CanceledExecutionException();
+		});
+	}
+
+	/** A failed block stops the run only once the blocks already running have finished */
+	@Test
+	public void testRunWaitsForRunningBlocksOnFailure() {
+		AtomicInteger running = new AtomicInteger();
+		try {
+			SilhouetteParallel.run(4, 8, index -> {
+				running.incrementAndGet();
+				try {
+					if(index == 0) {
+						while(running.get() < 2) {
+							Thread.yield();
+						}
+						throw new IllegalStateException("failed");
+					}
+					long end = System.nanoTime() + 50000000L;
+					while(System.nanoTime() < end) {
+						Thread.yield();
+					}
+				} finally {
+					running.decrementAndGet();
+				}
+			});
+			fail("the run was not stopped");
+		} catch(IllegalStateException | CanceledExecutionException e) {
+			assertEquals("failed", e.getMessage());
+		}
+		assertEquals(0, running.get());
+	}
+
+	/** Every pair of tiles with tile &gt;= other exactly once, for even and odd numbers of tiles */
+	@Test
+	public void testRunTilePairsVisitsEveryPairOnce() throws CanceledExecutionException {
+		for(int threads : new int[] {1, 4}) {
+			for(int tiles = 1; tiles <= 9; tiles++) {
+				final int n = tiles;
+				AtomicIntegerArray visits = new AtomicIntegerArray(n * n);
+				AtomicIntegerArray busy = new AtomicIntegerArray(n);
+				AtomicIntegerArray overlaps = new AtomicIntegerArray(1);
+				SilhouetteParallel.runTilePairs(threads, n, (tile, other) -> {
+					assertTrue(tile >= other && other >= 0 && tile < n);
+					// no two pairs running at the same time share a tile
+					if(busy.incrementAndGet(tile) > 1) overlaps.incrementAndGet(0);
+					if(tile != other && busy.incrementAndGet(other) > 1) overlaps.incrementAndGet(0);
+					visits.incrementAndGet(tile * n + other);
+					busy.decrementAndGet(tile);
+					if(tile != other) busy.decrementAndGet(other);
+				});
+				for(int tile = 0; tile < n; tile++) {
+					for(int other = 0; other < n; other++) {
+						assertEquals("tiles " + tile + ", " + other + " of " + n, other <= tile ? 1 : 0,
+								visits.get(tile * n + other));
+					}
+				}
+				assertEquals(0, overlaps.get(0));
+			}
+		}
+	}
+
+	/** The symmetric accumulation gives the same sums, bit for bit, with any number of threads */
+	@Test
+	public void testTilePairSumsDoNotDependOnThreads() throws CanceledExecutionException {
+		int rows = 53, dimensions = 3, clusters = 4, tileRows = 8;
+		double[] features = SilhouetteCondensedMatrixTest.randomFeatures(rows, dimensions, 1);
+		int[] clusterOfRow = SilhouetteCondensedMatrixTest.randomClusters(rows, clusters, 2);
+		double[] sequential = new double[rows * clusters];
+		double[] parallel = new double[rows * clusters];
+		for(double[] sums : new double[][] {sequential, parallel}) {
+			SilhouetteParallel.runTilePairs(sums == sequential ? 1 : 4, (rows + tileRows - 1) / tileRows,
+					(tile, other) -> SilhouetteKernel.accumulateTilePair(features, dimensions, tile * tileRows,
+							Math.min(rows, (tile + 1) * tileRows), other * tileRows,
+							Math.min(rows, (other + 1) * tileRows), clusterOfRow, clusters, sums));
+		}
+		assertArrayEquals(sequential, parallel, 0);
+	}
+}
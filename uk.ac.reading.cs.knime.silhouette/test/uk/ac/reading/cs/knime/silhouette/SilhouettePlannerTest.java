@@ -0,0 +1,117 @@
+package uk.ac.reading.cs.knime.silhouette;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.knime.core.node.InvalidSettingsException;
+import org.knime.core.node.NodeSettings;
+
+import uk.ac.reading.cs.knime.silhouette.SilhouettePlanner.Plan;
+import uk.ac.reading.cs.knime.silhouette.SilhouettePlanner.Strategy;
+
+/**
+ * Tests the strategy decisions of the execution planner and when they are shown as warning.
+ *
+ * @author University of Reading
+ */
+public class SilhouettePlannerTest {
+
+	/**
+	 * @param strategy the strategy set in the dialog, <code>null</code> for automatic
+	 * @param heapBudgetMB the heap budget, 0 for half of the maximum heap
+	 * @return the execution settings, without time budget
+	 */
+	static SilhouetteExecutionSettings settings(Strategy strategy, int heapBudgetMB) throws InvalidSettingsException {
+		NodeSettings settings = new NodeSettings("execution");
+		settings.addString(SilhouetteExecutionSettings.CFGKEY_STRATEGY,
+				strategy == null ? SilhouetteExecutionSettings.STRATEGY_AUTOMATIC : strategy.getLabel());
+		settings.addInt(SilhouetteExecutionSettings.CFGKEY_HEAP_BUDGET, heapBudgetMB);
+		settings.addInt(SilhouetteExecutionSettings.CFGKEY_TIME_BUDGET, 0);
+		settings.addInt(SilhouetteExecutionSettings.CFGKEY_THREADS, 1);
+		SilhouetteExecutionSettings executionSettings = new SilhouetteExecutionSettings();
+		executionSettings.validateSettings(settings);
+		executionSettings.loadSettingsFrom(settings);
+		return executionSettings;
+	}
+
+	@Test
+	public void testAutomaticPrefersInMemory() throws Exception {
+		Plan plan = SilhouettePlanner.plan(settings(null, 1024), 1000, 5, 3, false);
+		assertEquals(Strategy.IN_MEMORY, plan.getStrategy());
+		assertEquals(1000, plan.getEvaluatedRows());
+		assertNull(plan.getWarning());
+	}
+
+	@Test
+	public void testAutomaticSkipsInMemoryBeyondCondensedMatrix() throws Exception {
+		Plan plan = SilhouettePlanner.plan(settings(null, 64 * 1024), SilhouetteCondensedMatrix.MAX_ROWS + 1, 5, 3,
+				false);
+		assertEquals(Strategy.BLOCKED, plan.getStrategy());
+		assertNull(plan.getWarning());
+	}
+
+	@Test
+	public void testAutomaticSamplesBeyondBudget() throws Exception {
+		Plan plan = SilhouettePlanner.plan(settings(null, 1), 1000000, 10, 3, false);
+		assertEquals(Strategy.SAMPLED, plan.getStrategy());
+		assertTrue(plan.getEvaluatedRows() >= 2 && plan.getEvaluatedRows() < 1000000);
+		assertTrue(SilhouettePlanner.estimateHeap(Strategy.SAMPLED, plan.getEvaluatedRows(), 10, 3) <= 1024 * 1024
+				|| plan.getEvaluatedRows() == 2);
+		assertNotNull(plan.getWarning());
+	}
+
+	@Test
+	public void testRequestedStrategyIsFollowed() throws Exception {
+		for(Strategy strategy : new Strategy[] {Strategy.IN_MEMORY, Strategy.BLOCKED, Strategy.STREAMING,
+				Strategy.SAMPLED, Strategy.SIMPLIFIED}) {
+			Plan plan = SilhouettePlanner.plan(settings(strategy, 1), 1000, 5, 3, false);
+			assertEquals(strategy, plan.getStrategy());
+			// even beyond the budgets, the user chose it
+			assertNull(plan.getWarning());
+		}
+	}
+
+	@Test
+	public void testRequestedInMemoryFallsBackBeyondCondensedMatrix() throws Exception {
+		Plan plan = SilhouettePlanner.plan(settings(Strategy.IN_MEMORY, 0), SilhouetteCondensedMatrix.MAX_ROWS + 1, 5,
+				3, false);
+		assertEquals(Strategy.STREAMING, plan.getStrategy());
+		assertNotNull(plan.getWarning());
+		assertTrue(plan.getWarning(), plan.getWarning().contains(Strategy.IN_MEMORY.getLabel()));
+	}
+
+	@Test
+	public void testRequestedBlockedFallsBackBeyondArrays() throws Exception {
+		Plan plan = SilhouettePlanner.plan(settings(Strategy.BLOCKED, 0), Integer.MAX_VALUE / 2, 5, 3, false);
+		assertEquals(Strategy.STREAMING, plan.getStrategy());
+		assertNotNull(plan.getWarning());
+	}
+
+	@Test
+	public void testStratifiedEvaluatesSample() throws Exception {
+		Plan plan = SilhouettePlanner.plan(settings(Strategy.STRATIFIED, 0), 1000000, 5, 3, false);
+		assertEquals(Strategy.STRATIFIED, plan.getStrategy());
+		assertEquals(SilhouetteExecutionSettings.DEFAULT_SAMPLE_SIZE, plan.getEvaluatedRows());
+		assertNull(plan.getWarning());
+	}
+
+	@Test
+	public void testDistanceMatrixInput() throws Exception {
+		Plan automatic = SilhouettePlanner.plan(settings(null, 1), 1000000, 0, 3, true);
+		assertEquals(Strategy.STREAMING, automatic.getStrategy());
+		assertEquals(1000000, automatic.getEvaluatedRows());
+		assertNull(automatic.getWarning());
+		// a strategy set in the dialog cannot be applied to the matrix
+		assertNotNull(SilhouettePlanner.plan(settings(Strategy.BLOCKED, 0), 1000, 0, 3, true).getWarning());
+	}
+
+	@Test
+	public void testFitsBlocked() {
+		assertTrue(SilhouettePlanner.fitsBlocked(1000, 10, 3));
+		assertFalse(SilhouettePlanner.fitsBlocked(Integer.MAX_VALUE / 4, 10, 3));
+	}
+}
@@ -0,0 +1,151 @@
+package uk.ac.reading.cs.knime.silhouette;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.knime.core.node.CanceledExecutionException;
+import org.knime.core.util.FileUtil;
+
+/**
+ * Tests the block layout of the memory-mapped distance matrix and the release of its file.
+ *
+ * @author University of Reading
+ */
+public class SilhouetteSpilledMatrixTest {
+
+	private File m_dir;
+
+	@Before
+	public void setUp() throws IOException {
+		m_dir = FileUtil.createTempDir("silhouette-spill-test");
+	}
+
+	@After
+	public void tearDown() {
+		FileUtil.deleteRecursively(m_dir);
+	}
+
+	/** A distance identifying the pair of tiles and the rows within them */
+	private static double distance(int tile, int other, int i, int j) {
+		return tile * 1000000 + other * 10000 + i * 100 + j;
+	}
+
+	private static double[] block(int tileRows, int tile, int other) {
+		double[] distances = new double[tileRows * tileRows];
+		for(int i = 0; i < tileRows; i++) {
+			for(int j = 0; j < tileRows; j++) {
+				distances[i * tileRows + j] = distance(tile, other, i, j);
+			}
+		}
+		return distances;
+	}
+
+	/** Writes every block, the last first, and reads them back */
+	private void assertBlocks(int rows, int tileRows, long segmentBytes) throws IOException {
+		try(SilhouetteSpilledMatrix matrix = new SilhouetteSpilledMatrix(rows, tileRows, m_dir, segmentBytes)) {
+			assertEquals(rows, matrix.getRowCount());
+			assertEquals((rows + tileRows - 1) / tileRows, matrix.getTileCount());
+			for(int tile = matrix.getTileCount() - 1; tile >= 0; tile--) {
+				for(int other = tile; other >= 0; other--) {
+					matrix.writeBlock(tile, other, block(tileRows, tile, other));
+				}
+			}
+			double[] distances = new double[tileRows * tileRows];
+			for(int tile = 0; tile < matrix.getTileCount(); tile++) {
+				for(int other = 0; other <= tile; other++) {
+					matrix.readBlock(tile, other, distances);
+					assertArrayEquals(block(tileRows, tile, other), distances, 0);
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testBlocksOfWholeTiles() throws IOException {
+		assertBlocks(12, 4, SilhouetteSpilledMatrix.fileBytes(12, 4));
+	}
+
+	@Test
+	public void testBlocksOfPartialLastTile() throws IOException {
+		// 3 tiles, the last has 2 rows but a whole block
+		assertBlocks(10, 4, SilhouetteSpilledMatrix.fileBytes(10, 4));
+		assertEquals(6 * 8 * 16, SilhouetteSpilledMatrix.fileBytes(10, 4));
+	}
+
+	@Test
+	public void testBlocksAcrossSegments() throws IOException {
+		// two blocks of 4 x 4 distances per segment, 6 blocks in 3 segments
+		assertBlocks(10, 4, 2 * 8 * 16);
+		// a segment smaller than a block holds one block
+		assertBlocks(10, 4, 8);
+	}
+
+	/**
+	 * A run cancelled while the blocks are written returns only once no block writes to the
+	 * mappings any more, as closing the matrix unmaps them.
+	 */
+	@Test
+	public void testCancelledRunStopsBeforeClose() throws IOException {
+		AtomicInteger running = new AtomicInteger();
+		SilhouetteSpilledMatrix matrix = new SilhouetteSpilledMatrix(64, 4, m_dir);
+		try {
+			SilhouetteParallel.run(4, matrix.getTileCount(), tile -> {
+				running.incrementAndGet();
+				try {
+					if(tile == 0) {
+						while(running.get() < 2) {
+							Thread.yield();
+						}
+						throw new CanceledExecutionException();
+					}
+					long end = System.nanoTime() + 50000000L;
+					while(System.nanoTime() < end) {
+						for(int other = 0; other <= tile; other++) {
+							matrix.writeBlock(tile, other, block(4, tile, other));
+						}
+					}
+				} finally {
+					running.decrementAndGet();
+				}
+			});
+			fail("the run was not cancelled");
+		} catch(CanceledExecutionException e) {
+			assertEquals(0, running.get());
+		} finally {
+			matrix.close();
+		}
+	}
+
+	@Test
+	public void testCloseDeletesFile() throws IOException {
+		SilhouetteSpilledMatrix matrix = new SilhouetteSpilledMatrix(100, 16, m_dir);
+		matrix.writeBlock(6, 0, block(16, 6, 0));
+		assertEquals(1, m_dir.list().length);
+		matrix.close();
+		assertEquals(0, m_dir.list().length);
+		assertTrue(new SilhouetteSpilledMatrix(10, 4, m_dir).release());
+		assertEquals(0, m_dir.list().length);
+	}
+
+	@Test
+	public void testFailedDeleteIsReported() throws IOException {
+		SilhouetteSpilledMatrix matrix = new SilhouetteSpilledMatrix(10, 4, m_dir);
+		File file = m_dir.listFiles()[0];
+		// a directory in place of the file cannot be deleted while it is not empty
+		assertTrue(file.delete());
+		assertTrue(file.mkdir());
+		assertTrue(new File(file, "blocker").createNewFile());
+		assertFalse(matrix.release());
+		assertTrue(file.exists());
+	}
+}
@@ -0,0 +1,165 @@
+package uk.ac.reading.cs.knime.silhouette;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests the allocation of the stratified sample and its confidence intervals on a known
+ * distribution.
+ *
+ * @author University of Reading
+ */
+public class SilhouetteStratifiedSampleTest {
+
+	private static final Object[] STRATA = {"a", "b", "c"};
+
+	/**
+	 * @param sizes the number of rows of every stratum
+	 * @return the strata of the rows, interleaved, with a row without a cluster first
+	 */
+	private static int[] stratumOfRow(int... sizes) {
+		int rows = 1;
+		for(int size : sizes) {
+			rows += size;
+		}
+		int[] stratumOfRow = new int[rows];
+		stratumOfRow[0] = -1;
+		int[] left = sizes.clone();
+		int row = 1;
+		while(row < rows) {
+			for(int s = 0; s < sizes.length; s++) {
+				if(left[s]-- > 0) stratumOfRow[row++] = s;
+			}
+		}
+		return stratumOfRow;
+	}
+
+	/** @return the number of selected rows of every stratum */
+	private static int[] countPerStratum(boolean[] selected, int[] stratumOfRow, int strata) {
+		int[] counts = new int[strata];
+		for(int row = 0; row < selected.length; row++) {
+			if(selected[row]) counts[stratumOfRow[row]]++;
+		}
+		return counts;
+	}
+
+	@Test
+	public void testProportionalAllocationWithMinimum() {
+		int[] stratumOfRow = stratumOfRow(1000, 100, 20);
+		SilhouetteStratifiedSample sample = new SilhouetteStratifiedSample(STRATA, stratumOfRow, 112, 0, 7);
+		boolean[] sampled = sample.getSampled();
+		assertFalse(sampled[0]);
+		// 100 in proportion, 10 raised to the minimum, 2 raised to the whole cluster
+		assertArrayEquals(new int[] {100, 30, 20}, countPerStratum(sampled, stratumOfRow, STRATA.length));
+	}
+
+	@Test
+	public void testReferenceRows() {
+		int[] stratumOfRow = stratumOfRow(1000, 100, 20);
+		SilhouetteStratifiedSample all = new SilhouetteStratifiedSample(STRATA, stratumOfRow, 112, 0, 7);
+		assertFalse(all.isReference(0));
+		assertEquals(1120, all.getReferenceCount());
+
+		SilhouetteStratifiedSample sample = new SilhouetteStratifiedSample(STRATA, stratumOfRow, 112, 50, 7);
+		assertFalse(sample.isReference(0));
+		assertEquals(120, sample.getReferenceCount());
+		boolean[] reference = new boolean[stratumOfRow.length];
+		for(int row = 0; row < reference.length; row++) {
+			reference[row] = sample.isReference(row);
+		}
+		assertArrayEquals(new int[] {50, 50, 20}, countPerStratum(reference, stratumOfRow, STRATA.length));
+
+		// the clusters of the reference rows in table order, one flag for every sampled row
+		int[] clusterOfStratum = {2, 0, 1};
+		int[] clusterOfReference = sample.getReferenceClusters(clusterOfStratum);
+		int r = 0;
+		for(int row = 0; row < reference.length; row++) {
+			if(reference[row]) assertEquals(clusterOfStratum[stratumOfRow[row]], clusterOfReference[r++]);
+		}
+		assertEquals(150, sample.getSampledReferences().length);
+	}
+
+	@Test
+	public void testSameSeedSameSample() {
+		int[] stratumOfRow = stratumOfRow(1000, 100, 20);
+		assertTrue(Arrays.equals(new SilhouetteStratifiedSample(STRATA, stratumOfRow, 112, 50, 7).getSampled(),
+				new SilhouetteStratifiedSample(STRATA, stratumOfRow, 112, 50, 7).getSampled()));
+	}
+
+	@Test
+	public void testClusterSizesOfEncodedStrata() {
+		SilhouetteStratifiedSample sample = new SilhouetteStratifiedSample(STRATA, stratumOfRow(1000, 100, 20), 112,
+				0, 7);
+		Map<Object, Integer> clusterIndices = new HashMap<>();
+		clusterIndices.put("b", 0);
+		clusterIndices.put("c", 1);
+		clusterIndices.put("a", 2);
+		int[] clusterOfStratum = sample.encode(clusterIndices);
+		assertArrayEquals(new int[] {2, 0, 1}, clusterOfStratum);
+		assertArrayEquals(new int[] {100, 20, 1000}, sample.getClusterSizes(clusterOfStratum));
+	}
+
+	@Test
+	public void testStandardError() {
+		double[] coefficients = {0.1, 0.3, 0.5, 0.7};
+		// variance 0.2 / 3 of 4 rows, half of the cluster sampled
+		assertEquals(Math.sqrt(0.2 / 3 / 4 * 0.5), SilhouetteStratifiedSample.standardError(coefficients, 0.4, 8),
+				1e-15);
+		// a cluster sampled completely is known exactly
+		assertEquals(0, SilhouetteStratifiedSample.standardError(coefficients, 0.4, 4), 0);
+		assertEquals(0, SilhouetteStratifiedSample.standardError(new double[] {0.3}, 0.3, 8), 0);
+	}
+
+	/**
+	 * Coefficients of a known normal distribution: the 95% intervals of the cluster means, drawn
+	 * from many samples, cover the true means in about 95% of the samples.
+	 */
+	@Test
+	public void testIntervalsCoverTrueMeans() {
+		int[] sizes = {3000, 300, 60};
+		int[] stratumOfRow = stratumOfRow(sizes);
+		Random random = new Random(11);
+		double[] coefficients = new double[stratumOfRow.length];
+		double[] trueMeans = new double[sizes.length];
+		for(int row = 1; row < coefficients.length; row++) {
+			int s = stratumOfRow[row];
+			coefficients[row] = 0.2 * s + 0.15 * random.nextGaussian();
+			trueMeans[s] += coefficients[row] / sizes[s];
+		}
+
+		int samples = 2000;
+		int[] covered = new int[sizes.length];
+		for(int seed = 0; seed < samples; seed++) {
+			boolean[] sampled = new SilhouetteStratifiedSample(STRATA, stratumOfRow, 360, 0, seed).getSampled();
+			int[] counts = countPerStratum(sampled, stratumOfRow, sizes.length);
+			for(int s = 0; s < sizes.length; s++) {
+				double[] sampledCoefficients = new double[counts[s]];
+				double mean = 0;
+				int i = 0;
+				for(int row = 1; row < sampled.length; row++) {
+					if(sampled[row] && stratumOfRow[row] == s) {
+						sampledCoefficients[i++] = coefficients[row];
+						mean += coefficients[row] / counts[s];
+					}
+				}
+				double halfWidth = SilhouetteStratifiedSample.Z_95
+						* SilhouetteStratifiedSample.standardError(sampledCoefficients, mean, sizes[s]);
+				if(Math.abs(mean - trueMeans[s]) <= halfWidth) covered[s]++;
+			}
+		}
+		// 300, 30 and 30 rows sampled; the binomial deviation of the coverage is about 0.005
+		for(int s = 0; s < sizes.length; s++) {
+			double coverage = (double) covered[s] / samples;
+			assertTrue(STRATA[s] + ": " + coverage, coverage > 0.93 && coverage < 0.97);
+		}
+	}
+}